@@ -0,0 +1,113 @@
+package nu.marginalia.slop.column;
+
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.dynamic.BitPackedIntColumn;
+import nu.marginalia.slop.column.dynamic.VarintColumn;
+import nu.marginalia.slop.column.primitive.IntColumn;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Compares reading a column of small ints stored as an IntColumn, a VarintColumn
+ * and a BitPackedIntColumn, in batches with the bulk get methods of each.
+ * <p></p>
+ * Run with <code>gradle jmh</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntEncodingBenchmark {
+    private static final int COUNT = 1_000_000;
+    private static final int BATCH = 1024;
+
+    /** The number of bits in the values */
+    @Param({"5", "12"})
+    public int bits;
+
+    private final IntColumn intColumn = new IntColumn("int");
+    private final VarintColumn varintColumn = new VarintColumn("varint");
+    private final BitPackedIntColumn packedColumn = new BitPackedIntColumn("packed");
+
+    private Path dir;
+    private final int[] batch = new int[BATCH];
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory(getClass().getSimpleName());
+
+        var rand = new Random(0);
+        int[] values = new int[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            values[i] = rand.nextInt(1 << bits);
+        }
+
+        try (var table = new SlopTable(dir)) {
+            intColumn.create(table).put(values);
+            varintColumn.create(table).put(values);
+            packedColumn.create(table).put(values);
+        }
+
+        for (var column : new AbstractColumn<?, ?>[] { intColumn, varintColumn, packedColumn }) {
+            System.out.println(column.name + ": " + Files.size(dir.resolve(column.fileName(0))) + " bytes");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Benchmark
+    public int intColumn() throws IOException {
+        int sum = 0;
+        try (var table = new SlopTable(dir)) {
+            var reader = intColumn.open(table);
+            for (int i = 0; i < COUNT; i += BATCH) {
+                int n = Math.min(BATCH, COUNT - i);
+                reader.get(batch, 0, n);
+                sum += batch[n - 1];
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int varintColumn() throws IOException {
+        int sum = 0;
+        try (var table = new SlopTable(dir)) {
+            var reader = varintColumn.open(table);
+            for (int i = 0; i < COUNT; i += BATCH) {
+                int n = Math.min(BATCH, COUNT - i);
+                reader.get(batch, n);
+                sum += batch[n - 1];
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int bitPackedColumn() throws IOException {
+        int sum = 0;
+        try (var table = new SlopTable(dir)) {
+            var reader = packedColumn.open(table);
+            for (int i = 0; i < COUNT; i += BATCH) {
+                int n = Math.min(BATCH, COUNT - i);
+                reader.get(batch, n);
+                sum += batch[n - 1];
+            }
+        }
+        return sum;
+    }
+}
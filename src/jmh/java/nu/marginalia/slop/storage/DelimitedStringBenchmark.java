@@ -0,0 +1,101 @@
+package nu.marginalia.slop.storage;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Compares reading and skipping newline delimited strings, like those of TxtStringColumn,
+ * through the bulk delimiter scan against one getByte() at a time, which is what the
+ * delimited string columns used to do.
+ * <p></p>
+ * Run with <code>gradle jmh</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DelimitedStringBenchmark {
+    private static final int COUNT = 1_000_000;
+
+    @Param({"mmap", "buffered"})
+    public String readerType;
+
+    private Path file;
+    private StorageReader reader;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile(getClass().getSimpleName(), ".dat");
+
+        var rand = new Random(0);
+
+        // URL-like strings of 20-100 bytes
+        try (var writer = new SimpleStorageWriter(file, ByteOrder.LITTLE_ENDIAN, 65536)) {
+            for (int i = 0; i < COUNT; i++) {
+                String url = "https://www.example" + rand.nextInt(1000) + ".com/" + "a/".repeat(rand.nextInt(40));
+                writer.putBytes(url.getBytes(StandardCharsets.UTF_8));
+                writer.putByte((byte) '\n');
+            }
+        }
+
+        reader = switch (readerType) {
+            case "mmap" -> new MmapStorageReader(file);
+            case "buffered" -> new SimpleStorageReader(file, ByteOrder.LITTLE_ENDIAN, 65536);
+            default -> throw new IllegalArgumentException(readerType);
+        };
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reader.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void getBulk(Blackhole bh) throws IOException {
+        reader.seek(0, 1);
+        for (int i = 0; i < COUNT; i++) {
+            bh.consume(new String(reader.getBytesUntil((byte) '\n'), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Benchmark
+    public void getByteAtATime(Blackhole bh) throws IOException {
+        reader.seek(0, 1);
+        for (int i = 0; i < COUNT; i++) {
+            StringBuilder sb = new StringBuilder();
+            byte b;
+            while (reader.hasRemaining() && (b = reader.getByte()) != '\n') {
+                sb.append((char) b);
+            }
+            bh.consume(sb.toString());
+        }
+    }
+
+    @Benchmark
+    public long skipBulk() throws IOException {
+        reader.seek(0, 1);
+        return reader.skipPast((byte) '\n', COUNT);
+    }
+
+    @Benchmark
+    public long skipByteAtATime() throws IOException {
+        reader.seek(0, 1);
+        long found = 0;
+        while (found < COUNT && reader.hasRemaining()) {
+            if (reader.getByte() == '\n') {
+                found++;
+            }
+        }
+        return found;
+    }
+}
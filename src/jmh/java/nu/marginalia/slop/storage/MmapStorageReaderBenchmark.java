@@ -0,0 +1,105 @@
+package nu.marginalia.slop.storage;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** Compares the bulk array copies in MmapStorageReader against reading
+ * the same data one element at a time, which is what the bulk methods
+ * used to do.
+ * <p></p>
+ * Run with <code>gradle jmh</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MmapStorageReaderBenchmark {
+
+    @Param({"64", "4096", "4194304"})
+    public int size;
+
+    private Path file;
+    private MmapStorageReader reader;
+
+    private byte[] bytes;
+    private int[] ints;
+    private long[] longs;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile(getClass().getSimpleName(), ".dat");
+
+        try (var writer = new SimpleStorageWriter(file, ByteOrder.LITTLE_ENDIAN, 65536)) {
+            for (int i = 0; i < size; i++) {
+                writer.putLong(i);
+            }
+        }
+
+        reader = new MmapStorageReader(file);
+
+        bytes = new byte[size];
+        ints = new int[size];
+        longs = new long[size];
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reader.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public byte[] bytesBulk() throws IOException {
+        reader.seek(0, 1);
+        reader.getBytes(bytes);
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] bytesPerElement() throws IOException {
+        reader.seek(0, 1);
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = reader.getByte();
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public int[] intsBulk() throws IOException {
+        reader.seek(0, 1);
+        reader.getInts(ints);
+        return ints;
+    }
+
+    @Benchmark
+    public int[] intsPerElement() throws IOException {
+        reader.seek(0, 1);
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = reader.getInt();
+        }
+        return ints;
+    }
+
+    @Benchmark
+    public long[] longsBulk() throws IOException {
+        reader.seek(0, 1);
+        reader.getLongs(longs);
+        return longs;
+    }
+
+    @Benchmark
+    public long[] longsPerElement() throws IOException {
+        reader.seek(0, 1);
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = reader.getLong();
+        }
+        return longs;
+    }
+}
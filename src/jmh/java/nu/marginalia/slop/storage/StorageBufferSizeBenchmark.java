@@ -0,0 +1,78 @@
+package nu.marginalia.slop.storage;
+
+import nu.marginalia.slop.column.primitive.LongColumn;
+import nu.marginalia.slop.desc.StorageType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** Sweeps the I/O buffer size for each storage type, writing and reading
+ * a column of 4M longs.
+ * <p></p>
+ * The column is big-endian, since little-endian PLAIN columns are read
+ * through mmap, which doesn't use a buffer.
+ * <p></p>
+ * Run with <code>gradle jmh</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class StorageBufferSizeBenchmark {
+    private static final int COUNT = 4 * 1024 * 1024;
+
+    @Param({"PLAIN", "GZIP", "ZSTD"})
+    public StorageType storageType;
+
+    @Param({"1024", "4096", "65536", "1048576"})
+    public int bufferSize;
+
+    private Path dir;
+    private LongColumn column;
+    private StorageOptions options;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory(getClass().getSimpleName());
+        column = new LongColumn("test", ByteOrder.BIG_ENDIAN, storageType);
+        options = StorageOptions.DEFAULT.withBufferSize(bufferSize);
+
+        write();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.list(dir)) {
+            for (var file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        try (var writer = Storage.writer(dir, column, 0, options)) {
+            for (long i = 0; i < COUNT; i++) {
+                writer.putLong(i);
+            }
+        }
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        long sum = 0;
+        try (var reader = Storage.reader(dir.toUri(), column, 0, true, options)) {
+            for (int i = 0; i < COUNT; i++) {
+                sum += reader.getLong();
+            }
+        }
+        return sum;
+    }
+}
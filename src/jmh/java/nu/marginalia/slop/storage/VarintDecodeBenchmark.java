@@ -0,0 +1,101 @@
+package nu.marginalia.slop.storage;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Compares the bulk varint decoding in the storage readers against decoding
+ * one byte at a time through getByte(), which is what VarintColumn used to do.
+ * <p></p>
+ * Run with <code>gradle jmh</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VarintDecodeBenchmark {
+    private static final int COUNT = 1_000_000;
+
+    @Param({"mmap", "buffered"})
+    public String readerType;
+
+    /** short: mostly single byte values, like the lengths of short strings; long: 1-3 byte values */
+    @Param({"short", "long"})
+    public String distribution;
+
+    private Path file;
+    private StorageReader reader;
+
+    private long[] values;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile(getClass().getSimpleName(), ".dat");
+
+        var rand = new Random(0);
+
+        try (var writer = new SimpleStorageWriter(file, ByteOrder.LITTLE_ENDIAN, 65536)) {
+            for (int i = 0; i < COUNT; i++) {
+                int value = switch (distribution) {
+                    case "short" -> rand.nextInt(10) < 8 ? rand.nextInt(128) : rand.nextInt(1 << 20);
+                    default -> rand.nextInt(1 << rand.nextInt(7, 21));
+                };
+                if (value < (1 << 7)) {
+                    writer.putByte((byte) value);
+                }
+                else if (value < (1 << 14)) {
+                    writer.putByte((byte) (value >>> 7 | 0x80));
+                    writer.putByte((byte) (value & 0x7F));
+                }
+                else {
+                    writer.putByte((byte) (value >>> 14 | 0x80));
+                    writer.putByte((byte) (value >>> 7 | 0x80));
+                    writer.putByte((byte) (value & 0x7F));
+                }
+            }
+        }
+
+        reader = switch (readerType) {
+            case "mmap" -> new MmapStorageReader(file);
+            case "buffered" -> new SimpleStorageReader(file, ByteOrder.LITTLE_ENDIAN, 65536);
+            default -> throw new IllegalArgumentException(readerType);
+        };
+
+        values = new long[COUNT];
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reader.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long[] bulk() throws IOException {
+        reader.seek(0, 1);
+        reader.getVarints(values, COUNT);
+        return values;
+    }
+
+    @Benchmark
+    public long[] byteAtATime() throws IOException {
+        reader.seek(0, 1);
+        for (int i = 0; i < COUNT; i++) {
+            byte b = reader.getByte();
+            long value = b & 0x7F;
+            while ((b & 0x80) != 0) {
+                b = reader.getByte();
+                value = value << 7 | (b & 0x7F);
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+}
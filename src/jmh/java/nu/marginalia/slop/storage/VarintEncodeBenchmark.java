@@ -0,0 +1,75 @@
+package nu.marginalia.slop.storage;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Compares the bulk varint encoding in the storage writers against encoding
+ * one byte at a time through putByte(), which is what VarintColumn used to do.
+ * <p></p>
+ * Run with <code>gradle jmh</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VarintEncodeBenchmark {
+    private static final int COUNT = 1_000_000;
+
+    private Path file;
+    private long[] values;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile(getClass().getSimpleName(), ".dat");
+
+        var rand = new Random(0);
+
+        // mostly single byte values, like the lengths of short strings
+        values = new long[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            values[i] = rand.nextInt(10) < 8 ? rand.nextInt(128) : rand.nextInt(1 << 20);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void bulk() throws IOException {
+        try (var writer = new SimpleStorageWriter(file, ByteOrder.LITTLE_ENDIAN, 65536)) {
+            writer.putVarints(values, COUNT);
+        }
+    }
+
+    @Benchmark
+    public void single() throws IOException {
+        try (var writer = new SimpleStorageWriter(file, ByteOrder.LITTLE_ENDIAN, 65536)) {
+            for (int i = 0; i < COUNT; i++) {
+                writer.putVarint(values[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    public void byteAtATime() throws IOException {
+        try (var writer = new SimpleStorageWriter(file, ByteOrder.LITTLE_ENDIAN, 65536)) {
+            for (int i = 0; i < COUNT; i++) {
+                long value = values[i];
+                for (int shift = 7 * (Varints.length(value) - 1); shift > 0; shift -= 7) {
+                    writer.putByte((byte) ((value >>> shift) | 0x80));
+                }
+                writer.putByte((byte) (value & 0x7F));
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package nu.marginalia.slop;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+
+/** SlopPageScanner runs a per-page reader over a list of table pages in parallel,
+ * typically the pages found by {@link SlopTable#listPages}.
+ * <p></p>
+ * The results are handed to a consumer on the calling thread, either in page order
+ * or in the order the pages complete.  At most a fixed number of pages are in flight
+ * at any given time, so that a slow consumer holds back the readers rather than
+ * letting results pile up in memory.
+ * <p></p>
+ * Example:
+ * <pre>{@code
+ * try (var scanner = new SlopPageScanner(8)) {
+ *     scanner.scan(SlopTable.listPages(dir, column), ref -> {
+ *         try (var table = new SlopTable(ref)) {
+ *             var reader = column.open(table);
+ *             ...
+ *         }
+ *     }, result -> ...);
+ * }
+ * }</pre>
+ */
+public class SlopPageScanner implements AutoCloseable {
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int maxInFlight;
+
+    /** Create a scanner that runs pages on a pool of platform threads
+     *
+     * @param parallelism the number of pages to read concurrently
+     */
+    public SlopPageScanner(int parallelism) {
+        this(Executors.newFixedThreadPool(parallelism, SlopPageScanner::newPlatformThread), parallelism);
+    }
+
+    private SlopPageScanner(ExecutorService executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, was " + parallelism);
+        }
+
+        this.executor = executor;
+        this.parallelism = parallelism;
+
+        // allow some pages to complete ahead of the consumer, so that the
+        // readers aren't stalled waiting for a slow page in ordered mode
+        this.maxInFlight = 2 * parallelism;
+    }
+
+    /** Create a scanner that runs each page on a virtual thread.  This is useful
+     * when the page readers spend much of their time blocking, e.g. on network storage.
+     *
+     * @param parallelism the number of pages to read concurrently
+     */
+    public static SlopPageScanner ofVirtualThreads(int parallelism) {
+        return new SlopPageScanner(Executors.newVirtualThreadPerTaskExecutor(), parallelism);
+    }
+
+    private static Thread newPlatformThread(Runnable r) {
+        Thread t = new Thread(r, "slop-page-scanner");
+        t.setDaemon(true);
+        return t;
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /** Read the pages in parallel, passing the results to the consumer in page order.
+     * <p></p>
+     * If a reader or the consumer throws, the outstanding pages are cancelled and
+     * the exception is rethrown.
+     */
+    public <T, R> void scan(List<SlopTable.Ref<T>> pages,
+                            PageReader<T, R> reader,
+                            ResultConsumer<R> consumer) throws IOException
+    {
+        scan(pages, reader, true, consumer);
+    }
+
+    /** Read the pages in parallel, passing the results to the consumer.
+     * <p></p>
+     * If a reader or the consumer throws, the outstanding pages are cancelled and
+     * the exception is rethrown.
+     *
+     * @param ordered if true, results are passed on in page order, otherwise in the order they are completed
+     */
+    public <T, R> void scan(List<SlopTable.Ref<T>> pages,
+                            PageReader<T, R> reader,
+                            boolean ordered,
+                            ResultConsumer<R> consumer) throws IOException
+    {
+        if (ordered) {
+            scanOrdered(pages, reader, consumer);
+        }
+        else {
+            scanUnordered(pages, reader, consumer);
+        }
+    }
+
+    /** Read the pages in parallel, and return the results in page order */
+    public <T, R> List<R> collect(List<SlopTable.Ref<T>> pages,
+                                  PageReader<T, R> reader) throws IOException
+    {
+        List<R> results = new ArrayList<>(pages.size());
+        scanOrdered(pages, reader, results::add);
+        return results;
+    }
+
+    private <T, R> void scanOrdered(List<SlopTable.Ref<T>> pages,
+                                    PageReader<T, R> reader,
+                                    ResultConsumer<R> consumer) throws IOException
+    {
+        final ArrayDeque<Future<R>> inFlight = new ArrayDeque<>(maxInFlight);
+        final Iterator<SlopTable.Ref<T>> pageIter = pages.iterator();
+
+        // Use a semaphore to bound the number of pages actually executing, while
+        // the queue bounds the number of completed results waiting for the consumer
+        final Semaphore running = new Semaphore(parallelism);
+
+        try {
+            while (pageIter.hasNext() || !inFlight.isEmpty()) {
+                while (pageIter.hasNext() && inFlight.size() < maxInFlight) {
+                    inFlight.add(submit(pageIter.next(), reader, running));
+                }
+
+                consumer.accept(await(inFlight.poll()));
+            }
+        }
+        finally {
+            inFlight.forEach(f -> f.cancel(true));
+        }
+    }
+
+    private <T, R> void scanUnordered(List<SlopTable.Ref<T>> pages,
+                                      PageReader<T, R> reader,
+                                      ResultConsumer<R> consumer) throws IOException
+    {
+        final CompletionService<R> completionService = new ExecutorCompletionService<>(executor);
+        final List<Future<R>> submitted = new ArrayList<>(pages.size());
+        final Iterator<SlopTable.Ref<T>> pageIter = pages.iterator();
+
+        int inFlight = 0;
+
+        try {
+            while (pageIter.hasNext() || inFlight > 0) {
+                while (pageIter.hasNext() && inFlight < parallelism) {
+                    var ref = pageIter.next();
+                    submitted.add(completionService.submit(() -> reader.read(ref)));
+                    inFlight++;
+                }
+
+                Future<R> next;
+                try {
+                    next = completionService.take();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw interrupted(e);
+                }
+                inFlight--;
+
+                consumer.accept(await(next));
+            }
+        }
+        finally {
+            submitted.forEach(f -> f.cancel(true));
+        }
+    }
+
+    private <T, R> Future<R> submit(SlopTable.Ref<T> ref, PageReader<T, R> reader, Semaphore running) {
+        return executor.submit(() -> {
+            running.acquire();
+            try {
+                return reader.read(ref);
+            }
+            finally {
+                running.release();
+            }
+        });
+    }
+
+    /** Wait for a result, unwrapping the exception thrown by the page reader */
+    private static <R> R await(Future<R> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw interrupted(e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException ioe) throw ioe;
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+
+            throw new IOException("Error reading page", cause);
+        }
+    }
+
+    private static InterruptedIOException interrupted(InterruptedException cause) {
+        var ex = new InterruptedIOException("Interrupted while scanning pages");
+        ex.initCause(cause);
+        return ex;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /** Reads a single page of a table, and produces a result for it */
+    @FunctionalInterface
+    public interface PageReader<T, R> {
+        R read(SlopTable.Ref<T> page) throws Exception;
+    }
+
+    /** Receives the results of the page readers, on the thread that called scan() */
+    @FunctionalInterface
+    public interface ResultConsumer<R> {
+        void accept(R result) throws IOException;
+    }
+}
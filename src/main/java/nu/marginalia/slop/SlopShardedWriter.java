@@ -0,0 +1,274 @@
+package nu.marginalia.slop;
+
+import nu.marginalia.slop.storage.StorageOptions;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/** SlopShardedWriter accepts records from any number of producer threads, and spreads them
+ * over a number of concurrently open table pages, each written by its own thread.
+ * <p></p>
+ * This lets the cost of encoding and compressing the columns scale beyond a single core,
+ * at the expense of the records ending up spread across pages in no particular order.
+ * <p></p>
+ * Example:
+ * <pre>{@code
+ * try (var writer = new SlopShardedWriter<Rec>(dir, 4, table -> {
+ *     var a = aColumn.create(table);
+ *     var b = bColumn.create(table);
+ *     return rec -> { a.put(rec.a()); b.put(rec.b()); };
+ * })) {
+ *     writer.write(rec);
+ * }
+ * }</pre>
+ */
+public class SlopShardedWriter<R> implements AutoCloseable {
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    /** Marker for the end of the records, the queue elements are otherwise of type R */
+    private static final Object END = new Object();
+
+    private final List<Shard> shards;
+    private final List<SlopTable.Ref<R>> pages;
+    private final AtomicLong counter = new AtomicLong();
+
+    /** Held shared by write() from the check of closed until the record is enqueued, and
+     * exclusively by close() to set closed, so that no record is enqueued after the END markers.
+     */
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private boolean closed = false;
+
+    /** Create a writer for pages 0 through numShards - 1 in the given directory */
+    public SlopShardedWriter(Path path, int numShards, PageWriterFactory<R> factory) throws IOException {
+        this(path, 0, numShards, StorageOptions.DEFAULT, DEFAULT_QUEUE_SIZE, factory);
+    }
+
+    /** Create a new sharded writer
+     *
+     * @param path the directory to write the pages to
+     * @param firstPage the page number of the first shard, the rest are numbered consecutively from this
+     * @param numShards the number of pages to write concurrently
+     * @param options storage options for the tables
+     * @param queueSize the number of records that may be queued up for each shard before write() blocks
+     * @param factory creates the column writers for each page, on the thread that writes the page
+     */
+    public SlopShardedWriter(Path path,
+                             int firstPage,
+                             int numShards,
+                             StorageOptions options,
+                             int queueSize,
+                             PageWriterFactory<R> factory) throws IOException
+    {
+        if (numShards < 1) {
+            throw new IllegalArgumentException("Number of shards must be at least 1, was " + numShards);
+        }
+
+        shards = new ArrayList<>(numShards);
+        pages = new ArrayList<>(numShards);
+
+        for (int i = 0; i < numShards; i++) {
+            int page = firstPage + i;
+
+            shards.add(new Shard(new SlopTable(path, page, options), queueSize, factory));
+            pages.add(new SlopTable.Ref<>(path, page));
+        }
+
+        for (var shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    /** Return references to the pages written by this writer */
+    public List<SlopTable.Ref<R>> pages() {
+        return pages;
+    }
+
+    /** Write a record to one of the pages.  This method is thread-safe, and will
+     * block if the writer threads are falling behind.
+     *
+     * @throws IOException if one of the writer threads has failed
+     */
+    public void write(R record) throws IOException {
+        try {
+            closeLock.readLock().lockInterruptibly();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing record", e);
+        }
+
+        try {
+            if (closed) {
+                throw new IllegalStateException("Writer is closed");
+            }
+
+            Shard shard = shards.get((int) Long.remainderUnsigned(counter.getAndIncrement(), shards.size()));
+
+            if (shard.error != null) {
+                throw new IOException("Writer for page " + shard.table.page + " failed", shard.error);
+            }
+
+            shard.queue.put(record);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing record", e);
+        }
+        finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /** Wait for all queued records to be written, and close all the pages.
+     * <p></p>
+     * All pages are closed even if some of them fail.  The first failure
+     * is rethrown, with any others added as suppressed exceptions.
+     */
+    @Override
+    public void close() throws IOException {
+        // waits for any write() that is blocked on a full queue, which the shard threads keep draining
+        closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        finally {
+            closeLock.writeLock().unlock();
+        }
+
+        Throwable error = null;
+        boolean interrupted = false;
+
+        // every shard is joined even if this thread is interrupted, as the pages
+        // would otherwise be left half written by threads that are still running
+        for (var shard : shards) {
+            for (;;) {
+                try {
+                    shard.queue.put(END);
+                    break;
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            for (;;) {
+                try {
+                    shard.thread.join();
+                    break;
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (shard.error == null) {
+                continue;
+            }
+
+            if (error == null) {
+                error = shard.error;
+            }
+            else {
+                error.addSuppressed(shard.error);
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+
+            var ex = new InterruptedIOException("Interrupted while closing writer");
+            if (error != null) {
+                ex.addSuppressed(error);
+            }
+            throw ex;
+        }
+
+        if (error == null) return;
+
+        if (error instanceof IOException ioe) throw ioe;
+        if (error instanceof RuntimeException re) throw re;
+        if (error instanceof Error err) throw err;
+
+        throw new IOException("Error writing page", error);
+    }
+
+    private class Shard {
+        final SlopTable table;
+        final BlockingQueue<Object> queue;
+        final Thread thread;
+        final PageWriterFactory<R> factory;
+
+        volatile Throwable error;
+
+        Shard(SlopTable table, int queueSize, PageWriterFactory<R> factory) {
+            this.table = table;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            this.factory = factory;
+            this.thread = new Thread(this::run, "slop-sharded-writer-" + table.page);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void run() {
+            try {
+                // the column writers are created on this thread, since their storage
+                // may only be usable from the thread that created it
+                PageWriter<R> pageWriter = null;
+                try {
+                    pageWriter = factory.create(table);
+                }
+                catch (Throwable t) {
+                    error = t;
+                }
+
+                for (Object item = queue.take(); item != END; item = queue.take()) {
+                    if (error != null) {
+                        // keep draining the queue after a failure, so that producers don't block forever
+                        continue;
+                    }
+
+                    try {
+                        pageWriter.write((R) item);
+                    }
+                    catch (Throwable t) {
+                        error = t;
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                error = e;
+            }
+            finally {
+                try {
+                    table.close();
+                }
+                catch (Throwable t) {
+                    if (error == null) error = t;
+                    else error.addSuppressed(t);
+                }
+            }
+        }
+    }
+
+    /** Creates the column writers for a page, and returns a function that writes a record to them */
+    @FunctionalInterface
+    public interface PageWriterFactory<R> {
+        PageWriter<R> create(SlopTable table) throws IOException;
+    }
+
+    /** Writes a single record to the columns of a page */
+    @FunctionalInterface
+    public interface PageWriter<R> {
+        void write(R record) throws IOException;
+    }
+}
@@ -3,9 +3,14 @@ package nu.marginalia.slop;
 import nu.marginalia.slop.column.AbstractColumn;
 import nu.marginalia.slop.column.ColumnReader;
 import nu.marginalia.slop.column.ColumnWriter;
+import nu.marginalia.slop.storage.StorageOptions;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
@@ -18,6 +23,10 @@ import java.util.*;
  * It is often a good idea to let the reader or writer class for a particular
  * table inherit from SlopTable, so that the table is automatically closed when
  * the reader or writer is closed.
+ * <p></p>
+ * A table may be opened for reading a range of rows of a page, see {@link Ref#split},
+ * in which case the columns are seeked to the first row of the range as they are
+ * opened.  This lets a single large page be read by several threads.
  */
 
 public class SlopTable implements AutoCloseable {
@@ -26,15 +35,33 @@ public class SlopTable implements AutoCloseable {
 
     public final URI uri;
     public final int page;
+    public final StorageOptions options;
+
+    /** The first row of the table's row range */
+    public final long startRow;
+    /** The end of the table's row range, exclusive */
+    public final long endRow;
 
     public SlopTable(Path path) { this(path.toUri(), 0); }
     public SlopTable(URI uri) { this(uri, 0); }
     public SlopTable(Path path, int page) { this(path.toUri(), page); }
-    public SlopTable(SlopTable.Ref<?> ref) { this(ref.uri, ref.page); }
+    public SlopTable(SlopTable.Ref<?> ref) { this(ref, StorageOptions.DEFAULT); }
+    public SlopTable(URI uri, int page) { this(uri, page, StorageOptions.DEFAULT); }
+    public SlopTable(Path path, int page, StorageOptions options) { this(path.toUri(), page, options); }
+    public SlopTable(SlopTable.Ref<?> ref, StorageOptions options) { this(ref.uri, ref.page, options, ref.startRow, ref.endRow); }
+    public SlopTable(URI uri, int page, StorageOptions options) { this(uri, page, options, 0, Ref.ALL_ROWS); }
+
+    /** Create a table for reading the rows [startRow, endRow) of a page */
+    public SlopTable(URI uri, int page, StorageOptions options, long startRow, long endRow) {
+        if (startRow < 0 || endRow < startRow) {
+            throw new IllegalArgumentException("Invalid row range [" + startRow + ", " + endRow + ")");
+        }
 
-    public SlopTable(URI uri, int page) {
         this.uri = uri;
         this.page = page;
+        this.options = options;
+        this.startRow = startRow;
+        this.endRow = endRow;
     }
 
     /** Returns the number of pages for the given reference column */
@@ -56,6 +83,42 @@ public class SlopTable implements AutoCloseable {
         return refs;
     }
 
+    /** List the pages of a table at the given URI, which may be a local directory,
+     * or a table served by a {@link SlopTableServer}, whose listing of the directory
+     * is used to find the pages.
+     */
+    public static <T> List<Ref<T>> listPages(URI baseUri, AbstractColumn<?,?> referenceColumn) throws IOException {
+        if (baseUri.getScheme().equals("file")) {
+            List<Ref<T>> refs = new ArrayList<>();
+            for (Ref<T> ref : SlopTable.<T>listPages(Path.of(baseUri), referenceColumn)) {
+                refs.add(new Ref<>(baseUri, ref.page));
+            }
+            return refs;
+        }
+
+        Set<String> files = new HashSet<>();
+        try (var client = HttpClient.newHttpClient()) {
+            var response = client.send(HttpRequest.newBuilder(baseUri).GET().build(), HttpResponse.BodyHandlers.ofLines());
+            if (response.statusCode() != 200) {
+                response.body().close();
+                throw new IOException("Unexpected status " + response.statusCode() + " listing " + baseUri);
+            }
+            try (var lines = response.body()) {
+                lines.forEach(files::add);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while listing " + baseUri);
+        }
+
+        List<Ref<T>> refs = new ArrayList<>();
+        for (int page = 0; files.contains(referenceColumn.fileName(page)); page++) {
+            refs.add(new Ref<>(baseUri, page));
+        }
+        return refs;
+    }
+
     /** Register a column reader with this table.
      * This is typically done implicitly through Column.open().
      * */
@@ -74,6 +137,18 @@ public class SlopTable implements AutoCloseable {
         return writer;
     }
 
+    /** Returns true if there are rows left to read within the table's row range.
+     * The position is taken from the registered readers, so at least one column needs
+     * to have been opened.
+     */
+    public boolean hasRemainingRows() throws IOException {
+        for (var reader : readerList) {
+            return reader.position() < endRow && reader.hasRemaining();
+        }
+
+        return false;
+    }
+
     public long position() throws IOException {
         for (var reader : readerList) {
             return reader.position();
@@ -122,7 +197,10 @@ public class SlopTable implements AutoCloseable {
      * The T parameter exists to be able to indicate which flavor of table is referenced, providing some level of type
      * safety.
      * */
-    public record Ref<T>(URI uri, int page) {
+    public record Ref<T>(URI uri, int page, long startRow, long endRow) {
+        /** The end row of a reference to the entire page */
+        public static final long ALL_ROWS = Long.MAX_VALUE;
+
         public Ref(Path path) {
             this(path.toUri(), 0);
         }
@@ -136,8 +214,40 @@ public class SlopTable implements AutoCloseable {
         }
 
         public Ref(URI uri, int page) {
-            this.uri = uri;
-            this.page = page;
+            this(uri, page, 0, ALL_ROWS);
+        }
+
+        /** Return a reference to the rows [startRow, endRow) of the same page */
+        public Ref<T> withRows(long startRow, long endRow) {
+            return new Ref<>(uri, page, startRow, endRow);
+        }
+
+        /** Split the page into row ranges of roughly equal size, so that it can be read
+         * in parallel, e.g. by a {@link SlopPageScanner}.
+         * <p></p>
+         * Opening a table at the start of a range seeks each column there.  This is cheap for
+         * fixed-width columns, and for variable-length columns that were written with an offset
+         * index (see {@link StorageOptions#offsetIndexInterval()}).  Other columns need to skip
+         * over every row before the range, which defeats the purpose.
+         *
+         * @param rowCount the number of rows in the page, e.g. the size of a fixed-width column
+         * @param parts the number of ranges to split the page into
+         */
+        public List<Ref<T>> split(long rowCount, int parts) {
+            if (parts < 1) {
+                throw new IllegalArgumentException("Number of parts must be at least 1, was " + parts);
+            }
+
+            List<Ref<T>> refs = new ArrayList<>(parts);
+            for (int i = 0; i < parts; i++) {
+                long start = rowCount * i / parts;
+                long end = rowCount * (i + 1) / parts;
+
+                if (end > start) {
+                    refs.add(withRows(start, end));
+                }
+            }
+            return refs;
         }
     }
 }
@@ -0,0 +1,231 @@
+package nu.marginalia.slop;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/** A small HTTP server that serves a table directory, so that its pages can be
+ * read remotely by opening a {@link SlopTable} on the server's {@link #uri()}.
+ * <p></p>
+ * Column files are sent with {@link FileChannel#transferTo}, straight from the page
+ * cache rather than through a buffer on the heap.  Single Range requests are supported,
+ * which the network reader uses to seek and to fetch chunks in parallel, and responses
+ * carry ETag and Last-Modified headers for {@link nu.marginalia.slop.storage.RemoteFileCache}
+ * to revalidate against.  Each request is handled on its own virtual thread.
+ * <p></p>
+ * A GET of the table's URI itself lists the files in the directory, one per line,
+ * which {@link SlopTable#listPages(URI, nu.marginalia.slop.column.AbstractColumn)}
+ * uses to find the pages of the table.
+ * <p></p>
+ * Only the files directly in the directory are served.
+ * <pre>{@code
+ * try (var server = new SlopTableServer(new InetSocketAddress(8080), "/crawl-data/", dataDir)) {
+ *     server.start();
+ *     ...
+ * }
+ * }</pre>
+ */
+public class SlopTableServer implements AutoCloseable {
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final String contextPath;
+    private final Path directory;
+
+    /** Create a server for the given directory.
+     *
+     * @param address the address to listen on, port 0 picks a free port
+     * @param contextPath the path the table is served under, e.g. "/table/"
+     * @param directory the table directory
+     */
+    public SlopTableServer(InetSocketAddress address, String contextPath, Path directory) throws IOException {
+        if (!contextPath.startsWith("/") || !contextPath.endsWith("/")) {
+            throw new IllegalArgumentException("Context path must start and end with '/', was " + contextPath);
+        }
+        if (!Files.isDirectory(directory)) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+
+        this.contextPath = contextPath;
+        this.directory = directory;
+
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext(contextPath, this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /** Return the URI of the table, for opening it with a {@link SlopTable} */
+    public URI uri() {
+        var address = server.getAddress();
+        String host = address.getAddress().isAnyLocalAddress() ? "localhost" : address.getHostString();
+
+        return URI.create("http://" + host + ":" + address.getPort() + contextPath);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            String name = exchange.getRequestURI().getPath().substring(contextPath.length());
+
+            if (name.isEmpty()) {
+                sendListing(exchange);
+            }
+            else if (name.contains("/") || name.equals("..") || name.equals(".")) {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            else {
+                Path file;
+                try {
+                    file = directory.resolve(name);
+                }
+                catch (InvalidPathException e) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+
+                if (Files.isRegularFile(file)) {
+                    sendFile(exchange, file);
+                }
+                else {
+                    exchange.sendResponseHeaders(404, -1);
+                }
+            }
+        }
+    }
+
+    private void sendListing(HttpExchange exchange) throws IOException {
+        String listing;
+        try (var files = Files.list(directory)) {
+            listing = files.filter(Files::isRegularFile)
+                    .map(path -> path.getFileName().toString())
+                    .sorted()
+                    .collect(Collectors.joining("\n", "", "\n"));
+        }
+
+        byte[] body = listing.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private void sendFile(HttpExchange exchange, Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long modified = Files.getLastModifiedTime(file).toMillis();
+
+            // the file is identified by its size and modification time, so a rewritten page gets a new tag
+            String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(modified) + "\"";
+            String lastModified = DateTimeFormatter.RFC_1123_DATE_TIME
+                    .format(Instant.ofEpochMilli(modified).atOffset(ZoneOffset.UTC));
+
+            var headers = exchange.getResponseHeaders();
+            headers.set("Content-Type", "application/octet-stream");
+            headers.set("Accept-Ranges", "bytes");
+            headers.set("ETag", etag);
+            headers.set("Last-Modified", lastModified);
+
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            long start = 0;
+            long length = size;
+            int status = 200;
+
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            Matcher m = range != null ? RANGE_PATTERN.matcher(range) : null;
+
+            // requests for several ranges get the whole file, which the spec allows
+            if (m != null && m.matches() && !(m.group(1).isEmpty() && m.group(2).isEmpty())) {
+                if (m.group(1).isEmpty()) { // suffix range, the last n bytes
+                    length = Math.min(size, Long.parseLong(m.group(2)));
+                    start = size - length;
+                }
+                else {
+                    start = Long.parseLong(m.group(1));
+                    long end = m.group(2).isEmpty() ? size - 1 : Math.min(size - 1, Long.parseLong(m.group(2)));
+                    length = end - start + 1;
+                }
+
+                if (start >= size || length <= 0) {
+                    headers.set("Content-Range", "bytes */" + size);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+
+                headers.set("Content-Range", "bytes " + start + "-" + (start + length - 1) + "/" + size);
+                status = 206;
+            }
+
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                headers.set("Content-Length", Long.toString(length));
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+
+            // to the HttpServer, a length of 0 means chunked encoding and -1 means no body
+            exchange.sendResponseHeaders(status, length > 0 ? length : -1);
+            if (length > 0) {
+                transfer(channel, start, length, exchange.getResponseBody());
+            }
+        }
+    }
+
+    private static void transfer(FileChannel channel, long start, long length, OutputStream os) throws IOException {
+        WritableByteChannel target = Channels.newChannel(os);
+
+        while (length > 0) {
+            long sent = channel.transferTo(start, length, target);
+            if (sent <= 0) {
+                throw new IOException("File shrunk while it was being sent");
+            }
+            start += sent;
+            length -= sent;
+        }
+    }
+
+    /** Stop the server, waiting for at most a second for requests in progress to finish */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+}
@@ -3,6 +3,7 @@ package nu.marginalia.slop.column;
 import nu.marginalia.slop.desc.ColumnFunction;
 import nu.marginalia.slop.SlopTable;
 import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.StorageOptions;
 
 import java.io.IOException;
 import java.net.URI;
@@ -38,19 +39,52 @@ public abstract class AbstractColumn<R extends ColumnReader, W extends ColumnWri
      */
     public abstract R openUnregistered(URI uri, int page) throws IOException;
 
+    /** Open table for reading with the given storage options, without registering it meaning
+     * it's on the caller's responsibility to ensure it is closed.
+     * <p></p>
+     * Columns that don't override this ignore the options, and are opened
+     * with {@link #openUnregistered(URI, int)}.
+     */
+    public R openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
+        return openUnregistered(uri, page);
+    }
+
     /** Open table for writing, without registering it meaning it's on the caller's
      * responsibility to ensure it is closed
      */
     public abstract W createUnregistered(Path path, int page) throws IOException;
 
-    /** Open a column for reading, registering it to the table */
+    /** Open table for writing with the given storage options, without registering it meaning
+     * it's on the caller's responsibility to ensure it is closed.
+     * <p></p>
+     * Columns that don't override this ignore the options, and are created
+     * with {@link #createUnregistered(Path, int)}.
+     */
+    public W createUnregistered(Path path, int page, StorageOptions options) throws IOException {
+        return createUnregistered(path, page);
+    }
+
+    /** Open a column for reading, registering it to the table.  If the table
+     * is for a range of rows, the column is seeked to the first row of the range. */
     public R open(SlopTable table) throws IOException {
-        return table.register(openUnregistered(table.uri, table.page));
+        R reader = openUnregistered(table.uri, table.page, table.options);
+
+        if (table.startRow > 0) {
+            try {
+                reader.seek(table.startRow);
+            }
+            catch (IOException | RuntimeException e) {
+                reader.close();
+                throw e;
+            }
+        }
+
+        return table.register(reader);
     }
 
     /** Open a column for writing, registering it to the table */
     public W create(SlopTable table) throws IOException {
-        return table.register(createUnregistered(Path.of(table.uri), table.page));
+        return table.register(createUnregistered(Path.of(table.uri), table.page, table.options));
     }
 
     public String toString() {
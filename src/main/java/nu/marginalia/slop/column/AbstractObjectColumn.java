@@ -23,4 +23,8 @@ public abstract class AbstractObjectColumn<T, R extends ObjectColumnReader<T>, W
         return new ObjectArrayColumn<>(this);
     }
 
+    public NullableObjectColumn<T> asNullable() {
+        return new NullableObjectColumn<>(this);
+    }
+
 }
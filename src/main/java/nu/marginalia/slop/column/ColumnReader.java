@@ -9,6 +9,22 @@ public interface ColumnReader {
     long position() throws IOException;
     void skip(long positions) throws IOException;
 
+    /** Move to the given row.
+     * <p></p>
+     * Columns that can find the position of a row without reading the rows before it,
+     * i.e. fixed-width columns and columns with an offset index, override this to seek
+     * directly.  The default implementation skips forward, and can not move backwards.
+     */
+    default void seek(long row) throws IOException {
+        long position = position();
+
+        if (row < position) {
+            throw new UnsupportedOperationException("Seeking backwards is not supported by " + columnDesc());
+        }
+
+        skip(row - position);
+    }
+
     boolean hasRemaining() throws IOException;
 
     void close() throws IOException;
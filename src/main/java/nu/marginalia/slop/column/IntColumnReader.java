@@ -0,0 +1,10 @@
+package nu.marginalia.slop.column;
+
+import java.io.IOException;
+
+/** A reader of int values, for columns that build on an int column without caring
+ * how it is encoded, e.g. the ordinals of an enum.
+ */
+public interface IntColumnReader extends ColumnReader {
+    int get() throws IOException;
+}
@@ -0,0 +1,11 @@
+package nu.marginalia.slop.column;
+
+import java.io.IOException;
+
+/** A writer of int values, for columns that build on an int column without caring
+ * how it is encoded, e.g. the ordinals of an enum.
+ */
+public interface IntColumnWriter extends ColumnWriter {
+    /** Write count rows of the same value */
+    void put(int value, long count) throws IOException;
+}
@@ -0,0 +1,215 @@
+package nu.marginalia.slop.column;
+
+import nu.marginalia.slop.column.primitive.BooleanColumn;
+import nu.marginalia.slop.desc.ColumnFunction;
+import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.StorageOptions;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+
+/** A column that wraps another column of any type, and lets its rows be absent.
+ * <p></p>
+ * Which rows have a value is kept in a validity bitmap, a {@link BooleanColumn} with the
+ * function {@link ColumnFunction#NULLS}, and only the rows that have a value are written
+ * to the wrapped column.  An absent row costs one bit and nothing in the wrapped column,
+ * so sparse columns, e.g. a canonical url that only a few documents have, stay small.
+ * <p></p>
+ * The validity of each row is read before its value, and the value is only read if there is one:
+ * <pre>{@code
+ * while (reader.hasRemaining()) {
+ *     if (reader.next()) {
+ *         int value = reader.values().get();
+ *     }
+ * }
+ * }</pre>
+ * For object columns, {@link NullableObjectColumn} does this in its get(), which returns null for absent rows.
+ */
+public class NullableColumn<R extends ColumnReader, W extends ColumnWriter>
+        extends AbstractColumn<NullableColumn<R, W>.Reader, NullableColumn<R, W>.Writer>
+{
+    private final BooleanColumn validityColumn;
+    private final AbstractColumn<? extends R, ? extends W> wrappingColumn;
+
+    public NullableColumn(AbstractColumn<? extends R, ? extends W> wrappingColumn) {
+        super(wrappingColumn.name,
+                wrappingColumn.typeMnemonic + "?", // not used
+                wrappingColumn.byteOrder,
+                wrappingColumn.function,
+                wrappingColumn.storageType);
+
+        this.validityColumn = new BooleanColumn(name, ColumnFunction.NULLS, StorageType.PLAIN);
+        this.wrappingColumn = wrappingColumn;
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page) throws IOException {
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
+        return new Reader(
+                validityColumn.openUnregistered(uri, page, options),
+                wrappingColumn.openUnregistered(uri, page, options)
+        );
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page) throws IOException {
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
+        return new Writer(
+                validityColumn.createUnregistered(path, page, options),
+                wrappingColumn.createUnregistered(path, page, options)
+        );
+    }
+
+    public class Writer implements ColumnWriter {
+        private final BooleanColumn.Writer validityWriter;
+        private final W dataWriter;
+
+        Writer(BooleanColumn.Writer validityWriter, W dataWriter) {
+            this.validityWriter = validityWriter;
+            this.dataWriter = dataWriter;
+        }
+
+        @Override
+        public AbstractColumn<?, ?> columnDesc() {
+            return NullableColumn.this;
+        }
+
+        /** Write an absent row */
+        public void putNull() throws IOException {
+            validityWriter.put(false);
+        }
+
+        /** Write a row that has a value, and return the writer of the wrapped column,
+         * which the value must be written to before the next row.
+         */
+        public W present() throws IOException {
+            validityWriter.put(true);
+            return dataWriter;
+        }
+
+        /** Write the validity of the next n rows from a bitmap, with row i in bit i % 64
+         * of bitmap[i / 64].  The values of the rows that are set must then be written
+         * to {@link #values()}, in order.
+         */
+        public void putValidity(long[] bitmap, int n) throws IOException {
+            validityWriter.putBits(bitmap, n);
+        }
+
+        /** Return the writer of the wrapped column, which holds the values of the rows that are present */
+        public W values() {
+            return dataWriter;
+        }
+
+        @Override
+        public long position() {
+            return validityWriter.position();
+        }
+
+        @Override
+        public void close() throws IOException {
+            validityWriter.close();
+            dataWriter.close();
+        }
+    }
+
+    public class Reader implements ColumnReader {
+        private final BooleanColumn.Reader validityReader;
+        private final R dataReader;
+
+        Reader(BooleanColumn.Reader validityReader, R dataReader) {
+            this.validityReader = validityReader;
+            this.dataReader = dataReader;
+        }
+
+        @Override
+        public AbstractColumn<?, ?> columnDesc() {
+            return NullableColumn.this;
+        }
+
+        /** Return true if the next row is absent, without consuming it */
+        public boolean isNull() throws IOException {
+            return !validityReader.peek();
+        }
+
+        /** Consume the validity of the next row, and return true if it has a value.
+         * If it does, the value must then be read from {@link #values()}.
+         */
+        public boolean next() throws IOException {
+            return validityReader.get();
+        }
+
+        /** Consume the validity of the next n rows into a bitmap, with row i in bit i % 64
+         * of validity[i / 64], and return the number of rows that have a value.  That many
+         * values must then be read from {@link #values()}, e.g. with one bulk read.
+         */
+        public int next(long[] validity, int n) throws IOException {
+            validityReader.getBits(validity, n);
+
+            int present = 0;
+            for (int i = 0; i < (n + 63) / 64; i++) {
+                present += Long.bitCount(validity[i]);
+            }
+            return present;
+        }
+
+        /** Skip absent rows up to the next row with a value, or the end of the column,
+         * and return the number of rows skipped.  The wrapped column is not touched.
+         */
+        public long skipNulls() throws IOException {
+            return validityReader.skipFalse();
+        }
+
+        /** Return the reader of the wrapped column, which holds the values of the rows that are present */
+        public R values() {
+            return dataReader;
+        }
+
+        @Override
+        public long position() {
+            return validityReader.position();
+        }
+
+        /** Skip the given number of rows, and the values of those of them that are present */
+        @Override
+        public void skip(long positions) throws IOException {
+            dataReader.skip(validityReader.countTrue(positions));
+        }
+
+        /** Move to the given row.  Moving forward skips as in {@link #skip(long)}, and moving
+         * backwards counts the values before the row from the beginning of the bitmap, and
+         * seeks the wrapped column to the first of the values after it.
+         */
+        @Override
+        public void seek(long row) throws IOException {
+            long position = validityReader.position();
+
+            if (row >= position) {
+                skip(row - position);
+            }
+            else {
+                validityReader.seek(0);
+                dataReader.seek(validityReader.countTrue(row));
+            }
+        }
+
+        @Override
+        public boolean hasRemaining() throws IOException {
+            return validityReader.hasRemaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            validityReader.close();
+            dataReader.close();
+        }
+    }
+}
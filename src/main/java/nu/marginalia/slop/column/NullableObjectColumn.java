@@ -0,0 +1,144 @@
+package nu.marginalia.slop.column;
+
+import nu.marginalia.slop.storage.StorageOptions;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/** An object column whose values may be null, stored as a {@link NullableColumn} around
+ * another object column.  Unlike e.g. {@link nu.marginalia.slop.column.string.StringColumn},
+ * which writes null as an empty string, null is written as an absent row and read back as null.
+ */
+public class NullableObjectColumn<T> extends AbstractObjectColumn<T, NullableObjectColumn<T>.Reader, NullableObjectColumn<T>.Writer> {
+    private final NullableColumn<ObjectColumnReader<T>, ObjectColumnWriter<T>> nullableColumn;
+
+    public NullableObjectColumn(AbstractObjectColumn<T, ?, ?> wrappingColumn) {
+        super(wrappingColumn.name,
+                wrappingColumn.typeMnemonic + "?", // not used
+                wrappingColumn.byteOrder,
+                wrappingColumn.function,
+                wrappingColumn.storageType);
+
+        this.nullableColumn = new NullableColumn<>(wrappingColumn);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page) throws IOException {
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
+        return new Reader(nullableColumn.openUnregistered(uri, page, options));
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page) throws IOException {
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
+        return new Writer(nullableColumn.createUnregistered(path, page, options));
+    }
+
+    public class Writer implements ObjectColumnWriter<T> {
+        private final NullableColumn<ObjectColumnReader<T>, ObjectColumnWriter<T>>.Writer writer;
+
+        Writer(NullableColumn<ObjectColumnReader<T>, ObjectColumnWriter<T>>.Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public AbstractColumn<?, ?> columnDesc() {
+            return NullableObjectColumn.this;
+        }
+
+        public void put(T value) throws IOException {
+            if (value == null) {
+                writer.putNull();
+            }
+            else {
+                writer.present().put(value);
+            }
+        }
+
+        public long position() {
+            return writer.position();
+        }
+
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    public class Reader implements ObjectColumnReader<T> {
+        private final NullableColumn<ObjectColumnReader<T>, ObjectColumnWriter<T>>.Reader reader;
+
+        Reader(NullableColumn<ObjectColumnReader<T>, ObjectColumnWriter<T>>.Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public AbstractColumn<?, ?> columnDesc() {
+            return NullableObjectColumn.this;
+        }
+
+        /** Return the value of the next row, or null if it is absent */
+        public T get() throws IOException {
+            if (reader.next()) {
+                return reader.values().get();
+            }
+            return null;
+        }
+
+        /** Return true if the next row is absent, without consuming it */
+        public boolean isNull() throws IOException {
+            return reader.isNull();
+        }
+
+        @Override
+        public boolean search(T value) throws IOException {
+            while (hasRemaining()) {
+                if (Objects.equals(get(), value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Skip absent rows up to the next row with a value, or the end of the column,
+         * and return the number of rows skipped
+         */
+        public long skipNulls() throws IOException {
+            return reader.skipNulls();
+        }
+
+        @Override
+        public long position() throws IOException {
+            return reader.position();
+        }
+
+        @Override
+        public void skip(long positions) throws IOException {
+            reader.skip(positions);
+        }
+
+        @Override
+        public void seek(long row) throws IOException {
+            reader.seek(row);
+        }
+
+        @Override
+        public boolean hasRemaining() throws IOException {
+            return reader.hasRemaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
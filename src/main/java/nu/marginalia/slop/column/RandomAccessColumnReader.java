@@ -0,0 +1,178 @@
+package nu.marginalia.slop.column;
+
+import nu.marginalia.slop.storage.RandomAccessStorage;
+
+import java.lang.foreign.ValueLayout;
+import java.util.Objects;
+
+/** A reader that looks up the values of a fixed-width column by row number,
+ * rather than through a cursor.
+ * <p></p>
+ * The same reader serves all the fixed-width columns, and is parameterised by the
+ * layout of their values, which gives the width of a row.  Values are read with the
+ * getter for that type, e.g. {@link #getInt(long)} for an IntColumn, and reading
+ * them as any other type throws an {@link UnsupportedOperationException}.  The byte
+ * order is that of the column, and is handled by the {@link RandomAccessStorage}.
+ * <p></p>
+ * The reader holds no position, and is safe to share between threads.
+ */
+@SuppressWarnings("preview") // for ValueLayout in jdk-21
+public final class RandomAccessColumnReader implements AutoCloseable {
+    private final AbstractColumn<?, ?> column;
+    private final RandomAccessStorage storage;
+    private final Class<?> carrier;
+    private final long width;
+
+    /** Create a reader over the storage of the given column, whose values have the given layout */
+    public RandomAccessColumnReader(AbstractColumn<?, ?> column, RandomAccessStorage storage, ValueLayout layout) {
+        this.column = column;
+        this.storage = storage;
+        this.carrier = layout.carrier();
+        this.width = layout.byteSize();
+    }
+
+    public AbstractColumn<?, ?> columnDesc() {
+        return column;
+    }
+
+    /** Return the number of rows in the column */
+    public long size() {
+        return storage.size() / width;
+    }
+
+    private void checkType(Class<?> type) {
+        if (type != carrier) {
+            throw new UnsupportedOperationException("Can't read " + type + " values from " + column);
+        }
+    }
+
+    public byte getByte(long row) {
+        checkType(byte.class);
+        return storage.getByte(row * width);
+    }
+
+    public short getShort(long row) {
+        checkType(short.class);
+        return storage.getShort(row * width);
+    }
+
+    public char getChar(long row) {
+        checkType(char.class);
+        return storage.getChar(row * width);
+    }
+
+    public int getInt(long row) {
+        checkType(int.class);
+        return storage.getInt(row * width);
+    }
+
+    public long getLong(long row) {
+        checkType(long.class);
+        return storage.getLong(row * width);
+    }
+
+    public float getFloat(long row) {
+        checkType(float.class);
+        return storage.getFloat(row * width);
+    }
+
+    public double getDouble(long row) {
+        checkType(double.class);
+        return storage.getDouble(row * width);
+    }
+
+    // The bulk lookups look up the value of each row in rows, and write them to dst in the
+    // same order.  The long form looks up length rows starting at rowsOffset, and writes
+    // them to dst starting at dstOffset.
+
+    public void getAll(long[] rows, byte[] dst) {
+        getAll(rows, 0, dst, 0, rows.length);
+    }
+
+    public void getAll(long[] rows, int rowsOffset, byte[] dst, int dstOffset, int length) {
+        checkBulk(byte.class, rows, rowsOffset, dst.length, dstOffset, length);
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = storage.getByte(rows[rowsOffset + i] * width);
+        }
+    }
+
+    public void getAll(long[] rows, short[] dst) {
+        getAll(rows, 0, dst, 0, rows.length);
+    }
+
+    public void getAll(long[] rows, int rowsOffset, short[] dst, int dstOffset, int length) {
+        checkBulk(short.class, rows, rowsOffset, dst.length, dstOffset, length);
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = storage.getShort(rows[rowsOffset + i] * width);
+        }
+    }
+
+    public void getAll(long[] rows, char[] dst) {
+        getAll(rows, 0, dst, 0, rows.length);
+    }
+
+    public void getAll(long[] rows, int rowsOffset, char[] dst, int dstOffset, int length) {
+        checkBulk(char.class, rows, rowsOffset, dst.length, dstOffset, length);
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = storage.getChar(rows[rowsOffset + i] * width);
+        }
+    }
+
+    public void getAll(long[] rows, int[] dst) {
+        getAll(rows, 0, dst, 0, rows.length);
+    }
+
+    public void getAll(long[] rows, int rowsOffset, int[] dst, int dstOffset, int length) {
+        checkBulk(int.class, rows, rowsOffset, dst.length, dstOffset, length);
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = storage.getInt(rows[rowsOffset + i] * width);
+        }
+    }
+
+    public void getAll(long[] rows, long[] dst) {
+        getAll(rows, 0, dst, 0, rows.length);
+    }
+
+    public void getAll(long[] rows, int rowsOffset, long[] dst, int dstOffset, int length) {
+        checkBulk(long.class, rows, rowsOffset, dst.length, dstOffset, length);
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = storage.getLong(rows[rowsOffset + i] * width);
+        }
+    }
+
+    public void getAll(long[] rows, float[] dst) {
+        getAll(rows, 0, dst, 0, rows.length);
+    }
+
+    public void getAll(long[] rows, int rowsOffset, float[] dst, int dstOffset, int length) {
+        checkBulk(float.class, rows, rowsOffset, dst.length, dstOffset, length);
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = storage.getFloat(rows[rowsOffset + i] * width);
+        }
+    }
+
+    public void getAll(long[] rows, double[] dst) {
+        getAll(rows, 0, dst, 0, rows.length);
+    }
+
+    public void getAll(long[] rows, int rowsOffset, double[] dst, int dstOffset, int length) {
+        checkBulk(double.class, rows, rowsOffset, dst.length, dstOffset, length);
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = storage.getDouble(rows[rowsOffset + i] * width);
+        }
+    }
+
+    private void checkBulk(Class<?> type, long[] rows, int rowsOffset, int dstLength, int dstOffset, int length) {
+        checkType(type);
+        Objects.checkFromIndexSize(rowsOffset, length, rows.length);
+        Objects.checkFromIndexSize(dstOffset, length, dstLength);
+    }
+
+    /** Release the data, unless it is owned by someone else.  No lookups
+     * may be in progress or made after this point.
+     */
+    @Override
+    public void close() {
+        storage.close();
+    }
+}
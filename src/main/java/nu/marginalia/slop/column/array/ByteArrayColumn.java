@@ -1,14 +1,18 @@
 package nu.marginalia.slop.column.array;
 
 import nu.marginalia.slop.column.*;
+import nu.marginalia.slop.column.dynamic.OffsetIndexColumn;
 import nu.marginalia.slop.column.dynamic.VarintColumn;
 import nu.marginalia.slop.desc.ColumnFunction;
 import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.MmapStorageReader;
 import nu.marginalia.slop.storage.Storage;
+import nu.marginalia.slop.storage.StorageOptions;
 import nu.marginalia.slop.storage.StorageReader;
 import nu.marginalia.slop.storage.StorageWriter;
 
 import java.io.IOException;
+import java.lang.foreign.MemorySegment;
 import java.net.URI;
 import java.nio.ByteOrder;
 import java.nio.file.Path;
@@ -16,6 +20,7 @@ import java.nio.file.Path;
 public class ByteArrayColumn extends AbstractObjectColumn<byte[], ByteArrayColumn.Reader, ByteArrayColumn.Writer> {
 
     private final VarintColumn lengthColumn;
+    private final OffsetIndexColumn offsetsColumn;
 
     public ByteArrayColumn(String name) {
         this(name, StorageType.PLAIN);
@@ -29,21 +34,34 @@ public class ByteArrayColumn extends AbstractObjectColumn<byte[], ByteArrayColum
         super(name, "s8[]", ByteOrder.nativeOrder(), function, storageType);
 
         lengthColumn = new VarintColumn(name, function.lengthsTable(), StorageType.PLAIN);
+        offsetsColumn = new OffsetIndexColumn(name, function.offsetsTable());
     }
 
     @Override
     public ByteArrayColumn.Reader openUnregistered(URI uri, int page) throws IOException {
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public ByteArrayColumn.Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
         return new ByteArrayColumn.Reader(
-                Storage.reader(uri, this, page,true),
-                lengthColumn.openUnregistered(uri, page)
+                Storage.reader(uri, this, page, true, options),
+                lengthColumn.openUnregistered(uri, page, options),
+                offsetsColumn.openIfUsable(uri, page, options, this)
                 );
     }
 
     @Override
     public ByteArrayColumn.Writer createUnregistered(Path path, int page) throws IOException {
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public ByteArrayColumn.Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
         return new ByteArrayColumn.Writer(
-                Storage.writer(path, this, page),
-                lengthColumn.createUnregistered(path, page)
+                Storage.writer(path, this, page, options),
+                lengthColumn.createUnregistered(path, page, options),
+                offsetsColumn.createIfEnabled(path, page, options, this)
         );
     }
 
@@ -51,12 +69,14 @@ public class ByteArrayColumn extends AbstractObjectColumn<byte[], ByteArrayColum
     public class Writer implements ObjectColumnWriter<byte[]> {
         private final StorageWriter storage;
         private final VarintColumn.Writer lengthsWriter;
+        private final OffsetIndexColumn.Writer offsetsWriter;
 
         private long position = 0;
 
-        Writer(StorageWriter storage, VarintColumn.Writer lengthsWriter) {
+        Writer(StorageWriter storage, VarintColumn.Writer lengthsWriter, OffsetIndexColumn.Writer offsetsWriter) {
             this.storage = storage;
             this.lengthsWriter = lengthsWriter;
+            this.offsetsWriter = offsetsWriter;
         }
 
         @Override
@@ -65,6 +85,10 @@ public class ByteArrayColumn extends AbstractObjectColumn<byte[], ByteArrayColum
         }
 
         public void put(byte[] value) throws IOException {
+            if (offsetsWriter != null) {
+                offsetsWriter.put(position, storage, lengthsWriter);
+            }
+
             position ++;
             storage.putBytes(value);
             lengthsWriter.put(value.length);
@@ -77,16 +101,24 @@ public class ByteArrayColumn extends AbstractObjectColumn<byte[], ByteArrayColum
         public void close() throws IOException {
             storage.close();
             lengthsWriter.close();
+            if (offsetsWriter != null) {
+                offsetsWriter.close(position());
+            }
         }
     }
 
     public class Reader implements ObjectColumnReader<byte[]> {
         private final StorageReader storage;
         private final VarintColumn.Reader lengthsReader;
+        private final OffsetIndexColumn.Reader offsetsReader;
+        /** Whether the data is memory mapped, so that values can be viewed without copying */
+        private final boolean mapped;
 
-        public Reader(StorageReader storage, VarintColumn.Reader lengthsReader) throws IOException {
+        public Reader(StorageReader storage, VarintColumn.Reader lengthsReader, OffsetIndexColumn.Reader offsetsReader) throws IOException {
             this.storage = storage;
             this.lengthsReader = lengthsReader;
+            this.offsetsReader = offsetsReader;
+            this.mapped = storage instanceof MmapStorageReader;
         }
 
         @Override
@@ -101,6 +133,35 @@ public class ByteArrayColumn extends AbstractObjectColumn<byte[], ByteArrayColum
             return ret;
         }
 
+        /** Read the next value into the slice.  If the column is memory mapped, the slice becomes
+         * a view of the mapped data, otherwise the value is copied into the slice's own array.
+         * The slice is valid until the next value is read into it.
+         */
+        public void get(ByteSlice slice) throws IOException {
+            int length = lengthsReader.get();
+
+            if (mapped) {
+                slice.setSegment(storage.getSegment(length));
+            }
+            else {
+                storage.getBytes(slice.arrayForLength(length), 0, length);
+            }
+        }
+
+        /** Return a view of the next value in the mapped data, without copying it.
+         * The view is valid until the reader is closed.
+         *
+         * @throws UnsupportedOperationException if the column is not memory mapped
+         */
+        @SuppressWarnings("preview") // for MemorySegment in jdk-21
+        public MemorySegment getSegment() throws IOException {
+            if (!mapped) {
+                throw new UnsupportedOperationException("Column is not memory mapped: " + ByteArrayColumn.this);
+            }
+
+            return storage.getSegment(lengthsReader.get());
+        }
+
         @Override
         public long position() throws IOException {
             return lengthsReader.position();
@@ -108,7 +169,36 @@ public class ByteArrayColumn extends AbstractObjectColumn<byte[], ByteArrayColum
 
         @Override
         public void skip(long positions) throws IOException {
-            for (int i = 0; i < positions; i++) {
+            if (offsetsReader != null && positions >= offsetsReader.interval()) {
+                seek(position() + positions);
+            }
+            else {
+                skipRows(positions);
+            }
+        }
+
+        /** Move to the given row.
+         * <p></p>
+         * If the column has an offset index, this skips at most one index interval worth
+         * of rows, and can move backwards.  Otherwise, the rows in between are skipped
+         * one by one, and the reader can only move forward.
+         */
+        @Override
+        public void seek(long row) throws IOException {
+            if (offsetsReader != null) {
+                long indexedRow = offsetsReader.seek(row, storage, lengthsReader);
+                skipRows(row - indexedRow);
+            }
+            else if (row >= position()) {
+                skipRows(row - position());
+            }
+            else {
+                throw new UnsupportedOperationException("Seeking backwards requires an offset index");
+            }
+        }
+
+        private void skipRows(long rows) throws IOException {
+            for (long i = 0; i < rows; i++) {
                 int size = lengthsReader.get();
                 storage.skip(size, 1);
             }
@@ -123,6 +213,9 @@ public class ByteArrayColumn extends AbstractObjectColumn<byte[], ByteArrayColum
         public void close() throws IOException {
             storage.close();
             lengthsReader.close();
+            if (offsetsReader != null) {
+                offsetsReader.close();
+            }
         }
     }
 
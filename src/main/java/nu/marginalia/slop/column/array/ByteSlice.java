@@ -0,0 +1,145 @@
+package nu.marginalia.slop.column.array;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/** A reusable view of a value of a {@link ByteArrayColumn} or {@link nu.marginalia.slop.column.string.StringColumn},
+ * filled in by the readers' get(ByteSlice) methods.
+ * <p></p>
+ * When the column is memory mapped, the slice is a view of the mapped file, and reading
+ * a value copies nothing.  Otherwise, the value is copied into an array owned by the
+ * slice, which is reused and only grows when a larger value comes along.  Either way,
+ * reading a value allocates nothing in the common case, and the slice is only valid
+ * until the next value is read into it.
+ * <p></p>
+ * The comparisons work on the encoded bytes, so a filter over a string column can
+ * encode its needle once, and test each row without decoding it:
+ * <pre>{@code
+ * byte[] prefix = "https://".getBytes(StandardCharsets.UTF_8);
+ * var slice = new ByteSlice();
+ *
+ * while (reader.hasRemaining()) {
+ *     reader.get(slice);
+ *     if (slice.startsWith(prefix)) {
+ *         ...
+ *     }
+ * }
+ * }</pre>
+ */
+@SuppressWarnings("preview") // for MemorySegment in jdk-21
+public class ByteSlice {
+    /** The mapped data, or null if the value is in the array */
+    private MemorySegment segment;
+    private byte[] array = new byte[64];
+    private int length;
+
+    /** Point the slice at a segment of mapped data */
+    void setSegment(MemorySegment segment) {
+        this.segment = segment;
+        this.length = (int) segment.byteSize();
+    }
+
+    /** Prepare the array for a value of the given length, and return it to be filled in */
+    byte[] arrayForLength(int length) {
+        if (array.length < length) {
+            array = new byte[Math.max(length, 2 * array.length)];
+        }
+        this.segment = null;
+        this.length = length;
+        return array;
+    }
+
+    /** Return the length of the value, in bytes */
+    public int length() {
+        return length;
+    }
+
+    public byte byteAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return segment != null ? segment.get(ValueLayout.JAVA_BYTE, index) : array[index];
+    }
+
+    /** Return true if the value is the same bytes as the given array */
+    public boolean contentEquals(byte[] bytes) {
+        return bytes.length == length && startsWith(bytes);
+    }
+
+    /** Return true if the value starts with the bytes of the given array */
+    public boolean startsWith(byte[] prefix) {
+        if (prefix.length > length) {
+            return false;
+        }
+        if (segment != null) {
+            return MemorySegment.mismatch(segment, 0, prefix.length, MemorySegment.ofArray(prefix), 0, prefix.length) < 0;
+        }
+        return Arrays.equals(array, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    /** Return true if the value ends with the bytes of the given array */
+    public boolean endsWith(byte[] suffix) {
+        if (suffix.length > length) {
+            return false;
+        }
+        int start = length - suffix.length;
+        if (segment != null) {
+            return MemorySegment.mismatch(segment, start, length, MemorySegment.ofArray(suffix), 0, suffix.length) < 0;
+        }
+        return Arrays.equals(array, start, length, suffix, 0, suffix.length);
+    }
+
+    /** Return a hash of the value, which is the same as {@link Arrays#hashCode(byte[])} of its bytes,
+     * so that it can be looked up against hashes of arrays computed ahead of time.
+     */
+    public int hash() {
+        if (segment == null) {
+            int h = 1;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + array[i];
+            }
+            return h;
+        }
+
+        int h = 1;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + segment.get(ValueLayout.JAVA_BYTE, i);
+        }
+        return h;
+    }
+
+    /** Return the value as a segment.  For mapped data this is a view, otherwise a view of
+     * the slice's own array.  Either is only valid until the next value is read.
+     */
+    public MemorySegment asSegment() {
+        return segment != null ? segment : MemorySegment.ofArray(array).asSlice(0, length);
+    }
+
+    /** Return the value as a read-only buffer, valid until the next value is read */
+    public ByteBuffer asByteBuffer() {
+        return segment != null
+                ? segment.asByteBuffer().asReadOnlyBuffer()
+                : ByteBuffer.wrap(array, 0, length).slice().asReadOnlyBuffer();
+    }
+
+    /** Return a copy of the value */
+    public byte[] toByteArray() {
+        return segment != null ? segment.toArray(ValueLayout.JAVA_BYTE) : Arrays.copyOf(array, length);
+    }
+
+    /** Decode the value with the given charset */
+    public String toString(Charset charset) {
+        if (segment != null) {
+            return new String(segment.toArray(ValueLayout.JAVA_BYTE), charset);
+        }
+        return new String(array, 0, length, charset);
+    }
+
+    @Override
+    public String toString() {
+        return "ByteSlice[" + length + " bytes]";
+    }
+}
@@ -4,10 +4,12 @@ import nu.marginalia.slop.column.AbstractColumn;
 import nu.marginalia.slop.column.AbstractObjectColumn;
 import nu.marginalia.slop.column.ObjectColumnReader;
 import nu.marginalia.slop.column.ObjectColumnWriter;
+import nu.marginalia.slop.column.dynamic.OffsetIndexColumn;
 import nu.marginalia.slop.column.dynamic.VarintColumn;
 import nu.marginalia.slop.desc.ColumnFunction;
 import nu.marginalia.slop.desc.StorageType;
 import nu.marginalia.slop.storage.Storage;
+import nu.marginalia.slop.storage.StorageOptions;
 import nu.marginalia.slop.storage.StorageReader;
 import nu.marginalia.slop.storage.StorageWriter;
 
@@ -19,6 +21,7 @@ import java.nio.file.Path;
 public class IntArrayColumn extends AbstractObjectColumn<int[], IntArrayColumn.Reader, IntArrayColumn.Writer> {
 
     private final VarintColumn lengthColumn;
+    private final OffsetIndexColumn offsetsColumn;
 
     public IntArrayColumn(String name) {
         this(name, StorageType.PLAIN);
@@ -36,32 +39,47 @@ public class IntArrayColumn extends AbstractObjectColumn<int[], IntArrayColumn.R
                 storageType);
 
         lengthColumn = new VarintColumn(name, ColumnFunction.DATA_LEN, StorageType.PLAIN);
+        offsetsColumn = new OffsetIndexColumn(name, ColumnFunction.DATA_OFFSETS);
     }
 
 
     @Override
     public IntArrayColumn.Reader openUnregistered(URI uri, int page) throws IOException {
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public IntArrayColumn.Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
         return new IntArrayColumn.Reader(
-                Storage.reader(uri, this, page, true),
-                lengthColumn.openUnregistered(uri, page)
+                Storage.reader(uri, this, page, true, options),
+                lengthColumn.openUnregistered(uri, page, options),
+                offsetsColumn.openIfUsable(uri, page, options, this)
                 );
     }
 
     @Override
     public IntArrayColumn.Writer createUnregistered(Path path, int page) throws IOException {
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public IntArrayColumn.Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
         return new IntArrayColumn.Writer(
-                Storage.writer(path, this, page),
-                lengthColumn.createUnregistered(path, page)
+                Storage.writer(path, this, page, options),
+                lengthColumn.createUnregistered(path, page, options),
+                offsetsColumn.createIfEnabled(path, page, options, this)
         );
     }
 
     public class Writer implements ObjectColumnWriter<int[]> {
         private final StorageWriter storage;
         private final VarintColumn.Writer lengthsWriter;
+        private final OffsetIndexColumn.Writer offsetsWriter;
 
-        Writer(StorageWriter storage, VarintColumn.Writer lengthsWriter) {
+        Writer(StorageWriter storage, VarintColumn.Writer lengthsWriter, OffsetIndexColumn.Writer offsetsWriter) {
             this.storage = storage;
             this.lengthsWriter = lengthsWriter;
+            this.offsetsWriter = offsetsWriter;
         }
 
         @Override
@@ -70,6 +88,10 @@ public class IntArrayColumn extends AbstractObjectColumn<int[], IntArrayColumn.R
         }
 
         public void put(int[] value) throws IOException {
+            if (offsetsWriter != null) {
+                offsetsWriter.put(lengthsWriter.position(), storage, lengthsWriter);
+            }
+
             storage.putInts(value);
             lengthsWriter.put(value.length);
         }
@@ -81,16 +103,21 @@ public class IntArrayColumn extends AbstractObjectColumn<int[], IntArrayColumn.R
         public void close() throws IOException {
             storage.close();
             lengthsWriter.close();
+            if (offsetsWriter != null) {
+                offsetsWriter.close(position());
+            }
         }
     }
 
     public class Reader implements ObjectColumnReader<int[]> {
         private final StorageReader storage;
         private final VarintColumn.Reader lengthsReader;
+        private final OffsetIndexColumn.Reader offsetsReader;
 
-        Reader(StorageReader storage, VarintColumn.Reader lengthsReader) {
+        Reader(StorageReader storage, VarintColumn.Reader lengthsReader, OffsetIndexColumn.Reader offsetsReader) {
             this.storage = storage;
             this.lengthsReader = lengthsReader;
+            this.offsetsReader = offsetsReader;
         }
 
         @Override
@@ -112,7 +139,36 @@ public class IntArrayColumn extends AbstractObjectColumn<int[], IntArrayColumn.R
 
         @Override
         public void skip(long positions) throws IOException {
-            for (int i = 0; i < positions; i++) {
+            if (offsetsReader != null && positions >= offsetsReader.interval()) {
+                seek(position() + positions);
+            }
+            else {
+                skipRows(positions);
+            }
+        }
+
+        /** Move to the given row.
+         * <p></p>
+         * If the column has an offset index, this skips at most one index interval worth
+         * of rows, and can move backwards.  Otherwise, the rows in between are skipped
+         * one by one, and the reader can only move forward.
+         */
+        @Override
+        public void seek(long row) throws IOException {
+            if (offsetsReader != null) {
+                long indexedRow = offsetsReader.seek(row, storage, lengthsReader);
+                skipRows(row - indexedRow);
+            }
+            else if (row >= position()) {
+                skipRows(row - position());
+            }
+            else {
+                throw new UnsupportedOperationException("Seeking backwards requires an offset index");
+            }
+        }
+
+        private void skipRows(long rows) throws IOException {
+            for (long i = 0; i < rows; i++) {
                 int size = (int) lengthsReader.get();
                 storage.skip(size, Integer.BYTES);
             }
@@ -127,6 +183,9 @@ public class IntArrayColumn extends AbstractObjectColumn<int[], IntArrayColumn.R
         public void close() throws IOException {
             storage.close();
             lengthsReader.close();
+            if (offsetsReader != null) {
+                offsetsReader.close();
+            }
         }
     }
 
@@ -1,10 +1,12 @@
 package nu.marginalia.slop.column.array;
 
 import nu.marginalia.slop.column.*;
+import nu.marginalia.slop.column.dynamic.OffsetIndexColumn;
 import nu.marginalia.slop.column.dynamic.VarintColumn;
 import nu.marginalia.slop.desc.ColumnFunction;
 import nu.marginalia.slop.desc.StorageType;
 import nu.marginalia.slop.storage.Storage;
+import nu.marginalia.slop.storage.StorageOptions;
 import nu.marginalia.slop.storage.StorageReader;
 import nu.marginalia.slop.storage.StorageWriter;
 
@@ -15,6 +17,7 @@ import java.nio.file.Path;
 
 public class LongArrayColumn extends AbstractObjectColumn<long[], LongArrayColumn.Reader, LongArrayColumn.Writer> {
     private final VarintColumn lengthsColumn;
+    private final OffsetIndexColumn offsetsColumn;
 
     public LongArrayColumn(String name) {
         this(name, StorageType.PLAIN);
@@ -31,21 +34,34 @@ public class LongArrayColumn extends AbstractObjectColumn<long[], LongArrayColum
                 ColumnFunction.DATA,
                 storageType);
         lengthsColumn = new VarintColumn(name, ColumnFunction.DATA_LEN, StorageType.PLAIN);
+        offsetsColumn = new OffsetIndexColumn(name, ColumnFunction.DATA_OFFSETS);
     }
 
     @Override
     public LongArrayColumn.Reader openUnregistered(URI uri, int page) throws IOException {
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public LongArrayColumn.Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
         return new LongArrayColumn.Reader(
-                Storage.reader(uri, this, page, true),
-                lengthsColumn.openUnregistered(uri, page)
+                Storage.reader(uri, this, page, true, options),
+                lengthsColumn.openUnregistered(uri, page, options),
+                offsetsColumn.openIfUsable(uri, page, options, this)
         );
     }
 
     @Override
     public LongArrayColumn.Writer createUnregistered(Path path, int page) throws IOException {
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public LongArrayColumn.Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
         return new LongArrayColumn.Writer(
-                Storage.writer(path, this, page),
-                lengthsColumn.createUnregistered(path, page)
+                Storage.writer(path, this, page, options),
+                lengthsColumn.createUnregistered(path, page, options),
+                offsetsColumn.createIfEnabled(path, page, options, this)
                 );
     }
 
@@ -53,10 +69,12 @@ public class LongArrayColumn extends AbstractObjectColumn<long[], LongArrayColum
     public class Writer implements ObjectColumnWriter<long[]> {
         private final StorageWriter storage;
         private final VarintColumn.Writer lengthsWriter;
+        private final OffsetIndexColumn.Writer offsetsWriter;
 
-        Writer(StorageWriter storage, VarintColumn.Writer lengthsWriter) {
+        Writer(StorageWriter storage, VarintColumn.Writer lengthsWriter, OffsetIndexColumn.Writer offsetsWriter) {
             this.storage = storage;
             this.lengthsWriter = lengthsWriter;
+            this.offsetsWriter = offsetsWriter;
         }
 
         @Override
@@ -65,6 +83,10 @@ public class LongArrayColumn extends AbstractObjectColumn<long[], LongArrayColum
         }
 
         public void put(long[] value) throws IOException {
+            if (offsetsWriter != null) {
+                offsetsWriter.put(lengthsWriter.position(), storage, lengthsWriter);
+            }
+
             storage.putLongs(value);
             lengthsWriter.put(value.length);
         }
@@ -76,16 +98,21 @@ public class LongArrayColumn extends AbstractObjectColumn<long[], LongArrayColum
         public void close() throws IOException {
             storage.close();
             lengthsWriter.close();
+            if (offsetsWriter != null) {
+                offsetsWriter.close(position());
+            }
         }
     }
 
     public class Reader implements ObjectColumnReader<long[]> {
         private final StorageReader storage;
         private final VarintColumn.Reader lengthsReader;
+        private final OffsetIndexColumn.Reader offsetsReader;
 
-        Reader(StorageReader storage, VarintColumn.Reader lengthsReader) {
+        Reader(StorageReader storage, VarintColumn.Reader lengthsReader, OffsetIndexColumn.Reader offsetsReader) {
             this.storage = storage;
             this.lengthsReader = lengthsReader;
+            this.offsetsReader = offsetsReader;
         }
 
         @Override
@@ -107,7 +134,36 @@ public class LongArrayColumn extends AbstractObjectColumn<long[], LongArrayColum
 
         @Override
         public void skip(long positions) throws IOException {
-            for (int i = 0; i < positions; i++) {
+            if (offsetsReader != null && positions >= offsetsReader.interval()) {
+                seek(position() + positions);
+            }
+            else {
+                skipRows(positions);
+            }
+        }
+
+        /** Move to the given row.
+         * <p></p>
+         * If the column has an offset index, this skips at most one index interval worth
+         * of rows, and can move backwards.  Otherwise, the rows in between are skipped
+         * one by one, and the reader can only move forward.
+         */
+        @Override
+        public void seek(long row) throws IOException {
+            if (offsetsReader != null) {
+                long indexedRow = offsetsReader.seek(row, storage, lengthsReader);
+                skipRows(row - indexedRow);
+            }
+            else if (row >= position()) {
+                skipRows(row - position());
+            }
+            else {
+                throw new UnsupportedOperationException("Seeking backwards requires an offset index");
+            }
+        }
+
+        private void skipRows(long rows) throws IOException {
+            for (long i = 0; i < rows; i++) {
                 int size = (int) lengthsReader.get();
                 storage.skip(size, Long.BYTES);
             }
@@ -122,6 +178,9 @@ public class LongArrayColumn extends AbstractObjectColumn<long[], LongArrayColum
         public void close() throws IOException {
             storage.close();
             lengthsReader.close();
+            if (offsetsReader != null) {
+                offsetsReader.close();
+            }
         }
     }
 
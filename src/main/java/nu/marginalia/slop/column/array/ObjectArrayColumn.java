@@ -7,6 +7,7 @@ import nu.marginalia.slop.column.ObjectColumnWriter;
 import nu.marginalia.slop.column.dynamic.VarintColumn;
 import nu.marginalia.slop.desc.ColumnFunction;
 import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.StorageOptions;
 
 import java.io.IOException;
 import java.net.URI;
@@ -33,17 +34,27 @@ public class ObjectArrayColumn<T> extends AbstractObjectColumn<List<T>, ObjectAr
 
     @Override
     public ObjectArrayColumn<T>.Reader openUnregistered(URI uri, int page) throws IOException {
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public ObjectArrayColumn<T>.Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
         return new ObjectArrayColumn<T>.Reader(
-                wrappingColumn.openUnregistered(uri, page),
-                groupLengthColumn.openUnregistered(uri, page)
+                wrappingColumn.openUnregistered(uri, page, options),
+                groupLengthColumn.openUnregistered(uri, page, options)
                 );
     }
 
     @Override
     public ObjectArrayColumn<T>.Writer createUnregistered(Path path, int page) throws IOException {
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public ObjectArrayColumn<T>.Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
         return new ObjectArrayColumn<T>.Writer(
-                wrappingColumn.createUnregistered(path, page),
-                groupLengthColumn.createUnregistered(path, page)
+                wrappingColumn.createUnregistered(path, page, options),
+                groupLengthColumn.createUnregistered(path, page, options)
                 );
     }
 
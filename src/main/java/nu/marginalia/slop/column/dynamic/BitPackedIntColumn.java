@@ -0,0 +1,308 @@
+package nu.marginalia.slop.column.dynamic;
+
+import nu.marginalia.slop.column.AbstractColumn;
+import nu.marginalia.slop.column.ColumnReader;
+import nu.marginalia.slop.column.ColumnWriter;
+import nu.marginalia.slop.desc.ColumnFunction;
+import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.Storage;
+import nu.marginalia.slop.storage.StorageOptions;
+import nu.marginalia.slop.storage.StorageReader;
+import nu.marginalia.slop.storage.StorageWriter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+/** A column of ints stored with frame of reference bit packing, for columns of small
+ * values or values in a narrow range, e.g. scores, language ids or hop counts.
+ * <p></p>
+ * The values are stored in blocks of {@link #BLOCK_SIZE}.  Each block holds the smallest
+ * value in it, and the difference between each value and the smallest one, packed into
+ * just as many bits as the largest difference needs.  A block of values between 1000
+ * and 1200 takes 8 bits per value, and a block where every value is the same takes none.
+ * <p></p>
+ * Each block begins with a little-endian long holding the minimum in its low 32 bits,
+ * the bit width in the next 8, and the number of values less one in the next 8.
+ * It is followed by 2 * width little-endian longs of values packed as described in
+ * {@link BitPacking}.  Every block but the last is full, and the last is padded.  Since
+ * the header gives the size of the block, skipping a block costs the same no matter how
+ * many values it holds, and reads decode whole blocks straight into an int[].
+ */
+public class BitPackedIntColumn extends AbstractColumn<BitPackedIntColumn.Reader, BitPackedIntColumn.Writer> {
+    public static final int BLOCK_SIZE = BitPacking.BLOCK_SIZE;
+
+    /** The number of longs in a block of the widest values */
+    private static final int MAX_PACKED_LONGS = BitPacking.packedLongs(Integer.SIZE);
+
+    public BitPackedIntColumn(String name) {
+        this(name, ColumnFunction.DATA, StorageType.PLAIN);
+    }
+
+    public BitPackedIntColumn(String name, StorageType storageType) {
+        this(name, ColumnFunction.DATA, storageType);
+    }
+
+    public BitPackedIntColumn(String name, ColumnFunction function, StorageType storageType) {
+        super(name, "s32le+for", ByteOrder.LITTLE_ENDIAN, function, storageType);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page) throws IOException {
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
+        return new Reader(Storage.reader(uri, this, page, true, options));
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page) throws IOException {
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
+        return new Writer(Storage.writer(path, this, page, options));
+    }
+
+    public class Writer implements ColumnWriter {
+        private final StorageWriter storage;
+
+        private final int[] block = new int[BLOCK_SIZE];
+        private int blockCount = 0;
+
+        private final int[] deltas = new int[BLOCK_SIZE];
+        private final long[] packed = new long[MAX_PACKED_LONGS];
+        private final long[] tmp = new long[MAX_PACKED_LONGS];
+
+        private long position = 0;
+
+        Writer(StorageWriter storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public AbstractColumn<?, ?> columnDesc() {
+            return BitPackedIntColumn.this;
+        }
+
+        public void put(int value) throws IOException {
+            block[blockCount++] = value;
+            position++;
+
+            if (blockCount == BLOCK_SIZE) {
+                flushBlock();
+            }
+        }
+
+        public void put(int[] values) throws IOException {
+            put(values, values.length);
+        }
+
+        /** Write the first n values */
+        public void put(int[] values, int n) throws IOException {
+            Objects.checkFromIndexSize(0, n, values.length);
+
+            int i = 0;
+            while (i < n) {
+                int count = Math.min(n - i, BLOCK_SIZE - blockCount);
+                System.arraycopy(values, i, block, blockCount, count);
+
+                blockCount += count;
+                position += count;
+                i += count;
+
+                if (blockCount == BLOCK_SIZE) {
+                    flushBlock();
+                }
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            int min = block[0];
+            int max = block[0];
+            for (int i = 1; i < blockCount; i++) {
+                min = Math.min(min, block[i]);
+                max = Math.max(max, block[i]);
+            }
+
+            int width = Long.SIZE - Long.numberOfLeadingZeros((long) max - min);
+
+            // the differences fit in width bits when read as unsigned, and the padding of the last block is 0
+            for (int i = 0; i < blockCount; i++) {
+                deltas[i] = block[i] - min;
+            }
+            Arrays.fill(deltas, blockCount, BLOCK_SIZE, 0);
+
+            BitPacking.pack(deltas, width, packed, tmp);
+
+            storage.putLong((min & 0xFFFF_FFFFL) | (long) width << 32 | (long) (blockCount - 1) << 40);
+            storage.putLongs(packed, 0, BitPacking.packedLongs(width));
+
+            blockCount = 0;
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (blockCount > 0) {
+                flushBlock();
+            }
+            storage.close();
+        }
+    }
+
+    public class Reader implements ColumnReader {
+        private final StorageReader storage;
+
+        /** The decoded values of the current block */
+        private final int[] block = new int[BLOCK_SIZE];
+        private int blockCount = 0;
+        private int blockPos = 0;
+
+        private final long[] packed = new long[MAX_PACKED_LONGS];
+        private final long[] tmp = new long[MAX_PACKED_LONGS];
+
+        private long position = 0;
+
+        Reader(StorageReader storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public AbstractColumn<?, ?> columnDesc() {
+            return BitPackedIntColumn.this;
+        }
+
+        public int get() throws IOException {
+            if (blockPos == blockCount) {
+                blockCount = readBlock(block, 0);
+                blockPos = 0;
+            }
+
+            position++;
+            return block[blockPos++];
+        }
+
+        public void get(int[] dst) throws IOException {
+            get(dst, dst.length);
+        }
+
+        /** Read the next n values into the start of dst.  Whole blocks are decoded straight into dst. */
+        public void get(int[] dst, int n) throws IOException {
+            Objects.checkFromIndexSize(0, n, dst.length);
+
+            int i = Math.min(n, blockCount - blockPos);
+            System.arraycopy(block, blockPos, dst, 0, i);
+            blockPos += i;
+
+            while (n - i >= BLOCK_SIZE) {
+                i += readBlock(dst, i);
+            }
+
+            while (i < n) {
+                blockCount = readBlock(block, 0);
+                blockPos = Math.min(n - i, blockCount);
+
+                System.arraycopy(block, 0, dst, i, blockPos);
+                i += blockPos;
+            }
+
+            position += n;
+        }
+
+        /** Read and decode the next block into dst at the given offset, and return the number of values in it */
+        private int readBlock(int[] dst, int offset) throws IOException {
+            return readBlock(storage.getLong(), dst, offset);
+        }
+
+        /** Read and decode the block with the given header, which has already been read */
+        private int readBlock(long header, int[] dst, int offset) throws IOException {
+            int min = (int) header;
+            int width = (int) (header >>> 32) & 0xFF;
+            int count = (int) (header >>> 40 & 0xFF) + 1;
+
+            if (width > Integer.SIZE) {
+                throw new IOException("Malformed block in " + BitPackedIntColumn.this + ", bit width " + width);
+            }
+
+            storage.getLongs(packed, 0, BitPacking.packedLongs(width));
+            BitPacking.unpack(packed, width, min, dst, offset, tmp);
+
+            return count;
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        /** Skip the given number of values.  Whole blocks are skipped by their headers, without decoding them. */
+        @Override
+        public void skip(long positions) throws IOException {
+            if (positions < 0) {
+                throw new IllegalArgumentException("Negative skip " + positions);
+            }
+
+            long remaining = positions;
+
+            int inBlock = (int) Math.min(remaining, blockCount - blockPos);
+            blockPos += inBlock;
+            remaining -= inBlock;
+
+            while (remaining > 0) {
+                long header = storage.getLong();
+                int width = (int) (header >>> 32) & 0xFF;
+                int count = (int) (header >>> 40 & 0xFF) + 1;
+
+                if (remaining >= count) {
+                    storage.skip(BitPacking.packedLongs(width), Long.BYTES);
+                    remaining -= count;
+                }
+                else {
+                    // the skip ends in this block, which is decoded as usual
+                    blockCount = readBlock(header, block, 0);
+                    blockPos = (int) remaining;
+                    remaining = 0;
+                }
+            }
+
+            position += positions;
+        }
+
+        /** Move to the given row.  Moving forward skips blocks by their headers, and moving
+         * backwards starts over from the beginning of the column, which needs the storage
+         * to support seeking.
+         */
+        @Override
+        public void seek(long row) throws IOException {
+            if (row < position) {
+                storage.seek(0, 1);
+                blockCount = 0;
+                blockPos = 0;
+                position = 0;
+            }
+
+            skip(row - position);
+        }
+
+        @Override
+        public boolean hasRemaining() throws IOException {
+            return blockPos < blockCount || storage.hasRemaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            storage.close();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Derived from the ForUtil class of Apache Lucene.  Modified for Slop: ported to
+ * blocks of 128 ints with a frame of reference, with the encoder and decoder
+ * written as loops over the bit width rather than generated per width.
+ */
+package nu.marginalia.slop.column.dynamic;
+
+import java.util.Arrays;
+
+/** Bit packing of blocks of 128 ints, for {@link BitPackedIntColumn}.
+ * <p></p>
+ * The values are first collapsed into lanes of 8, 16 or 32 bits, the narrowest that
+ * fits the bit width, with value i in lane i / (2 * laneBits) of long i % (2 * laneBits).
+ * The collapsed longs are then shifted into place in the packed longs, as many at a time
+ * as the lanes have room for, and the bits that are left over at the bottom of each lane
+ * are filled with the remaining values, split across lanes where they have to be.
+ * <p></p>
+ * Since the lanes of a long never carry into each other, every shift and mask works on
+ * up to eight values at once, and most of the unpacking is simple loops over arrays of
+ * longs that the JIT can vectorize.
+ * <p></p>
+ * This is derived from the ForUtil of Apache Lucene, and unlike the rest of Slop is
+ * licensed under the Apache License, Version 2.0; see NOTICE.
+ */
+final class BitPacking {
+    static final int BLOCK_SIZE = 128;
+
+    private BitPacking() {}
+
+    /** Return the number of longs that a block of values of the given width is packed into */
+    static int packedLongs(int width) {
+        return 2 * width;
+    }
+
+    private static int laneBits(int width) {
+        if (width <= 8) return 8;
+        if (width <= 16) return 16;
+        return 32;
+    }
+
+    /** Return a mask of the low bits of every lane */
+    private static long laneMask(int laneBits, int bits) {
+        long ones = switch (laneBits) {
+            case 8 -> 0x0101_0101_0101_0101L;
+            case 16 -> 0x0001_0001_0001_0001L;
+            default -> 0x0000_0001_0000_0001L;
+        };
+        return ((1L << bits) - 1) * ones;
+    }
+
+    /** Pack a block of values, each of which must fit in the given number of bits when
+     * read as unsigned, into the first packedLongs(width) longs of packed.
+     *
+     * @param tmp scratch space of at least 64 longs
+     */
+    static void pack(int[] values, int width, long[] packed, long[] tmp) {
+        if (width == 0) {
+            return;
+        }
+
+        final int laneBits = laneBits(width);
+        final int lanes = Long.SIZE / laneBits;
+        final int collapsed = BLOCK_SIZE / lanes;
+        final long valueMask = (1L << laneBits) - 1;
+
+        for (int i = 0; i < collapsed; i++) {
+            long l = 0;
+            for (int lane = 0; lane < lanes; lane++) {
+                l = (l << laneBits) | (values[lane * collapsed + i] & valueMask);
+            }
+            tmp[i] = l;
+        }
+
+        final int packedLongs = packedLongs(width);
+        Arrays.fill(packed, 0, packedLongs, 0L);
+
+        int idx = 0;
+        int shift = laneBits - width;
+        for (; shift >= 0; shift -= width) {
+            for (int i = 0; i < packedLongs; i++) {
+                packed[i] |= tmp[idx++] << shift;
+            }
+        }
+
+        // the remaining values go into the bits left over at the bottom of each lane
+        final int remainingBitsPerLane = shift + width;
+        final long remainingMask = laneMask(laneBits, remainingBitsPerLane);
+
+        int packedIdx = 0;
+        int remainingBitsOfValue = width;
+        while (idx < collapsed) {
+            if (remainingBitsOfValue >= remainingBitsPerLane) {
+                remainingBitsOfValue -= remainingBitsPerLane;
+                packed[packedIdx++] |= (tmp[idx] >>> remainingBitsOfValue) & remainingMask;
+
+                if (remainingBitsOfValue == 0) {
+                    idx++;
+                    remainingBitsOfValue = width;
+                }
+            }
+            else { // the value ends partway through the lane, and the next one starts there
+                long mask1 = laneMask(laneBits, remainingBitsOfValue);
+                long mask2 = laneMask(laneBits, remainingBitsPerLane - remainingBitsOfValue);
+
+                packed[packedIdx] |= (tmp[idx++] & mask1) << (remainingBitsPerLane - remainingBitsOfValue);
+                remainingBitsOfValue = width - remainingBitsPerLane + remainingBitsOfValue;
+                packed[packedIdx++] |= (tmp[idx] >>> remainingBitsOfValue) & mask2;
+            }
+        }
+    }
+
+    /** Unpack a block of values packed with the given width into dst at the given offset,
+     * adding min to each.
+     *
+     * @param tmp scratch space of at least 64 longs
+     */
+    static void unpack(long[] packed, int width, int min, int[] dst, int offset, long[] tmp) {
+        if (width == 0) {
+            Arrays.fill(dst, offset, offset + BLOCK_SIZE, min);
+            return;
+        }
+
+        final int laneBits = laneBits(width);
+        final int collapsed = BLOCK_SIZE * laneBits / Long.SIZE;
+        final int packedLongs = packedLongs(width);
+        final long mask = laneMask(laneBits, width);
+
+        int idx = 0;
+        int shift = laneBits - width;
+        for (; shift >= 0; shift -= width) {
+            for (int i = 0; i < packedLongs; i++) {
+                tmp[idx + i] = (packed[i] >>> shift) & mask;
+            }
+            idx += packedLongs;
+        }
+
+        final int remainingBitsPerLane = shift + width;
+        final long remainingMask = laneMask(laneBits, remainingBitsPerLane);
+
+        int packedIdx = 0;
+        int remainingBits = remainingBitsPerLane;
+        for (; idx < collapsed; idx++) {
+            int b = width - remainingBits;
+            long l = (packed[packedIdx++] & laneMask(laneBits, remainingBits)) << b;
+
+            while (b >= remainingBitsPerLane) {
+                b -= remainingBitsPerLane;
+                l |= (packed[packedIdx++] & remainingMask) << b;
+            }
+
+            if (b > 0) {
+                l |= (packed[packedIdx] >>> (remainingBitsPerLane - b)) & laneMask(laneBits, b);
+                remainingBits = remainingBitsPerLane - b;
+            }
+            else {
+                remainingBits = remainingBitsPerLane;
+            }
+
+            tmp[idx] = l;
+        }
+
+        switch (laneBits) {
+            case 8 -> expand8(tmp, min, dst, offset);
+            case 16 -> expand16(tmp, min, dst, offset);
+            default -> expand32(tmp, min, dst, offset);
+        }
+    }
+
+    // The expansions work on the halves of each long as ints, which the JIT handles
+    // much better than narrowing a long for every value
+
+    private static void expand8(long[] tmp, int min, int[] dst, int offset) {
+        for (int i = 0; i < 16; i++) {
+            int hi = (int) (tmp[i] >>> 32);
+            int lo = (int) tmp[i];
+
+            dst[offset + i] = min + (hi >>> 24);
+            dst[offset + 16 + i] = min + ((hi >>> 16) & 0xFF);
+            dst[offset + 32 + i] = min + ((hi >>> 8) & 0xFF);
+            dst[offset + 48 + i] = min + (hi & 0xFF);
+            dst[offset + 64 + i] = min + (lo >>> 24);
+            dst[offset + 80 + i] = min + ((lo >>> 16) & 0xFF);
+            dst[offset + 96 + i] = min + ((lo >>> 8) & 0xFF);
+            dst[offset + 112 + i] = min + (lo & 0xFF);
+        }
+    }
+
+    private static void expand16(long[] tmp, int min, int[] dst, int offset) {
+        for (int i = 0; i < 32; i++) {
+            int hi = (int) (tmp[i] >>> 32);
+            int lo = (int) tmp[i];
+
+            dst[offset + i] = min + (hi >>> 16);
+            dst[offset + 32 + i] = min + (hi & 0xFFFF);
+            dst[offset + 64 + i] = min + (lo >>> 16);
+            dst[offset + 96 + i] = min + (lo & 0xFFFF);
+        }
+    }
+
+    private static void expand32(long[] tmp, int min, int[] dst, int offset) {
+        for (int i = 0; i < 64; i++) {
+            dst[offset + i] = min + (int) (tmp[i] >>> 32);
+            dst[offset + 64 + i] = min + (int) tmp[i];
+        }
+    }
+}
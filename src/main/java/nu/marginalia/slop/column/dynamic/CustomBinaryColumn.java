@@ -6,6 +6,7 @@ import nu.marginalia.slop.column.ColumnWriter;
 import nu.marginalia.slop.desc.ColumnFunction;
 import nu.marginalia.slop.desc.StorageType;
 import nu.marginalia.slop.storage.Storage;
+import nu.marginalia.slop.storage.StorageOptions;
 import nu.marginalia.slop.storage.StorageReader;
 import nu.marginalia.slop.storage.StorageWriter;
 
@@ -17,6 +18,7 @@ import java.nio.file.Path;
 public class CustomBinaryColumn extends AbstractColumn<CustomBinaryColumn.Reader, CustomBinaryColumn.Writer> {
 
     private final VarintColumn lengthColumn;
+    private final OffsetIndexColumn offsetsColumn;
 
     public CustomBinaryColumn(String name) {
         this(name, ColumnFunction.DATA, StorageType.PLAIN);
@@ -33,33 +35,49 @@ public class CustomBinaryColumn extends AbstractColumn<CustomBinaryColumn.Reader
                 function,
                 storageType);
         lengthColumn = new VarintColumn(name, ColumnFunction.DATA_LEN, StorageType.PLAIN);
+        offsetsColumn = new OffsetIndexColumn(name, ColumnFunction.DATA_OFFSETS);
     }
 
     @Override
     public Reader openUnregistered(URI uri, int page) throws IOException {
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
         return new CustomBinaryColumn.Reader(
-                Storage.reader(uri, this, page, true),
-                lengthColumn.openUnregistered(uri, page)
+                Storage.reader(uri, this, page, true, options),
+                lengthColumn.openUnregistered(uri, page, options),
+                offsetsColumn.openIfUsable(uri, page, options, this)
                 );
     }
 
     @Override
     public CustomBinaryColumn.Writer createUnregistered(Path path, int page) throws IOException {
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public CustomBinaryColumn.Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
         return new CustomBinaryColumn.Writer(
-                Storage.writer(path, this, page),
-                lengthColumn.createUnregistered(path, page)
+                Storage.writer(path, this, page, options),
+                lengthColumn.createUnregistered(path, page, options),
+                offsetsColumn.createIfEnabled(path, page, options, this)
                 );
     }
 
     public class Writer implements ColumnWriter {
         private final VarintColumn.Writer indexWriter;
+        private final OffsetIndexColumn.Writer offsetsWriter;
         private final StorageWriter storage;
 
         public Writer(StorageWriter storage,
-                      VarintColumn.Writer indexWriter)
+                      VarintColumn.Writer indexWriter,
+                      OffsetIndexColumn.Writer offsetsWriter)
         {
             this.storage = storage;
             this.indexWriter = indexWriter;
+            this.offsetsWriter = offsetsWriter;
         }
 
 
@@ -69,6 +87,10 @@ public class CustomBinaryColumn extends AbstractColumn<CustomBinaryColumn.Reader
         }
 
         public RecordWriter next() throws IOException {
+            if (offsetsWriter != null) {
+                offsetsWriter.put(indexWriter.position(), storage, indexWriter);
+            }
+
             return new RecordWriter() {
                 long pos = storage.position();
 
@@ -91,16 +113,21 @@ public class CustomBinaryColumn extends AbstractColumn<CustomBinaryColumn.Reader
         public void close() throws IOException {
             indexWriter.close();
             storage.close();
+            if (offsetsWriter != null) {
+                offsetsWriter.close(position());
+            }
         }
     }
 
     public class Reader implements ColumnReader {
         private final VarintColumn.Reader indexReader;
+        private final OffsetIndexColumn.Reader offsetsReader;
         private final StorageReader storage;
 
-        Reader(StorageReader reader, VarintColumn.Reader indexReader) throws IOException {
+        Reader(StorageReader reader, VarintColumn.Reader indexReader, OffsetIndexColumn.Reader offsetsReader) throws IOException {
             this.storage = reader;
             this.indexReader = indexReader;
+            this.offsetsReader = offsetsReader;
         }
 
 
@@ -111,7 +138,36 @@ public class CustomBinaryColumn extends AbstractColumn<CustomBinaryColumn.Reader
 
         @Override
         public void skip(long positions) throws IOException {
-            for (int i = 0; i < positions; i++) {
+            if (offsetsReader != null && positions >= offsetsReader.interval()) {
+                seek(position() + positions);
+            }
+            else {
+                skipRows(positions);
+            }
+        }
+
+        /** Move to the given row.
+         * <p></p>
+         * If the column has an offset index, this skips at most one index interval worth
+         * of rows, and can move backwards.  Otherwise, the rows in between are skipped
+         * one by one, and the reader can only move forward.
+         */
+        @Override
+        public void seek(long row) throws IOException {
+            if (offsetsReader != null) {
+                long indexedRow = offsetsReader.seek(row, storage, indexReader);
+                skipRows(row - indexedRow);
+            }
+            else if (row >= position()) {
+                skipRows(row - position());
+            }
+            else {
+                throw new UnsupportedOperationException("Seeking backwards requires an offset index");
+            }
+        }
+
+        private void skipRows(long rows) throws IOException {
+            for (long i = 0; i < rows; i++) {
                 int size = (int) indexReader.get();
                 storage.skip(size, 1);
             }
@@ -152,6 +208,9 @@ public class CustomBinaryColumn extends AbstractColumn<CustomBinaryColumn.Reader
         public void close() throws IOException {
             indexReader.close();
             storage.close();
+            if (offsetsReader != null) {
+                offsetsReader.close();
+            }
         }
 
     }
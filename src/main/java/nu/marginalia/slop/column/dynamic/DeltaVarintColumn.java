@@ -0,0 +1,344 @@
+package nu.marginalia.slop.column.dynamic;
+
+import nu.marginalia.slop.column.AbstractColumn;
+import nu.marginalia.slop.column.ColumnReader;
+import nu.marginalia.slop.column.ColumnWriter;
+import nu.marginalia.slop.desc.ColumnFunction;
+import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.Storage;
+import nu.marginalia.slop.storage.StorageOptions;
+import nu.marginalia.slop.storage.StorageReader;
+import nu.marginalia.slop.storage.StorageWriter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/** A column of non-decreasing, non-negative longs, e.g. sorted document ids or timestamps,
+ * stored as varints of the difference between each value and the one before it.
+ * <p></p>
+ * Every checkpointInterval:th row is stored as its absolute value rather than a delta,
+ * so that a reader can start decoding at any checkpoint.  With an offset index, which
+ * is written at the same interval, seeking to a row costs at most checkpointInterval - 1
+ * rows of decoding, the same as for {@link VarintColumn}.
+ * <p></p>
+ * The checkpoint interval is the offset index interval from the {@link StorageOptions}
+ * when it is set, and {@link #DEFAULT_CHECKPOINT_INTERVAL} otherwise.  It is written as
+ * a varint at the start of the file, ahead of the values.
+ */
+public class DeltaVarintColumn extends AbstractColumn<DeltaVarintColumn.Reader, DeltaVarintColumn.Writer> {
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 128;
+
+    /** The number of values encoded or decoded at a time by the bulk methods */
+    private static final int BATCH_SIZE = 1024;
+
+    private final OffsetIndexColumn offsetsColumn;
+
+    public DeltaVarintColumn(String name) {
+        this(name, ColumnFunction.DATA, StorageType.PLAIN);
+    }
+
+    public DeltaVarintColumn(String name, StorageType storageType) {
+        this(name, ColumnFunction.DATA, storageType);
+    }
+
+    public DeltaVarintColumn(String name, ColumnFunction function, StorageType storageType) {
+        super(name, "varint+delta", ByteOrder.nativeOrder(), function, storageType);
+
+        offsetsColumn = switch (function) {
+            case DATA, DICT -> new OffsetIndexColumn(name, function.offsetsTable());
+            default -> null;
+        };
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page) throws IOException {
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
+        StorageReader storage = Storage.reader(uri, this, page, true, options);
+        try {
+            return new Reader(storage, offsetsColumn != null ? offsetsColumn.openIfUsable(uri, page, options, this) : null);
+        }
+        catch (IOException | RuntimeException e) {
+            storage.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page) throws IOException {
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
+        int interval = options.offsetIndexInterval() > 0 ? options.offsetIndexInterval() : DEFAULT_CHECKPOINT_INTERVAL;
+
+        return new Writer(Storage.writer(path, this, page, options),
+                offsetsColumn != null ? offsetsColumn.createIfEnabled(path, page, options, this) : null,
+                interval);
+    }
+
+    public class Writer implements ColumnWriter {
+        private final StorageWriter writer;
+        private final OffsetIndexColumn.Writer offsetsWriter;
+        private final int interval;
+
+        private long position = 0;
+        private long last = 0;
+
+        private long[] deltas;
+
+        Writer(StorageWriter writer, OffsetIndexColumn.Writer offsetsWriter, int interval) throws IOException {
+            this.writer = writer;
+            this.offsetsWriter = offsetsWriter;
+            this.interval = interval;
+
+            writer.putVarint(interval);
+        }
+
+        @Override
+        public AbstractColumn<?, ?> columnDesc() {
+            return DeltaVarintColumn.this;
+        }
+
+        /** Write a value, which must not be smaller than the value before it
+         *
+         * @throws IllegalArgumentException if the value is negative or smaller than the previous value
+         */
+        public void put(long value) throws IOException {
+            if (position % interval == 0) {
+                checkpoint(value);
+            }
+            else {
+                writer.putVarint(delta(value));
+            }
+
+            last = value;
+            position++;
+        }
+
+        public void put(long[] values) throws IOException {
+            put(values, values.length);
+        }
+
+        /** Write the first n values, which must be in non-decreasing order
+         *
+         * @throws IllegalArgumentException if a value is negative or smaller than the previous value
+         */
+        public void put(long[] values, int n) throws IOException {
+            Objects.checkFromIndexSize(0, n, values.length);
+
+            if (deltas == null) {
+                deltas = new long[BATCH_SIZE];
+            }
+
+            int i = 0;
+            while (i < n) {
+                if (position % interval == 0) {
+                    checkpoint(values[i]);
+                    last = values[i++];
+                    position++;
+                    continue;
+                }
+
+                // the deltas up to the next checkpoint, or as many as fit in the batch
+                int count = (int) Math.min(Math.min(n - i, BATCH_SIZE), interval - position % interval);
+                for (int j = 0; j < count; j++) {
+                    deltas[j] = delta(values[i + j]);
+                    last = values[i + j];
+                }
+
+                writer.putVarints(deltas, count);
+                i += count;
+                position += count;
+            }
+        }
+
+        private void checkpoint(long value) throws IOException {
+            if (value < 0) {
+                throw new IllegalArgumentException("Value must not be negative, was " + value);
+            }
+            if (position > 0 && value < last) {
+                throw new IllegalArgumentException("Values must be non-decreasing, got " + value + " after " + last);
+            }
+            if (offsetsWriter != null) {
+                offsetsWriter.put(position, writer, null);
+            }
+            writer.putVarint(value);
+        }
+
+        private long delta(long value) {
+            long delta = value - last;
+            if (delta < 0 || value < 0) {
+                throw new IllegalArgumentException("Values must be non-negative and non-decreasing, got " + value + " after " + last);
+            }
+            return delta;
+        }
+
+        public long position() {
+            return position;
+        }
+
+        public void close() throws IOException {
+            writer.close();
+            if (offsetsWriter != null) {
+                offsetsWriter.close(position());
+            }
+        }
+    }
+
+    public class Reader implements ColumnReader {
+        private final StorageReader reader;
+        private final OffsetIndexColumn.Reader offsetsReader;
+        private final int interval;
+
+        /** The byte offset of the first value, past the checkpoint interval */
+        private final long dataStart;
+
+        private long position = 0;
+        private long last = 0;
+
+        private long[] scratch;
+
+        Reader(StorageReader reader, OffsetIndexColumn.Reader offsetsReader) throws IOException {
+            this.reader = reader;
+            this.offsetsReader = offsetsReader;
+
+            if (!reader.hasRemaining()) {
+                throw new IOException("Missing checkpoint interval in " + DeltaVarintColumn.this);
+            }
+
+            long interval = reader.getVarint();
+            if (interval <= 0 || interval > Integer.MAX_VALUE) {
+                throw new IOException("Malformed checkpoint interval " + interval + " in " + DeltaVarintColumn.this);
+            }
+            this.interval = (int) interval;
+            this.dataStart = reader.position();
+
+            if (offsetsReader != null && offsetsReader.interval() != interval) {
+                throw new IOException("Offset index interval " + offsetsReader.interval()
+                        + " does not match the checkpoint interval " + interval + " of " + DeltaVarintColumn.this);
+            }
+        }
+
+        @Override
+        public AbstractColumn<?, ?> columnDesc() {
+            return DeltaVarintColumn.this;
+        }
+
+        /** Return the checkpoint interval the column was written with */
+        public int checkpointInterval() {
+            return interval;
+        }
+
+        public long get() throws IOException {
+            long v = reader.getVarint();
+
+            last = (position % interval == 0) ? v : last + v;
+            position++;
+
+            return last;
+        }
+
+        /** Read the next n values into the start of dst */
+        public void get(long[] dst, int n) throws IOException {
+            Objects.checkFromIndexSize(0, n, dst.length);
+
+            reader.getVarints(dst, n);
+
+            // turn the deltas into values, restarting from the absolute value at each checkpoint
+            long value = last;
+            int sinceCheckpoint = (int) (position % interval);
+            for (int i = 0; i < n; i++) {
+                if (sinceCheckpoint == 0) {
+                    value = dst[i];
+                }
+                else {
+                    value += dst[i];
+                }
+                dst[i] = value;
+
+                if (++sinceCheckpoint == interval) {
+                    sinceCheckpoint = 0;
+                }
+            }
+
+            last = value;
+            position += n;
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public void skip(long positions) throws IOException {
+            if (offsetsReader != null && positions >= offsetsReader.interval()) {
+                seek(position + positions);
+            }
+            else {
+                skipRows(positions);
+            }
+        }
+
+        /** Move to the given row.
+         * <p></p>
+         * If the column has an offset index, this skips at most one checkpoint interval
+         * worth of rows, and can move backwards.  Otherwise, the rows in between are
+         * decoded, and the reader can only move forward.
+         */
+        @Override
+        public void seek(long row) throws IOException {
+            if (offsetsReader != null) {
+                position = offsetsReader.seek(row, reader, null);
+
+                // an empty column has no indexed rows, and the index seeks it to the
+                // start of the file, which holds the checkpoint interval
+                if (position == 0) {
+                    reader.seek(dataStart, 1);
+                }
+
+                skipRows(row - position);
+            }
+            else {
+                ColumnReader.super.seek(row);
+            }
+        }
+
+        private void skipRows(long rows) throws IOException {
+            if (rows <= 0) {
+                return;
+            }
+
+            if (scratch == null) {
+                scratch = new long[BATCH_SIZE];
+            }
+
+            while (rows > 0) {
+                int n = (int) Math.min(rows, BATCH_SIZE);
+                get(scratch, n);
+                rows -= n;
+            }
+        }
+
+        @Override
+        public boolean hasRemaining() throws IOException {
+            return reader.hasRemaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+            if (offsetsReader != null) {
+                offsetsReader.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package nu.marginalia.slop.column.dynamic;
+
+import nu.marginalia.slop.column.AbstractColumn;
+import nu.marginalia.slop.column.ColumnReader;
+import nu.marginalia.slop.column.ColumnWriter;
+import nu.marginalia.slop.desc.ColumnFunction;
+import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.Storage;
+import nu.marginalia.slop.storage.StorageOptions;
+import nu.marginalia.slop.storage.StorageReader;
+import nu.marginalia.slop.storage.StorageWriter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/** An offset index for a variable-length column, holding the byte offsets into the
+ * data and length columns of every interval:th row.  Columns without a length column,
+ * e.g. varint or delimited string columns, record 0 as the lengths offset.
+ * <p></p>
+ * This lets a reader seek to a row by seeking both columns to the closest indexed
+ * row before it, and skipping at most interval - 1 rows from there, rather than
+ * decoding the lengths of every row before it.
+ * <p></p>
+ * The index is written when {@link StorageOptions#offsetIndexInterval()} is positive,
+ * and is picked up by the readers of the variable-length columns when it exists and the
+ * option is positive when reading as well.  Writing a column without an index removes
+ * any index left over from an earlier version of the page.
+ * <p></p>
+ * It is stored as little-endian longs: a header of the interval, the size of the data
+ * file and the number of rows, followed by a (data offset, lengths offset) pair for each
+ * indexed row.  An index whose header does not match its data column, e.g. one copied
+ * along with a different version of the data, is ignored, as seeking with it would
+ * land on the wrong offsets.
+ */
+public class OffsetIndexColumn extends AbstractColumn<OffsetIndexColumn.Reader, OffsetIndexColumn.Writer> {
+
+    public OffsetIndexColumn(String name, ColumnFunction function) {
+        super(name, "s64le[]+offsets", ByteOrder.LITTLE_ENDIAN, function, StorageType.PLAIN);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page) throws IOException {
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
+        if (!uri.getScheme().equals("file")) {
+            throw new UnsupportedOperationException("Offset indexes are only supported for local files, not " + uri.getScheme());
+        }
+
+        return new Reader(Files.readAllBytes(Path.of(uri).resolve(fileName(page))));
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page) throws IOException {
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
+        if (options.offsetIndexInterval() <= 0) {
+            throw new IllegalArgumentException("Offset index interval must be positive, was " + options.offsetIndexInterval());
+        }
+
+        return new Writer(Storage.writer(path, this, page, options), options.offsetIndexInterval(), null);
+    }
+
+    /** Create a writer for the index of the given data column if the options ask for one.
+     * Otherwise, remove any index left over from an earlier version of the page, and return null.
+     * <p></p>
+     * The data column must be closed before the index, which records its size.
+     */
+    public Writer createIfEnabled(Path path, int page, StorageOptions options, AbstractColumn<?, ?> dataColumn) throws IOException {
+        if (options.offsetIndexInterval() <= 0) {
+            Files.deleteIfExists(path.resolve(fileName(page)));
+            return null;
+        }
+
+        return new Writer(Storage.writer(path, this, page, options), options.offsetIndexInterval(),
+                path.resolve(dataColumn.fileName(page)));
+    }
+
+    /** Open the index if the options ask for indexes, and it exists and can be used with
+     * the given data column, otherwise return null.
+     * <p></p>
+     * The data column needs to support seeking, which rules out network storage, and
+     * stream compressed columns unless they are materialized.
+     */
+    public Reader openIfUsable(URI uri, int page, StorageOptions options, AbstractColumn<?, ?> dataColumn) throws IOException {
+        if (options.offsetIndexInterval() <= 0 || !uri.getScheme().equals("file")) {
+            return null;
+        }
+
+        if ((dataColumn.storageType == StorageType.GZIP || dataColumn.storageType == StorageType.ZSTD)
+                && !options.materializeCompressed()) {
+            return null;
+        }
+
+        Path dir = Path.of(uri);
+        Reader reader;
+        try {
+            reader = new Reader(Files.readAllBytes(dir.resolve(fileName(page))));
+        }
+        catch (NoSuchFileException e) {
+            return null;
+        }
+
+        // stale, or written before the header was
+        if (reader.dataSize != Files.size(dir.resolve(dataColumn.fileName(page)))
+                || (reader.rows + reader.interval - 1) / reader.interval != reader.dataOffsets.length) {
+            return null;
+        }
+
+        return reader;
+    }
+
+    /** The writer keeps the index in memory, and writes it when it is closed,
+     * as the header records the final size of the data.
+     */
+    public class Writer implements ColumnWriter {
+        private final StorageWriter storage;
+        private final int interval;
+        /** The data file, or null if the index was created without one */
+        private final Path dataFile;
+
+        private long[] offsets = new long[32];
+        private int position = 0;
+        /** The number of rows seen by put */
+        private long rows = 0;
+
+        Writer(StorageWriter storage, int interval, Path dataFile) {
+            this.storage = storage;
+            this.interval = interval;
+            this.dataFile = dataFile;
+        }
+
+        @Override
+        public AbstractColumn<?, ?> columnDesc() {
+            return OffsetIndexColumn.this;
+        }
+
+        /** Record where the given row begins, if it is one of the indexed rows.
+         * This is to be called before the row is written.
+         *
+         * @param lengths the length column of the data, or null if it has none
+         */
+        public void put(long row, StorageWriter data, VarintColumn.Writer lengths) throws IOException {
+            rows = Math.max(rows, row + 1);
+
+            if (row % interval != 0) {
+                return;
+            }
+
+            if (2 * position + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            }
+            offsets[2 * position] = data.position();
+            offsets[2 * position + 1] = lengths != null ? lengths.byteOffset() : 0;
+            position++;
+        }
+
+        /** Return the number of indexed rows */
+        @Override
+        public long position() {
+            return position;
+        }
+
+        /** Write the index of a data column with the given number of rows, which
+         * must be closed first, and close the writer.
+         */
+        public void close(long rows) throws IOException {
+            if ((rows + interval - 1) / interval != position) {
+                storage.close();
+                throw new IllegalStateException("Offset index of " + position + " rows does not cover " + rows + " rows");
+            }
+
+            storage.putLong(interval);
+            storage.putLong(dataFile != null ? Files.size(dataFile) : 0);
+            storage.putLong(rows);
+            storage.putLongs(offsets, 0, 2 * position);
+            storage.close();
+        }
+
+        /** Close the writer, taking the number of rows to be one past the last row given to put */
+        @Override
+        public void close() throws IOException {
+            close(rows);
+        }
+    }
+
+    /** The reader loads the entire index into memory, which is small compared to the
+     * column it indexes.  As a ColumnReader, its position is that of a cursor over the
+     * indexed rows, which is not used for seeking.
+     */
+    public class Reader implements ColumnReader {
+        private final int interval;
+        /** The size of the data file when the index was written */
+        private final long dataSize;
+        private final long rows;
+        private final long[] dataOffsets;
+        private final long[] lengthsOffsets;
+
+        private long position = 0;
+
+        Reader(byte[] data) throws IOException {
+            LongBuffer index = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+
+            if (index.remaining() < 3 || index.remaining() % 2 != 1) {
+                throw new IOException("Malformed offset index " + OffsetIndexColumn.this);
+            }
+
+            interval = (int) index.get();
+            dataSize = index.get();
+            rows = index.get();
+            if (interval <= 0) {
+                throw new IOException("Malformed offset index " + OffsetIndexColumn.this + ", interval " + interval);
+            }
+
+            int n = index.remaining() / 2;
+            dataOffsets = new long[n];
+            lengthsOffsets = new long[n];
+
+            for (int i = 0; i < n; i++) {
+                dataOffsets[i] = index.get();
+                lengthsOffsets[i] = index.get();
+            }
+        }
+
+        @Override
+        public AbstractColumn<?, ?> columnDesc() {
+            return OffsetIndexColumn.this;
+        }
+
+        public int interval() {
+            return interval;
+        }
+
+        /** Return the number of rows in the indexed column */
+        public long rows() {
+            return rows;
+        }
+
+        /** Seek the data and length columns to the closest indexed row at or before the given row,
+         * and return that row.  The caller needs to skip the remaining rows itself.
+         *
+         * @param lengths the length column of the data, or null if it has none
+         */
+        public long seek(long row, StorageReader data, VarintColumn.Reader lengths) throws IOException {
+            if (row < 0) {
+                throw new IllegalArgumentException("Negative row " + row);
+            }
+
+            if (dataOffsets.length == 0) { // empty column
+                data.seek(0, 1);
+                if (lengths != null) {
+                    lengths.seek(0, 0);
+                }
+                return 0;
+            }
+
+            int entry = (int) Math.min(row / interval, dataOffsets.length - 1);
+
+            data.seek(dataOffsets[entry], 1);
+            if (lengths != null) {
+                lengths.seek((long) entry * interval, lengthsOffsets[entry]);
+            }
+
+            return (long) entry * interval;
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public void skip(long positions) {
+            position += positions;
+        }
+
+        @Override
+        public boolean hasRemaining() {
+            return position < dataOffsets.length;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package nu.marginalia.slop.column.dynamic;
+
+import nu.marginalia.slop.column.AbstractColumn;
+import nu.marginalia.slop.column.IntColumnReader;
+import nu.marginalia.slop.column.IntColumnWriter;
+import nu.marginalia.slop.desc.ColumnFunction;
+import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.Storage;
+import nu.marginalia.slop.storage.StorageOptions;
+import nu.marginalia.slop.storage.StorageReader;
+import nu.marginalia.slop.storage.StorageWriter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+/** A run-length encoded column of ints, for columns with long runs of the same value,
+ * e.g. the domain id or HTTP status of a table that is sorted by domain.
+ * <p></p>
+ * Each run is stored as its value, as a zigzag encoded varint so that small negative
+ * values stay small, followed by its length as a varint.  Skipping rows costs one
+ * run header per run skipped rather than anything per row.
+ * <p></p>
+ * Besides reading row by row, the reader gives access to the runs themselves, so that
+ * e.g. an aggregation can handle a whole run at once:
+ * <pre>{@code
+ * while (reader.hasRemaining()) {
+ *     int status = reader.runValue();
+ *     long rows = reader.runRemaining();
+ *
+ *     counts.merge(status, rows, Long::sum);
+ *     reader.skip(rows);
+ * }
+ * }</pre>
+ */
+public class RunLengthIntColumn extends AbstractColumn<RunLengthIntColumn.Reader, RunLengthIntColumn.Writer> {
+
+    public RunLengthIntColumn(String name) {
+        this(name, ColumnFunction.DATA, StorageType.PLAIN);
+    }
+
+    public RunLengthIntColumn(String name, StorageType storageType) {
+        this(name, ColumnFunction.DATA, storageType);
+    }
+
+    public RunLengthIntColumn(String name, ColumnFunction function, StorageType storageType) {
+        super(name, "varint+rle", ByteOrder.nativeOrder(), function, storageType);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page) throws IOException {
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
+        return new Reader(Storage.reader(uri, this, page, true, options));
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page) throws IOException {
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
+        return new Writer(Storage.writer(path, this, page, options));
+    }
+
+    public class Writer implements IntColumnWriter {
+        private final StorageWriter storage;
+
+        private int runValue;
+        private long runLength = 0;
+
+        private long position = 0;
+
+        Writer(StorageWriter storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public AbstractColumn<?, ?> columnDesc() {
+            return RunLengthIntColumn.this;
+        }
+
+        public void put(int value) throws IOException {
+            put(value, 1);
+        }
+
+        @Override
+        public void put(int value, long count) throws IOException {
+            if (count < 0) {
+                throw new IllegalArgumentException("Negative count " + count);
+            }
+            if (count == 0) {
+                return;
+            }
+
+            if (runLength > 0 && value != runValue) {
+                flushRun();
+            }
+
+            runValue = value;
+            runLength += count;
+            position += count;
+        }
+
+        public void put(int[] values) throws IOException {
+            put(values, values.length);
+        }
+
+        /** Write the first n values */
+        public void put(int[] values, int n) throws IOException {
+            Objects.checkFromIndexSize(0, n, values.length);
+
+            for (int i = 0; i < n; i++) {
+                put(values[i], 1);
+            }
+        }
+
+        private void flushRun() throws IOException {
+            storage.putVarint((runValue << 1 ^ runValue >> 31) & 0xFFFF_FFFFL);
+            storage.putVarint(runLength);
+            runLength = 0;
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (runLength > 0) {
+                flushRun();
+            }
+            storage.close();
+        }
+    }
+
+    public class Reader implements IntColumnReader {
+        private final StorageReader storage;
+
+        private int runValue;
+        /** The number of rows left in the current run */
+        private long runRemaining = 0;
+
+        private long position = 0;
+
+        Reader(StorageReader storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public AbstractColumn<?, ?> columnDesc() {
+            return RunLengthIntColumn.this;
+        }
+
+        private void nextRun() throws IOException {
+            int zigzag = (int) storage.getVarint();
+            long length = storage.getVarint();
+
+            if (length <= 0) {
+                throw new IOException("Malformed run of length " + length + " in " + RunLengthIntColumn.this);
+            }
+
+            runValue = zigzag >>> 1 ^ -(zigzag & 1);
+            runRemaining = length;
+        }
+
+        @Override
+        public int get() throws IOException {
+            if (runRemaining == 0) {
+                nextRun();
+            }
+
+            runRemaining--;
+            position++;
+
+            return runValue;
+        }
+
+        public void get(int[] dst) throws IOException {
+            get(dst, dst.length);
+        }
+
+        /** Read the next n values into the start of dst */
+        public void get(int[] dst, int n) throws IOException {
+            Objects.checkFromIndexSize(0, n, dst.length);
+
+            int i = 0;
+            while (i < n) {
+                if (runRemaining == 0) {
+                    nextRun();
+                }
+
+                int count = (int) Math.min(n - i, runRemaining);
+                Arrays.fill(dst, i, i + count, runValue);
+
+                runRemaining -= count;
+                i += count;
+            }
+
+            position += n;
+        }
+
+        /** Return the value of the run that the next row belongs to, without consuming it */
+        public int runValue() throws IOException {
+            if (runRemaining == 0) {
+                nextRun();
+            }
+            return runValue;
+        }
+
+        /** Return the number of rows from the next row to the end of its run, including the next row.
+         * Skipping this many rows moves the reader to the start of the next run.
+         */
+        public long runRemaining() throws IOException {
+            if (runRemaining == 0) {
+                nextRun();
+            }
+            return runRemaining;
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        /** Skip the given number of rows, reading one run header per run skipped */
+        @Override
+        public void skip(long positions) throws IOException {
+            if (positions < 0) {
+                throw new IllegalArgumentException("Negative skip " + positions);
+            }
+
+            long remaining = positions;
+            while (remaining > 0) {
+                if (runRemaining == 0) {
+                    nextRun();
+                }
+
+                long count = Math.min(remaining, runRemaining);
+                runRemaining -= count;
+                remaining -= count;
+            }
+
+            position += positions;
+        }
+
+        /** Move to the given row.  Moving forward skips runs by their headers, and moving
+         * backwards starts over from the beginning of the column, which needs the storage
+         * to support seeking.
+         */
+        @Override
+        public void seek(long row) throws IOException {
+            if (row < position) {
+                storage.seek(0, 1);
+                runRemaining = 0;
+                position = 0;
+            }
+
+            skip(row - position);
+        }
+
+        @Override
+        public boolean hasRemaining() throws IOException {
+            return runRemaining > 0 || storage.hasRemaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            storage.close();
+        }
+    }
+}
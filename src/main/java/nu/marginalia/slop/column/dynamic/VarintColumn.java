@@ -1,11 +1,12 @@
 package nu.marginalia.slop.column.dynamic;
 
 import nu.marginalia.slop.column.AbstractColumn;
-import nu.marginalia.slop.column.ColumnReader;
-import nu.marginalia.slop.column.ColumnWriter;
+import nu.marginalia.slop.column.IntColumnReader;
+import nu.marginalia.slop.column.IntColumnWriter;
 import nu.marginalia.slop.desc.ColumnFunction;
 import nu.marginalia.slop.desc.StorageType;
 import nu.marginalia.slop.storage.Storage;
+import nu.marginalia.slop.storage.StorageOptions;
 import nu.marginalia.slop.storage.StorageReader;
 import nu.marginalia.slop.storage.StorageWriter;
 
@@ -13,9 +14,14 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteOrder;
 import java.nio.file.Path;
+import java.util.Objects;
 
 public class VarintColumn extends AbstractColumn<VarintColumn.Reader, VarintColumn.Writer> {
 
+    /** The offset index of the column, or null for the length columns of other columns,
+     * which are indexed along with the column they belong to */
+    private final OffsetIndexColumn offsetsColumn;
+
     public VarintColumn(String name) {
         this(name, ColumnFunction.DATA, StorageType.PLAIN);
     }
@@ -26,24 +32,43 @@ public class VarintColumn extends AbstractColumn<VarintColumn.Reader, VarintColu
 
     public VarintColumn(String name, ColumnFunction function, StorageType storageType) {
         super(name, "varint", ByteOrder.nativeOrder(), function, storageType);
+
+        offsetsColumn = switch (function) {
+            case DATA, DICT -> new OffsetIndexColumn(name, function.offsetsTable());
+            default -> null;
+        };
     }
 
     @Override
     public Reader openUnregistered(URI uri, int page) throws IOException {
-        return new VarintColumn.Reader(Storage.reader(uri, this, page, true));
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
+        return new VarintColumn.Reader(Storage.reader(uri, this, page, true, options),
+                offsetsColumn != null ? offsetsColumn.openIfUsable(uri, page, options, this) : null);
     }
 
     @Override
     public Writer createUnregistered(Path path, int page) throws IOException {
-        return new VarintColumn.Writer(Storage.writer(path, this, page));
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
+        return new VarintColumn.Writer(Storage.writer(path, this, page, options),
+                offsetsColumn != null ? offsetsColumn.createIfEnabled(path, page, options, this) : null);
     }
 
-    public class Writer implements ColumnWriter {
+    public class Writer implements IntColumnWriter {
         private final StorageWriter writer;
+        private final OffsetIndexColumn.Writer offsetsWriter;
         private long position = 0;
 
-        Writer(StorageWriter writer) {
+        Writer(StorageWriter writer, OffsetIndexColumn.Writer offsetsWriter) {
             this.writer = writer;
+            this.offsetsWriter = offsetsWriter;
         }
 
         @Override
@@ -51,81 +76,67 @@ public class VarintColumn extends AbstractColumn<VarintColumn.Reader, VarintColu
             return VarintColumn.this;
         }
 
+        /** Return the number of bytes written so far */
+        public long byteOffset() throws IOException {
+            return writer.position();
+        }
+
         public void put(long value) throws IOException {
-            position++;
+            if (offsetsWriter != null) {
+                offsetsWriter.put(position, writer, null);
+            }
 
-            if (value < 0)
-                throw new IllegalArgumentException("Value must be positive");
+            writer.putVarint(value);
+            position++;
+        }
 
-            if (value < (1<<7)) {
-                writer.putByte((byte) value);
-            }
-            else if (value < (1<<14)) {
-                writer.putByte((byte) (value >>> (7) | 0x80));
-                writer.putByte((byte) (value & 0x7F));
-            }
-            else if (value < (1<<21)) {
-                writer.putByte((byte) ((value >>> 14) | 0x80));
-                writer.putByte((byte) ((value >>> 7) | 0x80));
-                writer.putByte((byte) (value & 0x7F));
-            }
-            else if (value < (1<<28)) {
-                writer.putByte((byte) ((value >>> 21) | 0x80));
-                writer.putByte((byte) ((value >>> 14) | 0x80));
-                writer.putByte((byte) ((value >>> 7) | 0x80));
-                writer.putByte((byte) (value & 0x7F));
-            }
-            else if (value < (1L<<35)) {
-                writer.putByte((byte) ((value >>> 28) | 0x80));
-                writer.putByte((byte) ((value >>> 21) | 0x80));
-                writer.putByte((byte) ((value >>> 14) | 0x80));
-                writer.putByte((byte) ((value >>> 7) | 0x80));
-                writer.putByte((byte) (value & 0x7F));
-            }
-            else if (value < (1L<<42)) {
-                writer.putByte((byte) ((value >>> 35) | 0x80));
-                writer.putByte((byte) ((value >>> 28) | 0x80));
-                writer.putByte((byte) ((value >>> 21) | 0x80));
-                writer.putByte((byte) ((value >>> 14) | 0x80));
-                writer.putByte((byte) ((value >>> 7) | 0x80));
-                writer.putByte((byte) (value & 0x7F));
-            }
-            else if (value < (1L<<49)) {
-                writer.putByte((byte) ((value >>> 42) | 0x80));
-                writer.putByte((byte) ((value >>> 35) | 0x80));
-                writer.putByte((byte) ((value >>> 28) | 0x80));
-                writer.putByte((byte) ((value >>> 21) | 0x80));
-                writer.putByte((byte) ((value >>> 14) | 0x80));
-                writer.putByte((byte) ((value >>> 7) | 0x80));
-                writer.putByte((byte) (value & 0x7F));
-            }
-            else if (value < (1L<<56)) {
-                writer.putByte((byte) ((value >>> 49) | 0x80));
-                writer.putByte((byte) ((value >>> 42) | 0x80));
-                writer.putByte((byte) ((value >>> 35) | 0x80));
-                writer.putByte((byte) ((value >>> 28) | 0x80));
-                writer.putByte((byte) ((value >>> 21) | 0x80));
-                writer.putByte((byte) ((value >>> 14) | 0x80));
-                writer.putByte((byte) ((value >>> 7) | 0x80));
-                writer.putByte((byte) (value & 0x7F));
+        @Override
+        public void put(int value, long count) throws IOException {
+            if (count < 0) {
+                throw new IllegalArgumentException("Negative count " + count);
             }
-            else {
-                writer.putByte((byte) ((value >>> 56) | 0x80));
-                writer.putByte((byte) ((value >>> 49) | 0x80));
-                writer.putByte((byte) ((value >>> 42) | 0x80));
-                writer.putByte((byte) ((value >>> 35) | 0x80));
-                writer.putByte((byte) ((value >>> 28) | 0x80));
-                writer.putByte((byte) ((value >>> 21) | 0x80));
-                writer.putByte((byte) ((value >>> 14) | 0x80));
-                writer.putByte((byte) ((value >>> 7) | 0x80));
-                writer.putByte((byte) (value & 0x7F));
+
+            for (long i = 0; i < count; i++) {
+                put(value);
             }
         }
 
         public void put(long[] values) throws IOException {
-            for (long val : values) {
-                put(val);
+            put(values, values.length);
+        }
+
+        public void put(int[] values) throws IOException {
+            put(values, values.length);
+        }
+
+        /** Write the first n values */
+        public void put(long[] values, int n) throws IOException {
+            Objects.checkFromIndexSize(0, n, values.length);
+
+            if (offsetsWriter != null) { // the indexed rows need to be visited one by one
+                for (int i = 0; i < n; i++) {
+                    put(values[i]);
+                }
+                return;
+            }
+
+            writer.putVarints(values, n);
+            position += n;
+        }
+
+        /** Write the first n values */
+        public void put(int[] values, int n) throws IOException {
+            Objects.checkFromIndexSize(0, n, values.length);
+
+            if (offsetsWriter != null) { // the indexed rows need to be visited one by one
+                for (int i = 0; i < n; i++) {
+                    put(values[i]);
+                }
+                return;
             }
+
+            writer.putVarints(values, n);
+            position += n;
         }
 
         public long position() {
@@ -134,16 +145,21 @@ public class VarintColumn extends AbstractColumn<VarintColumn.Reader, VarintColu
 
         public void close() throws IOException {
             writer.close();
+            if (offsetsWriter != null) {
+                offsetsWriter.close(position());
+            }
         }
     }
 
-    public class Reader implements ColumnReader {
+    public class Reader implements IntColumnReader {
         private final StorageReader reader;
+        private final OffsetIndexColumn.Reader offsetsReader;
 
         private long position = 0;
 
-        Reader(StorageReader reader) {
+        Reader(StorageReader reader, OffsetIndexColumn.Reader offsetsReader) {
             this.reader = reader;
+            this.offsetsReader = offsetsReader;
         }
 
         @Override
@@ -151,39 +167,33 @@ public class VarintColumn extends AbstractColumn<VarintColumn.Reader, VarintColu
             return VarintColumn.this;
         }
 
+        @Override
         public int get() throws IOException {
             position++;
 
-            byte b = reader.getByte();
-            if ((b & 0x80) == 0) {
-                return b;
-            }
-
-            int value = b & 0x7F;
-            do {
-                b = reader.getByte();
-                value = (value << 7) | (b & 0x7F);
-            } while ((b & 0x80) != 0);
-
-
-            return value;
+            return (int) reader.getVarint();
         }
 
         public long getLong() throws IOException {
             position++;
 
-            byte b = reader.getByte();
-            if ((b & 0x80) == 0) {
-                return b;
-            }
+            return reader.getVarint();
+        }
+
+        /** Read the next n values into the start of dst, truncating them to int */
+        public void get(int[] dst, int n) throws IOException {
+            Objects.checkFromIndexSize(0, n, dst.length);
+
+            reader.getVarints(dst, n);
+            position += n;
+        }
 
-            long value = b & 0x7F;
-            do {
-                b = reader.getByte();
-                value = value << 7 | (b & 0x7F);
-            } while ((b & 0x80) != 0);
+        /** Read the next n values into the start of dst */
+        public void get(long[] dst, int n) throws IOException {
+            Objects.checkFromIndexSize(0, n, dst.length);
 
-            return value;
+            reader.getVarints(dst, n);
+            position += n;
         }
 
         @Override
@@ -191,9 +201,43 @@ public class VarintColumn extends AbstractColumn<VarintColumn.Reader, VarintColu
             return position;
         }
 
+        /** Move to the given row, which must begin at the given byte offset,
+         * e.g. as recorded by an {@link OffsetIndexColumn}
+         */
+        public void seek(long row, long byteOffset) throws IOException {
+            reader.seek(byteOffset, 1);
+            position = row;
+        }
+
         @Override
         public void skip(long positions) throws IOException {
-            for (long i = 0; i < positions; i++) {
+            if (offsetsReader != null && positions >= offsetsReader.interval()) {
+                seek(position + positions);
+            }
+            else {
+                skipRows(positions);
+            }
+        }
+
+        /** Move to the given row.
+         * <p></p>
+         * If the column has an offset index, this skips at most one index interval worth
+         * of rows, and can move backwards.  Otherwise, the rows in between are skipped
+         * one by one, and the reader can only move forward.
+         */
+        @Override
+        public void seek(long row) throws IOException {
+            if (offsetsReader != null) {
+                position = offsetsReader.seek(row, reader, null);
+                skipRows(row - position);
+            }
+            else {
+                IntColumnReader.super.seek(row);
+            }
+        }
+
+        private void skipRows(long rows) throws IOException {
+            for (long i = 0; i < rows; i++) {
                 get();
             }
         }
@@ -206,6 +250,9 @@ public class VarintColumn extends AbstractColumn<VarintColumn.Reader, VarintColu
         @Override
         public void close() throws IOException {
             reader.close();
+            if (offsetsReader != null) {
+                offsetsReader.close();
+            }
         }
     }
 }
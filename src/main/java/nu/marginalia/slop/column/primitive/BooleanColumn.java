@@ -0,0 +1,371 @@
+package nu.marginalia.slop.column.primitive;
+
+import nu.marginalia.slop.column.AbstractColumn;
+import nu.marginalia.slop.column.ColumnReader;
+import nu.marginalia.slop.column.ColumnWriter;
+import nu.marginalia.slop.desc.ColumnFunction;
+import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.Storage;
+import nu.marginalia.slop.storage.StorageOptions;
+import nu.marginalia.slop.storage.StorageReader;
+import nu.marginalia.slop.storage.StorageWriter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+/** A column of booleans, packed as bits, eight rows per byte.
+ * <p></p>
+ * The rows are stored as little-endian longs of 64 rows each, with row i in bit i % 64
+ * of long i / 64.  After the last row comes a single set bit, which marks the end of the
+ * column, and the rest of the last long is zero.  The reader recognizes the last long by
+ * it being the end of the file, so the column needs no header or row count.
+ * <p></p>
+ * Besides reading a row at a time, rows can be read a long at a time into bitmaps in the
+ * same layout, e.g. as the selection vector of a filtered scan, and counted with a popcount
+ * of each long.  Skipping within a long is a shift, and seeking computes the position of
+ * the long directly.
+ */
+public class BooleanColumn extends AbstractColumn<BooleanColumn.Reader, BooleanColumn.Writer> {
+
+    public BooleanColumn(String name) {
+        this(name, ColumnFunction.DATA, StorageType.PLAIN);
+    }
+
+    public BooleanColumn(String name, StorageType storageType) {
+        this(name, ColumnFunction.DATA, storageType);
+    }
+
+    public BooleanColumn(String name, ColumnFunction function, StorageType storageType) {
+        super(name, "bits", ByteOrder.LITTLE_ENDIAN, function, storageType);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page) throws IOException {
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
+        return new Reader(Storage.reader(uri, this, page, true, options));
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page) throws IOException {
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
+        return new Writer(Storage.writer(path, this, page, options));
+    }
+
+    /** Return a mask of the lowest n bits, for n between 0 and 64 */
+    private static long lowBits(int n) {
+        return n == 64 ? -1L : (1L << n) - 1;
+    }
+
+    public class Writer implements ColumnWriter {
+        private final StorageWriter storage;
+
+        /** The rows of the long being filled in, and how many of them there are */
+        private long word = 0;
+        private int bits = 0;
+
+        private long position = 0;
+
+        Writer(StorageWriter storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public AbstractColumn<?, ?> columnDesc() {
+            return BooleanColumn.this;
+        }
+
+        public void put(boolean value) throws IOException {
+            if (value) {
+                word |= 1L << bits;
+            }
+
+            if (++bits == 64) {
+                storage.putLong(word);
+                word = 0;
+                bits = 0;
+            }
+            position++;
+        }
+
+        public void put(boolean[] values) throws IOException {
+            put(values, 0, values.length);
+        }
+
+        public void put(boolean[] values, int offset, int length) throws IOException {
+            Objects.checkFromIndexSize(offset, length, values.length);
+
+            for (int i = offset; i < offset + length; i++) {
+                put(values[i]);
+            }
+        }
+
+        /** Write n rows from a bitmap, with row i in bit i % 64 of bitmap[i / 64] */
+        public void putBits(long[] bitmap, int n) throws IOException {
+            Objects.checkFromIndexSize(0, (n + 63) / 64, bitmap.length);
+
+            for (int i = 0; i < n; i += 64) {
+                int count = Math.min(64, n - i);
+                long value = bitmap[i >>> 6] & lowBits(count);
+
+                word |= value << bits;
+
+                if (bits + count >= 64) {
+                    storage.putLong(word);
+
+                    // the part of the value that didn't fit, which is all of it if the word was empty
+                    word = bits == 0 ? 0 : value >>> (64 - bits);
+                    bits = bits + count - 64;
+                }
+                else {
+                    bits += count;
+                }
+            }
+
+            position += n;
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the end marker, which goes in a long of its own if the last one is full
+            storage.putLong(word | 1L << bits);
+            storage.close();
+        }
+    }
+
+    public class Reader implements ColumnReader {
+        private final StorageReader storage;
+
+        /** The unread rows of the current long, shifted down so that the next row is bit 0 */
+        private long word = 0;
+        private int bitsLeft = 0;
+        /** True once the last long, with the end marker, has been loaded */
+        private boolean last = false;
+
+        private long position = 0;
+
+        Reader(StorageReader storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public AbstractColumn<?, ?> columnDesc() {
+            return BooleanColumn.this;
+        }
+
+        private void loadWord() throws IOException {
+            if (last) {
+                throw new IOException("Read past the end of " + BooleanColumn.this);
+            }
+
+            word = storage.getLong();
+
+            if (storage.hasRemaining()) {
+                bitsLeft = 64;
+            }
+            else {
+                int end = 63 - Long.numberOfLeadingZeros(word);
+                if (end < 0) {
+                    throw new IOException("Missing end marker in " + BooleanColumn.this);
+                }
+
+                word &= ~(1L << end);
+                bitsLeft = end;
+                last = true;
+            }
+        }
+
+        /** Consume n rows of the current long, for n up to bitsLeft */
+        private void consume(int n) {
+            word = n == 64 ? 0 : word >>> n;
+            bitsLeft -= n;
+        }
+
+        public boolean get() throws IOException {
+            if (bitsLeft == 0) {
+                loadWord();
+            }
+
+            boolean value = (word & 1) != 0;
+            consume(1);
+            position++;
+
+            return value;
+        }
+
+        public void get(boolean[] dst) throws IOException {
+            get(dst, 0, dst.length);
+        }
+
+        public void get(boolean[] dst, int offset, int length) throws IOException {
+            Objects.checkFromIndexSize(offset, length, dst.length);
+
+            for (int i = offset; i < offset + length; i++) {
+                dst[i] = get();
+            }
+        }
+
+        /** Read the next n rows into a bitmap, with row i in bit i % 64 of dst[i / 64].
+         * The bits past the n:th in the last long are cleared.
+         */
+        public void getBits(long[] dst, int n) throws IOException {
+            int words = (n + 63) / 64;
+            Objects.checkFromIndexSize(0, words, dst.length);
+            Arrays.fill(dst, 0, words, 0L);
+
+            int i = 0;
+            while (i < n) {
+                if (bitsLeft == 0) {
+                    loadWord();
+                }
+
+                int count = Math.min(Math.min(bitsLeft, n - i), 64 - (i & 63));
+                dst[i >>> 6] |= (word & lowBits(count)) << (i & 63);
+
+                consume(count);
+                i += count;
+            }
+
+            position += n;
+        }
+
+        /** Return the value of the next row without consuming it */
+        public boolean peek() throws IOException {
+            if (bitsLeft == 0) {
+                loadWord();
+            }
+            return (word & 1) != 0;
+        }
+
+        /** Skip rows up to the next true value, or the end of the column, and return the number of rows skipped */
+        public long skipFalse() throws IOException {
+            long skipped = 0;
+
+            while (bitsLeft > 0 || !last) {
+                if (bitsLeft == 0) {
+                    loadWord();
+                    continue;
+                }
+
+                int zeros = Math.min(Long.numberOfTrailingZeros(word), bitsLeft);
+                consume(zeros);
+                skipped += zeros;
+
+                if (bitsLeft > 0) {
+                    break;
+                }
+            }
+
+            position += skipped;
+            return skipped;
+        }
+
+        /** Return the number of true values in the next n rows, and advance past them */
+        public long countTrue(long n) throws IOException {
+            if (n < 0) {
+                throw new IllegalArgumentException("Negative count " + n);
+            }
+
+            long count = 0;
+            long remaining = n;
+
+            while (remaining > 0) {
+                if (bitsLeft == 0) {
+                    loadWord();
+                }
+
+                int take = (int) Math.min(bitsLeft, remaining);
+                count += Long.bitCount(word & lowBits(take));
+
+                consume(take);
+                remaining -= take;
+            }
+
+            position += n;
+            return count;
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        /** Skip the given number of rows.  Within a long this is a shift, and whole longs are
+         * skipped in the storage without reading them.
+         */
+        @Override
+        public void skip(long positions) throws IOException {
+            if (positions < 0) {
+                throw new IllegalArgumentException("Negative skip " + positions);
+            }
+
+            long remaining = positions;
+
+            int inWord = (int) Math.min(bitsLeft, remaining);
+            consume(inWord);
+            remaining -= inWord;
+
+            if (remaining > 0) {
+                storage.skip(remaining / 64, Long.BYTES);
+                loadWord();
+
+                int rest = (int) (remaining % 64);
+                if (rest > bitsLeft) {
+                    throw new IOException("Skip past the end of " + BooleanColumn.this);
+                }
+                consume(rest);
+            }
+
+            position += positions;
+        }
+
+        /** Move to the given row, by seeking to the long that holds it */
+        @Override
+        public void seek(long row) throws IOException {
+            if (row < 0) {
+                throw new IllegalArgumentException("Negative row " + row);
+            }
+
+            storage.seek(row / 64, Long.BYTES);
+            last = false;
+            loadWord();
+
+            int rest = (int) (row % 64);
+            if (rest > bitsLeft) {
+                throw new IOException("Seek past the end of " + BooleanColumn.this);
+            }
+            consume(rest);
+
+            position = row;
+        }
+
+        @Override
+        public boolean hasRemaining() throws IOException {
+            if (bitsLeft == 0 && !last) {
+                loadWord();
+            }
+            return bitsLeft > 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            storage.close();
+        }
+    }
+}
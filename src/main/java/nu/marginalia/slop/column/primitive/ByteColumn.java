@@ -1,18 +1,25 @@
 package nu.marginalia.slop.column.primitive;
 
+import nu.marginalia.slop.SlopTable;
 import nu.marginalia.slop.column.AbstractColumn;
 import nu.marginalia.slop.column.ColumnReader;
 import nu.marginalia.slop.column.ColumnWriter;
+import nu.marginalia.slop.column.RandomAccessColumnReader;
 import nu.marginalia.slop.desc.ColumnFunction;
 import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.RandomAccessStorage;
 import nu.marginalia.slop.storage.Storage;
+import nu.marginalia.slop.storage.StorageOptions;
 import nu.marginalia.slop.storage.StorageReader;
 import nu.marginalia.slop.storage.StorageWriter;
 
 import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.net.URI;
 import java.nio.ByteOrder;
 import java.nio.file.Path;
+import java.util.Objects;
 
 public class ByteColumn extends AbstractColumn<ByteColumn.Reader, ByteColumn.Writer> {
 
@@ -30,12 +37,38 @@ public class ByteColumn extends AbstractColumn<ByteColumn.Reader, ByteColumn.Wri
 
     @Override
     public Reader openUnregistered(URI uri, int page) throws IOException {
-        return new Reader(Storage.reader(uri, this, page, true));
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
+        return new Reader(Storage.reader(uri, this, page, true, options));
     }
 
     @Override
     public Writer createUnregistered(Path path, int page) throws IOException {
-        return new Writer(Storage.writer(path, this, page));
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
+        return new Writer(Storage.writer(path, this, page, options));
+    }
+
+    /** Open the column for looking up values by row number.  The reader is thread-safe,
+     * and is not registered with the table, meaning it's on the caller's responsibility
+     * to ensure it is closed.
+     */
+    public RandomAccessColumnReader openRandomAccess(SlopTable table) throws IOException {
+        return openRandomAccess(table.uri, table.page, table.options);
+    }
+
+    /** Open the column for looking up values by row number.  The reader is thread-safe,
+     * and it's on the caller's responsibility to ensure it is closed.
+     */
+    @SuppressWarnings("preview") // for ValueLayout in jdk-21
+    public RandomAccessColumnReader openRandomAccess(URI uri, int page, StorageOptions options) throws IOException {
+        return new RandomAccessColumnReader(this, RandomAccessStorage.open(uri, this, page, options), ValueLayout.JAVA_BYTE);
     }
 
     public class Writer implements ColumnWriter {
@@ -56,6 +89,17 @@ public class ByteColumn extends AbstractColumn<ByteColumn.Reader, ByteColumn.Wri
             position++;
         }
 
+        public void put(byte[] values) throws IOException {
+            put(values, 0, values.length);
+        }
+
+        public void put(byte[] values, int offset, int length) throws IOException {
+            Objects.checkFromIndexSize(offset, length, values.length);
+
+            storage.putBytes(values, offset, length);
+            position += length;
+        }
+
         public long position() {
             return position;
         }
@@ -76,6 +120,29 @@ public class ByteColumn extends AbstractColumn<ByteColumn.Reader, ByteColumn.Wri
             return storage.getByte();
         }
 
+        /** Read the next dst.length values into dst */
+        public void get(byte[] dst) throws IOException {
+            get(dst, 0, dst.length);
+        }
+
+        /** Read the next length values into dst, starting at offset */
+        public void get(byte[] dst, int offset, int length) throws IOException {
+            Objects.checkFromIndexSize(offset, length, dst.length);
+
+            storage.getBytes(dst, offset, length);
+        }
+
+        /** Return a view of the next rows values, and advance past them, without copying.
+         * The values are in the column's byte order.  This is only supported when the column
+         * is memory mapped, and the view is only valid until the reader is closed.
+         *
+         * @throws UnsupportedOperationException if the column is not memory mapped
+         */
+        @SuppressWarnings("preview") // for MemorySegment in jdk-21
+        public MemorySegment getSegment(long rows) throws IOException {
+            return storage.getSegment(rows * Byte.BYTES);
+        }
+
         @Override
         public AbstractColumn<?, ?> columnDesc() {
             return ByteColumn.this;
@@ -91,6 +158,11 @@ public class ByteColumn extends AbstractColumn<ByteColumn.Reader, ByteColumn.Wri
             storage.skip(positions, Byte.BYTES);
         }
 
+        @Override
+        public void seek(long row) throws IOException {
+            storage.seek(row, Byte.BYTES);
+        }
+
         @Override
         public boolean hasRemaining() throws IOException {
             return storage.hasRemaining();
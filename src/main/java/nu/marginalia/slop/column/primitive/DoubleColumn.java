@@ -1,18 +1,25 @@
 package nu.marginalia.slop.column.primitive;
 
+import nu.marginalia.slop.SlopTable;
 import nu.marginalia.slop.column.AbstractColumn;
 import nu.marginalia.slop.column.ColumnReader;
 import nu.marginalia.slop.column.ColumnWriter;
+import nu.marginalia.slop.column.RandomAccessColumnReader;
 import nu.marginalia.slop.desc.ColumnFunction;
 import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.RandomAccessStorage;
 import nu.marginalia.slop.storage.Storage;
+import nu.marginalia.slop.storage.StorageOptions;
 import nu.marginalia.slop.storage.StorageReader;
 import nu.marginalia.slop.storage.StorageWriter;
 
 import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.net.URI;
 import java.nio.ByteOrder;
 import java.nio.file.Path;
+import java.util.Objects;
 
 public class DoubleColumn extends AbstractColumn<DoubleColumn.Reader, DoubleColumn.Writer> {
 
@@ -38,12 +45,38 @@ public class DoubleColumn extends AbstractColumn<DoubleColumn.Reader, DoubleColu
 
     @Override
     public Reader openUnregistered(URI uri, int page) throws IOException {
-        return new Reader(Storage.reader(uri, this, page, true));
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
+        return new Reader(Storage.reader(uri, this, page, true, options));
     }
 
     @Override
     public Writer createUnregistered(Path path, int page) throws IOException {
-        return new Writer(Storage.writer(path, this, page));
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
+        return new Writer(Storage.writer(path, this, page, options));
+    }
+
+    /** Open the column for looking up values by row number.  The reader is thread-safe,
+     * and is not registered with the table, meaning it's on the caller's responsibility
+     * to ensure it is closed.
+     */
+    public RandomAccessColumnReader openRandomAccess(SlopTable table) throws IOException {
+        return openRandomAccess(table.uri, table.page, table.options);
+    }
+
+    /** Open the column for looking up values by row number.  The reader is thread-safe,
+     * and it's on the caller's responsibility to ensure it is closed.
+     */
+    @SuppressWarnings("preview") // for ValueLayout in jdk-21
+    public RandomAccessColumnReader openRandomAccess(URI uri, int page, StorageOptions options) throws IOException {
+        return new RandomAccessColumnReader(this, RandomAccessStorage.open(uri, this, page, options), ValueLayout.JAVA_DOUBLE);
     }
 
 
@@ -65,6 +98,17 @@ public class DoubleColumn extends AbstractColumn<DoubleColumn.Reader, DoubleColu
             position++;
         }
 
+        public void put(double[] values) throws IOException {
+            put(values, 0, values.length);
+        }
+
+        public void put(double[] values, int offset, int length) throws IOException {
+            Objects.checkFromIndexSize(offset, length, values.length);
+
+            storage.putDoubles(values, offset, length);
+            position += length;
+        }
+
         public long position() {
             return position;
         }
@@ -90,6 +134,29 @@ public class DoubleColumn extends AbstractColumn<DoubleColumn.Reader, DoubleColu
             return storage.getDouble();
         }
 
+        /** Read the next dst.length values into dst */
+        public void get(double[] dst) throws IOException {
+            get(dst, 0, dst.length);
+        }
+
+        /** Read the next length values into dst, starting at offset */
+        public void get(double[] dst, int offset, int length) throws IOException {
+            Objects.checkFromIndexSize(offset, length, dst.length);
+
+            storage.getDoubles(dst, offset, length);
+        }
+
+        /** Return a view of the next rows values, and advance past them, without copying.
+         * The values are in the column's byte order.  This is only supported when the column
+         * is memory mapped, and the view is only valid until the reader is closed.
+         *
+         * @throws UnsupportedOperationException if the column is not memory mapped
+         */
+        @SuppressWarnings("preview") // for MemorySegment in jdk-21
+        public MemorySegment getSegment(long rows) throws IOException {
+            return storage.getSegment(rows * Double.BYTES);
+        }
+
         @Override
         public long position() throws IOException {
             return storage.position() / Double.BYTES;
@@ -100,6 +167,11 @@ public class DoubleColumn extends AbstractColumn<DoubleColumn.Reader, DoubleColu
             storage.skip(positions, Double.BYTES);
         }
 
+        @Override
+        public void seek(long row) throws IOException {
+            storage.seek(row, Double.BYTES);
+        }
+
         @Override
         public boolean hasRemaining() throws IOException {
             return storage.hasRemaining();
@@ -1,9 +1,11 @@
 package nu.marginalia.slop.column.string;
 
 import nu.marginalia.slop.column.*;
+import nu.marginalia.slop.column.dynamic.OffsetIndexColumn;
 import nu.marginalia.slop.desc.ColumnFunction;
 import nu.marginalia.slop.desc.StorageType;
 import nu.marginalia.slop.storage.Storage;
+import nu.marginalia.slop.storage.StorageOptions;
 import nu.marginalia.slop.storage.StorageReader;
 import nu.marginalia.slop.storage.StorageWriter;
 
@@ -16,6 +18,9 @@ import java.nio.file.Path;
 
 public class CStringColumn extends AbstractObjectColumn<String, CStringColumn.Reader, CStringColumn.Writer> {
 
+    final Charset charset;
+    private final OffsetIndexColumn offsetsColumn;
+
     public CStringColumn(String name) {
         this(name, StandardCharsets.UTF_8, ColumnFunction.DATA, StorageType.PLAIN);
     }
@@ -30,16 +35,34 @@ public class CStringColumn extends AbstractObjectColumn<String, CStringColumn.Re
 
     public CStringColumn(String name, Charset charset, ColumnFunction function, StorageType storageType) {
         super(name, "s8+cstr+"+charset.displayName(), ByteOrder.nativeOrder(), function, storageType);
+
+        this.charset = charset;
+        offsetsColumn = switch (function) {
+            case DATA, DICT -> new OffsetIndexColumn(name, function.offsetsTable());
+            default -> null;
+        };
     }
 
     @Override
     public Reader openUnregistered(URI uri, int page) throws IOException {
-        return new Reader(Storage.reader(uri, this, page, true));
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
+        return new Reader(Storage.reader(uri, this, page, true, options),
+                offsetsColumn != null ? offsetsColumn.openIfUsable(uri, page, options, this) : null);
     }
 
     @Override
     public Writer createUnregistered(Path path, int page) throws IOException {
-        return new Writer(Storage.writer(path, this, page));
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
+        return new Writer(Storage.writer(path, this, page, options),
+                offsetsColumn != null ? offsetsColumn.createIfEnabled(path, page, options, this) : null);
     }
 
 
@@ -48,8 +71,11 @@ public class CStringColumn extends AbstractObjectColumn<String, CStringColumn.Re
 
         private long position = 0;
 
-        Writer(StorageWriter storageWriter) {
+        private final OffsetIndexColumn.Writer offsetsWriter;
+
+        Writer(StorageWriter storageWriter, OffsetIndexColumn.Writer offsetsWriter) {
             this.storageWriter = storageWriter;
+            this.offsetsWriter = offsetsWriter;
         }
 
         @Override
@@ -61,8 +87,12 @@ public class CStringColumn extends AbstractObjectColumn<String, CStringColumn.Re
             if (null == value) {
                 value = "";
             }
+
+            if (offsetsWriter != null) {
+                offsetsWriter.put(position, storageWriter, null);
+            }
             assert value.indexOf('\0') == -1 : "Null byte not allowed in cstring";
-            storageWriter.putBytes(value.getBytes());
+            storageWriter.putBytes(value.getBytes(charset));
             storageWriter.putByte((byte) 0);
             position++;
         }
@@ -73,15 +103,20 @@ public class CStringColumn extends AbstractObjectColumn<String, CStringColumn.Re
 
         public void close() throws IOException {
             storageWriter.close();
+            if (offsetsWriter != null) {
+                offsetsWriter.close(position());
+            }
         }
     }
 
     public class Reader implements ObjectColumnReader<String> {
         private final StorageReader storageReader;
+        private final OffsetIndexColumn.Reader offsetsReader;
         private long position = 0;
 
-        Reader(StorageReader storageReader) {
+        Reader(StorageReader storageReader, OffsetIndexColumn.Reader offsetsReader) {
             this.storageReader = storageReader;
+            this.offsetsReader = offsetsReader;
         }
 
         @Override
@@ -90,13 +125,8 @@ public class CStringColumn extends AbstractObjectColumn<String, CStringColumn.Re
         }
 
         public String get() throws IOException {
-            StringBuilder sb = new StringBuilder();
-            byte b;
-            while (storageReader.hasRemaining() && (b = storageReader.getByte()) != 0) {
-                sb.append((char) b);
-            }
             position++;
-            return sb.toString();
+            return new String(storageReader.getBytesUntil((byte) 0), charset);
         }
 
         @Override
@@ -106,14 +136,25 @@ public class CStringColumn extends AbstractObjectColumn<String, CStringColumn.Re
 
         @Override
         public void skip(long positions) throws IOException {
-            int i = 0;
+            storageReader.skipPast((byte) 0, positions);
+            position += positions;
+        }
 
-            while (i < positions && storageReader.hasRemaining()) {
-                if (storageReader.getByte() == 0) {
-                    i++;
-                }
+        /** Move to the given row.
+         * <p></p>
+         * If the column has an offset index, this skips at most one index interval worth
+         * of rows, and can move backwards.  Otherwise, the rows in between are skipped
+         * one by one, and the reader can only move forward.
+         */
+        @Override
+        public void seek(long row) throws IOException {
+            if (offsetsReader != null) {
+                position = offsetsReader.seek(row, storageReader, null);
+                skip(row - position);
+            }
+            else {
+                ObjectColumnReader.super.seek(row);
             }
-            position += positions;
         }
 
         @Override
@@ -124,6 +165,9 @@ public class CStringColumn extends AbstractObjectColumn<String, CStringColumn.Re
         @Override
         public void close() throws IOException {
             storageReader.close();
+            if (offsetsReader != null) {
+                offsetsReader.close();
+            }
         }
     }
 
@@ -1,9 +1,11 @@
 package nu.marginalia.slop.column.string;
 
 import nu.marginalia.slop.column.*;
+import nu.marginalia.slop.column.dynamic.RunLengthIntColumn;
 import nu.marginalia.slop.column.dynamic.VarintColumn;
 import nu.marginalia.slop.desc.ColumnFunction;
 import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.StorageOptions;
 
 import java.io.IOException;
 import java.net.URI;
@@ -17,8 +19,8 @@ import java.util.HashMap;
 import java.util.List;
 
 public class EnumColumn extends AbstractObjectColumn<String, EnumColumn.Reader, EnumColumn.Writer> {
-    private final StringColumn dicionaryColumn;
-    private final VarintColumn dataColumn;
+    final StringColumn dictionaryColumn;
+    final AbstractColumn<? extends IntColumnReader, ? extends IntColumnWriter> ordinalColumn;
 
     public EnumColumn(String name) {
         this(name, StandardCharsets.UTF_8, StorageType.PLAIN);
@@ -29,38 +31,56 @@ public class EnumColumn extends AbstractObjectColumn<String, EnumColumn.Reader,
     }
 
     public EnumColumn(String name, Charset charset, StorageType storageType) {
-        super(name, "enum+"+charset.displayName(), ByteOrder.nativeOrder(), ColumnFunction.DATA, storageType);
+        this(name, "enum+"+charset.displayName(), charset, new VarintColumn(name, ColumnFunction.DATA, storageType));
+    }
+
+    /** Create an enum column that keeps its ordinals in the given column, e.g.
+     * a {@link VarintColumn} or a {@link RunLengthIntColumn}.
+     */
+    EnumColumn(String name, String typeMnemonic, Charset charset,
+               AbstractColumn<? extends IntColumnReader, ? extends IntColumnWriter> ordinalColumn) {
+        super(name, typeMnemonic, ByteOrder.nativeOrder(), ColumnFunction.DATA, ordinalColumn.storageType);
 
-        dicionaryColumn = new StringColumn(name, charset, ColumnFunction.DICT, StorageType.PLAIN);
-        dataColumn = new VarintColumn(name, ColumnFunction.DATA, storageType);
+        this.dictionaryColumn = new StringColumn(name, charset, ColumnFunction.DICT, StorageType.PLAIN);
+        this.ordinalColumn = ordinalColumn;
     }
 
     @Override
     public Reader openUnregistered(URI uri, int page) throws IOException {
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
         return new EnumColumn.Reader(
-                dicionaryColumn.openUnregistered(uri, page),
-                dataColumn.openUnregistered(uri, page)
+                dictionaryColumn.openUnregistered(uri, page, options),
+                ordinalColumn.openUnregistered(uri, page, options)
         );
     }
 
     @Override
     public Writer createUnregistered(Path path, int page) throws IOException {
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
         return new EnumColumn.Writer(
-                dicionaryColumn.createUnregistered(path, page),
-                dataColumn.createUnregistered(path, page)
+                dictionaryColumn.createUnregistered(path, page, options),
+                ordinalColumn.createUnregistered(path, page, options)
         );
     }
 
 
     public class Writer implements ObjectColumnWriter<String> {
         private final StringColumn.Writer dictionaryColumn;
-        private final VarintColumn.Writer dataColumn;
+        private final IntColumnWriter ordinalColumn;
         private final HashMap<String, Integer> dictionary = new HashMap<>();
 
-        Writer(StringColumn.Writer dictionaryColumn, VarintColumn.Writer dataColumn)
+        Writer(StringColumn.Writer dictionaryColumn, IntColumnWriter ordinalColumn)
         {
             this.dictionaryColumn = dictionaryColumn;
-            this.dataColumn = dataColumn;
+            this.ordinalColumn = ordinalColumn;
         }
 
         @Override
@@ -69,39 +89,52 @@ public class EnumColumn extends AbstractObjectColumn<String, EnumColumn.Reader,
         }
 
         public void put(String value) throws IOException {
+            put(value, 1);
+        }
+
+        /** Write count rows of the same value */
+        public void put(String value, long count) throws IOException {
+            if (count < 0) {
+                throw new IllegalArgumentException("Negative count " + count);
+            }
+            if (count == 0) { // no rows, so the value doesn't belong in the dictionary
+                return;
+            }
+
             Integer index = dictionary.get(value);
             if (index == null) {
                 index = dictionary.size();
                 dictionary.put(value, index);
                 dictionaryColumn.put(value);
             }
-            dataColumn.put(index);
+
+            ordinalColumn.put(index, count);
         }
 
         public long position() {
-            return dataColumn.position();
+            return ordinalColumn.position();
         }
 
         public void close() throws IOException {
-            dataColumn.close();
+            ordinalColumn.close();
             dictionaryColumn.close();
         }
     }
 
     public class Reader implements ObjectColumnReader<String> {
-        private final VarintColumn.Reader dataColumn;
+        private final IntColumnReader ordinalColumn;
         private final List<String> dictionary = new ArrayList<>();
 
-        Reader(StringColumn.Reader dicionaryColumn,
-                      VarintColumn.Reader dataColumn) throws IOException
+        Reader(StringColumn.Reader dictionaryColumn,
+               IntColumnReader ordinalColumn) throws IOException
         {
-            this.dataColumn = dataColumn;
+            this.ordinalColumn = ordinalColumn;
 
-            while (dicionaryColumn.hasRemaining()) {
-                dictionary.add(dicionaryColumn.get());
+            while (dictionaryColumn.hasRemaining()) {
+                dictionary.add(dictionaryColumn.get());
             }
 
-            dicionaryColumn.close();
+            dictionaryColumn.close();
         }
 
         @Override
@@ -113,33 +146,42 @@ public class EnumColumn extends AbstractObjectColumn<String, EnumColumn.Reader,
             return Collections.unmodifiableList(dictionary);
         }
 
+        /** Return the value of the given ordinal */
+        String valueOf(int ordinal) {
+            return dictionary.get(ordinal);
+        }
+
         public int getOrdinal() throws IOException {
-            return (int) dataColumn.get();
+            return ordinalColumn.get();
         }
 
         public String get() throws IOException {
-            int index = (int) dataColumn.get();
-            return dictionary.get(index);
+            return dictionary.get(getOrdinal());
         }
 
         @Override
         public long position() throws IOException {
-            return dataColumn.position();
+            return ordinalColumn.position();
         }
 
         @Override
         public void skip(long positions) throws IOException {
-            dataColumn.skip(positions);
+            ordinalColumn.skip(positions);
+        }
+
+        @Override
+        public void seek(long row) throws IOException {
+            ordinalColumn.seek(row);
         }
 
         @Override
         public boolean hasRemaining() throws IOException {
-            return dataColumn.hasRemaining();
+            return ordinalColumn.hasRemaining();
         }
 
         @Override
         public void close() throws IOException {
-            dataColumn.close();
+            ordinalColumn.close();
         }
     }
 
@@ -0,0 +1,83 @@
+package nu.marginalia.slop.column.string;
+
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.dynamic.RunLengthIntColumn;
+import nu.marginalia.slop.desc.ColumnFunction;
+import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.StorageOptions;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/** An {@link EnumColumn} whose ordinals are run-length encoded with a {@link RunLengthIntColumn},
+ * for enums with long runs of the same value, e.g. the content type of a table sorted by domain.
+ * The reader gives access to the runs in the same way as {@link RunLengthIntColumn.Reader}.
+ */
+public class RunLengthEnumColumn extends EnumColumn {
+    private final RunLengthIntColumn runColumn;
+
+    public RunLengthEnumColumn(String name) {
+        this(name, StandardCharsets.UTF_8, StorageType.PLAIN);
+    }
+
+    public RunLengthEnumColumn(String name, Charset charset) {
+        this(name, charset, StorageType.PLAIN);
+    }
+
+    public RunLengthEnumColumn(String name, Charset charset, StorageType storageType) {
+        this(name, charset, new RunLengthIntColumn(name, ColumnFunction.DATA, storageType));
+    }
+
+    private RunLengthEnumColumn(String name, Charset charset, RunLengthIntColumn runColumn) {
+        super(name, "enum-rle+"+charset.displayName(), charset, runColumn);
+
+        this.runColumn = runColumn;
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page) throws IOException {
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
+        return new Reader(
+                dictionaryColumn.openUnregistered(uri, page, options),
+                runColumn.openUnregistered(uri, page, options)
+        );
+    }
+
+    @Override
+    public Reader open(SlopTable table) throws IOException {
+        return (Reader) super.open(table);
+    }
+
+    public class Reader extends EnumColumn.Reader {
+        private final RunLengthIntColumn.Reader runColumn;
+
+        Reader(StringColumn.Reader dictionaryColumn,
+               RunLengthIntColumn.Reader runColumn) throws IOException
+        {
+            super(dictionaryColumn, runColumn);
+
+            this.runColumn = runColumn;
+        }
+
+        /** Return the value of the run that the next row belongs to, without consuming it */
+        public String runValue() throws IOException {
+            return valueOf(runColumn.runValue());
+        }
+
+        /** Return the ordinal of the run that the next row belongs to, without consuming it */
+        public int runOrdinal() throws IOException {
+            return runColumn.runValue();
+        }
+
+        /** Return the number of rows from the next row to the end of its run, including the next row */
+        public long runRemaining() throws IOException {
+            return runColumn.runRemaining();
+        }
+    }
+}
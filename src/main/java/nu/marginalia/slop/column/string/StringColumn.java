@@ -4,8 +4,10 @@ import nu.marginalia.slop.column.*;
 import nu.marginalia.slop.column.array.*;
 import nu.marginalia.slop.desc.ColumnFunction;
 import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.StorageOptions;
 
 import java.io.IOException;
+import java.lang.foreign.MemorySegment;
 import java.net.URI;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
@@ -38,12 +40,22 @@ public class StringColumn extends AbstractObjectColumn<String, StringColumn.Read
 
     @Override
     public StringColumn.Reader openUnregistered(URI uri, int page) throws IOException {
-        return new StringColumn.Reader(backingColumn.openUnregistered(uri, page));
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public StringColumn.Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
+        return new StringColumn.Reader(backingColumn.openUnregistered(uri, page, options));
     }
 
     @Override
     public StringColumn.Writer createUnregistered(Path path, int page) throws IOException {
-        return new StringColumn.Writer(backingColumn.createUnregistered(path, page));
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public StringColumn.Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
+        return new StringColumn.Writer(backingColumn.createUnregistered(path, page, options));
     }
 
 
@@ -78,6 +90,8 @@ public class StringColumn extends AbstractObjectColumn<String, StringColumn.Read
 
     public class Reader implements ObjectColumnReader<String> {
         private final ByteArrayColumn.Reader backingColumn;
+        /** Reused between calls to get(), so decoding a string only allocates the string */
+        private final ByteSlice slice = new ByteSlice();
 
         Reader(ByteArrayColumn.Reader backingColumn) throws IOException {
             this.backingColumn = backingColumn;
@@ -89,7 +103,23 @@ public class StringColumn extends AbstractObjectColumn<String, StringColumn.Read
         }
 
         public String get() throws IOException {
-            return new String(backingColumn.get(), charset);
+            backingColumn.get(slice);
+            return slice.toString(charset);
+        }
+
+        /** Read the encoded bytes of the next string into the slice, without decoding them.
+         * See {@link ByteArrayColumn.Reader#get(ByteSlice)}.
+         */
+        public void get(ByteSlice slice) throws IOException {
+            backingColumn.get(slice);
+        }
+
+        /** Return a view of the encoded bytes of the next string in the mapped data,
+         * see {@link ByteArrayColumn.Reader#getSegment()}.
+         */
+        @SuppressWarnings("preview") // for MemorySegment in jdk-21
+        public MemorySegment getSegment() throws IOException {
+            return backingColumn.getSegment();
         }
 
         @Override
@@ -102,6 +132,12 @@ public class StringColumn extends AbstractObjectColumn<String, StringColumn.Read
             backingColumn.skip(positions);
         }
 
+        /** Move to the given row, see {@link ByteArrayColumn.Reader#seek(long)} */
+        @Override
+        public void seek(long row) throws IOException {
+            backingColumn.seek(row);
+        }
+
         @Override
         public boolean hasRemaining() throws IOException {
             return backingColumn.hasRemaining();
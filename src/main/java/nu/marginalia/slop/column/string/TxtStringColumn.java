@@ -1,9 +1,11 @@
 package nu.marginalia.slop.column.string;
 
 import nu.marginalia.slop.column.*;
+import nu.marginalia.slop.column.dynamic.OffsetIndexColumn;
 import nu.marginalia.slop.desc.ColumnFunction;
 import nu.marginalia.slop.desc.StorageType;
 import nu.marginalia.slop.storage.Storage;
+import nu.marginalia.slop.storage.StorageOptions;
 import nu.marginalia.slop.storage.StorageReader;
 import nu.marginalia.slop.storage.StorageWriter;
 
@@ -17,6 +19,7 @@ import java.nio.file.Path;
 public class TxtStringColumn extends AbstractObjectColumn<String, TxtStringColumn.Reader, TxtStringColumn.Writer> {
 
     final Charset charset;
+    private final OffsetIndexColumn offsetsColumn;
 
     public TxtStringColumn(String name) {
         this(name, StandardCharsets.UTF_8, ColumnFunction.DATA, StorageType.PLAIN);
@@ -33,24 +36,43 @@ public class TxtStringColumn extends AbstractObjectColumn<String, TxtStringColum
         super(name, "s8[]+txt+"+charset.displayName(), ByteOrder.nativeOrder(), function, storageType);
 
         this.charset = charset;
+        this.offsetsColumn = switch (function) {
+            case DATA, DICT -> new OffsetIndexColumn(name, function.offsetsTable());
+            default -> null;
+        };
     }
 
     @Override
     public Reader openUnregistered(URI uri, int page) throws IOException {
-        return new Reader(Storage.reader(uri, this, page, true));
+        return openUnregistered(uri, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Reader openUnregistered(URI uri, int page, StorageOptions options) throws IOException {
+        return new Reader(Storage.reader(uri, this, page, true, options),
+                offsetsColumn != null ? offsetsColumn.openIfUsable(uri, page, options, this) : null);
     }
 
     @Override
     public Writer createUnregistered(Path path, int page) throws IOException {
-        return new Writer(Storage.writer(path, this, page));
+        return createUnregistered(path, page, StorageOptions.DEFAULT);
+    }
+
+    @Override
+    public Writer createUnregistered(Path path, int page, StorageOptions options) throws IOException {
+        return new Writer(Storage.writer(path, this, page, options),
+                offsetsColumn != null ? offsetsColumn.createIfEnabled(path, page, options, this) : null);
     }
 
     public class Writer implements ObjectColumnWriter<String> {
         private final StorageWriter storageWriter;
         private long position = 0;
 
-        Writer(StorageWriter storageWriter) {
+        private final OffsetIndexColumn.Writer offsetsWriter;
+
+        Writer(StorageWriter storageWriter, OffsetIndexColumn.Writer offsetsWriter) {
             this.storageWriter = storageWriter;
+            this.offsetsWriter = offsetsWriter;
         }
 
         @Override
@@ -63,9 +85,13 @@ public class TxtStringColumn extends AbstractObjectColumn<String, TxtStringColum
                 value = "";
             }
 
+            if (offsetsWriter != null) {
+                offsetsWriter.put(position, storageWriter, null);
+            }
+
             assert value.indexOf('\n') == -1 : "Newline not allowed in txtstring";
 
-            storageWriter.putBytes(value.getBytes());
+            storageWriter.putBytes(value.getBytes(charset));
             storageWriter.putByte((byte) '\n');
             position++;
         }
@@ -76,15 +102,20 @@ public class TxtStringColumn extends AbstractObjectColumn<String, TxtStringColum
 
         public void close() throws IOException {
             storageWriter.close();
+            if (offsetsWriter != null) {
+                offsetsWriter.close(position());
+            }
         }
     }
 
     public class Reader implements ObjectColumnReader<String> {
         private final StorageReader storageReader;
+        private final OffsetIndexColumn.Reader offsetsReader;
         private long position = 0;
 
-        Reader(StorageReader storageReader) {
+        Reader(StorageReader storageReader, OffsetIndexColumn.Reader offsetsReader) {
             this.storageReader = storageReader;
+            this.offsetsReader = offsetsReader;
         }
 
         @Override
@@ -93,19 +124,8 @@ public class TxtStringColumn extends AbstractObjectColumn<String, TxtStringColum
         }
 
         public String get() throws IOException {
-            StringBuilder sb = new StringBuilder();
-            byte b;
-            while (storageReader.hasRemaining()) {
-                b = storageReader.getByte();
-                if (b == '\n') {
-                    break;
-                }
-                else {
-                    sb.append((char) b);
-                }
-            }
             position++;
-            return sb.toString();
+            return new String(storageReader.getBytesUntil((byte) '\n'), charset);
         }
 
         @Override
@@ -115,14 +135,24 @@ public class TxtStringColumn extends AbstractObjectColumn<String, TxtStringColum
 
         @Override
         public void skip(long positions) throws IOException {
-            int i = 0;
-
-            position+=positions;
+            storageReader.skipPast((byte) '\n', positions);
+            position += positions;
+        }
 
-            while (i < positions && storageReader.hasRemaining()) {
-                if (storageReader.getByte() == '\n') {
-                    i++;
-                }
+        /** Move to the given row.
+         * <p></p>
+         * If the column has an offset index, this skips at most one index interval worth
+         * of rows, and can move backwards.  Otherwise, the rows in between are skipped
+         * one by one, and the reader can only move forward.
+         */
+        @Override
+        public void seek(long row) throws IOException {
+            if (offsetsReader != null) {
+                position = offsetsReader.seek(row, storageReader, null);
+                skip(row - position);
+            }
+            else {
+                ObjectColumnReader.super.seek(row);
             }
         }
 
@@ -134,6 +164,9 @@ public class TxtStringColumn extends AbstractObjectColumn<String, TxtStringColum
         @Override
         public void close() throws IOException {
             storageReader.close();
+            if (offsetsReader != null) {
+                offsetsReader.close();
+            }
         }
     }
 
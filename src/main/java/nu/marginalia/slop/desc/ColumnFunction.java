@@ -15,6 +15,12 @@ public enum ColumnFunction {
     DICT("dic"),
     /** The length column for the DICT column, in the case of variable-length dictionaries. */
     DICT_LEN("dic-len"),
+    /** The offset index for the DATA column, in the case of variable-length records. */
+    DATA_OFFSETS("dat-off"),
+    /** The offset index for the DICT column, in the case of variable-length dictionaries. */
+    DICT_OFFSETS("dic-off"),
+    /** The validity bitmap of a nullable column, with a set bit for each row that has a value. */
+    NULLS("nul"),
     ;
 
     public String nmnemonic;
@@ -38,6 +44,21 @@ public enum ColumnFunction {
         }
     }
 
+    /** Return the appropriate column function for
+     * an offset index corresponding to the current
+     * column function.
+     */
+    public ColumnFunction offsetsTable() {
+        switch (this) {
+            case DATA:
+                return DATA_OFFSETS;
+            case DICT:
+                return DICT_OFFSETS;
+            default:
+                throw new IllegalArgumentException("Cannot get offsets table type for " + this);
+        }
+    }
+
     public static ColumnFunction fromString(String nmnemonic) {
         for (ColumnFunction type : values()) {
             if (type.nmnemonic.equals(nmnemonic)) {
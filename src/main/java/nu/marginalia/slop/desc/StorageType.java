@@ -9,6 +9,9 @@ public enum StorageType {
     GZIP("gz"),
     /** The column is stored as a compressed binary file using the ZSTD algorithm. */
     ZSTD("zstd"),
+    /** The column is stored as independently compressed ZSTD blocks, with a sidecar
+     * index file that permits seeking to any block without decompressing the preceding data. */
+    ZSTD_BLOCK("zstd-blk"),
     ;
 
     public String nmnemonic;
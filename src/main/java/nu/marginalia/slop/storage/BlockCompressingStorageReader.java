@@ -0,0 +1,289 @@
+package nu.marginalia.slop.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** Reader for block compressed ZSTD storage, which unlike the stream compressed
+ * storage types supports seeking.
+ * <p></p>
+ * The block index is used to find the block containing a position, so that seek and skip
+ * only need to decompress the block they land in.
+ *
+ * @see BlockCompressingStorageWriter
+ */
+public class BlockCompressingStorageReader implements StorageReader {
+    private final FileChannel channel;
+
+    private final BlockIndex index;
+    /** Uncompressed offset of each block, followed by the total uncompressed size */
+    private final long[] blockOffsets;
+    private final int numBlocks;
+
+    private final byte[] arrayBuffer;
+    private final ByteBuffer buffer;
+    private final byte[] compressedBuffer;
+
+    /** The next block to be decompressed into the buffer */
+    private int nextBlock = 0;
+
+    public BlockCompressingStorageReader(Path path, Path indexPath, ByteOrder order) throws IOException {
+        index = new BlockIndex(indexPath);
+        blockOffsets = index.blockOffsets;
+        numBlocks = index.numBlocks;
+
+        channel = (FileChannel) Files.newByteChannel(path, StandardOpenOption.READ);
+
+        // leave room for a value that straddles two blocks to be carried over into the next block
+        arrayBuffer = new byte[index.maxBlockSize + Long.BYTES];
+        buffer = ByteBuffer.wrap(arrayBuffer).order(order);
+        compressedBuffer = new byte[index.maxCompressedSize];
+
+        buffer.position(0);
+        buffer.limit(0);
+    }
+
+    @Override
+    public byte getByte() throws IOException {
+        if (buffer.remaining() < Byte.BYTES) {
+            refill();
+        }
+
+        return buffer.get();
+    }
+
+    @Override
+    public short getShort() throws IOException {
+        if (buffer.remaining() < Short.BYTES) {
+            refill();
+        }
+
+        return buffer.getShort();
+    }
+
+    @Override
+    public char getChar() throws IOException {
+        if (buffer.remaining() < Character.BYTES) {
+            refill();
+        }
+
+        return buffer.getChar();
+    }
+
+    @Override
+    public int getInt() throws IOException {
+        if (buffer.remaining() < Integer.BYTES) {
+            refill();
+        }
+
+        return buffer.getInt();
+    }
+
+    @Override
+    public long getLong() throws IOException {
+        if (buffer.remaining() < Long.BYTES) {
+            refill();
+        }
+
+        return buffer.getLong();
+    }
+
+    @Override
+    public float getFloat() throws IOException {
+        if (buffer.remaining() < Float.BYTES) {
+            refill();
+        }
+
+        return buffer.getFloat();
+    }
+
+    @Override
+    public double getDouble() throws IOException {
+        if (buffer.remaining() < Double.BYTES) {
+            refill();
+        }
+
+        return buffer.getDouble();
+    }
+
+    @Override
+    public void getBytes(byte[] bytes) throws IOException {
+        getBytes(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void getBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (buffer.remaining() >= length) {
+            buffer.get(bytes, offset, length);
+        } else {
+            int totalToRead = length;
+
+            while (totalToRead > 0) {
+                if (!buffer.hasRemaining()) {
+                    refill();
+                }
+
+                int toRead = Math.min(buffer.remaining(), totalToRead);
+                buffer.get(bytes, offset + length - totalToRead, toRead);
+                totalToRead -= toRead;
+            }
+        }
+    }
+
+    @Override
+    public void getBytes(ByteBuffer data) throws IOException {
+        if (data.remaining() < buffer.remaining()) {
+            int lim = buffer.limit();
+            buffer.limit(buffer.position() + data.remaining());
+            data.put(buffer);
+            buffer.limit(lim);
+        } else {
+            while (data.hasRemaining()) {
+                if (!buffer.hasRemaining()) {
+                    refill();
+                }
+
+                int lim = buffer.limit();
+                buffer.limit(Math.min(buffer.position() + data.remaining(), lim));
+                data.put(buffer);
+                buffer.limit(lim);
+            }
+        }
+    }
+
+    @Override
+    public void getShorts(short[] shorts, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Short.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, shorts, o, n), this::refill);
+    }
+
+    @Override
+    public void getChars(char[] chars, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Character.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, chars, o, n), this::refill);
+    }
+
+    @Override
+    public void getInts(int[] ints, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Integer.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, ints, o, n), this::refill);
+    }
+
+    @Override
+    public void getLongs(long[] longs, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Long.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, longs, o, n), this::refill);
+    }
+
+    @Override
+    public void getFloats(float[] floats, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Float.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, floats, o, n), this::refill);
+    }
+
+    @Override
+    public void getDoubles(double[] doubles, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Double.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, doubles, o, n), this::refill);
+    }
+
+    @Override
+    public long getVarint() throws IOException {
+        return Varints.read(this, buffer, this::refill);
+    }
+
+    @Override
+    public void getVarints(int[] dst, int n) throws IOException {
+        Varints.read(this, buffer, this::refill, dst, n);
+    }
+
+    @Override
+    public void getVarints(long[] dst, int n) throws IOException {
+        Varints.read(this, buffer, this::refill, dst, n);
+    }
+
+    @Override
+    public byte[] getBytesUntil(byte delimiter) throws IOException {
+        return Delimiters.getBytesUntil(buffer, delimiter, this::refill);
+    }
+
+    @Override
+    public long skipPast(byte delimiter, long count) throws IOException {
+        return Delimiters.skipPast(buffer, delimiter, count, this::refill);
+    }
+
+    @Override
+    public void skip(long bytes, int stepSize) throws IOException {
+        seek(position() + bytes * stepSize, 1);
+    }
+
+    @Override
+    public void seek(long position, int stepSize) throws IOException {
+        position *= stepSize;
+
+        long bufferEnd = blockOffsets[nextBlock];
+        long bufferStart = bufferEnd - buffer.limit();
+
+        if (position >= bufferStart && position <= bufferEnd) {
+            // If the position is within the buffer, we can just move the buffer position to the correct spot
+            buffer.position((int) (position - bufferStart));
+            return;
+        }
+
+        if (position >= blockOffsets[numBlocks]) {
+            // Seeking to or past the end, there is nothing to decompress
+            nextBlock = numBlocks;
+            buffer.position(0);
+            buffer.limit(0);
+            return;
+        }
+
+        int block = index.blockOf(position);
+
+        // Otherwise, we need to decompress the block containing the position
+        nextBlock = block;
+        buffer.position(0);
+        buffer.limit(0);
+        refill();
+
+        buffer.position((int) (position - blockOffsets[block]));
+    }
+
+    /** Decompress the next block(s) into the buffer, retaining any data that has not been read yet */
+    private void refill() throws IOException {
+        buffer.compact();
+
+        while (nextBlock < numBlocks
+            && buffer.remaining() >= blockOffsets[nextBlock + 1] - blockOffsets[nextBlock])
+        {
+            decompressBlock(nextBlock++);
+        }
+
+        buffer.flip();
+    }
+
+    private void decompressBlock(int block) throws IOException {
+        index.readCompressed(channel, block, compressedBuffer);
+        int size = index.decompress(block, compressedBuffer, arrayBuffer, buffer.position(), buffer.remaining());
+
+        buffer.position(buffer.position() + size);
+    }
+
+    @Override
+    public long position() {
+        return blockOffsets[nextBlock] - buffer.remaining();
+    }
+
+    /** Return the total uncompressed size of the data */
+    long size() {
+        return index.size();
+    }
+
+    @Override
+    public boolean hasRemaining() {
+        return buffer.hasRemaining() || nextBlock < numBlocks;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,311 @@
+package nu.marginalia.slop.storage;
+
+import com.github.luben.zstd.Zstd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/** Writer for block compressed ZSTD storage.
+ * <p></p>
+ * The data is split into blocks of at most blockSize bytes, which are compressed
+ * as independent ZSTD frames and written back to back.  Alongside the data file, an index
+ * file is written containing the uncompressed and compressed offset of each block as a
+ * pair of little-endian longs, followed by a final pair with the total uncompressed
+ * and compressed sizes.
+ * <p></p>
+ * Since the frames are independent, the data file is still a valid ZSTD stream,
+ * and can be read sequentially without the index.
+ * <p></p>
+ * Both files are written to temporary files, which are moved into place on close,
+ * the index last, so an index is never found next to data it doesn't describe.
+ *
+ * @see BlockCompressingStorageReader
+ */
+public class BlockCompressingStorageWriter implements StorageWriter, AutoCloseable {
+    private final ByteBuffer buffer;
+    private final byte[] arrayBuffer;
+    private final byte[] compressedBuffer;
+    private final FileChannel channel;
+    private final FileChannel indexChannel;
+    /** A single entry of the index, as a pair of little-endian longs */
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(2 * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    private final int compressionLevel;
+
+    private long position = 0;
+    private long compressedPosition = 0;
+
+    private final Path tempPath;
+    private final Path destPath;
+    private final Path indexTempPath;
+    private final Path indexDestPath;
+
+    public BlockCompressingStorageWriter(Path path, Path indexPath, ByteOrder order, int blockSize) throws IOException {
+        this(path, indexPath, order, blockSize, Zstd.defaultCompressionLevel());
+    }
+
+    public BlockCompressingStorageWriter(Path path, Path indexPath, ByteOrder order, int blockSize, int compressionLevel) throws IOException {
+        // smaller blocks can't hold the largest value put in one go, e.g. a varint
+        if (blockSize < Varints.MAX_LENGTH) {
+            throw new IllegalArgumentException("Block size must be at least " + Varints.MAX_LENGTH + ", was " + blockSize);
+        }
+
+        tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        destPath = path;
+        indexTempPath = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        indexDestPath = indexPath;
+
+        channel = (FileChannel) Files.newByteChannel(tempPath,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        );
+
+        try {
+            indexChannel = (FileChannel) Files.newByteChannel(indexTempPath,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE
+            );
+        }
+        catch (IOException | RuntimeException e) {
+            try {
+                channel.close();
+                Files.deleteIfExists(tempPath);
+            }
+            catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        this.compressionLevel = compressionLevel;
+        this.arrayBuffer = new byte[blockSize];
+        this.buffer = ByteBuffer.wrap(arrayBuffer).order(order);
+        this.compressedBuffer = new byte[(int) Zstd.compressBound(blockSize)];
+    }
+
+    @Override
+    public void putByte(byte b) throws IOException {
+        if (buffer.remaining() < Byte.BYTES) {
+            flush();
+        }
+
+        buffer.put(b);
+    }
+
+    @Override
+    public void putShort(short s) throws IOException {
+        if (buffer.remaining() < Short.BYTES) {
+            flush();
+        }
+
+        buffer.putShort(s);
+    }
+
+    @Override
+    public void putChar(char s) throws IOException {
+        if (buffer.remaining() < Character.BYTES) {
+            flush();
+        }
+
+        buffer.putChar(s);
+    }
+
+    @Override
+    public void putInt(int i) throws IOException {
+        if (buffer.remaining() < Integer.BYTES) {
+            flush();
+        }
+
+        buffer.putInt(i);
+    }
+
+    @Override
+    public void putLong(long l) throws IOException {
+        if (buffer.remaining() < Long.BYTES) {
+            flush();
+        }
+
+        buffer.putLong(l);
+    }
+
+    @Override
+    public void putBytes(byte[] bytes) throws IOException {
+        putBytes(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void putBytes(byte[] bytes, int offset, int length) throws IOException {
+        int totalToWrite = length;
+
+        if (totalToWrite < buffer.remaining()) {
+            buffer.put(bytes, offset, totalToWrite);
+        }
+        else { // case where the data is larger than the write buffer, so we need to write in chunks
+            while (totalToWrite > 0) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+
+                // Write as much as possible to the buffer
+                int toWriteNow = Math.min(totalToWrite, buffer.remaining());
+                buffer.put(bytes, offset, toWriteNow);
+
+                // Update the remaining bytes and offset
+                totalToWrite -= toWriteNow;
+                offset += toWriteNow;
+            }
+        }
+    }
+
+    @Override
+    public void putBytes(ByteBuffer data) throws IOException {
+        if (data.remaining() < buffer.remaining()) {
+            buffer.put(data);
+        }
+        else { // case where the data is larger than the write buffer, so we need to write in chunks
+            while (data.hasRemaining()) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+
+                // temporarily reduce the data buffer's limit to what's possible to write to the writer's buffer
+                int lim = data.limit();
+                data.limit(Math.min(data.position() + buffer.remaining(), lim));
+
+                // write the data to the buffer
+                buffer.put(data);
+
+                // restore the limit, so we can write the rest of the data
+                data.limit(lim);
+            }
+        }
+    }
+
+    @Override
+    public void putShorts(short[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Short.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putChars(char[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Character.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putInts(int[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Integer.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putLongs(long[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Long.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putFloats(float[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Float.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putDoubles(double[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Double.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putVarint(long value) throws IOException {
+        Varints.write(buffer, this::flush, value);
+    }
+
+    @Override
+    public void putVarints(int[] values, int n) throws IOException {
+        Varints.write(buffer, this::flush, values, n);
+    }
+
+    @Override
+    public void putVarints(long[] values, int n) throws IOException {
+        Varints.write(buffer, this::flush, values, n);
+    }
+
+    @Override
+    public void putFloat(float f) throws IOException {
+        if (buffer.remaining() < Float.BYTES) {
+            flush();
+        }
+
+        buffer.putFloat(f);
+    }
+
+    @Override
+    public void putDouble(double d) throws IOException {
+        if (buffer.remaining() < Double.BYTES) {
+            flush();
+        }
+
+        buffer.putDouble(d);
+    }
+
+    /** Compress the contents of the buffer into a new block */
+    private void flush() throws IOException {
+        buffer.flip();
+
+        int rem = buffer.remaining();
+        if (rem > 0) {
+            long compressedSize = Zstd.compressByteArray(compressedBuffer, 0, compressedBuffer.length,
+                    arrayBuffer, 0, rem,
+                    compressionLevel);
+
+            if (Zstd.isError(compressedSize)) {
+                throw new IOException("Failed to compress block: " + Zstd.getErrorName(compressedSize));
+            }
+
+            writeIndexEntry();
+
+            ByteBuffer compressedData = ByteBuffer.wrap(compressedBuffer, 0, (int) compressedSize);
+            while (compressedData.hasRemaining()) {
+                channel.write(compressedData);
+            }
+
+            position += rem;
+            compressedPosition += compressedSize;
+        }
+
+        buffer.clear();
+    }
+
+    public long position() throws IOException {
+        return position + buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+
+        // terminating entry, lets the reader find the size of the last block
+        writeIndexEntry();
+
+        channel.force(false);
+        channel.close();
+        indexChannel.force(false);
+        indexChannel.close();
+
+        Files.move(tempPath, destPath, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(indexTempPath, indexDestPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Write the uncompressed and compressed offset of the next block to the index */
+    private void writeIndexEntry() throws IOException {
+        indexEntry.clear();
+        indexEntry.putLong(position).putLong(compressedPosition).flip();
+        while (indexEntry.hasRemaining()) {
+            indexChannel.write(indexEntry);
+        }
+    }
+}
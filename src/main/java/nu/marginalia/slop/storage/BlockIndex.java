@@ -0,0 +1,106 @@
+package nu.marginalia.slop.storage;
+
+import com.github.luben.zstd.Zstd;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/** The block index of block compressed ZSTD storage, which holds the uncompressed
+ * and compressed offset of each block.
+ *
+ * @see BlockCompressingStorageWriter
+ */
+final class BlockIndex {
+    /** Uncompressed offset of each block, followed by the total uncompressed size */
+    final long[] blockOffsets;
+    /** Compressed offset of each block, followed by the total compressed size */
+    final long[] compressedOffsets;
+    final int numBlocks;
+
+    final int maxBlockSize;
+    final int maxCompressedSize;
+
+    BlockIndex(Path indexPath) throws IOException {
+        LongBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexPath))
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asLongBuffer();
+
+        numBlocks = index.remaining() / 2 - 1;
+        if (numBlocks < 0) {
+            throw new IOException("Malformed block index " + indexPath);
+        }
+
+        blockOffsets = new long[numBlocks + 1];
+        compressedOffsets = new long[numBlocks + 1];
+
+        int maxBlockSize = 0;
+        int maxCompressedSize = 0;
+
+        for (int i = 0; i <= numBlocks; i++) {
+            blockOffsets[i] = index.get();
+            compressedOffsets[i] = index.get();
+
+            if (i > 0) {
+                maxBlockSize = Math.max(maxBlockSize, blockSize(i - 1));
+                maxCompressedSize = Math.max(maxCompressedSize, compressedSize(i - 1));
+            }
+        }
+
+        this.maxBlockSize = maxBlockSize;
+        this.maxCompressedSize = maxCompressedSize;
+    }
+
+    /** Return the total uncompressed size of the data */
+    long size() {
+        return blockOffsets[numBlocks];
+    }
+
+    /** Return the uncompressed size of the given block */
+    int blockSize(int block) {
+        return (int) (blockOffsets[block + 1] - blockOffsets[block]);
+    }
+
+    /** Return the block containing the given position, which must be less than the size */
+    int blockOf(long position) {
+        int block = Arrays.binarySearch(blockOffsets, 0, numBlocks, position);
+        if (block < 0) {
+            block = -block - 2;
+        }
+        return block;
+    }
+
+    /** Return the compressed size of the given block */
+    int compressedSize(int block) {
+        return (int) (compressedOffsets[block + 1] - compressedOffsets[block]);
+    }
+
+    /** Read the compressed data of a block into the start of dst */
+    void readCompressed(FileChannel channel, int block, byte[] dst) throws IOException {
+        ByteBuffer compressedData = ByteBuffer.wrap(dst, 0, compressedSize(block));
+        while (compressedData.hasRemaining()) {
+            if (channel.read(compressedData, compressedOffsets[block] + compressedData.position()) < 0) {
+                throw new EOFException("Unexpected end of block compressed data");
+            }
+        }
+    }
+
+    /** Decompress a block, whose compressed data is at the start of compressed, into dst at offset,
+     * and return its size
+     */
+    int decompress(int block, byte[] compressed, byte[] dst, int offset, int length) throws IOException {
+        long size = Zstd.decompressByteArray(dst, offset, length, compressed, 0, compressedSize(block));
+
+        if (Zstd.isError(size)) {
+            throw new IOException("Failed to decompress block " + block + ": " + Zstd.getErrorName(size));
+        }
+
+        return (int) size;
+    }
+}
@@ -0,0 +1,172 @@
+package nu.marginalia.slop.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** Random access to block compressed ZSTD storage.
+ * <p></p>
+ * The compressed data is memory mapped, and the block holding a value is found through
+ * the block index and decompressed on demand.  Recently used blocks are kept in a small
+ * cache, so memory use is bounded by the cache and not the size of the column.
+ * <p></p>
+ * A failure to read or decompress a block is thrown as an {@link UncheckedIOException}.
+ *
+ * @see BlockCompressingStorageReader
+ */
+@SuppressWarnings("preview") // for MemorySegment in jdk-21
+final class BlockRandomAccessStorage extends RandomAccessStorage {
+    /** The number of decompressed blocks to keep */
+    private static final int CACHE_SIZE = 16;
+
+    private final Arena arena;
+    /** The compressed data */
+    private final MemorySegment compressed;
+    private final BlockIndex index;
+    private final ByteOrder order;
+
+    /** Decompressed blocks, with block b kept in slot b % CACHE_SIZE.  Blocks are
+     * immutable once cached, so the slots need no locking.
+     */
+    private final AtomicReferenceArray<Block> cache = new AtomicReferenceArray<>(CACHE_SIZE);
+
+    /** Decompressed data starting at an offset in the column */
+    private record Block(int block, long start, ByteBuffer data) {
+        int position(long offset) {
+            return (int) (offset - start);
+        }
+    }
+
+    private BlockRandomAccessStorage(Arena arena, MemorySegment compressed, BlockIndex index, ByteOrder order) {
+        this.arena = arena;
+        this.compressed = compressed;
+        this.index = index;
+        this.order = order;
+    }
+
+    static BlockRandomAccessStorage open(Path path, Path indexPath, ByteOrder order) throws IOException {
+        BlockIndex index = new BlockIndex(indexPath);
+
+        // mapped rather than read through the channel, as an interrupted read would close
+        // the channel for every thread sharing the storage
+        Arena arena = Arena.ofShared();
+        try (var channel = (FileChannel) Files.newByteChannel(path, StandardOpenOption.READ)) {
+            MemorySegment compressed = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            return new BlockRandomAccessStorage(arena, compressed, index, order);
+        }
+        catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /** Return a block holding the width bytes at offset.  A value that straddles two
+     * blocks is copied into a block of its own, which is not cached.
+     */
+    private Block block(long offset, int width) {
+        Objects.checkFromIndexSize(offset, width, index.size());
+
+        Block block = cachedBlock(index.blockOf(offset));
+        if (block.position(offset) + width <= block.data.capacity()) {
+            return block;
+        }
+
+        ByteBuffer value = ByteBuffer.allocate(width).order(order);
+        for (long pos = offset; pos < offset + width; pos++) {
+            if (pos >= block.start + block.data.capacity()) {
+                block = cachedBlock(block.block + 1);
+            }
+            value.put(block.data.get(block.position(pos)));
+        }
+        return new Block(-1, offset, value);
+    }
+
+    private Block cachedBlock(int blockIndex) {
+        int slot = blockIndex % CACHE_SIZE;
+
+        Block block = cache.get(slot);
+        if (block != null && block.block == blockIndex) {
+            return block;
+        }
+
+        byte[] compressedData = new byte[index.compressedSize(blockIndex)];
+        byte[] data = new byte[index.blockSize(blockIndex)];
+        try {
+            MemorySegment.copy(compressed, ValueLayout.JAVA_BYTE, index.compressedOffsets[blockIndex],
+                    compressedData, 0, compressedData.length);
+
+            if (index.decompress(blockIndex, compressedData, data, 0, data.length) != data.length) {
+                throw new IOException("Block " + blockIndex + " is shorter than its index entry");
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        block = new Block(blockIndex, index.blockOffsets[blockIndex], ByteBuffer.wrap(data).order(order));
+        cache.set(slot, block);
+        return block;
+    }
+
+    @Override
+    public long size() {
+        return index.size();
+    }
+
+    @Override
+    public byte getByte(long offset) {
+        Block block = block(offset, Byte.BYTES);
+        return block.data.get(block.position(offset));
+    }
+
+    @Override
+    public short getShort(long offset) {
+        Block block = block(offset, Short.BYTES);
+        return block.data.getShort(block.position(offset));
+    }
+
+    @Override
+    public char getChar(long offset) {
+        Block block = block(offset, Character.BYTES);
+        return block.data.getChar(block.position(offset));
+    }
+
+    @Override
+    public int getInt(long offset) {
+        Block block = block(offset, Integer.BYTES);
+        return block.data.getInt(block.position(offset));
+    }
+
+    @Override
+    public long getLong(long offset) {
+        Block block = block(offset, Long.BYTES);
+        return block.data.getLong(block.position(offset));
+    }
+
+    @Override
+    public float getFloat(long offset) {
+        Block block = block(offset, Float.BYTES);
+        return block.data.getFloat(block.position(offset));
+    }
+
+    @Override
+    public double getDouble(long offset) {
+        Block block = block(offset, Double.BYTES);
+        return block.data.getDouble(block.position(offset));
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+}
@@ -0,0 +1,12 @@
+package nu.marginalia.slop.storage;
+
+import java.io.IOException;
+
+/** Refills the buffer of a storage reader, or flushes the buffer of a storage writer,
+ * for the helpers that work on the buffer but don't know where its data comes from or goes.
+ * A refill that leaves the buffer empty signals the end of the data.
+ */
+@FunctionalInterface
+interface BufferCallback {
+    void run() throws IOException;
+}
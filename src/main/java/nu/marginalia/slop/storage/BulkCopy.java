@@ -0,0 +1,154 @@
+package nu.marginalia.slop.storage;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/** Bulk copies between primitive arrays and the buffers of the storage readers and writers.
+ * <p></p>
+ * These go through a typed view of the buffer, which copies the values in one go, and
+ * takes care of the byte order, instead of one bounds checked get or put per value.
+ * Each method copies as many values as fit in the buffer, and returns how many that was,
+ * leaving it to the caller to refill or flush the buffer and deal with any value that
+ * straddles the end of the buffer, which {@link #copyAll} does for the readers and writers.
+ */
+final class BulkCopy {
+    private BulkCopy() {}
+
+    /** Copies as many values as fit between an array, starting at offset, and a buffer,
+     * up to length, and returns how many that was.  One of the get and put methods below.
+     */
+    @FunctionalInterface
+    interface Chunk {
+        int copy(int offset, int length);
+    }
+
+    /** Copy length values of width bytes, starting at offset in the array, chunk by chunk through
+     * the buffer of a reader or writer.  The callback refills or flushes the buffer whenever it has
+     * no room for a whole value, which compacts any partial value to its start.
+     *
+     * @throws BufferUnderflowException if a reader runs out of data
+     */
+    static void copyAll(ByteBuffer buffer, int width, int offset, int length, Chunk chunk, BufferCallback callback) throws IOException {
+        while (length > 0) {
+            int n = chunk.copy(offset, length);
+            if (n == 0) { // the buffer is empty or full, or a value straddles its end
+                callback.run();
+                if (buffer.remaining() < width) { // end of data
+                    throw new BufferUnderflowException();
+                }
+                continue;
+            }
+            offset += n;
+            length -= n;
+        }
+    }
+
+    static int get(ByteBuffer buffer, short[] dst, int offset, int length) {
+        int n = Math.min(length, buffer.remaining() / Short.BYTES);
+        if (n > 0) {
+            buffer.asShortBuffer().get(dst, offset, n);
+            buffer.position(buffer.position() + n * Short.BYTES);
+        }
+        return n;
+    }
+
+    static int put(ByteBuffer buffer, short[] src, int offset, int length) {
+        int n = Math.min(length, buffer.remaining() / Short.BYTES);
+        if (n > 0) {
+            buffer.asShortBuffer().put(src, offset, n);
+            buffer.position(buffer.position() + n * Short.BYTES);
+        }
+        return n;
+    }
+
+    static int get(ByteBuffer buffer, char[] dst, int offset, int length) {
+        int n = Math.min(length, buffer.remaining() / Character.BYTES);
+        if (n > 0) {
+            buffer.asCharBuffer().get(dst, offset, n);
+            buffer.position(buffer.position() + n * Character.BYTES);
+        }
+        return n;
+    }
+
+    static int put(ByteBuffer buffer, char[] src, int offset, int length) {
+        int n = Math.min(length, buffer.remaining() / Character.BYTES);
+        if (n > 0) {
+            buffer.asCharBuffer().put(src, offset, n);
+            buffer.position(buffer.position() + n * Character.BYTES);
+        }
+        return n;
+    }
+
+    static int get(ByteBuffer buffer, int[] dst, int offset, int length) {
+        int n = Math.min(length, buffer.remaining() / Integer.BYTES);
+        if (n > 0) {
+            buffer.asIntBuffer().get(dst, offset, n);
+            buffer.position(buffer.position() + n * Integer.BYTES);
+        }
+        return n;
+    }
+
+    static int put(ByteBuffer buffer, int[] src, int offset, int length) {
+        int n = Math.min(length, buffer.remaining() / Integer.BYTES);
+        if (n > 0) {
+            buffer.asIntBuffer().put(src, offset, n);
+            buffer.position(buffer.position() + n * Integer.BYTES);
+        }
+        return n;
+    }
+
+    static int get(ByteBuffer buffer, long[] dst, int offset, int length) {
+        int n = Math.min(length, buffer.remaining() / Long.BYTES);
+        if (n > 0) {
+            buffer.asLongBuffer().get(dst, offset, n);
+            buffer.position(buffer.position() + n * Long.BYTES);
+        }
+        return n;
+    }
+
+    static int put(ByteBuffer buffer, long[] src, int offset, int length) {
+        int n = Math.min(length, buffer.remaining() / Long.BYTES);
+        if (n > 0) {
+            buffer.asLongBuffer().put(src, offset, n);
+            buffer.position(buffer.position() + n * Long.BYTES);
+        }
+        return n;
+    }
+
+    static int get(ByteBuffer buffer, float[] dst, int offset, int length) {
+        int n = Math.min(length, buffer.remaining() / Float.BYTES);
+        if (n > 0) {
+            buffer.asFloatBuffer().get(dst, offset, n);
+            buffer.position(buffer.position() + n * Float.BYTES);
+        }
+        return n;
+    }
+
+    static int put(ByteBuffer buffer, float[] src, int offset, int length) {
+        int n = Math.min(length, buffer.remaining() / Float.BYTES);
+        if (n > 0) {
+            buffer.asFloatBuffer().put(src, offset, n);
+            buffer.position(buffer.position() + n * Float.BYTES);
+        }
+        return n;
+    }
+
+    static int get(ByteBuffer buffer, double[] dst, int offset, int length) {
+        int n = Math.min(length, buffer.remaining() / Double.BYTES);
+        if (n > 0) {
+            buffer.asDoubleBuffer().get(dst, offset, n);
+            buffer.position(buffer.position() + n * Double.BYTES);
+        }
+        return n;
+    }
+
+    static int put(ByteBuffer buffer, double[] src, int offset, int length) {
+        int n = Math.min(length, buffer.remaining() / Double.BYTES);
+        if (n > 0) {
+            buffer.asDoubleBuffer().put(src, offset, n);
+            buffer.position(buffer.position() + n * Double.BYTES);
+        }
+        return n;
+    }
+}
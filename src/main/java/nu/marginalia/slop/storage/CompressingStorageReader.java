@@ -6,14 +6,22 @@ import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStre
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.zip.GZIPInputStream;
 
 public class CompressingStorageReader implements StorageReader {
+    /** Size of each read-ahead buffer, when read-ahead is enabled */
+    private static final int READ_AHEAD_BUFFER_SIZE = 256 * 1024;
+    /** Number of read-ahead buffers, when read-ahead is enabled */
+    private static final int READ_AHEAD_BUFFER_COUNT = 3;
+
     private final byte[] arrayBuffer;
 
     private long position = 0;
@@ -22,11 +30,22 @@ public class CompressingStorageReader implements StorageReader {
     private final ByteBuffer buffer;
 
     public CompressingStorageReader(Path path, StorageType storageType, ByteOrder order, int bufferSize) throws IOException {
-        is = switch (storageType) {
-            case GZIP -> new GZIPInputStream(Files.newInputStream(path, StandardOpenOption.READ));
-            case ZSTD -> new ZstdCompressorInputStream(Files.newInputStream(path, StandardOpenOption.READ));
-            default -> throw new UnsupportedEncodingException("Unsupported storage type: " + storageType);
-        };
+        this(path, storageType, order, bufferSize, false);
+    }
+
+    /** Create a new reader
+     *
+     * @param readAhead if true, the data is decompressed ahead of the reader in a background thread
+     */
+    public CompressingStorageReader(Path path, StorageType storageType, ByteOrder order, int bufferSize, boolean readAhead) throws IOException {
+        InputStream decompressingStream = openStream(path, storageType, bufferSize);
+
+        if (readAhead) {
+            is = new ReadAheadInputStream(decompressingStream, READ_AHEAD_BUFFER_SIZE, READ_AHEAD_BUFFER_COUNT);
+        }
+        else {
+            is = decompressingStream;
+        }
 
         this.arrayBuffer = new byte[bufferSize];
         this.buffer = ByteBuffer.wrap(arrayBuffer).order(order);
@@ -39,6 +58,44 @@ public class CompressingStorageReader implements StorageReader {
         refill();
     }
 
+    /** Open a stream that decompresses the given file */
+    static InputStream openStream(Path path, StorageType storageType, int bufferSize) throws IOException {
+        return switch (storageType) {
+            case GZIP -> new GZIPInputStream(Files.newInputStream(path, StandardOpenOption.READ), bufferSize);
+            case ZSTD -> new ZstdCompressorInputStream(Files.newInputStream(path, StandardOpenOption.READ));
+            default -> throw new UnsupportedEncodingException("Unsupported storage type: " + storageType);
+        };
+    }
+
+    /** Decompress the given file in full, and map the result into memory in the given arena.
+     * <p></p>
+     * The data is streamed into a temporary file, which is deleted once it is mapped, so
+     * that neither the size of the data nor the heap limits what can be decompressed.
+     * The mapping stays valid until the arena is closed.
+     */
+    @SuppressWarnings("preview") // for MemorySegment in jdk-21
+    static MemorySegment decompressMapped(Path path, StorageType storageType, int bufferSize, Arena arena) throws IOException {
+        Path tempFile = Files.createTempFile("slop-", ".decompressed");
+
+        try {
+            try (var is = openStream(path, storageType, bufferSize);
+                 var os = Files.newOutputStream(tempFile, StandardOpenOption.WRITE))
+            {
+                byte[] buffer = new byte[bufferSize];
+                for (int n; (n = is.read(buffer)) >= 0; ) {
+                    os.write(buffer, 0, n);
+                }
+            }
+
+            try (var channel = FileChannel.open(tempFile, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            }
+        }
+        finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
     @Override
     public byte getByte() throws IOException {
         if (buffer.remaining() < Byte.BYTES) {
@@ -147,32 +204,59 @@ public class CompressingStorageReader implements StorageReader {
         }
     }
 
-    public void getInts(int[] ints) throws IOException {
-        if (buffer.remaining() >= ints.length * Integer.BYTES) {
-            // fast path: if we can read all the ints from the buffer and don't need to check for buffer boundaries
-            for (int i = 0; i < ints.length; i++) {
-                ints[i] = buffer.getInt();
-            }
-        }
-        else {
-            for (int i = 0; i < ints.length; i++) {
-                ints[i] = getInt();
-            }
-        }
+    @Override
+    public void getShorts(short[] shorts, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Short.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, shorts, o, n), this::refill);
     }
 
-    public void getLongs(long[] longs) throws IOException {
-        if (buffer.remaining() >= longs.length * Long.BYTES) {
-            // fast path: if we can read all the longs from the buffer and don't need to check for buffer boundaries
-            for (int i = 0; i < longs.length; i++) {
-                longs[i] = buffer.getLong();
-            }
-        }
-        else {
-            for (int i = 0; i < longs.length; i++) {
-                longs[i] = getLong();
-            }
-        }
+    @Override
+    public void getChars(char[] chars, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Character.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, chars, o, n), this::refill);
+    }
+
+    @Override
+    public void getInts(int[] ints, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Integer.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, ints, o, n), this::refill);
+    }
+
+    @Override
+    public void getLongs(long[] longs, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Long.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, longs, o, n), this::refill);
+    }
+
+    @Override
+    public void getFloats(float[] floats, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Float.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, floats, o, n), this::refill);
+    }
+
+    @Override
+    public void getDoubles(double[] doubles, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Double.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, doubles, o, n), this::refill);
+    }
+
+    @Override
+    public long getVarint() throws IOException {
+        return Varints.read(this, buffer, this::refill);
+    }
+
+    @Override
+    public void getVarints(int[] dst, int n) throws IOException {
+        Varints.read(this, buffer, this::refill, dst, n);
+    }
+
+    @Override
+    public void getVarints(long[] dst, int n) throws IOException {
+        Varints.read(this, buffer, this::refill, dst, n);
+    }
+
+    @Override
+    public byte[] getBytesUntil(byte delimiter) throws IOException {
+        return Delimiters.getBytesUntil(buffer, delimiter, this::refill);
+    }
+
+    @Override
+    public long skipPast(byte delimiter, long count) throws IOException {
+        return Delimiters.skipPast(buffer, delimiter, count, this::refill);
     }
 
     @Override
@@ -197,7 +281,13 @@ public class CompressingStorageReader implements StorageReader {
 
     @Override
     public void seek(long position, int stepSize) throws IOException {
-        throw new UnsupportedEncodingException("Seek not supported in GzipStorageReader");
+        // the stream can't be rewound, but seeking forward is the same as skipping
+        long toSkip = position * stepSize - position();
+        if (toSkip < 0) {
+            throw new UnsupportedOperationException("Seeking backwards is not supported in " + getClass().getSimpleName());
+        }
+
+        skip(toSkip, 1);
     }
 
     private void refill() throws IOException {
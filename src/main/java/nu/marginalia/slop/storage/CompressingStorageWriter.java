@@ -1,5 +1,6 @@
 package nu.marginalia.slop.storage;
 
+import com.github.luben.zstd.Zstd;
 import nu.marginalia.slop.desc.StorageType;
 import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
 
@@ -24,14 +25,38 @@ public class CompressingStorageWriter implements StorageWriter, AutoCloseable {
     private final Path destPath;
 
     public CompressingStorageWriter(Path path, StorageType storageType, ByteOrder order, int bufferSize) throws IOException {
+        this(path, storageType, order, bufferSize, StorageOptions.DEFAULT_COMPRESSION_LEVEL);
+    }
+
+    /** Create a new writer
+     *
+     * @param compressionLevel the compression level, or StorageOptions.DEFAULT_COMPRESSION_LEVEL for the codec default
+     */
+    public CompressingStorageWriter(Path path, StorageType storageType, ByteOrder order, int bufferSize, int compressionLevel) throws IOException {
         tempPath = path.resolveSibling(path.getFileName() + ".tmp");
         destPath = path;
 
-        os = switch (storageType) {
-            case GZIP -> new GZIPOutputStream(Files.newOutputStream(tempPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
-            case ZSTD -> new ZstdCompressorOutputStream(Files.newOutputStream(tempPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
-            default -> throw new IllegalArgumentException("Unsupported storage type: " + storageType);
-        };
+        OutputStream fileStream = Files.newOutputStream(tempPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+        try {
+            os = switch (storageType) {
+                // the deflater buffer size also decides the size of the writes to the file
+                case GZIP -> new LeveledGZIPOutputStream(fileStream, bufferSize, compressionLevel);
+                case ZSTD -> new ZstdCompressorOutputStream(fileStream,
+                        compressionLevel != StorageOptions.DEFAULT_COMPRESSION_LEVEL ? compressionLevel : Zstd.defaultCompressionLevel());
+                default -> throw new IllegalArgumentException("Unsupported storage type: " + storageType);
+            };
+        }
+        catch (IOException | RuntimeException e) {
+            try {
+                fileStream.close();
+                Files.deleteIfExists(tempPath);
+            }
+            catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
 
         arrayBuffer = new byte[bufferSize];
         this.buffer = ByteBuffer.wrap(arrayBuffer).order(order);
@@ -82,34 +107,6 @@ public class CompressingStorageWriter implements StorageWriter, AutoCloseable {
         buffer.putLong(l);
     }
 
-    @Override
-    public void putInts(int[] values) throws IOException {
-        if (buffer.remaining() >= Integer.BYTES * values.length) {
-            for (int value : values) {
-                buffer.putInt(value);
-            }
-        }
-        else {
-            for (int value : values) {
-                putInt(value);
-            }
-        }
-    }
-
-    @Override
-    public void putLongs(long[] values) throws IOException {
-        if (buffer.remaining() >= Long.BYTES * values.length) {
-            for (long value : values) {
-                buffer.putLong(value);
-            }
-        }
-        else {
-            for (long value : values) {
-                putLong(value);
-            }
-        }
-    }
-
     @Override
     public void putBytes(byte[] bytes) throws IOException {
         putBytes(bytes, 0, bytes.length);
@@ -163,6 +160,51 @@ public class CompressingStorageWriter implements StorageWriter, AutoCloseable {
         }
     }
 
+    @Override
+    public void putShorts(short[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Short.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putChars(char[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Character.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putInts(int[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Integer.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putLongs(long[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Long.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putFloats(float[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Float.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putDoubles(double[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Double.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putVarint(long value) throws IOException {
+        Varints.write(buffer, this::flush, value);
+    }
+
+    @Override
+    public void putVarints(int[] values, int n) throws IOException {
+        Varints.write(buffer, this::flush, values, n);
+    }
+
+    @Override
+    public void putVarints(long[] values, int n) throws IOException {
+        Varints.write(buffer, this::flush, values, n);
+    }
+
     @Override
     public void putFloat(float f) throws IOException {
         if (buffer.remaining() < Float.BYTES) {
@@ -207,4 +249,22 @@ public class CompressingStorageWriter implements StorageWriter, AutoCloseable {
 
         Files.move(tempPath, destPath, StandardCopyOption.REPLACE_EXISTING);
     }
+
+    /** A GZIPOutputStream with a compression level, which the standard one only exposes to subclasses */
+    private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+        LeveledGZIPOutputStream(OutputStream out, int bufferSize, int compressionLevel) throws IOException {
+            super(out, bufferSize);
+
+            if (compressionLevel != StorageOptions.DEFAULT_COMPRESSION_LEVEL) {
+                try {
+                    def.setLevel(compressionLevel);
+                }
+                catch (IllegalArgumentException e) {
+                    // the caller never gets the stream to close, so the deflater is released here
+                    def.end();
+                    throw e;
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,158 @@
+package nu.marginalia.slop.storage;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/** Scanning for delimiter bytes, e.g. the terminators of delimited strings, eight bytes at a time.
+ * <p></p>
+ * Each long is XORed with the delimiter repeated in every byte, which turns the matching
+ * bytes into zeroes, and the zero bytes are found with the usual bit trick.  The trick can
+ * flag false matches, but only in bytes more significant than a real match, so reading the
+ * longs in little-endian order and taking the lowest flagged byte always finds the first match.
+ */
+@SuppressWarnings("preview") // for MemorySegment in jdk-21
+final class Delimiters {
+    private Delimiters() {}
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private static final VarHandle BUFFER_LONG_LE =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong SEGMENT_LONG_LE =
+            ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    /** Return the index of the first byte in the long that is zero, or 8 if there is none */
+    private static int firstZeroByte(long v) {
+        long zeroes = (v - ONES) & ~v & HIGH_BITS;
+        return Long.numberOfTrailingZeros(zeroes) >>> 3;
+    }
+
+    /** Return the absolute index of the first occurrence of the delimiter between the
+     * position and the limit of the buffer, or -1 if there is none.  The buffer is not modified.
+     */
+    static int indexOf(ByteBuffer buffer, byte delimiter) {
+        final long pattern = ONES * (delimiter & 0xFF);
+        final int limit = buffer.limit();
+
+        int i = buffer.position();
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long v = (long) BUFFER_LONG_LE.get(buffer, i) ^ pattern;
+            int idx = firstZeroByte(v);
+            if (idx < Long.BYTES) {
+                return i + idx;
+            }
+        }
+        for (; i < limit; i++) {
+            if (buffer.get(i) == delimiter) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /** Return the offset of the first occurrence of the delimiter in the segment at or after
+     * the given offset, or -1 if there is none.
+     */
+    static long indexOf(MemorySegment segment, long offset, byte delimiter) {
+        final long pattern = ONES * (delimiter & 0xFF);
+        final long limit = segment.byteSize();
+
+        long i = offset;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long v = segment.get(SEGMENT_LONG_LE, i) ^ pattern;
+            int idx = firstZeroByte(v);
+            if (idx < Long.BYTES) {
+                return i + idx;
+            }
+        }
+        for (; i < limit; i++) {
+            if (segment.get(ValueLayout.JAVA_BYTE, i) == delimiter) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /** Read the bytes up to the next delimiter, or the end of the data, from a buffered reader,
+     * and consume the delimiter.  Refill is called whenever the buffer runs out.
+     *
+     * @see StorageReader#getBytesUntil(byte)
+     */
+    static byte[] getBytesUntil(ByteBuffer buffer, byte delimiter, BufferCallback refill) throws IOException {
+        byte[] bytes = null;
+        int n = 0;
+
+        for (;;) {
+            if (!buffer.hasRemaining()) {
+                refill.run();
+                if (!buffer.hasRemaining()) { // end of data
+                    break;
+                }
+            }
+
+            int end = indexOf(buffer, delimiter);
+            int length = (end < 0 ? buffer.limit() : end) - buffer.position();
+
+            if (bytes == null && end >= 0) { // the common case, the whole string is in the buffer
+                bytes = new byte[length];
+                buffer.get(bytes);
+                buffer.get();
+                return bytes;
+            }
+
+            if (bytes == null) {
+                bytes = new byte[Math.max(16, 2 * length)];
+            }
+            else if (n + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, n + length));
+            }
+            buffer.get(bytes, n, length);
+            n += length;
+
+            if (end >= 0) {
+                buffer.get();
+                break;
+            }
+        }
+
+        return bytes == null ? new byte[0] : Arrays.copyOf(bytes, n);
+    }
+
+    /** Skip past the next count delimiters of a buffered reader, or to the end of the data,
+     * and return the number of delimiters skipped.  Refill is called whenever the buffer runs out.
+     *
+     * @see StorageReader#skipPast(byte, long)
+     */
+    static long skipPast(ByteBuffer buffer, byte delimiter, long count, BufferCallback refill) throws IOException {
+        long found = 0;
+
+        while (found < count) {
+            if (!buffer.hasRemaining()) {
+                refill.run();
+                if (!buffer.hasRemaining()) { // end of data
+                    break;
+                }
+            }
+
+            int end = indexOf(buffer, delimiter);
+            if (end < 0) {
+                buffer.position(buffer.limit());
+            }
+            else {
+                buffer.position(end + 1);
+                found++;
+            }
+        }
+
+        return found;
+    }
+}
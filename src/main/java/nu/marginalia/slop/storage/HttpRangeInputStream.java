@@ -0,0 +1,448 @@
+package nu.marginalia.slop.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** An InputStream over a file served over HTTP, which is fetched in chunks
+ * with Range requests.
+ * <p></p>
+ * Up to a given number of chunks are fetched ahead of the reader in parallel, which
+ * gets around the throughput limit of a single TCP stream.  If a connection is dropped
+ * partway through a chunk, the chunk is resumed from where it left off.  The stream
+ * can also be seeked, without fetching the data in between.
+ * <p></p>
+ * Every request after the first carries the ETag or Last-Modified of the first response,
+ * so a file that is replaced on the server while it is being read fails the read with
+ * an IOException, rather than returning a mix of both versions.
+ * <p></p>
+ * If the server does not support Range requests, the stream falls back to reading
+ * the response body sequentially, and can then neither be read in parallel, resumed
+ * nor seeked backwards.
+ */
+public class HttpRangeInputStream extends InputStream {
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes \\d+-\\d+/(\\d+)");
+
+    /** Shared between all streams, as each client holds on to a selector thread and a connection pool */
+    private static volatile HttpClient sharedClient;
+
+    private final HttpClient client;
+    private final URI uri;
+    private final int chunkSize;
+    private final int parallelism;
+    private final int maxRetries;
+
+    /** The ETag, or failing that the Last-Modified, of the first response, or null if it had neither */
+    private final String validator;
+    /** The size of the file, or -1 if the server does not support Range requests */
+    private final long size;
+    /** The response body, if the server does not support Range requests */
+    private final InputStream sequentialBody;
+
+    private final ExecutorService executor;
+    /** Chunks being fetched ahead of the reader, in order, starting at nextChunkStart */
+    private final ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>();
+    private long nextChunkStart;
+
+    private byte[] chunk = new byte[0];
+    private int chunkPos = 0;
+    /** The position of the next byte to be read */
+    private long position = 0;
+
+    public HttpRangeInputStream(URI uri, int parallelism) throws IOException {
+        this(sharedClient(), uri, DEFAULT_CHUNK_SIZE, parallelism, DEFAULT_MAX_RETRIES);
+    }
+
+    /** Open a stream
+     *
+     * @param chunkSize the size of each Range request
+     * @param parallelism the number of chunks to fetch concurrently
+     * @param maxRetries the number of times a chunk is resumed after a failure before giving up
+     */
+    public HttpRangeInputStream(HttpClient client, URI uri, int chunkSize, int parallelism, int maxRetries) throws IOException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1, was " + chunkSize);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, was " + parallelism);
+        }
+
+        this.client = client;
+        this.uri = uri;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.maxRetries = maxRetries;
+
+        // Ask for the first chunk, and find out from the response whether the server supports ranges
+        HttpResponse<InputStream> response = send(0, chunkSize);
+        validator = validator(response);
+
+        switch (response.statusCode()) {
+            case 206 -> {
+                size = parseSize(response);
+                sequentialBody = null;
+                executor = Executors.newVirtualThreadPerTaskExecutor();
+
+                try (var body = response.body()) {
+                    chunk = new byte[(int) Math.min(chunkSize, size)];
+                    int read = readBody(body, chunk, 0, chunk.length);
+                    if (read < chunk.length) { // the connection dropped already
+                        chunk = fetch(read, chunk.length - read, chunk, read);
+                    }
+                }
+                nextChunkStart = chunk.length;
+                fillPipeline();
+            }
+            case 200 -> {
+                size = -1;
+                sequentialBody = response.body();
+                executor = null;
+            }
+            case 416 -> { // an empty file has no satisfiable ranges
+                response.body().close();
+                size = 0;
+                sequentialBody = null;
+                executor = null;
+            }
+            default -> {
+                response.body().close();
+                throw new IOException("Unexpected status " + response.statusCode() + " for " + uri);
+            }
+        }
+    }
+
+    private static HttpClient sharedClient() {
+        if (sharedClient == null) {
+            synchronized (HttpRangeInputStream.class) {
+                if (sharedClient == null) {
+                    sharedClient = HttpClient.newBuilder()
+                            .followRedirects(HttpClient.Redirect.NORMAL)
+                            .build();
+                }
+            }
+        }
+        return sharedClient;
+    }
+
+    private static long parseSize(HttpResponse<?> response) throws IOException {
+        String contentRange = response.headers().firstValue("Content-Range")
+                .orElseThrow(() -> new IOException("Missing Content-Range in partial response"));
+
+        Matcher m = CONTENT_RANGE_PATTERN.matcher(contentRange);
+        if (!m.matches()) {
+            throw new IOException("Unsupported Content-Range " + contentRange);
+        }
+        return Long.parseLong(m.group(1));
+    }
+
+    /** Return the validator of the version of the file in the response.  If-Range and If-Match
+     * need a strong validator, so a weak ETag is passed over for Last-Modified.
+     */
+    private static String validator(HttpResponse<?> response) {
+        return response.headers().firstValue("ETag")
+                .filter(etag -> !etag.startsWith("W/"))
+                .or(() -> response.headers().firstValue("Last-Modified"))
+                .orElse(null);
+    }
+
+    private HttpResponse<InputStream> send(long start, long length) throws IOException {
+        var request = HttpRequest.newBuilder(uri)
+                .header("Range", "bytes=" + start + "-" + (start + length - 1));
+
+        // Ask for the range of the version of the file we started reading.  If it has changed,
+        // the server answers 412 to If-Match, or the whole new file to If-Range.
+        if (validator != null) {
+            request.header("If-Range", validator);
+            if (validator.startsWith("\"")) { // an ETag
+                request.header("If-Match", validator);
+            }
+        }
+
+        try {
+            return client.send(request.GET().build(), HttpResponse.BodyHandlers.ofInputStream());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + uri);
+        }
+    }
+
+    /** Read up to length bytes of a response body, stopping early if the connection drops.
+     * The HttpClient reports a dropped connection as an IOException, which would lose track
+     * of the bytes that did arrive.
+     */
+    private static int readBody(InputStream body, byte[] dst, int offset, int length) {
+        int read = 0;
+        try {
+            while (read < length) {
+                int rb = body.read(dst, offset + read, length - read);
+                if (rb < 0) break;
+                read += rb;
+            }
+        }
+        catch (IOException e) {
+            // the caller resumes from where we left off
+        }
+        return read;
+    }
+
+    /** Fetch length bytes starting at start into dst at offset, resuming the request
+     * from where it left off if the connection drops.
+     */
+    private byte[] fetch(long start, int length, byte[] dst, int offset) throws IOException {
+        int read = 0;
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                HttpResponse<InputStream> response = send(start + read, length - read);
+
+                try (var body = response.body()) {
+                    if (validator != null && (response.statusCode() == 200 || response.statusCode() == 412)) {
+                        throw new FileChangedException(uri + " changed on the server while it was being read");
+                    }
+                    if (response.statusCode() != 206) {
+                        throw new IOException("Unexpected status " + response.statusCode() + " for range request to " + uri);
+                    }
+
+                    read += readBody(body, dst, offset + read, length - read);
+                }
+
+                if (read == length) {
+                    return dst;
+                }
+
+                throw new EOFException("Connection closed after " + (start + read) + " bytes of " + uri);
+            }
+            catch (InterruptedIOException | FileChangedException e) {
+                throw e;
+            }
+            catch (IOException e) {
+                if (attempt >= maxRetries) {
+                    throw new IOException("Failed to fetch " + uri + " after " + attempt + " retries", e);
+                }
+            }
+        }
+    }
+
+    /** Start fetching chunks until parallelism chunks are in flight, or the end of the file is reached */
+    private void fillPipeline() {
+        long start = nextChunkStart + (long) inFlight.size() * chunkSize;
+
+        while (inFlight.size() < parallelism && start < size) {
+            final long chunkStart = start;
+            final int length = (int) Math.min(chunkSize, size - chunkStart);
+
+            inFlight.add(executor.submit(() -> fetch(chunkStart, length, new byte[length], 0)));
+            start += length;
+        }
+    }
+
+    /** Move on to the next chunk, returning false at the end of the file */
+    private boolean nextChunk() throws IOException {
+        if (sequentialBody != null) {
+            if (chunk.length < chunkSize) {
+                chunk = new byte[chunkSize];
+            }
+            int read = sequentialBody.readNBytes(chunk, 0, chunkSize);
+            if (read < chunk.length) {
+                chunk = Arrays.copyOf(chunk, read);
+            }
+            chunkPos = 0;
+            return read > 0;
+        }
+
+        Future<byte[]> next = inFlight.poll();
+        if (next == null) {
+            return false;
+        }
+
+        try {
+            chunk = next.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + uri);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioe) throw ioe;
+            throw new IOException("Failed to fetch " + uri, e.getCause());
+        }
+
+        chunkPos = 0;
+        nextChunkStart += chunk.length;
+        fillPipeline();
+
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (chunkPos >= chunk.length && !nextChunk()) {
+            return -1;
+        }
+
+        position++;
+        return chunk[chunkPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+
+        if (len == 0) {
+            return 0;
+        }
+
+        if (chunkPos >= chunk.length && !nextChunk()) {
+            return -1;
+        }
+
+        int n = Math.min(len, chunk.length - chunkPos);
+        System.arraycopy(chunk, chunkPos, b, off, n);
+        chunkPos += n;
+        position += n;
+
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+
+        if (sequentialBody != null) {
+            long skipped = 0;
+            while (skipped < n && (chunkPos < chunk.length || nextChunk())) {
+                int step = (int) Math.min(n - skipped, chunk.length - chunkPos);
+                chunkPos += step;
+                skipped += step;
+            }
+            position += skipped;
+            return skipped;
+        }
+
+        long target = Math.min(size, position + n);
+        long skipped = target - position;
+        seek(target);
+        return skipped;
+    }
+
+    /** Return true if the stream can be seeked, which requires the server to support Range requests */
+    public boolean isSeekable() {
+        return sequentialBody == null;
+    }
+
+    /** Move to the given position in the file.  The chunks that are already fetched or
+     * in flight are kept if the position is within them, otherwise they are discarded.
+     *
+     * @throws UnsupportedOperationException if the server does not support Range requests
+     */
+    public void seek(long newPosition) throws IOException {
+        if (!isSeekable()) {
+            throw new UnsupportedOperationException("Server does not support Range requests: " + uri);
+        }
+        if (newPosition < 0 || newPosition > size) {
+            throw new IllegalArgumentException("Position " + newPosition + " outside of [0, " + size + "]");
+        }
+
+        long chunkStart = position - chunkPos;
+
+        if (newPosition >= chunkStart && newPosition < chunkStart + chunk.length) {
+            chunkPos = (int) (newPosition - chunkStart);
+            position = newPosition;
+            return;
+        }
+
+        // skip past whole chunks that are in flight, as long as the position is among them
+        while (!inFlight.isEmpty()
+                && newPosition >= nextChunkStart + chunkSize
+                && newPosition < nextChunkStart + (long) inFlight.size() * chunkSize) {
+            inFlight.poll().cancel(true);
+            nextChunkStart += chunkSize;
+        }
+
+        if (newPosition < nextChunkStart || newPosition >= nextChunkStart + (long) inFlight.size() * chunkSize) {
+            // the position is outside of what's in flight, start over from the chunk it's in
+            inFlight.forEach(f -> f.cancel(true));
+            inFlight.clear();
+            nextChunkStart = newPosition - newPosition % chunkSize;
+        }
+
+        chunk = new byte[0];
+        chunkPos = 0;
+        position = nextChunkStart;
+        fillPipeline();
+
+        // advance into the chunk containing the position
+        if (newPosition > position && nextChunk()) {
+            chunkPos = (int) (newPosition - position);
+        }
+        position = newPosition;
+    }
+
+    /** Return the position of the next byte to be read */
+    public long position() {
+        return position;
+    }
+
+    /** Return the size of the file, or -1 if the server does not support Range requests */
+    public long size() {
+        return size;
+    }
+
+    /** Return the number of bytes left in the file.  If the server does not support Range
+     * requests, this is the number of bytes left in the current chunk, and may block to
+     * fetch the next one.
+     */
+    @Override
+    public int available() throws IOException {
+        if (sequentialBody != null) {
+            if (chunkPos >= chunk.length) {
+                nextChunk();
+            }
+            return chunk.length - chunkPos;
+        }
+
+        return (int) Math.min(Integer.MAX_VALUE, size - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inFlight.forEach(f -> f.cancel(true));
+        inFlight.clear();
+
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (sequentialBody != null) {
+            sequentialBody.close();
+        }
+    }
+
+    /** Thrown when the file no longer matches the validator, which is not worth retrying */
+    private static class FileChangedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        FileChangedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package nu.marginalia.slop.storage;
 
+import nu.marginalia.slop.desc.StorageType;
+
 import java.io.IOException;
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -12,21 +15,85 @@ import java.nio.file.StandardOpenOption;
 
 @SuppressWarnings("preview") // for MemorySegment in jdk-21
 public class MmapStorageReader implements StorageReader {
+    // The layouts are unaligned, as the data may well be preceded by values of a different width.
+    // They are constants rather than fields picked by the byte order, so that the JIT can fold
+    // the accesses into plain loads.
+    static final ValueLayout.OfShort SHORT_LE = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    static final ValueLayout.OfChar CHAR_LE = ValueLayout.JAVA_CHAR_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    static final ValueLayout.OfInt INT_LE = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    static final ValueLayout.OfLong LONG_LE = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    static final ValueLayout.OfFloat FLOAT_LE = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    static final ValueLayout.OfDouble DOUBLE_LE = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    static final ValueLayout.OfShort SHORT_BE = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    static final ValueLayout.OfChar CHAR_BE = ValueLayout.JAVA_CHAR_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    static final ValueLayout.OfInt INT_BE = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    static final ValueLayout.OfLong LONG_BE = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    static final ValueLayout.OfFloat FLOAT_BE = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    static final ValueLayout.OfDouble DOUBLE_BE = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
     private final MemorySegment segment;
     private final Arena arena;
+    private final boolean bigEndian;
 
     private long position = 0;
 
     public MmapStorageReader(Path path) throws IOException {
+        this(path, ByteOrder.nativeOrder());
+    }
+
+    public MmapStorageReader(Path path, ByteOrder order) throws IOException {
         arena = Arena.ofConfined();
+        bigEndian = order == ByteOrder.BIG_ENDIAN;
 
         try (var channel = (FileChannel) Files.newByteChannel(path, StandardOpenOption.READ)) {
             this.segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
         }
+        catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
 
         position = 0;
     }
 
+    /** Create a reader over a segment that is owned by someone else, e.g. {@link SharedMappings}.
+     * Closing this reader will not release the segment.
+     */
+    public MmapStorageReader(MemorySegment segment) {
+        this(segment, ByteOrder.nativeOrder());
+    }
+
+    /** Create a reader over a segment that is owned by someone else, e.g. {@link SharedMappings}.
+     * Closing this reader will not release the segment.
+     */
+    public MmapStorageReader(MemorySegment segment, ByteOrder order) {
+        this(null, segment, order);
+    }
+
+    /** Create a reader over a segment allocated in the given arena.  The reader takes
+     * ownership of the arena, and closes it when the reader is closed.
+     */
+    MmapStorageReader(Arena arena, MemorySegment segment, ByteOrder order) {
+        this.arena = arena;
+        this.segment = segment;
+        this.bigEndian = order == ByteOrder.BIG_ENDIAN;
+    }
+
+    /** Decompress a GZIP or ZSTD file in full into a memory mapped temporary file, and create
+     * a reader over it.  The mapping is released when the reader is closed.
+     */
+    public static MmapStorageReader decompressed(Path path, StorageType storageType, ByteOrder order, int bufferSize) throws IOException {
+        Arena arena = Arena.ofConfined();
+        try {
+            return new MmapStorageReader(arena, CompressingStorageReader.decompressMapped(path, storageType, bufferSize, arena), order);
+        }
+        catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
     @Override
     public byte getByte() throws IOException {
         return segment.get(ValueLayout.JAVA_BYTE, position++);
@@ -34,7 +101,7 @@ public class MmapStorageReader implements StorageReader {
 
     @Override
     public short getShort() throws IOException {
-        short ret = segment.get(ValueLayout.JAVA_SHORT, position);
+        short ret = bigEndian ? segment.get(SHORT_BE, position) : segment.get(SHORT_LE, position);
         position += Short.BYTES;
         return ret;
 
@@ -42,48 +109,42 @@ public class MmapStorageReader implements StorageReader {
 
     @Override
     public char getChar() throws IOException {
-        char ret = segment.get(ValueLayout.JAVA_CHAR, position);
+        char ret = bigEndian ? segment.get(CHAR_BE, position) : segment.get(CHAR_LE, position);
         position += Character.BYTES;
         return ret;
     }
 
     @Override
     public int getInt() throws IOException {
-        int ret = segment.get(ValueLayout.JAVA_INT, position);
+        int ret = bigEndian ? segment.get(INT_BE, position) : segment.get(INT_LE, position);
         position += Integer.BYTES;
         return ret;
     }
 
     @Override
     public long getLong() throws IOException {
-        long ret = segment.get(ValueLayout.JAVA_LONG, position);
+        long ret = bigEndian ? segment.get(LONG_BE, position) : segment.get(LONG_LE, position);
         position += Long.BYTES;
         return ret;
     }
 
     @Override
     public float getFloat() throws IOException {
-        float ret = segment.get(ValueLayout.JAVA_FLOAT, position);
+        float ret = bigEndian ? segment.get(FLOAT_BE, position) : segment.get(FLOAT_LE, position);
         position += Float.BYTES;
         return ret;
     }
 
     @Override
     public double getDouble() throws IOException {
-        double ret = segment.get(ValueLayout.JAVA_DOUBLE, position);
+        double ret = bigEndian ? segment.get(DOUBLE_BE, position) : segment.get(DOUBLE_LE, position);
         position += Double.BYTES;
         return ret;
     }
 
     @Override
     public void getBytes(byte[] bytes) throws IOException {
-        if (position + bytes.length > segment.byteSize()) {
-            throw new ArrayIndexOutOfBoundsException();
-        }
-        for (int i = 0; i < bytes.length; i++) {
-            bytes[i] = segment.get(ValueLayout.JAVA_BYTE, position+i);
-        }
-        position += bytes.length;
+        getBytes(bytes, 0, bytes.length);
     }
 
     @Override
@@ -91,9 +152,7 @@ public class MmapStorageReader implements StorageReader {
         if (position + length > segment.byteSize()) {
             throw new ArrayIndexOutOfBoundsException();
         }
-        for (int i = 0; i < length; i++) {
-            bytes[offset + i] = segment.get(ValueLayout.JAVA_BYTE, position+i);
-        }
+        MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, position, bytes, offset, length);
         position += length;
     }
 
@@ -108,20 +167,154 @@ public class MmapStorageReader implements StorageReader {
         position += toRead;
     }
 
-    public void getInts(int[] ret) {
-        for (int i = 0; i < ret.length; i++) {
-            ret[i] = segment.get(ValueLayout.JAVA_INT, position);
-            position += Integer.BYTES;
+    // The bulk operations below copy straight from the mapped segment into the
+    // heap array, instead of going through one bounds checked get() per element.
+
+    @Override
+    public void getShorts(short[] ret, int offset, int length) {
+        MemorySegment.copy(segment, bigEndian ? SHORT_BE : SHORT_LE, position, ret, offset, length);
+        position += (long) length * Short.BYTES;
+    }
+
+    @Override
+    public void getChars(char[] ret, int offset, int length) {
+        MemorySegment.copy(segment, bigEndian ? CHAR_BE : CHAR_LE, position, ret, offset, length);
+        position += (long) length * Character.BYTES;
+    }
+
+    @Override
+    public void getInts(int[] ret, int offset, int length) {
+        MemorySegment.copy(segment, bigEndian ? INT_BE : INT_LE, position, ret, offset, length);
+        position += (long) length * Integer.BYTES;
+    }
+
+    @Override
+    public void getLongs(long[] ret, int offset, int length) {
+        MemorySegment.copy(segment, bigEndian ? LONG_BE : LONG_LE, position, ret, offset, length);
+        position += (long) length * Long.BYTES;
+    }
+
+    @Override
+    public void getFloats(float[] ret, int offset, int length) {
+        MemorySegment.copy(segment, bigEndian ? FLOAT_BE : FLOAT_LE, position, ret, offset, length);
+        position += (long) length * Float.BYTES;
+    }
+
+    @Override
+    public void getDoubles(double[] ret, int offset, int length) {
+        MemorySegment.copy(segment, bigEndian ? DOUBLE_BE : DOUBLE_LE, position, ret, offset, length);
+        position += (long) length * Double.BYTES;
+    }
+
+    @Override
+    public MemorySegment getSegment(long bytes) {
+        MemorySegment slice = segment.asSlice(position, bytes);
+        position += bytes;
+        return slice;
+    }
+
+    @Override
+    public long getVarint() throws IOException {
+        if (position + Varints.MAX_LENGTH > segment.byteSize()) {
+            // near the end of the segment, check the bounds on every byte
+            return StorageReader.super.getVarint();
         }
+
+        long pos = position;
+
+        byte b = segment.get(ValueLayout.JAVA_BYTE, pos++);
+        long value = b & 0x7F;
+        while (b < 0) {
+            b = segment.get(ValueLayout.JAVA_BYTE, pos++);
+            value = value << 7 | (b & 0x7F);
+        }
+
+        position = pos;
+        return value;
     }
 
-    public void getLongs(long[] ret) {
-        for (int i = 0; i < ret.length; i++) {
-            ret[i] = segment.get(ValueLayout.JAVA_LONG, position);
-            position += Long.BYTES;
+    @Override
+    public void getVarints(int[] dst, int n) throws IOException {
+        final MemorySegment segment = this.segment;
+        final long end = segment.byteSize() - Varints.MAX_LENGTH;
+
+        long pos = position;
+        int i = 0;
+
+        for (; i < n && pos <= end; i++) {
+            byte b = segment.get(ValueLayout.JAVA_BYTE, pos++);
+            int value = b & 0x7F;
+            while (b < 0) {
+                b = segment.get(ValueLayout.JAVA_BYTE, pos++);
+                value = value << 7 | (b & 0x7F);
+            }
+            dst[i] = value;
+        }
+
+        position = pos;
+
+        // near the end of the segment, check the bounds on every byte
+        for (; i < n; i++) {
+            dst[i] = (int) StorageReader.super.getVarint();
         }
     }
 
+    @Override
+    public void getVarints(long[] dst, int n) throws IOException {
+        final MemorySegment segment = this.segment;
+        final long end = segment.byteSize() - Varints.MAX_LENGTH;
+
+        long pos = position;
+        int i = 0;
+
+        for (; i < n && pos <= end; i++) {
+            byte b = segment.get(ValueLayout.JAVA_BYTE, pos++);
+            long value = b & 0x7F;
+            while (b < 0) {
+                b = segment.get(ValueLayout.JAVA_BYTE, pos++);
+                value = value << 7 | (b & 0x7F);
+            }
+            dst[i] = value;
+        }
+
+        position = pos;
+
+        // near the end of the segment, check the bounds on every byte
+        for (; i < n; i++) {
+            dst[i] = StorageReader.super.getVarint();
+        }
+    }
+
+    @Override
+    public byte[] getBytesUntil(byte delimiter) throws IOException {
+        long end = Delimiters.indexOf(segment, position, delimiter);
+        long stop = end < 0 ? segment.byteSize() : end;
+
+        byte[] bytes = new byte[(int) (stop - position)];
+        MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, position, bytes, 0, bytes.length);
+
+        position = end < 0 ? stop : stop + 1;
+        return bytes;
+    }
+
+    @Override
+    public long skipPast(byte delimiter, long count) throws IOException {
+        long found = 0;
+
+        while (found < count && position < segment.byteSize()) {
+            long end = Delimiters.indexOf(segment, position, delimiter);
+            if (end < 0) {
+                position = segment.byteSize();
+            }
+            else {
+                position = end + 1;
+                found++;
+            }
+        }
+
+        return found;
+    }
+
     @Override
     public void skip(long bytes, int stepSize) throws IOException {
         position += bytes * stepSize;
@@ -144,6 +337,8 @@ public class MmapStorageReader implements StorageReader {
 
     @Override
     public void close() throws IOException {
-        arena.close();
+        if (arena != null) {
+            arena.close();
+        }
     }
 }
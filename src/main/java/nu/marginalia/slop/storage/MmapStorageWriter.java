@@ -0,0 +1,244 @@
+package nu.marginalia.slop.storage;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/** Writer that writes directly into a memory mapped file, avoiding the copy into
+ * a write buffer and the system call per buffer that SimpleStorageWriter incurs.
+ * <p></p>
+ * The file is mapped with an initial size, ideally the final size of the file, and is
+ * remapped with a doubled size if the data outgrows it.  The file is truncated to the
+ * size of the data when the writer is closed.
+ */
+@SuppressWarnings("preview") // for MemorySegment in jdk-21
+public class MmapStorageWriter implements StorageWriter, AutoCloseable {
+    private final FileChannel channel;
+
+    private Arena arena;
+    private MemorySegment segment;
+
+    private final ValueLayout.OfShort shortLayout;
+    private final ValueLayout.OfChar charLayout;
+    private final ValueLayout.OfInt intLayout;
+    private final ValueLayout.OfLong longLayout;
+    private final ValueLayout.OfFloat floatLayout;
+    private final ValueLayout.OfDouble doubleLayout;
+
+    private long position = 0;
+
+    private final Path tempPath;
+    private final Path destPath;
+
+    /** Create a new writer
+     *
+     * @param initialSize the size to map initially, which should ideally be the final size of the file
+     */
+    public MmapStorageWriter(Path path, ByteOrder order, long initialSize) throws IOException {
+        tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        destPath = path;
+
+        channel = (FileChannel) Files.newByteChannel(tempPath,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        );
+
+        shortLayout = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(order);
+        charLayout = ValueLayout.JAVA_CHAR_UNALIGNED.withOrder(order);
+        intLayout = ValueLayout.JAVA_INT_UNALIGNED.withOrder(order);
+        longLayout = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(order);
+        floatLayout = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(order);
+        doubleLayout = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(order);
+
+        map(Math.max(initialSize, Long.BYTES));
+    }
+
+    private void map(long size) throws IOException {
+        if (arena != null) {
+            arena.close();
+        }
+
+        arena = Arena.ofConfined();
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+    }
+
+    /** Ensure there is room for the given number of bytes at the current position */
+    private void ensureCapacity(long bytes) throws IOException {
+        if (position + bytes > segment.byteSize()) {
+            map(Math.max(2 * segment.byteSize(), position + bytes));
+        }
+    }
+
+    @Override
+    public void putByte(byte b) throws IOException {
+        ensureCapacity(Byte.BYTES);
+        segment.set(ValueLayout.JAVA_BYTE, position, b);
+        position += Byte.BYTES;
+    }
+
+    @Override
+    public void putShort(short s) throws IOException {
+        ensureCapacity(Short.BYTES);
+        segment.set(shortLayout, position, s);
+        position += Short.BYTES;
+    }
+
+    @Override
+    public void putChar(char c) throws IOException {
+        ensureCapacity(Character.BYTES);
+        segment.set(charLayout, position, c);
+        position += Character.BYTES;
+    }
+
+    @Override
+    public void putInt(int i) throws IOException {
+        ensureCapacity(Integer.BYTES);
+        segment.set(intLayout, position, i);
+        position += Integer.BYTES;
+    }
+
+    @Override
+    public void putLong(long l) throws IOException {
+        ensureCapacity(Long.BYTES);
+        segment.set(longLayout, position, l);
+        position += Long.BYTES;
+    }
+
+    @Override
+    public void putVarint(long value) throws IOException {
+        if (value < 0)
+            throw new IllegalArgumentException("Value must be positive");
+
+        ensureCapacity(Varints.MAX_LENGTH);
+
+        if (value < 0x80) {
+            segment.set(ValueLayout.JAVA_BYTE, position++, (byte) value);
+            return;
+        }
+
+        for (int shift = 7 * (Varints.length(value) - 1); shift > 0; shift -= 7) {
+            segment.set(ValueLayout.JAVA_BYTE, position++, (byte) ((value >>> shift) | 0x80));
+        }
+        segment.set(ValueLayout.JAVA_BYTE, position++, (byte) (value & 0x7F));
+    }
+
+    @Override
+    public void putVarints(int[] values, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            putVarint(values[i]);
+        }
+    }
+
+    @Override
+    public void putVarints(long[] values, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            putVarint(values[i]);
+        }
+    }
+
+    @Override
+    public void putFloat(float f) throws IOException {
+        ensureCapacity(Float.BYTES);
+        segment.set(floatLayout, position, f);
+        position += Float.BYTES;
+    }
+
+    @Override
+    public void putDouble(double d) throws IOException {
+        ensureCapacity(Double.BYTES);
+        segment.set(doubleLayout, position, d);
+        position += Double.BYTES;
+    }
+
+    @Override
+    public void putBytes(byte[] bytes) throws IOException {
+        putBytes(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void putBytes(byte[] bytes, int offset, int length) throws IOException {
+        ensureCapacity(length);
+        MemorySegment.copy(bytes, offset, segment, ValueLayout.JAVA_BYTE, position, length);
+        position += length;
+    }
+
+    @Override
+    public void putBytes(ByteBuffer data) throws IOException {
+        int length = data.remaining();
+
+        ensureCapacity(length);
+        MemorySegment.copy(MemorySegment.ofBuffer(data), 0, segment, position, length);
+        data.position(data.limit());
+        position += length;
+    }
+
+    @Override
+    public void putShorts(short[] values, int offset, int length) throws IOException {
+        ensureCapacity((long) length * Short.BYTES);
+        MemorySegment.copy(values, offset, segment, shortLayout, position, length);
+        position += (long) length * Short.BYTES;
+    }
+
+    @Override
+    public void putChars(char[] values, int offset, int length) throws IOException {
+        ensureCapacity((long) length * Character.BYTES);
+        MemorySegment.copy(values, offset, segment, charLayout, position, length);
+        position += (long) length * Character.BYTES;
+    }
+
+    @Override
+    public void putInts(int[] values, int offset, int length) throws IOException {
+        ensureCapacity((long) length * Integer.BYTES);
+        MemorySegment.copy(values, offset, segment, intLayout, position, length);
+        position += (long) length * Integer.BYTES;
+    }
+
+    @Override
+    public void putLongs(long[] values, int offset, int length) throws IOException {
+        ensureCapacity((long) length * Long.BYTES);
+        MemorySegment.copy(values, offset, segment, longLayout, position, length);
+        position += (long) length * Long.BYTES;
+    }
+
+    @Override
+    public void putFloats(float[] values, int offset, int length) throws IOException {
+        ensureCapacity((long) length * Float.BYTES);
+        MemorySegment.copy(values, offset, segment, floatLayout, position, length);
+        position += (long) length * Float.BYTES;
+    }
+
+    @Override
+    public void putDoubles(double[] values, int offset, int length) throws IOException {
+        ensureCapacity((long) length * Double.BYTES);
+        MemorySegment.copy(values, offset, segment, doubleLayout, position, length);
+        position += (long) length * Double.BYTES;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        segment.force();
+        arena.close();
+
+        // trim the preallocated space that wasn't used
+        channel.truncate(position);
+        channel.force(false);
+        channel.close();
+
+        Files.move(tempPath, destPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -6,8 +6,8 @@ import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStre
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -22,18 +22,45 @@ public class NetworkStorageReader implements StorageReader {
     private long position = 0;
 
     private final InputStream is;
+    /** The underlying stream, if it can be seeked, otherwise null */
+    private final HttpRangeInputStream rangeStream;
     private final ByteBuffer buffer;
 
     public NetworkStorageReader(URL url, StorageType storageType, ByteOrder order, int bufferSize) throws IOException {
+        this(url, storageType, order, bufferSize, 1);
+    }
+
+    /** Create a new reader.
+     * <p></p>
+     * For http and https URLs, the data is fetched with Range requests, which resume
+     * after dropped connections, and in the case of plain columns, lets the reader seek
+     * in either direction without reading the data in between.
+     *
+     * @param parallelism the number of chunks of the file to fetch concurrently over http
+     */
+    public NetworkStorageReader(URL url, StorageType storageType, ByteOrder order, int bufferSize, int parallelism) throws IOException {
 
         try {
+            InputStream urlStream;
+            if (url.getProtocol().equals("http") || url.getProtocol().equals("https")) {
+                urlStream = new HttpRangeInputStream(url.toURI(), parallelism);
+            }
+            else {
+                urlStream = url.openStream();
+            }
+
             is = switch (storageType) {
-                case GZIP -> new GZIPInputStream(new BufferedInputStream(url.openStream()));
-                case ZSTD -> new ZstdCompressorInputStream(new BufferedInputStream(url.openStream()));
-                case PLAIN -> url.openStream(); // we do our own buffering so no need for BufferedInputStream
+                case GZIP -> new GZIPInputStream(new BufferedInputStream(urlStream));
+                // the blocks of ZSTD_BLOCK are independent frames, so the data can also be read as a ZSTD stream
+                case ZSTD, ZSTD_BLOCK -> new ZstdCompressorInputStream(new BufferedInputStream(urlStream));
+                case PLAIN -> urlStream; // we do our own buffering so no need for BufferedInputStream
             };
+
+            // only the raw stream of a plain column can be seeked
+            rangeStream = (storageType == StorageType.PLAIN && urlStream instanceof HttpRangeInputStream hs && hs.isSeekable())
+                    ? hs : null;
         }
-        catch (IOException e) {
+        catch (IOException | URISyntaxException e) {
             throw new IOException("Failed to open URL: " + url, e);
         }
 
@@ -184,6 +211,31 @@ public class NetworkStorageReader implements StorageReader {
         }
     }
 
+    @Override
+    public long getVarint() throws IOException {
+        return Varints.read(this, buffer, this::refill);
+    }
+
+    @Override
+    public void getVarints(int[] dst, int n) throws IOException {
+        Varints.read(this, buffer, this::refill, dst, n);
+    }
+
+    @Override
+    public void getVarints(long[] dst, int n) throws IOException {
+        Varints.read(this, buffer, this::refill, dst, n);
+    }
+
+    @Override
+    public byte[] getBytesUntil(byte delimiter) throws IOException {
+        return Delimiters.getBytesUntil(buffer, delimiter, this::refill);
+    }
+
+    @Override
+    public long skipPast(byte delimiter, long count) throws IOException {
+        return Delimiters.skipPast(buffer, delimiter, count, this::refill);
+    }
+
     @Override
     public void skip(long bytes, int stepSize) throws IOException {
         long toSkip = bytes * stepSize;
@@ -206,7 +258,31 @@ public class NetworkStorageReader implements StorageReader {
 
     @Override
     public void seek(long position, int stepSize) throws IOException {
-        throw new UnsupportedEncodingException("Seek not supported in GzipStorageReader");
+        long newPosition = position * stepSize;
+
+        if (rangeStream != null) {
+            long bufferStart = this.position - buffer.limit();
+
+            if (newPosition >= bufferStart && newPosition <= this.position) {
+                // still in the buffer
+                buffer.position((int) (newPosition - bufferStart));
+            }
+            else {
+                rangeStream.seek(newPosition);
+                this.position = newPosition;
+                buffer.position(0);
+                buffer.limit(0);
+            }
+            return;
+        }
+
+        // the stream can't be rewound, but seeking forward is the same as skipping
+        long toSkip = newPosition - position();
+        if (toSkip < 0) {
+            throw new UnsupportedOperationException("Seeking backwards is not supported in " + getClass().getSimpleName());
+        }
+
+        skip(toSkip, 1);
     }
 
     private void refill() throws IOException {
@@ -0,0 +1,169 @@
+package nu.marginalia.slop.storage;
+
+import nu.marginalia.slop.column.AbstractColumn;
+import nu.marginalia.slop.desc.StorageType;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.net.URI;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static nu.marginalia.slop.storage.MmapStorageReader.*;
+
+/** Positional access to the data of a column, without a cursor.
+ * <p></p>
+ * Unlike {@link StorageReader}, this holds no position, and all methods
+ * are thread-safe, so a single instance can serve lookups from any number
+ * of threads.  Plain columns are memory mapped, via {@link StorageOptions#sharedMappings()}
+ * if set, and GZIP and ZSTD columns are decompressed into a memory mapped temporary file.
+ * ZSTD_BLOCK columns are decompressed a block at a time as they are looked up, through the
+ * block index, with a small cache of decompressed blocks.
+ * <p></p>
+ * Lookups outside the data throw an {@link IndexOutOfBoundsException}.
+ * <p></p>
+ * Only local files are supported.
+ */
+public abstract class RandomAccessStorage implements AutoCloseable {
+
+    /** Create a random access view of a segment that is owned by someone else.
+     * Closing the storage will not release the segment.
+     */
+    @SuppressWarnings("preview") // for MemorySegment in jdk-21
+    public static RandomAccessStorage of(MemorySegment segment, ByteOrder order) {
+        return new Mapped(null, segment, order);
+    }
+
+    /** Open the data of the given column for random access.
+     *
+     * @param uri the URI containing the column data
+     * @param abstractColumn the column descriptor
+     * @param page the page number to read
+     * @param options options for how the storage is accessed
+     * @throws UnsupportedOperationException if the URI is not a local file
+     */
+    @SuppressWarnings("preview") // for MemorySegment in jdk-21
+    public static RandomAccessStorage open(URI uri, AbstractColumn<?,?> abstractColumn, int page, StorageOptions options) throws IOException {
+        if (!uri.getScheme().equals("file")) {
+            throw new UnsupportedOperationException("Random access is only supported for local files, not " + uri.getScheme());
+        }
+
+        ByteOrder byteOrder = abstractColumn.byteOrder;
+        StorageType storageType = abstractColumn.storageType;
+
+        Path filePath = Path.of(uri).resolve(abstractColumn.fileName(page));
+
+        if (storageType == StorageType.ZSTD_BLOCK) {
+            return BlockRandomAccessStorage.open(filePath, Storage.blockIndexPath(filePath), byteOrder);
+        }
+
+        if (storageType == StorageType.PLAIN && options.sharedMappings() != null) {
+            return of(options.sharedMappings().segment(filePath), byteOrder);
+        }
+
+        Arena arena = Arena.ofShared();
+        try {
+            MemorySegment segment = switch (storageType) {
+                case GZIP, ZSTD -> CompressingStorageReader.decompressMapped(filePath, storageType,
+                        Storage.bufferSize(abstractColumn, options, Files.size(filePath)), arena);
+                default -> map(filePath, arena);
+            };
+            return new Mapped(arena, segment, byteOrder);
+        }
+        catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    @SuppressWarnings("preview") // for MemorySegment in jdk-21
+    private static MemorySegment map(Path path, Arena arena) throws IOException {
+        try (var channel = (FileChannel) Files.newByteChannel(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+        }
+    }
+
+    /** Return the size of the data, in bytes */
+    public abstract long size();
+
+    public abstract byte getByte(long offset);
+    public abstract short getShort(long offset);
+    public abstract char getChar(long offset);
+    public abstract int getInt(long offset);
+    public abstract long getLong(long offset);
+    public abstract float getFloat(long offset);
+    public abstract double getDouble(long offset);
+
+    /** Release the data, unless it is owned by someone else.  No lookups
+     * may be in progress or made after this point.
+     */
+    @Override
+    public abstract void close();
+
+    /** Storage that is held in a memory segment */
+    @SuppressWarnings("preview") // for MemorySegment in jdk-21
+    private static final class Mapped extends RandomAccessStorage {
+        private final MemorySegment segment;
+        /** The arena owning the segment, or null if it is owned by someone else */
+        private final Arena arena;
+        private final boolean bigEndian;
+
+        Mapped(Arena arena, MemorySegment segment, ByteOrder order) {
+            this.arena = arena;
+            this.segment = segment;
+            this.bigEndian = order == ByteOrder.BIG_ENDIAN;
+        }
+
+        @Override
+        public long size() {
+            return segment.byteSize();
+        }
+
+        @Override
+        public byte getByte(long offset) {
+            return segment.get(ValueLayout.JAVA_BYTE, offset);
+        }
+
+        @Override
+        public short getShort(long offset) {
+            return bigEndian ? segment.get(SHORT_BE, offset) : segment.get(SHORT_LE, offset);
+        }
+
+        @Override
+        public char getChar(long offset) {
+            return bigEndian ? segment.get(CHAR_BE, offset) : segment.get(CHAR_LE, offset);
+        }
+
+        @Override
+        public int getInt(long offset) {
+            return bigEndian ? segment.get(INT_BE, offset) : segment.get(INT_LE, offset);
+        }
+
+        @Override
+        public long getLong(long offset) {
+            return bigEndian ? segment.get(LONG_BE, offset) : segment.get(LONG_LE, offset);
+        }
+
+        @Override
+        public float getFloat(long offset) {
+            return bigEndian ? segment.get(FLOAT_BE, offset) : segment.get(FLOAT_LE, offset);
+        }
+
+        @Override
+        public double getDouble(long offset) {
+            return bigEndian ? segment.get(DOUBLE_BE, offset) : segment.get(DOUBLE_LE, offset);
+        }
+
+        @Override
+        public void close() {
+            if (arena != null) {
+                arena.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package nu.marginalia.slop.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/** InputStream decorator that reads ahead from the underlying stream in a background thread.
+ * <p></p>
+ * This is mainly useful when the underlying stream is a decompressing stream,
+ * as it lets decompression run in parallel with the consumer decoding the data.
+ * <p></p>
+ * The data is read into a ring of buffers, which are passed between the background
+ * thread and the consumer.  The stream is not thread-safe, and should only be read
+ * from one thread at a time.
+ */
+class ReadAheadInputStream extends InputStream {
+    private final InputStream delegate;
+    private final Thread readerThread;
+
+    private final BlockingQueue<Chunk> filledChunks;
+    private final BlockingQueue<byte[]> emptyBuffers;
+
+    private Chunk current = null;
+    private int currentPos = 0;
+    private boolean eof = false;
+
+    private volatile boolean closed = false;
+
+    private record Chunk(byte[] data, int length, Throwable error) {
+        static final Chunk EOF = new Chunk(null, -1, null);
+    }
+
+    ReadAheadInputStream(InputStream delegate, int bufferSize, int bufferCount) {
+        this.delegate = delegate;
+
+        // the queue needs room for the end-of-stream marker beyond the data buffers
+        filledChunks = new ArrayBlockingQueue<>(bufferCount + 1);
+        emptyBuffers = new ArrayBlockingQueue<>(bufferCount);
+
+        for (int i = 0; i < bufferCount; i++) {
+            emptyBuffers.add(new byte[bufferSize]);
+        }
+
+        readerThread = Thread.ofPlatform()
+                .daemon()
+                .name("slop-read-ahead")
+                .start(this::readAhead);
+    }
+
+    private void readAhead() {
+        try {
+            while (!closed) {
+                byte[] buffer = emptyBuffers.take();
+
+                int length = 0;
+                while (length < buffer.length) {
+                    int rb = delegate.read(buffer, length, buffer.length - length);
+                    if (rb < 0) break;
+                    length += rb;
+                }
+
+                if (length > 0) {
+                    filledChunks.put(new Chunk(buffer, length, null));
+                }
+                if (length < buffer.length) {
+                    filledChunks.put(Chunk.EOF);
+                    return;
+                }
+            }
+        }
+        catch (Throwable t) {
+            // anything the delegate throws is passed on to the consumer, which would
+            // otherwise wait forever for a chunk that never comes; there is always room
+            // in the queue, since this thread holds one of the buffers
+            if (!closed) {
+                filledChunks.offer(new Chunk(null, -1, t));
+            }
+        }
+    }
+
+    /** Ensure there is data available in the current chunk, if possible.
+     *
+     * @return false if the end of the stream has been reached
+     */
+    private boolean ensureData() throws IOException {
+        if (current != null && currentPos < current.length) {
+            return true;
+        }
+        if (eof) {
+            return false;
+        }
+
+        if (current != null) {
+            emptyBuffers.add(current.data);
+            current = null;
+        }
+
+        Chunk next;
+        try {
+            next = filledChunks.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for read-ahead", e);
+        }
+
+        if (next.error != null) {
+            eof = true;
+            throw new IOException("Read-ahead failed", next.error);
+        }
+        if (next == Chunk.EOF) {
+            eof = true;
+            return false;
+        }
+
+        current = next;
+        currentPos = 0;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return current.data[currentPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+
+        int toRead = Math.min(len, current.length - currentPos);
+        System.arraycopy(current.data, currentPos, b, off, toRead);
+        currentPos += toRead;
+        return toRead;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && ensureData()) {
+            int toSkip = (int) Math.min(n - skipped, current.length - currentPos);
+            currentPos += toSkip;
+            skipped += toSkip;
+        }
+        return skipped;
+    }
+
+    /** Returns the number of bytes that are available without blocking, or if the
+     * current buffer has been exhausted, waits for the next one to be read.  This
+     * differs from the general InputStream contract, but is needed for the callers
+     * to reliably detect the end of the stream.
+     */
+    @Override
+    public int available() throws IOException {
+        if (!ensureData()) {
+            return 0;
+        }
+        return current.length - currentPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        readerThread.interrupt();
+
+        try {
+            readerThread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        delegate.close();
+    }
+}
@@ -0,0 +1,410 @@
+package nu.marginalia.slop.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A read-through cache of remote column files in a local directory.
+ * <p></p>
+ * When set in {@link StorageOptions#remoteCache()}, http and https columns are
+ * downloaded into the cache directory the first time they are opened, and
+ * read from there with the same readers as local columns.  Each later open
+ * revalidates the cached copy with a conditional request using the ETag and
+ * Last-Modified headers of the original response, so an unchanged file costs
+ * a round trip but no transfer.  Files served without either header can't be
+ * revalidated, and are downloaded again every time.
+ * <p></p>
+ * The cache holds at most maxBytes of files, evicting the least recently used
+ * files first.  The directory survives the cache object, and a new cache over the
+ * same directory picks up where the old one left off.
+ * <p></p>
+ * The cache is thread-safe.  Evicted files are deleted right away, which readers
+ * that already have them open don't notice on POSIX systems.  Files that have been
+ * handed out by {@link #acquire(URI)} are not evicted until their lease is closed,
+ * so that a file can't disappear between being fetched and being opened.
+ * <pre>{@code
+ * var cache = new RemoteFileCache(Path.of("/var/cache/slop"), 10L << 30);
+ * var options = StorageOptions.DEFAULT.withRemoteCache(cache);
+ *
+ * try (var table = new SlopTable(URI.create("https://example.com/table/"), 0, options)) {
+ *     ...
+ * }
+ * }</pre>
+ */
+public class RemoteFileCache {
+    private static final String DATA_SUFFIX = ".dat";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final HttpClient client;
+
+    /** The cached files, in least recently used order.  Guarded by its own monitor. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    /** The number of open leases on each file, which keep it from being evicted.  Guarded by the monitor of entries. */
+    private final Map<String, Integer> pins = new HashMap<>();
+
+    /** Per-file locks, so that each file is only downloaded once at a time */
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private record Entry(URI uri, Path path, long size, String etag, String lastModified) {}
+
+    public RemoteFileCache(Path directory, long maxBytes) throws IOException {
+        this(directory, maxBytes, HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build());
+    }
+
+    public RemoteFileCache(Path directory, long maxBytes, HttpClient client) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive, was " + maxBytes);
+        }
+
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.client = client;
+
+        Files.createDirectories(directory);
+        load();
+    }
+
+    /** Pick up the files left in the directory by an earlier cache, in the order they were last used */
+    private void load() throws IOException {
+        List<Entry> found = new ArrayList<>();
+
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+
+                if (name.endsWith(META_SUFFIX)) {
+                    Entry entry = readMeta(name.substring(0, name.length() - META_SUFFIX.length()));
+
+                    if (entry != null) {
+                        found.add(entry);
+                    }
+                    else {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        }
+
+        // remove what's left of interrupted downloads, and files whose metadata is missing
+        Set<Path> valid = new HashSet<>();
+        found.forEach(entry -> valid.add(entry.path));
+
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+
+                if (name.endsWith(TEMP_SUFFIX) || (name.endsWith(DATA_SUFFIX) && !valid.contains(file))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+
+        found.sort(Comparator.comparing(entry -> lastUsed(entry.path)));
+
+        synchronized (entries) {
+            for (Entry entry : found) {
+                entries.put(key(entry.uri), entry);
+                totalBytes += entry.size;
+            }
+            evict();
+        }
+    }
+
+    /** Return a local copy of the given remote file, downloading it if it is not
+     * in the cache or has changed since it was cached.
+     * <p></p>
+     * The file may be evicted by any later fetch, including from another thread,
+     * so a file that is to be opened should be fetched with {@link #acquire(URI)}.
+     */
+    public Path fetch(URI uri) throws IOException {
+        try (Lease lease = acquire(uri)) {
+            return lease.path();
+        }
+    }
+
+    /** Return a local copy of the given remote file as with {@link #fetch(URI)}, which
+     * is kept from being evicted until the returned lease is closed.  The lease only
+     * needs to be held until the file is opened.
+     */
+    public Lease acquire(URI uri) throws IOException {
+        String key = key(uri);
+
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            Entry cached;
+            synchronized (entries) {
+                cached = entries.get(key);
+            }
+
+            // a conditional request if we have the file, so an unchanged file isn't sent again
+            var request = HttpRequest.newBuilder(uri).GET();
+            if (cached != null && cached.etag != null) {
+                request.header("If-None-Match", cached.etag);
+            }
+            if (cached != null && cached.lastModified != null) {
+                request.header("If-Modified-Since", cached.lastModified);
+            }
+
+            HttpResponse<InputStream> response = send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+
+            if (cached != null && response.statusCode() == 304) {
+                response.body().close();
+
+                synchronized (entries) {
+                    // the file may have been evicted while we were waiting for the response
+                    if (entries.get(key) == cached) {
+                        hits.incrementAndGet();
+                        touch(cached.path);
+                        return pin(key, cached.path);
+                    }
+                }
+
+                response = send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.ofInputStream());
+                cached = null;
+            }
+
+            misses.incrementAndGet();
+            return download(uri, response, key, cached);
+        }
+    }
+
+    /** Pin the file with the given key, which must be called while holding the monitor of entries */
+    private Lease pin(String key, Path path) {
+        pins.merge(key, 1, Integer::sum);
+        return new Lease(key, path);
+    }
+
+    private void unpin(String key) {
+        synchronized (entries) {
+            pins.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    private Lease download(URI uri, HttpResponse<InputStream> response, String key, Entry old) throws IOException {
+        Path tempPath = directory.resolve(key + TEMP_SUFFIX);
+        Path dataPath = dataPath(key);
+
+        try (InputStream is = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Unexpected status " + response.statusCode() + " for " + uri);
+            }
+
+            try (OutputStream os = Files.newOutputStream(tempPath)) {
+                is.transferTo(os);
+            }
+        }
+        catch (IOException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        }
+
+        Entry entry = new Entry(uri, dataPath, Files.size(tempPath),
+                response.headers().firstValue("ETag").orElse(null),
+                response.headers().firstValue("Last-Modified").orElse(null));
+
+        synchronized (entries) {
+            if (old != null && entries.remove(key) != null) {
+                totalBytes -= old.size;
+            }
+
+            // the metadata goes first and comes back last, so a crash in between
+            // leaves a data file without metadata, which is cleaned up on load
+            Files.deleteIfExists(metaPath(key));
+            Files.move(tempPath, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writeMeta(key, entry);
+
+            entries.put(key, entry);
+            totalBytes += entry.size;
+
+            Lease lease = pin(key, dataPath);
+            evict();
+            return lease;
+        }
+    }
+
+    /** Evict the least recently used files until the cache is within its budget,
+     * sparing the files that are pinned by a lease, which includes the one just added.
+     * Pinned files may leave the cache over its budget until the next file is added.
+     */
+    private void evict() throws IOException {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+
+        while (totalBytes > maxBytes && it.hasNext()) {
+            var next = it.next();
+            if (pins.containsKey(next.getKey())) {
+                continue;
+            }
+
+            it.remove();
+            totalBytes -= next.getValue().size;
+
+            Files.deleteIfExists(metaPath(next.getKey()));
+            Files.deleteIfExists(next.getValue().path);
+        }
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return client.send(request, handler);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + request.uri());
+        }
+    }
+
+    private void writeMeta(String key, Entry entry) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("uri", entry.uri.toString());
+        props.setProperty("size", Long.toString(entry.size));
+        if (entry.etag != null) {
+            props.setProperty("etag", entry.etag);
+        }
+        if (entry.lastModified != null) {
+            props.setProperty("lastModified", entry.lastModified);
+        }
+
+        try (var os = Files.newOutputStream(metaPath(key))) {
+            props.store(os, null);
+        }
+    }
+
+    /** Read the metadata of a cached file, or return null if it is unreadable or doesn't match the file */
+    private Entry readMeta(String key) {
+        try {
+            Properties props = new Properties();
+            try (var is = Files.newInputStream(metaPath(key))) {
+                props.load(is);
+            }
+
+            Path dataPath = dataPath(key);
+            long size = Long.parseLong(props.getProperty("size"));
+            if (!Files.exists(dataPath) || Files.size(dataPath) != size) {
+                return null;
+            }
+
+            return new Entry(URI.create(props.getProperty("uri")), dataPath, size,
+                    props.getProperty("etag"), props.getProperty("lastModified"));
+        }
+        catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static FileTime lastUsed(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        }
+        catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /** Record that the file was used, so that the order survives a restart */
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        catch (IOException e) {
+            // not worth failing the read over
+        }
+    }
+
+    private Path dataPath(String key) {
+        return directory.resolve(key + DATA_SUFFIX);
+    }
+
+    private Path metaPath(String key) {
+        return directory.resolve(key + META_SUFFIX);
+    }
+
+    private static String key(URI uri) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(uri.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** A file in the cache that is kept from being evicted until the lease is closed */
+    public final class Lease implements AutoCloseable {
+        private final String key;
+        private final Path path;
+        private boolean closed = false;
+
+        private Lease(String key, Path path) {
+            this.key = key;
+            this.path = path;
+        }
+
+        /** Return the path of the local copy of the file */
+        public Path path() {
+            return path;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                unpin(key);
+            }
+        }
+    }
+
+    /** Return the number of files in the cache */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /** Return the total size of the files in the cache, in bytes */
+    public long totalBytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+
+    /** Return the number of fetches served from the cache */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** Return the number of fetches that downloaded the file */
+    public long misses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,81 @@
+package nu.marginalia.slop.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A set of memory mappings that are shared between threads.
+ * <p></p>
+ * Each file is mapped at most once, in a shared arena, and every
+ * reader handed out is a view over the same mapping, with its own position.
+ * This lets multiple threads read from the same page without mapping
+ * the files once per thread.
+ * <p></p>
+ * The readers are only valid until this object is closed, and it
+ * is on the caller's responsibility to ensure no reader is in use
+ * at that point.
+ * <pre>{@code
+ * try (var mappings = new SharedMappings()) {
+ *     var options = StorageOptions.DEFAULT.withSharedMappings(mappings);
+ *
+ *     // in each thread:
+ *     try (var table = new SlopTable(path, page, options)) {
+ *         ...
+ *     }
+ * }
+ * }</pre>
+ */
+@SuppressWarnings("preview") // for MemorySegment in jdk-21
+public class SharedMappings implements AutoCloseable {
+    private final Arena arena = Arena.ofShared();
+    private final ConcurrentHashMap<Path, MemorySegment> segments = new ConcurrentHashMap<>();
+
+    /** Create a new reader for the given file, mapping it if it isn't mapped already. */
+    public MmapStorageReader reader(Path path) throws IOException {
+        return reader(path, ByteOrder.nativeOrder());
+    }
+
+    /** Create a new reader for the given file, mapping it if it isn't mapped already. */
+    public MmapStorageReader reader(Path path, ByteOrder order) throws IOException {
+        return new MmapStorageReader(segment(path), order);
+    }
+
+    /** Return the mapping of the given file, mapping it if it isn't mapped already.
+     * The segment may be accessed from any thread until this object is closed.
+     */
+    public MemorySegment segment(Path path) throws IOException {
+        try {
+            return segments.computeIfAbsent(path.toAbsolutePath(), this::map);
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** Return the number of files that are currently mapped */
+    public int size() {
+        return segments.size();
+    }
+
+    private MemorySegment map(Path path) {
+        try (var channel = (FileChannel) Files.newByteChannel(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        segments.clear();
+        arena.close();
+    }
+}
@@ -13,9 +13,18 @@ public class SimpleStorageReader implements StorageReader {
     private final FileChannel channel;
 
     public SimpleStorageReader(Path path, ByteOrder order, int bufferSize) throws IOException {
+        this(path, order, bufferSize, true);
+    }
+
+    public SimpleStorageReader(Path path, ByteOrder order, int bufferSize, boolean direct) throws IOException {
         channel = (FileChannel) Files.newByteChannel(path, StandardOpenOption.READ);
 
-        this.buffer = ByteBuffer.allocateDirect(bufferSize).order(order);
+        if (direct) {
+            this.buffer = ByteBuffer.allocateDirect(bufferSize).order(order);
+        }
+        else {
+            this.buffer = ByteBuffer.allocate(bufferSize).order(order);
+        }
 
         buffer.position(0);
         buffer.limit(0);
@@ -129,32 +138,59 @@ public class SimpleStorageReader implements StorageReader {
         }
     }
 
-    public void getInts(int[] ints) throws IOException {
-        if (buffer.remaining() >= ints.length * Integer.BYTES) {
-            // fast path: if we can read all the ints from the buffer and don't need to check for buffer boundaries
-            for (int i = 0; i < ints.length; i++) {
-                ints[i] = buffer.getInt();
-            }
-        }
-        else {
-            for (int i = 0; i < ints.length; i++) {
-                ints[i] = getInt();
-            }
-        }
+    @Override
+    public void getShorts(short[] shorts, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Short.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, shorts, o, n), this::refill);
     }
 
-    public void getLongs(long[] longs) throws IOException {
-        if (buffer.remaining() >= longs.length * Long.BYTES) {
-            // fast path: if we can read all the longs from the buffer and don't need to check for buffer boundaries
-            for (int i = 0; i < longs.length; i++) {
-                longs[i] = buffer.getLong();
-            }
-        }
-        else {
-            for (int i = 0; i < longs.length; i++) {
-                longs[i] = getLong();
-            }
-        }
+    @Override
+    public void getChars(char[] chars, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Character.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, chars, o, n), this::refill);
+    }
+
+    @Override
+    public void getInts(int[] ints, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Integer.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, ints, o, n), this::refill);
+    }
+
+    @Override
+    public void getLongs(long[] longs, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Long.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, longs, o, n), this::refill);
+    }
+
+    @Override
+    public void getFloats(float[] floats, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Float.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, floats, o, n), this::refill);
+    }
+
+    @Override
+    public void getDoubles(double[] doubles, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Double.BYTES, offset, length, (o, n) -> BulkCopy.get(buffer, doubles, o, n), this::refill);
+    }
+
+    @Override
+    public long getVarint() throws IOException {
+        return Varints.read(this, buffer, this::refill);
+    }
+
+    @Override
+    public void getVarints(int[] dst, int n) throws IOException {
+        Varints.read(this, buffer, this::refill, dst, n);
+    }
+
+    @Override
+    public void getVarints(long[] dst, int n) throws IOException {
+        Varints.read(this, buffer, this::refill, dst, n);
+    }
+
+    @Override
+    public byte[] getBytesUntil(byte delimiter) throws IOException {
+        return Delimiters.getBytesUntil(buffer, delimiter, this::refill);
+    }
+
+    @Override
+    public long skipPast(byte delimiter, long count) throws IOException {
+        return Delimiters.skipPast(buffer, delimiter, count, this::refill);
     }
 
     @Override
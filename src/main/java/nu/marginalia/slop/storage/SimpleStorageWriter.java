@@ -17,6 +17,10 @@ public class SimpleStorageWriter implements StorageWriter, AutoCloseable {
     private final Path destPath;
 
     public SimpleStorageWriter(Path path, ByteOrder order, int bufferSize) throws IOException {
+        this(path, order, bufferSize, false);
+    }
+
+    public SimpleStorageWriter(Path path, ByteOrder order, int bufferSize, boolean direct) throws IOException {
         tempPath = path.resolveSibling(path.getFileName() + ".tmp");
         destPath = path;
 
@@ -26,7 +30,12 @@ public class SimpleStorageWriter implements StorageWriter, AutoCloseable {
                 StandardOpenOption.WRITE
         );
 
-        this.buffer = ByteBuffer.allocate(bufferSize).order(order);
+        if (direct) {
+            this.buffer = ByteBuffer.allocateDirect(bufferSize).order(order);
+        }
+        else {
+            this.buffer = ByteBuffer.allocate(bufferSize).order(order);
+        }
     }
 
     @Override
@@ -74,34 +83,6 @@ public class SimpleStorageWriter implements StorageWriter, AutoCloseable {
         buffer.putLong(l);
     }
 
-    @Override
-    public void putInts(int[] values) throws IOException {
-        if (buffer.remaining() >= Integer.BYTES * values.length) {
-            for (int value : values) {
-                buffer.putInt(value);
-            }
-        }
-        else {
-            for (int value : values) {
-                putInt(value);
-            }
-        }
-    }
-
-    @Override
-    public void putLongs(long[] values) throws IOException {
-        if (buffer.remaining() >= Long.BYTES * values.length) {
-            for (long value : values) {
-                buffer.putLong(value);
-            }
-        }
-        else {
-            for (long value : values) {
-                putLong(value);
-            }
-        }
-    }
-
     @Override
     public void putBytes(byte[] bytes) throws IOException {
         putBytes(bytes, 0, bytes.length);
@@ -136,6 +117,16 @@ public class SimpleStorageWriter implements StorageWriter, AutoCloseable {
         if (data.remaining() < buffer.remaining()) {
             buffer.put(data);
         }
+        else if (data.isDirect() && data.remaining() >= buffer.capacity()) {
+            // large off-heap buffers are written straight to the channel, rather than copied through
+            // the write buffer; this isn't done for heap buffers, as the JDK would copy those into a temporary
+            // direct buffer of the same size anyway
+            flush();
+
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
         else { // case where the data is larger than the write buffer, so we need to write in chunks
             while (data.hasRemaining()) {
                 if (!buffer.hasRemaining()) {
@@ -155,6 +146,51 @@ public class SimpleStorageWriter implements StorageWriter, AutoCloseable {
         }
     }
 
+    @Override
+    public void putShorts(short[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Short.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putChars(char[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Character.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putInts(int[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Integer.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putLongs(long[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Long.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putFloats(float[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Float.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putDoubles(double[] values, int offset, int length) throws IOException {
+        BulkCopy.copyAll(buffer, Double.BYTES, offset, length, (o, n) -> BulkCopy.put(buffer, values, o, n), this::flush);
+    }
+
+    @Override
+    public void putVarint(long value) throws IOException {
+        Varints.write(buffer, this::flush, value);
+    }
+
+    @Override
+    public void putVarints(int[] values, int n) throws IOException {
+        Varints.write(buffer, this::flush, values, n);
+    }
+
+    @Override
+    public void putVarints(long[] values, int n) throws IOException {
+        Varints.write(buffer, this::flush, values, n);
+    }
+
     @Override
     public void putFloat(float f) throws IOException {
         if (buffer.remaining() < Float.BYTES) {
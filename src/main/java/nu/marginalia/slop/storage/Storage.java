@@ -1,11 +1,14 @@
 package nu.marginalia.slop.storage;
 
+import com.github.luben.zstd.Zstd;
 import nu.marginalia.slop.column.AbstractColumn;
 import nu.marginalia.slop.desc.StorageType;
 
 import java.io.IOException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.ByteOrder;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 public interface Storage {
@@ -18,39 +21,94 @@ public interface Storage {
      * @param aligned whether the data is aligned to the storage type, which can be used to optimize reading
      * */
     static StorageReader reader(URI uri, AbstractColumn<?,?> abstractColumn, int page, boolean aligned) throws IOException {
+        return reader(uri, abstractColumn, page, aligned, StorageOptions.DEFAULT);
+    }
+
+    /** Create a reader for the given column.
+     *
+     * @param uri the URI containing the column data
+     * @param abstractColumn the column descriptor
+     * @param page the page number to read
+     * @param aligned whether the data is aligned to the storage type, which can be used to optimize reading
+     * @param options options for how the storage is accessed
+     * */
+    static StorageReader reader(URI uri, AbstractColumn<?,?> abstractColumn, int page, boolean aligned, StorageOptions options) throws IOException {
         ByteOrder byteOrder = abstractColumn.byteOrder;
         StorageType storageType = abstractColumn.storageType;
 
         if (uri.getScheme().equals("file")) {
-            Path path = Path.of(uri);
-            Path filePath = path.resolve(abstractColumn.fileName(page));
-
-            if (aligned && byteOrder.equals(ByteOrder.LITTLE_ENDIAN) && storageType.equals(StorageType.PLAIN)) {
-                // mmap is only supported for little-endian plain storage, but it's generally worth it in this case
-                return new MmapStorageReader(filePath);
-            } else {
-                final int bufferSize = switch (abstractColumn.function) {
-                    case DATA -> 4096;
-                    default -> 1024;
-                };
-
-                return switch (storageType) {
-                    case PLAIN -> new SimpleStorageReader(filePath, byteOrder, bufferSize);
-                    case GZIP, ZSTD -> new CompressingStorageReader(filePath, storageType, byteOrder, bufferSize);
-                };
-            }
+            Path filePath = Path.of(uri).resolve(abstractColumn.fileName(page));
+
+            return localReader(filePath, blockIndexPath(filePath), abstractColumn, aligned, options);
         }
         else if (uri.getScheme().equals("http") || uri.getScheme().equals("https")) {
 
-            var url = uri.resolve(abstractColumn.fileName(page)).toURL();
+            if (options.remoteCache() != null) {
+                var cache = options.remoteCache();
+
+                // the files are leased until the reader has opened them, so that fetching
+                // the index, or a fetch on another thread, can't evict the data file first
+                try (var data = cache.acquire(resolve(uri, abstractColumn.fileName(page)));
+                     var index = storageType == StorageType.ZSTD_BLOCK
+                             ? cache.acquire(resolve(uri, abstractColumn.fileName(page) + ".idx"))
+                             : null)
+                {
+                    return localReader(data.path(), index != null ? index.path() : null, abstractColumn, aligned, options);
+                }
+            }
+
+            var url = resolve(uri, abstractColumn.fileName(page)).toURL();
 
-            return new NetworkStorageReader(url, storageType, byteOrder, 65536);
+            final int bufferSize = options.bufferSize() != StorageOptions.AUTOMATIC_BUFFER_SIZE ? options.bufferSize() : 65536;
+
+            return new NetworkStorageReader(url, storageType, byteOrder, bufferSize, options.networkParallelism());
         }
         else {
             throw new IllegalArgumentException("Unsupported URI scheme: " + uri.getScheme());
         }
     }
 
+    /** Resolve a column file name against a remote URI, escaping the characters
+     * of the type names, such as the brackets of array types, that aren't allowed in URIs.
+     */
+    static URI resolve(URI base, String fileName) {
+        try {
+            return base.resolve(new URI(null, null, fileName, null));
+        }
+        catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Bad file name " + fileName, e);
+        }
+    }
+
+    /** Create a reader for a column file on local disk
+     *
+     * @param blockIndexPath the path of the block index, if the column is ZSTD_BLOCK
+     */
+    private static StorageReader localReader(Path filePath, Path blockIndexPath, AbstractColumn<?,?> abstractColumn, boolean aligned, StorageOptions options) throws IOException {
+        ByteOrder byteOrder = abstractColumn.byteOrder;
+        StorageType storageType = abstractColumn.storageType;
+
+        if (aligned && storageType.equals(StorageType.PLAIN)) {
+            // mmap is only supported for plain storage, but it's generally worth it in this case
+            if (options.sharedMappings() != null) {
+                return options.sharedMappings().reader(filePath, byteOrder);
+            }
+            return new MmapStorageReader(filePath, byteOrder);
+        }
+        else if (options.materializeCompressed() && (storageType == StorageType.GZIP || storageType == StorageType.ZSTD)) {
+            return MmapStorageReader.decompressed(filePath, storageType, byteOrder, bufferSize(abstractColumn, options, Files.size(filePath)));
+        }
+        else {
+            final int bufferSize = bufferSize(abstractColumn, options, Files.size(filePath));
+
+            return switch (storageType) {
+                case PLAIN -> new SimpleStorageReader(filePath, byteOrder, bufferSize, options.directBuffers());
+                case GZIP, ZSTD -> new CompressingStorageReader(filePath, storageType, byteOrder, bufferSize, options.readAhead());
+                case ZSTD_BLOCK -> new BlockCompressingStorageReader(filePath, blockIndexPath, byteOrder);
+            };
+        }
+    }
+
     /** Create a writer for the given column.
      *
      * @param path the directory containing the column data
@@ -58,19 +116,66 @@ public interface Storage {
      * @param abstractColumn the column descriptor
      * */
     static StorageWriter writer(Path path, AbstractColumn<?,?> abstractColumn, int page) throws IOException {
+        return writer(path, abstractColumn, page, StorageOptions.DEFAULT);
+    }
+
+    /** Create a writer for the given column.
+     *
+     * @param path the directory containing the column data
+     * @param page the page number to read
+     * @param abstractColumn the column descriptor
+     * @param options options for how the storage is accessed
+     * */
+    static StorageWriter writer(Path path, AbstractColumn<?,?> abstractColumn, int page, StorageOptions options) throws IOException {
         ByteOrder byteOrder = abstractColumn.byteOrder;
         StorageType storageType = abstractColumn.storageType;
 
         Path filePath = path.resolve(abstractColumn.fileName(page));
 
-        final int bufferSize = switch(abstractColumn.function) {
+        final int bufferSize = bufferSize(abstractColumn, options, options.expectedSize());
+
+        if (options.mmapOutput() && storageType == StorageType.PLAIN) {
+            return new MmapStorageWriter(filePath, byteOrder, Math.max(options.expectedSize(), bufferSize));
+        }
+
+        return switch (storageType) {
+            case PLAIN -> new SimpleStorageWriter(filePath, byteOrder, bufferSize, options.directBuffers());
+            case GZIP, ZSTD -> new CompressingStorageWriter(filePath, storageType, byteOrder, bufferSize, options.compressionLevel());
+            case ZSTD_BLOCK -> new BlockCompressingStorageWriter(filePath, blockIndexPath(filePath), byteOrder, options.blockSize(),
+                    options.compressionLevel() != StorageOptions.DEFAULT_COMPRESSION_LEVEL ? options.compressionLevel() : Zstd.defaultCompressionLevel());
+        };
+    }
+
+    /** Pick the buffer size for a column.
+     * <p></p>
+     * Unless a size is given in the options, small buffers are used for small files
+     * and auxiliary columns, scaling up towards 1 MB for large files to cut down on the
+     * number of system calls and calls into the compression libraries.
+     *
+     * @param fileSize the (expected) size of the file, or 0 if it is not known
+     */
+    static int bufferSize(AbstractColumn<?,?> abstractColumn, StorageOptions options, long fileSize) {
+        if (options.bufferSize() != StorageOptions.AUTOMATIC_BUFFER_SIZE) {
+            return options.bufferSize();
+        }
+
+        final int minSize = switch (abstractColumn.function) {
             case DATA -> 4096;
             default -> 1024;
         };
+        final int maxSize = 1024 * 1024;
 
-        return switch (storageType) {
-            case PLAIN -> new SimpleStorageWriter(filePath, byteOrder, bufferSize);
-            case GZIP, ZSTD -> new CompressingStorageWriter(filePath, storageType, byteOrder, bufferSize);
-        };
+        // aim for about 1/1024th of the file, rounded up to the nearest power of two
+        long target = fileSize / 1024;
+        if (target <= minSize) {
+            return minSize;
+        }
+
+        return (int) Math.min(maxSize, Long.highestOneBit(target - 1) << 1);
+    }
+
+    /** Return the path of the block index for a ZSTD_BLOCK column */
+    static Path blockIndexPath(Path filePath) {
+        return filePath.resolveSibling(filePath.getFileName() + ".idx");
     }
 }
@@ -0,0 +1,120 @@
+package nu.marginalia.slop.storage;
+
+/** Options that affect how the storage for a column is accessed.
+ * <p></p>
+ * Some of the options for writing, such as the block size, the compression level and the
+ * offset index interval, affect how the data is laid out on disk.  The files record what
+ * is needed to read them, so data written with any options can be read with any others.
+ * <p></p>
+ * The options are typically given to a SlopTable, and are passed on to
+ * each column that is opened or created through the table.
+ *
+ * @param sharedMappings if not null, memory mapped columns are mapped through
+ *                       this object, letting several readers share the same mapping
+ * @param blockSize the uncompressed size of each block in ZSTD_BLOCK storage.  Smaller blocks
+ *                  make seeks cheaper, larger blocks compress better.
+ * @param readAhead if true, GZIP and ZSTD columns are decompressed ahead of the reader
+ *                  in a background thread, one per column.
+ * @param bufferSize the size of the I/O buffers, or {@link #AUTOMATIC_BUFFER_SIZE} to let the
+ *                   buffer size scale with the size of the file
+ * @param directBuffers if true, off-heap buffers are used for uncompressed storage where possible.
+ *                      This is off by default, as off-heap memory is limited and freed separately from the heap.
+ * @param compressionLevel the compression level for GZIP and ZSTD storage, or
+ *                         {@link #DEFAULT_COMPRESSION_LEVEL} for the codec's default
+ * @param expectedSize the expected size of a written file in bytes, used to pick the buffer
+ *                     size when it is automatic, or 0 if unknown
+ * @param mmapOutput if true, PLAIN columns are written through a memory mapped file that is
+ *                   preallocated to the expected size
+ * @param materializeCompressed if true, GZIP and ZSTD columns are decompressed in full into a temporary
+ *                              file when opened, which is memory mapped and read like a plain column.
+ *                              This is meant for small columns that are read over and over.
+ * @param offsetIndexInterval if positive, variable length columns are written with an offset index
+ *                            holding the position of every offsetIndexInterval:th row, which lets
+ *                            readers seek to a row without decoding the lengths of all the rows
+ *                            before it.  0 disables the index.  When reading,
+ *                            a positive value makes the readers use the index where there is one,
+ *                            and 0 makes them ignore it.  It is also the
+ *                            checkpoint interval of {@link nu.marginalia.slop.column.dynamic.DeltaVarintColumn},
+ *                            which is stored in the column.
+ * @param networkParallelism the number of chunks of a column to fetch concurrently with Range requests
+ *                           when reading over http
+ * @param remoteCache if not null, http and https columns are downloaded into this cache, and read
+ *                    from local disk
+ * */
+public record StorageOptions(SharedMappings sharedMappings,
+                             int blockSize,
+                             boolean readAhead,
+                             int bufferSize,
+                             boolean directBuffers,
+                             int compressionLevel,
+                             long expectedSize,
+                             boolean mmapOutput,
+                             boolean materializeCompressed,
+                             int offsetIndexInterval,
+                             int networkParallelism,
+                             RemoteFileCache remoteCache)
+{
+    public static final int AUTOMATIC_BUFFER_SIZE = 0;
+    public static final int DEFAULT_COMPRESSION_LEVEL = Integer.MIN_VALUE;
+
+    public static final StorageOptions DEFAULT = new StorageOptions(null,
+            128 * 1024,
+            false,
+            AUTOMATIC_BUFFER_SIZE,
+            false,
+            DEFAULT_COMPRESSION_LEVEL,
+            0,
+            false,
+            false,
+            0,
+            4,
+            null);
+
+    public StorageOptions withSharedMappings(SharedMappings sharedMappings) {
+        return new StorageOptions(sharedMappings, blockSize, readAhead, bufferSize, directBuffers, compressionLevel, expectedSize, mmapOutput, materializeCompressed, offsetIndexInterval, networkParallelism, remoteCache);
+    }
+
+    public StorageOptions withBlockSize(int blockSize) {
+        return new StorageOptions(sharedMappings, blockSize, readAhead, bufferSize, directBuffers, compressionLevel, expectedSize, mmapOutput, materializeCompressed, offsetIndexInterval, networkParallelism, remoteCache);
+    }
+
+    public StorageOptions withReadAhead(boolean readAhead) {
+        return new StorageOptions(sharedMappings, blockSize, readAhead, bufferSize, directBuffers, compressionLevel, expectedSize, mmapOutput, materializeCompressed, offsetIndexInterval, networkParallelism, remoteCache);
+    }
+
+    public StorageOptions withBufferSize(int bufferSize) {
+        return new StorageOptions(sharedMappings, blockSize, readAhead, bufferSize, directBuffers, compressionLevel, expectedSize, mmapOutput, materializeCompressed, offsetIndexInterval, networkParallelism, remoteCache);
+    }
+
+    public StorageOptions withDirectBuffers(boolean directBuffers) {
+        return new StorageOptions(sharedMappings, blockSize, readAhead, bufferSize, directBuffers, compressionLevel, expectedSize, mmapOutput, materializeCompressed, offsetIndexInterval, networkParallelism, remoteCache);
+    }
+
+    public StorageOptions withCompressionLevel(int compressionLevel) {
+        return new StorageOptions(sharedMappings, blockSize, readAhead, bufferSize, directBuffers, compressionLevel, expectedSize, mmapOutput, materializeCompressed, offsetIndexInterval, networkParallelism, remoteCache);
+    }
+
+    public StorageOptions withExpectedSize(long expectedSize) {
+        return new StorageOptions(sharedMappings, blockSize, readAhead, bufferSize, directBuffers, compressionLevel, expectedSize, mmapOutput, materializeCompressed, offsetIndexInterval, networkParallelism, remoteCache);
+    }
+
+    public StorageOptions withMmapOutput(boolean mmapOutput) {
+        return new StorageOptions(sharedMappings, blockSize, readAhead, bufferSize, directBuffers, compressionLevel, expectedSize, mmapOutput, materializeCompressed, offsetIndexInterval, networkParallelism, remoteCache);
+    }
+
+    public StorageOptions withMaterializeCompressed(boolean materializeCompressed) {
+        return new StorageOptions(sharedMappings, blockSize, readAhead, bufferSize, directBuffers, compressionLevel, expectedSize, mmapOutput, materializeCompressed, offsetIndexInterval, networkParallelism, remoteCache);
+    }
+
+    public StorageOptions withOffsetIndexInterval(int offsetIndexInterval) {
+        return new StorageOptions(sharedMappings, blockSize, readAhead, bufferSize, directBuffers, compressionLevel, expectedSize, mmapOutput, materializeCompressed, offsetIndexInterval, networkParallelism, remoteCache);
+    }
+
+    public StorageOptions withNetworkParallelism(int networkParallelism) {
+        return new StorageOptions(sharedMappings, blockSize, readAhead, bufferSize, directBuffers, compressionLevel, expectedSize, mmapOutput, materializeCompressed, offsetIndexInterval, networkParallelism, remoteCache);
+    }
+
+    public StorageOptions withRemoteCache(RemoteFileCache remoteCache) {
+        return new StorageOptions(sharedMappings, blockSize, readAhead, bufferSize, directBuffers, compressionLevel, expectedSize, mmapOutput, materializeCompressed, offsetIndexInterval, networkParallelism, remoteCache);
+    }
+}
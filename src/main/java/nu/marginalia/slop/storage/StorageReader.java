@@ -1,7 +1,9 @@
 package nu.marginalia.slop.storage;
 
 import java.io.IOException;
+import java.lang.foreign.MemorySegment;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public interface StorageReader extends AutoCloseable {
     byte getByte() throws IOException;
@@ -16,30 +18,126 @@ public interface StorageReader extends AutoCloseable {
     void getBytes(byte[] bytes, int offset, int length) throws IOException;
     void getBytes(ByteBuffer buffer) throws IOException;
 
-    void getInts(int[] ints) throws IOException;
-    void getLongs(long[] longs) throws IOException;
+    // Bulk operations, these can be more efficient than the single value operations
+    // if they are implemented in a way that minimizes the number of bounds checks and other overhead
 
+    default void getShorts(short[] shorts) throws IOException {
+        getShorts(shorts, 0, shorts.length);
+    }
     default void getChars(char[] chars) throws IOException {
-        for (int i = 0; i < chars.length; i++) {
+        getChars(chars, 0, chars.length);
+    }
+    default void getInts(int[] ints) throws IOException {
+        getInts(ints, 0, ints.length);
+    }
+    default void getLongs(long[] longs) throws IOException {
+        getLongs(longs, 0, longs.length);
+    }
+    default void getFloats(float[] floats) throws IOException {
+        getFloats(floats, 0, floats.length);
+    }
+    default void getDoubles(double[] doubles) throws IOException {
+        getDoubles(doubles, 0, doubles.length);
+    }
+
+    default void getShorts(short[] shorts, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            shorts[i] = getShort();
+        }
+    }
+    default void getChars(char[] chars, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
             chars[i] = getChar();
         }
     }
-    default void getShorts(short[] shorts) throws IOException {
-        for (int i = 0; i < shorts.length; i++) {
-            shorts[i] = getShort();
+    default void getInts(int[] ints, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            ints[i] = getInt();
         }
     }
-    default void getFloats(float[] floats) throws IOException {
-        for (int i = 0; i < floats.length; i++) {
+    default void getLongs(long[] longs, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            longs[i] = getLong();
+        }
+    }
+    default void getFloats(float[] floats, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
             floats[i] = getFloat();
         }
     }
-    default void getDoubles(double[] doubles) throws IOException {
-        for (int i = 0; i < doubles.length; i++) {
+    default void getDoubles(double[] doubles, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
             doubles[i] = getDouble();
         }
     }
 
+    /** Return a view of the next bytes of the data, and advance past them, without copying.
+     * This is only supported by memory mapped storage, and the view is only valid until
+     * the reader is closed.
+     *
+     * @throws UnsupportedOperationException if the storage is not memory mapped
+     */
+    @SuppressWarnings("preview") // for MemorySegment in jdk-21
+    default MemorySegment getSegment(long bytes) throws IOException {
+        throw new UnsupportedOperationException("Storage is not memory mapped: " + getClass().getSimpleName());
+    }
+
+    /** Read a single varint, in the format written by VarintColumn */
+    default long getVarint() throws IOException {
+        return Varints.readBytewise(this);
+    }
+
+    /** Read n varints into the start of dst, truncating each value to an int */
+    default void getVarints(int[] dst, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            dst[i] = (int) getVarint();
+        }
+    }
+
+    /** Read n varints into the start of dst */
+    default void getVarints(long[] dst, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            dst[i] = getVarint();
+        }
+    }
+
+    /** Read the bytes up to the next occurrence of the delimiter, or to the end of the data,
+     * and advance past the delimiter.  The delimiter is not included in the result.
+     */
+    default byte[] getBytesUntil(byte delimiter) throws IOException {
+        byte[] bytes = new byte[16];
+        int n = 0;
+
+        while (hasRemaining()) {
+            byte b = getByte();
+            if (b == delimiter) {
+                break;
+            }
+            if (n == bytes.length) {
+                bytes = Arrays.copyOf(bytes, 2 * n);
+            }
+            bytes[n++] = b;
+        }
+
+        return Arrays.copyOf(bytes, n);
+    }
+
+    /** Advance past the next count occurrences of the delimiter, stopping early at the end of the data.
+     *
+     * @return the number of delimiters that were skipped
+     */
+    default long skipPast(byte delimiter, long count) throws IOException {
+        long found = 0;
+
+        while (found < count && hasRemaining()) {
+            if (getByte() == delimiter) {
+                found++;
+            }
+        }
+
+        return found;
+    }
+
     void skip(long bytes, int stepSize) throws IOException;
     void seek(long position, int stepSize) throws IOException;
     long position() throws IOException;
@@ -21,27 +21,81 @@ public interface StorageWriter extends AutoCloseable {
     // Bulk operations, these can be more efficient than the single value operations
     // if they are implemented in a way that minimizes the of bounds checks and other overhead
 
-    void putInts(int[] bytes) throws IOException;
-    void putLongs(long[] bytes) throws IOException;
+    default void putShorts(short[] values) throws IOException {
+        putShorts(values, 0, values.length);
+    }
+    default void putChars(char[] values) throws IOException {
+        putChars(values, 0, values.length);
+    }
+    default void putInts(int[] values) throws IOException {
+        putInts(values, 0, values.length);
+    }
+    default void putLongs(long[] values) throws IOException {
+        putLongs(values, 0, values.length);
+    }
+    default void putFloats(float[] values) throws IOException {
+        putFloats(values, 0, values.length);
+    }
+    default void putDoubles(double[] values) throws IOException {
+        putDoubles(values, 0, values.length);
+    }
 
-    default void putChars(char[] chars) throws IOException {
-        for (char c : chars) {
-            putChar(c);
+    default void putShorts(short[] values, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            putShort(values[i]);
+        }
+    }
+    default void putChars(char[] values, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            putChar(values[i]);
+        }
+    }
+    default void putInts(int[] values, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            putInt(values[i]);
         }
     }
-    default void putShorts(short[] shorts) throws IOException {
-        for (short s : shorts) {
-            putShort(s);
+    default void putLongs(long[] values, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            putLong(values[i]);
         }
     }
-    default void putFloats(float[] floats) throws IOException {
-        for (float f : floats) {
-            putFloat(f);
+    default void putFloats(float[] values, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            putFloat(values[i]);
         }
     }
-    default void putDoubles(double[] doubles) throws IOException {
-        for (double d : doubles) {
-            putDouble(d);
+    default void putDoubles(double[] values, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            putDouble(values[i]);
+        }
+    }
+
+    /** Write a single varint, in the format read by StorageReader.getVarint().
+     *
+     * @throws IllegalArgumentException if the value is negative
+     */
+    default void putVarint(long value) throws IOException {
+        if (value < 0)
+            throw new IllegalArgumentException("Value must be positive");
+
+        for (int shift = 7 * (Varints.length(value) - 1); shift > 0; shift -= 7) {
+            putByte((byte) ((value >>> shift) | 0x80));
+        }
+        putByte((byte) (value & 0x7F));
+    }
+
+    /** Write the first n values as varints */
+    default void putVarints(int[] values, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            putVarint(values[i]);
+        }
+    }
+
+    /** Write the first n values as varints */
+    default void putVarints(long[] values, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            putVarint(values[i]);
         }
     }
 
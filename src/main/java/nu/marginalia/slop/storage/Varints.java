@@ -0,0 +1,256 @@
+package nu.marginalia.slop.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** Encoding and decoding of the varint format used by VarintColumn, straight to and from
+ * the buffers of the storage readers and writers.
+ * <p></p>
+ * Each varint is stored most significant group first, as 7 bits per byte, with
+ * the high bit set on every byte except the last.  A varint is at most 9 bytes long,
+ * so as long as that many bytes are buffered, it can be decoded without checking for
+ * the end of the buffer on every byte, the way getByte() and putByte() have to.
+ */
+final class Varints {
+    /** The longest possible encoding, of a value of 2^56 or larger */
+    static final int MAX_LENGTH = 9;
+
+    private Varints() {}
+
+    /** Decode the varint at the buffer's position, advancing the position past it.
+     *
+     * @return the decoded value, or -1 if there are fewer than MAX_LENGTH bytes remaining
+     * in the buffer, in which case the buffer is left untouched.  The encoded values are never
+     * negative, so this is unambiguous.
+     */
+    static long tryDecode(ByteBuffer buffer) {
+        if (buffer.remaining() < MAX_LENGTH) {
+            return -1;
+        }
+
+        int pos = buffer.position();
+
+        byte b = buffer.get(pos++);
+        long value = b & 0x7F;
+        while (b < 0) {
+            b = buffer.get(pos++);
+            value = value << 7 | (b & 0x7F);
+        }
+
+        buffer.position(pos);
+        return value;
+    }
+
+    /** Decode varints from the buffer into dst, starting at index start, until n values have been
+     * decoded or fewer than MAX_LENGTH bytes remain in the buffer.
+     *
+     * @return the index in dst after the last decoded value
+     */
+    static int decode(ByteBuffer buffer, long[] dst, int start, int n) {
+        final int end = buffer.limit() - MAX_LENGTH;
+
+        int pos = buffer.position();
+        int i = start;
+
+        for (; i < n && pos <= end; i++) {
+            byte b = buffer.get(pos++);
+            long value = b & 0x7F;
+            while (b < 0) {
+                b = buffer.get(pos++);
+                value = value << 7 | (b & 0x7F);
+            }
+            dst[i] = value;
+        }
+
+        buffer.position(pos);
+        return i;
+    }
+
+    /** Decode varints from the buffer into dst, starting at index start, until n values have been
+     * decoded or fewer than MAX_LENGTH bytes remain in the buffer.  Each value is truncated to an int.
+     *
+     * @return the index in dst after the last decoded value
+     */
+    static int decode(ByteBuffer buffer, int[] dst, int start, int n) {
+        final int end = buffer.limit() - MAX_LENGTH;
+
+        int pos = buffer.position();
+        int i = start;
+
+        for (; i < n && pos <= end; i++) {
+            byte b = buffer.get(pos++);
+            int value = b & 0x7F;
+            while (b < 0) {
+                b = buffer.get(pos++);
+                value = value << 7 | (b & 0x7F);
+            }
+            dst[i] = value;
+        }
+
+        buffer.position(pos);
+        return i;
+    }
+
+    /** Read a varint a byte at a time through getByte(), which is what the buffered
+     * readers fall back to for the last few bytes of the data.
+     */
+    static long readBytewise(StorageReader reader) throws IOException {
+        byte b = reader.getByte();
+        if ((b & 0x80) == 0) {
+            return b;
+        }
+
+        long value = b & 0x7F;
+        do {
+            b = reader.getByte();
+            value = value << 7 | (b & 0x7F);
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+
+    // The read and write methods serve the buffered readers and writers, passed along with
+    // their buffer.  The callback refills or flushes the buffer whenever fewer than MAX_LENGTH
+    // bytes remain in it.
+
+    static long read(StorageReader reader, ByteBuffer buffer, BufferCallback refill) throws IOException {
+        if (buffer.remaining() < MAX_LENGTH) {
+            refill.run();
+        }
+
+        long value = tryDecode(buffer);
+        if (value < 0) { // near the end of the data
+            return readBytewise(reader);
+        }
+        return value;
+    }
+
+    /** Read n varints into the start of dst, truncating each value to an int */
+    static void read(StorageReader reader, ByteBuffer buffer, BufferCallback refill, int[] dst, int n) throws IOException {
+        for (int i = 0; i < n;) {
+            if (buffer.remaining() < MAX_LENGTH) {
+                refill.run();
+            }
+
+            int next = decode(buffer, dst, i, n);
+            if (next == i) { // near the end of the data
+                dst[next++] = (int) readBytewise(reader);
+            }
+            i = next;
+        }
+    }
+
+    /** Read n varints into the start of dst */
+    static void read(StorageReader reader, ByteBuffer buffer, BufferCallback refill, long[] dst, int n) throws IOException {
+        for (int i = 0; i < n;) {
+            if (buffer.remaining() < MAX_LENGTH) {
+                refill.run();
+            }
+
+            int next = decode(buffer, dst, i, n);
+            if (next == i) { // near the end of the data
+                dst[next++] = readBytewise(reader);
+            }
+            i = next;
+        }
+    }
+
+    static void write(ByteBuffer buffer, BufferCallback flush, long value) throws IOException {
+        if (buffer.remaining() < MAX_LENGTH) {
+            flush.run();
+        }
+
+        encode(buffer, value);
+    }
+
+    /** Write the first n values */
+    static void write(ByteBuffer buffer, BufferCallback flush, int[] values, int n) throws IOException {
+        for (int i = 0; i < n;) {
+            if (buffer.remaining() < MAX_LENGTH) {
+                flush.run();
+            }
+
+            i = encode(buffer, values, i, n);
+        }
+    }
+
+    /** Write the first n values */
+    static void write(ByteBuffer buffer, BufferCallback flush, long[] values, int n) throws IOException {
+        for (int i = 0; i < n;) {
+            if (buffer.remaining() < MAX_LENGTH) {
+                flush.run();
+            }
+
+            i = encode(buffer, values, i, n);
+        }
+    }
+
+    /** The number of bytes needed to encode the value */
+    static int length(long value) {
+        int bits = Long.SIZE - Long.numberOfLeadingZeros(value);
+        return Math.max(1, (bits + 6) / 7);
+    }
+
+    /** Encode a value at the buffer's position, advancing the position past it.
+     * The caller is responsible for ensuring there are at least MAX_LENGTH bytes remaining.
+     */
+    static void encode(ByteBuffer buffer, long value) {
+        buffer.position(encode(buffer, buffer.position(), value));
+    }
+
+    /** Encode values into the buffer, starting at index start, until n values have been
+     * encoded or fewer than MAX_LENGTH bytes remain in the buffer.
+     *
+     * @return the index in values after the last encoded value
+     */
+    static int encode(ByteBuffer buffer, long[] values, int start, int n) {
+        final int end = buffer.limit() - MAX_LENGTH;
+
+        int pos = buffer.position();
+        int i = start;
+
+        for (; i < n && pos <= end; i++) {
+            pos = encode(buffer, pos, values[i]);
+        }
+
+        buffer.position(pos);
+        return i;
+    }
+
+    /** Encode values into the buffer, starting at index start, until n values have been
+     * encoded or fewer than MAX_LENGTH bytes remain in the buffer.
+     *
+     * @return the index in values after the last encoded value
+     */
+    static int encode(ByteBuffer buffer, int[] values, int start, int n) {
+        final int end = buffer.limit() - MAX_LENGTH;
+
+        int pos = buffer.position();
+        int i = start;
+
+        for (; i < n && pos <= end; i++) {
+            pos = encode(buffer, pos, values[i]);
+        }
+
+        buffer.position(pos);
+        return i;
+    }
+
+    /** Encode a value at the given offset in the buffer, returning the offset after it */
+    private static int encode(ByteBuffer buffer, int pos, long value) {
+        if (value < 0)
+            throw new IllegalArgumentException("Value must be positive");
+
+        if (value < 0x80) {
+            buffer.put(pos, (byte) value);
+            return pos + 1;
+        }
+
+        for (int shift = 7 * (length(value) - 1); shift > 0; shift -= 7) {
+            buffer.put(pos++, (byte) ((value >>> shift) | 0x80));
+        }
+        buffer.put(pos++, (byte) (value & 0x7F));
+
+        return pos;
+    }
+}
@@ -0,0 +1,218 @@
+package nu.marginalia.slop.column;
+
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.dynamic.BitPackedIntColumn;
+import nu.marginalia.slop.column.primitive.IntColumn;
+import nu.marginalia.slop.desc.StorageType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BitPackedIntColumnTest {
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterEach
+    void cleanup() {
+        try {
+            Files.walk(tempDir)
+                    .sorted(this::deleteOrder)
+                    .forEach(p -> {
+                        try {
+                            if (Files.isRegularFile(p)) {
+                                System.out.println("Deleting " + p + " " + Files.size(p));
+                            }
+                            Files.delete(p);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    int deleteOrder(Path a, Path b) {
+        if (Files.isDirectory(a) && !Files.isDirectory(b)) {
+            return 1;
+        } else if (!Files.isDirectory(a) && Files.isDirectory(b)) {
+            return -1;
+        } else {
+            return a.getNameCount() - b.getNameCount();
+        }
+    }
+
+    private static final int COUNT = 10_000;
+
+    /** Blocks of narrow values, constant values, and the full range of ints, with a partial block at the end */
+    int[] mixedValues(Random r) {
+        int[] values = new int[COUNT + 37];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = switch ((i / 1000) % 4) {
+                case 0 -> r.nextInt(100);
+                case 1 -> 42;
+                case 2 -> 1_000_000 + r.nextInt(1 << 12);
+                default -> switch (r.nextInt(4)) {
+                    case 0 -> Integer.MIN_VALUE;
+                    case 1 -> Integer.MAX_VALUE;
+                    default -> r.nextInt();
+                };
+            };
+        }
+        return values;
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        int[] values = mixedValues(new Random(0));
+
+        for (var storageType : StorageType.values()) {
+            var column = new BitPackedIntColumn("ints-" + storageType, storageType);
+
+            try (var table = new SlopTable(tempDir)) {
+                var writer = column.create(table);
+                for (int i = 0; i < 1000; i++) {
+                    writer.put(values[i]);
+                }
+                writer.put(Arrays.copyOfRange(values, 1000, values.length));
+            }
+
+            try (var table = new SlopTable(tempDir)) {
+                var reader = column.open(table);
+
+                // single values, then odd-sized batches that straddle the blocks
+                for (int i = 0; i < 333; i++) {
+                    assertEquals(values[i], reader.get(), storageType + ":" + i);
+                }
+
+                int[] batch = new int[1001];
+                int row = 333;
+                while (row < values.length) {
+                    int n = Math.min(batch.length, values.length - row);
+                    reader.get(batch, n);
+                    assertArrayEquals(Arrays.copyOfRange(values, row, row + n), Arrays.copyOf(batch, n), storageType + ":" + row);
+                    row += n;
+                }
+
+                assertEquals(values.length, reader.position());
+                assertFalse(reader.hasRemaining());
+            }
+        }
+    }
+
+    @Test
+    void testAllWidths() throws IOException {
+        Random r = new Random(5);
+
+        for (int width = 0; width <= 32; width++) {
+            var column = new BitPackedIntColumn("width-" + width);
+            int base = r.nextInt();
+
+            int[] values = new int[300];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = base + (int) (r.nextLong() & ((1L << width) - 1));
+            }
+            // the largest difference in each block
+            values[7] = base + (int) ((1L << width) - 1);
+            values[200] = values[7];
+
+            try (var table = new SlopTable(tempDir)) {
+                column.create(table).put(values);
+            }
+
+            try (var table = new SlopTable(tempDir)) {
+                var reader = column.open(table);
+                int[] read = new int[values.length];
+                reader.get(read);
+                assertArrayEquals(values, read, "width " + width);
+            }
+        }
+    }
+
+    @Test
+    void testSkipAndSeek() throws IOException {
+        int[] values = mixedValues(new Random(1));
+
+        for (var storageType : new StorageType[] { StorageType.PLAIN, StorageType.ZSTD_BLOCK }) {
+            var column = new BitPackedIntColumn("ints-" + storageType, storageType);
+
+            try (var table = new SlopTable(tempDir)) {
+                column.create(table).put(values);
+            }
+
+            try (var table = new SlopTable(tempDir)) {
+                var reader = column.open(table);
+
+                reader.skip(5);
+                assertEquals(values[5], reader.get());
+
+                reader.skip(122); // to the first value of the next block
+                assertEquals(values[128], reader.get());
+
+                reader.skip(3000);
+                assertEquals(3129, reader.position());
+                assertEquals(values[3129], reader.get());
+
+                Random r = new Random(2);
+                for (int i = 0; i < 200; i++) {
+                    int row = r.nextInt(values.length);
+                    reader.seek(row);
+                    assertEquals(row, reader.position());
+                    assertEquals(values[row], reader.get(), storageType + ":" + row);
+                }
+
+                reader.seek(values.length - 1);
+                assertEquals(values[values.length - 1], reader.get());
+                assertFalse(reader.hasRemaining());
+            }
+        }
+    }
+
+    @Test
+    void testEmpty() throws IOException {
+        var column = new BitPackedIntColumn("ints");
+
+        try (var table = new SlopTable(tempDir)) {
+            column.create(table);
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var reader = column.open(table);
+            assertFalse(reader.hasRemaining());
+        }
+    }
+
+    @Test
+    void testSmallerThanIntColumn() throws IOException {
+        var packedColumn = new BitPackedIntColumn("packed");
+        var intColumn = new IntColumn("int");
+
+        Random r = new Random(3);
+        int[] values = new int[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            values[i] = r.nextInt(1 << 10);
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            packedColumn.create(table).put(values);
+            intColumn.create(table).put(values);
+        }
+
+        long packedSize = Files.size(tempDir.resolve(packedColumn.fileName(0)));
+        long intSize = Files.size(tempDir.resolve(intColumn.fileName(0)));
+
+        assertTrue(packedSize * 3 < intSize, packedSize + " vs " + intSize);
+    }
+}
@@ -0,0 +1,234 @@
+package nu.marginalia.slop.column;
+
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.primitive.BooleanColumn;
+import nu.marginalia.slop.column.primitive.ByteColumn;
+import nu.marginalia.slop.desc.StorageType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BooleanColumnTest {
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterEach
+    void cleanup() {
+        try {
+            Files.walk(tempDir)
+                    .sorted(this::deleteOrder)
+                    .forEach(p -> {
+                        try {
+                            if (Files.isRegularFile(p)) {
+                                System.out.println("Deleting " + p + " " + Files.size(p));
+                            }
+                            Files.delete(p);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    int deleteOrder(Path a, Path b) {
+        if (Files.isDirectory(a) && !Files.isDirectory(b)) {
+            return 1;
+        } else if (!Files.isDirectory(a) && Files.isDirectory(b)) {
+            return -1;
+        } else {
+            return a.getNameCount() - b.getNameCount();
+        }
+    }
+
+    boolean[] randomValues(Random r, int count) {
+        boolean[] values = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = r.nextInt(3) == 0;
+        }
+        return values;
+    }
+
+    long[] toBitmap(boolean[] values, int from, int to) {
+        long[] bitmap = new long[(to - from + 63) / 64];
+        for (int i = from; i < to; i++) {
+            if (values[i]) {
+                bitmap[(i - from) / 64] |= 1L << ((i - from) % 64);
+            }
+        }
+        return bitmap;
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        // every length of the last long, including an empty column and a full last long
+        for (int count : new int[] { 0, 1, 63, 64, 65, 127, 128, 1000 }) {
+            for (var storageType : StorageType.values()) {
+                var column = new BooleanColumn("flags-" + count + "-" + storageType, storageType);
+                boolean[] values = randomValues(new Random(count), count);
+
+                try (var table = new SlopTable(tempDir)) {
+                    column.create(table).put(values);
+                }
+
+                try (var table = new SlopTable(tempDir)) {
+                    var reader = column.open(table);
+                    for (int i = 0; i < count; i++) {
+                        assertTrue(reader.hasRemaining(), storageType + ":" + i);
+                        assertEquals(values[i], reader.get(), storageType + ":" + i);
+                    }
+                    assertEquals(count, reader.position());
+                    assertFalse(reader.hasRemaining(), storageType + ":" + count);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testBitmaps() throws IOException {
+        boolean[] values = randomValues(new Random(0), 10_000);
+        var column = new BooleanColumn("flags", StorageType.ZSTD);
+
+        try (var table = new SlopTable(tempDir)) {
+            var writer = column.create(table);
+            // unaligned pieces, so that the bitmaps straddle the longs of the column
+            writer.put(values, 0, 5);
+            writer.putBits(toBitmap(values, 5, 100), 95);
+            writer.put(values[100]);
+            writer.putBits(toBitmap(values, 101, 9000), 8899);
+            writer.put(values, 9000, 1000);
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var reader = column.open(table);
+
+            int row = 0;
+            long[] bitmap = new long[20];
+            for (int n : new int[] { 3, 64, 1, 1000, 128, 77, 64 }) {
+                reader.getBits(bitmap, n);
+                long[] expected = toBitmap(values, row, row + n);
+                assertArrayEquals(expected, Arrays.copyOf(bitmap, expected.length), "at " + row);
+                row += n;
+            }
+
+            boolean[] rest = new boolean[values.length - row];
+            reader.get(rest);
+            assertArrayEquals(Arrays.copyOfRange(values, row, values.length), rest);
+            assertFalse(reader.hasRemaining());
+        }
+    }
+
+    @Test
+    void testCountSkipAndSeek() throws IOException {
+        boolean[] values = randomValues(new Random(1), 10_000);
+        var column = new BooleanColumn("flags");
+
+        try (var table = new SlopTable(tempDir)) {
+            column.create(table).put(values);
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var reader = column.open(table);
+
+            int expected = 0;
+            for (int i = 10; i < 5000; i++) {
+                expected += values[i] ? 1 : 0;
+            }
+
+            reader.skip(10);
+            assertEquals(expected, reader.countTrue(4990));
+            assertEquals(5000, reader.position());
+
+            reader.skip(3);
+            assertEquals(values[5003], reader.get());
+            reader.skip(1000);
+            assertEquals(values[6004], reader.get());
+
+            Random r = new Random(2);
+            for (int i = 0; i < 200; i++) {
+                int row = r.nextInt(values.length);
+                reader.seek(row);
+                assertEquals(row, reader.position());
+                assertEquals(values[row], reader.get(), "row " + row);
+            }
+
+            reader.seek(values.length - 1);
+            reader.get();
+            assertFalse(reader.hasRemaining());
+
+            reader.seek(values.length);
+            assertFalse(reader.hasRemaining());
+
+            assertThrows(IOException.class, () -> reader.skip(1));
+        }
+    }
+
+    @Test
+    void testPeekAndSkipFalse() throws IOException {
+        // runs of false across long boundaries, and a column that ends in one
+        boolean[] values = new boolean[500];
+        for (int i : new int[] { 0, 3, 63, 64, 200, 330 }) {
+            values[i] = true;
+        }
+        var column = new BooleanColumn("flags");
+
+        try (var table = new SlopTable(tempDir)) {
+            column.create(table).put(values);
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var reader = column.open(table);
+
+            int row = 0;
+            while (reader.hasRemaining()) {
+                long skipped = reader.skipFalse();
+                for (int i = 0; i < skipped; i++) {
+                    assertFalse(values[row++]);
+                }
+                assertEquals(row, reader.position());
+
+                if (reader.hasRemaining()) {
+                    assertTrue(reader.peek());
+                    assertTrue(reader.get());
+                    row++;
+                }
+            }
+
+            assertEquals(values.length, row);
+            assertEquals(0, reader.skipFalse());
+        }
+    }
+
+    @Test
+    void testSmallerThanByteColumn() throws IOException {
+        boolean[] values = randomValues(new Random(3), 10_000);
+        var boolColumn = new BooleanColumn("bool");
+        var byteColumn = new ByteColumn("byte");
+
+        try (var table = new SlopTable(tempDir)) {
+            boolColumn.create(table).put(values);
+
+            var byteWriter = byteColumn.create(table);
+            for (boolean value : values) {
+                byteWriter.put((byte) (value ? 1 : 0));
+            }
+        }
+
+        // 156 full longs, and one with the last 16 rows and the end marker
+        assertEquals(157 * Long.BYTES, Files.size(tempDir.resolve(boolColumn.fileName(0))));
+        assertEquals(10_000, Files.size(tempDir.resolve(byteColumn.fileName(0))));
+    }
+}
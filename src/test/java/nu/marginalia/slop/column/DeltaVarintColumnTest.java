@@ -0,0 +1,268 @@
+package nu.marginalia.slop.column;
+
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.dynamic.DeltaVarintColumn;
+import nu.marginalia.slop.column.primitive.LongColumn;
+import nu.marginalia.slop.desc.ColumnFunction;
+import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.StorageOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeltaVarintColumnTest {
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterEach
+    void cleanup() {
+        try {
+            Files.walk(tempDir)
+                    .sorted(this::deleteOrder)
+                    .forEach(p -> {
+                        try {
+                            if (Files.isRegularFile(p)) {
+                                System.out.println("Deleting " + p + " " + Files.size(p));
+                            }
+                            Files.delete(p);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    int deleteOrder(Path a, Path b) {
+        if (Files.isDirectory(a) && !Files.isDirectory(b)) {
+            return 1;
+        } else if (!Files.isDirectory(a) && Files.isDirectory(b)) {
+            return -1;
+        } else {
+            return a.getNameCount() - b.getNameCount();
+        }
+    }
+
+    private static final int COUNT = 10_000;
+
+    /** Sorted ids with small, irregular gaps, and the occasional duplicate and large jump */
+    long[] sortedValues(Random r) {
+        long[] values = new long[COUNT];
+        long value = 1L << 40;
+        for (int i = 0; i < COUNT; i++) {
+            value += switch (r.nextInt(20)) {
+                case 0 -> 0;
+                case 1 -> r.nextInt(1 << 20);
+                default -> r.nextInt(100);
+            };
+            values[i] = value;
+        }
+        return values;
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        long[] values = sortedValues(new Random(0));
+
+        for (var storageType : StorageType.values()) {
+            var column = new DeltaVarintColumn("ids-" + storageType, storageType);
+
+            try (var table = new SlopTable(tempDir)) {
+                var writer = column.create(table);
+                for (int i = 0; i < 1000; i++) {
+                    writer.put(values[i]);
+                }
+                writer.put(Arrays.copyOfRange(values, 1000, COUNT));
+            }
+
+            try (var table = new SlopTable(tempDir)) {
+                var reader = column.open(table);
+                assertEquals(DeltaVarintColumn.DEFAULT_CHECKPOINT_INTERVAL, reader.checkpointInterval());
+
+                // single values, then odd-sized batches that straddle the checkpoints
+                for (int i = 0; i < 333; i++) {
+                    assertEquals(values[i], reader.get(), storageType + ":" + i);
+                }
+
+                long[] batch = new long[1001];
+                int row = 333;
+                while (row < COUNT) {
+                    int n = Math.min(batch.length, COUNT - row);
+                    reader.get(batch, n);
+                    assertArrayEquals(Arrays.copyOfRange(values, row, row + n), Arrays.copyOf(batch, n), storageType + ":" + row);
+                    row += n;
+                }
+
+                assertEquals(COUNT, reader.position());
+                assertFalse(reader.hasRemaining());
+            }
+        }
+    }
+
+    @Test
+    void testSkipWithoutIndex() throws IOException {
+        long[] values = sortedValues(new Random(1));
+        var column = new DeltaVarintColumn("ids", StorageType.ZSTD);
+
+        try (var table = new SlopTable(tempDir)) {
+            column.create(table).put(values);
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var reader = column.open(table);
+
+            reader.skip(5);
+            assertEquals(values[5], reader.get());
+
+            reader.skip(3000);
+            assertEquals(3006, reader.position());
+            assertEquals(values[3006], reader.get());
+
+            reader.seek(COUNT - 1);
+            assertEquals(values[COUNT - 1], reader.get());
+
+            assertThrows(UnsupportedOperationException.class, () -> reader.seek(0));
+        }
+    }
+
+    @Test
+    void testSeekWithIndex() throws IOException {
+        long[] values = sortedValues(new Random(2));
+        var options = StorageOptions.DEFAULT.withOffsetIndexInterval(64).withMaterializeCompressed(true);
+
+        for (var storageType : StorageType.values()) {
+            var column = new DeltaVarintColumn("ids-" + storageType, storageType);
+
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var writer = column.create(table);
+                writer.put(values, 100);
+                for (int i = 100; i < COUNT; i++) {
+                    writer.put(values[i]);
+                }
+            }
+
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var reader = column.open(table);
+                assertEquals(64, reader.checkpointInterval());
+
+                Random r = new Random(3);
+                for (int i = 0; i < 200; i++) {
+                    int row = r.nextInt(COUNT);
+                    reader.seek(row);
+                    assertEquals(row, reader.position());
+                    assertEquals(values[row], reader.get(), storageType + ":" + row);
+                }
+
+                reader.seek(0);
+                assertEquals(values[0], reader.get());
+
+                reader.skip(500);
+                assertEquals(values[501], reader.get());
+
+                reader.seek(COUNT - 1);
+                assertEquals(values[COUNT - 1], reader.get());
+                assertFalse(reader.hasRemaining());
+            }
+        }
+    }
+
+    @Test
+    void testEmpty() throws IOException {
+        var options = StorageOptions.DEFAULT.withOffsetIndexInterval(64);
+        var column = new DeltaVarintColumn("ids");
+
+        try (var table = new SlopTable(tempDir, 0, options)) {
+            column.create(table);
+        }
+
+        try (var table = new SlopTable(tempDir, 0, options)) {
+            var reader = column.open(table);
+            assertFalse(reader.hasRemaining());
+
+            reader.seek(0);
+            assertEquals(0, reader.position());
+            assertFalse(reader.hasRemaining());
+        }
+    }
+
+    @Test
+    void testAnyFunction() throws IOException {
+        // only DATA and DICT columns get an offset index
+        var options = StorageOptions.DEFAULT.withOffsetIndexInterval(16);
+        var column = new DeltaVarintColumn("ids", ColumnFunction.DATA_LEN, StorageType.PLAIN);
+
+        try (var table = new SlopTable(tempDir, 0, options)) {
+            column.create(table).put(new long[] { 1, 2, 3, 5, 8, 13 });
+        }
+
+        try (var table = new SlopTable(tempDir, 0, options)) {
+            var reader = column.open(table);
+            reader.seek(4);
+            assertEquals(8, reader.get());
+        }
+    }
+
+    @Test
+    void testRejectsUnsortedValues() throws IOException {
+        var column = new DeltaVarintColumn("ids");
+
+        try (var table = new SlopTable(tempDir)) {
+            var writer = column.create(table);
+            writer.put(10);
+            writer.put(10);
+
+            assertThrows(IllegalArgumentException.class, () -> writer.put(9));
+            assertThrows(IllegalArgumentException.class, () -> writer.put(new long[] { 11, 12, 5 }));
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var writer = new DeltaVarintColumn("negative").create(table);
+            assertThrows(IllegalArgumentException.class, () -> writer.put(-1));
+        }
+
+        // a value that goes backwards on a checkpoint row
+        try (var table = new SlopTable(tempDir)) {
+            var writer = new DeltaVarintColumn("checkpoint").create(table);
+            for (int i = 0; i < DeltaVarintColumn.DEFAULT_CHECKPOINT_INTERVAL; i++) {
+                writer.put(1000);
+            }
+            assertThrows(IllegalArgumentException.class, () -> writer.put(5));
+
+            var bulkWriter = new DeltaVarintColumn("checkpoint-bulk").create(table);
+            long[] values = new long[DeltaVarintColumn.DEFAULT_CHECKPOINT_INTERVAL + 1];
+            Arrays.fill(values, 1000);
+            values[values.length - 1] = 5;
+            assertThrows(IllegalArgumentException.class, () -> bulkWriter.put(values));
+        }
+    }
+
+    @Test
+    void testSmallerThanLongColumn() throws IOException {
+        long[] values = sortedValues(new Random(4));
+        var deltaColumn = new DeltaVarintColumn("delta");
+        var longColumn = new LongColumn("long");
+
+        try (var table = new SlopTable(tempDir)) {
+            deltaColumn.create(table).put(values);
+            longColumn.create(table).put(values);
+        }
+
+        long deltaSize = Files.size(tempDir.resolve(deltaColumn.fileName(0)));
+        long longSize = Files.size(tempDir.resolve(longColumn.fileName(0)));
+
+        assertTrue(deltaSize * 4 < longSize, deltaSize + " vs " + longSize);
+    }
+}
@@ -11,8 +11,9 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class EnumColumnTest {
     Path tempDir;
@@ -89,4 +90,32 @@ class EnumColumnTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    void testRepeated() throws IOException {
+        var enumCol = new EnumColumn("test", StandardCharsets.UTF_8, StorageType.PLAIN);
+
+        try (var table = new SlopTable(tempDir)) {
+            var column = enumCol.create(table);
+
+            column.put("Foo", 3);
+            column.put("Bar", 0);
+            column.put("Baz", 2);
+            assertEquals(5, column.position());
+            assertThrows(IllegalArgumentException.class, () -> column.put("Foo", -1));
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var column = enumCol.open(table);
+
+            // Bar has no rows, and is left out of the dictionary
+            assertEquals(List.of("Foo", "Baz"), column.getDictionary());
+            assertEquals("Foo", column.get());
+            assertEquals("Foo", column.get());
+            assertEquals("Foo", column.get());
+            assertEquals(1, column.getOrdinal());
+            assertEquals("Baz", column.get());
+            assertFalse(column.hasRemaining());
+        }
+    }
+
+}
@@ -4,11 +4,13 @@ import nu.marginalia.slop.SlopTable;
 import nu.marginalia.slop.column.primitive.IntColumn;
 import nu.marginalia.slop.desc.ColumnFunction;
 import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.StorageOptions;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.lang.foreign.ValueLayout;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -146,4 +148,70 @@ class IntColumnTest {
         }
     }
 
-}
\ No newline at end of file
+
+    @Test
+    void testSkipBlockCompressed() throws IOException {
+
+        var columnDesc = new IntColumn("test", StorageType.ZSTD_BLOCK);
+        var options = StorageOptions.DEFAULT.withBlockSize(1024);
+
+        try (var table = new SlopTable(tempDir, 0, options)) {
+            var column = columnDesc.create(table);
+            for (int i = 0; i < 10_000; i++) {
+                column.put(i);
+            }
+        }
+        try (var table = new SlopTable(tempDir)) {
+            var column = columnDesc.open(table);
+            assertEquals(0, column.get());
+            column.skip(5000);
+            assertEquals(5001, column.get());
+            assertEquals(5002, column.position());
+            column.skip(4997);
+            assertEquals(9999, column.get());
+            assertFalse(column.hasRemaining());
+        }
+    }
+
+    @Test
+    void testGetSegment() throws IOException {
+        var columnDesc = new IntColumn("test", StorageType.PLAIN);
+
+        try (var table = new SlopTable(tempDir)) {
+            var column = columnDesc.create(table);
+            for (int i = 0; i < 100; i++) {
+                column.put(i);
+            }
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var column = columnDesc.open(table);
+
+            assertEquals(0, column.get());
+
+            var segment = column.getSegment(10);
+            assertEquals(10 * Integer.BYTES, segment.byteSize());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i + 1, segment.getAtIndex(ValueLayout.JAVA_INT_UNALIGNED, i));
+            }
+
+            assertEquals(11, column.position());
+            assertEquals(11, column.get());
+        }
+    }
+
+    @Test
+    void testGetSegmentUnsupported() throws IOException {
+        var columnDesc = new IntColumn("test", StorageType.ZSTD);
+
+        try (var table = new SlopTable(tempDir)) {
+            columnDesc.create(table).put(new int[] { 1, 2, 3 });
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var column = columnDesc.open(table);
+            assertThrows(UnsupportedOperationException.class, () -> column.getSegment(1));
+            column.get(new int[3]);
+        }
+    }
+}
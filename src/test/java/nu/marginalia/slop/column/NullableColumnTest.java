@@ -0,0 +1,237 @@
+package nu.marginalia.slop.column;
+
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.primitive.IntColumn;
+import nu.marginalia.slop.column.string.StringColumn;
+import nu.marginalia.slop.storage.StorageOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NullableColumnTest {
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterEach
+    void cleanup() {
+        try {
+            Files.walk(tempDir)
+                    .sorted(this::deleteOrder)
+                    .forEach(p -> {
+                        try {
+                            if (Files.isRegularFile(p)) {
+                                System.out.println("Deleting " + p + " " + Files.size(p));
+                            }
+                            Files.delete(p);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    int deleteOrder(Path a, Path b) {
+        if (Files.isDirectory(a) && !Files.isDirectory(b)) {
+            return 1;
+        } else if (!Files.isDirectory(a) && Files.isDirectory(b)) {
+            return -1;
+        } else {
+            return a.getNameCount() - b.getNameCount();
+        }
+    }
+
+    Integer[] randomValues(Random r, int count, int presentOneIn) {
+        Integer[] values = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = r.nextInt(presentOneIn) == 0 ? r.nextInt() : null;
+        }
+        return values;
+    }
+
+    void write(NullableColumn<IntColumn.Reader, IntColumn.Writer> column, Integer[] values) throws IOException {
+        try (var table = new SlopTable(tempDir)) {
+            var writer = column.create(table);
+            for (Integer value : values) {
+                if (value == null) {
+                    writer.putNull();
+                }
+                else {
+                    writer.present().put(value);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        var column = new NullableColumn<IntColumn.Reader, IntColumn.Writer>(new IntColumn("ints"));
+        Integer[] values = randomValues(new Random(1), 1000, 2);
+
+        write(column, values);
+
+        try (var table = new SlopTable(tempDir)) {
+            var reader = column.open(table);
+            for (int i = 0; i < values.length; i++) {
+                assertTrue(reader.hasRemaining());
+                assertEquals(i, reader.position());
+                assertEquals(values[i] == null, reader.isNull());
+
+                if (reader.next()) {
+                    assertEquals(values[i], reader.values().get());
+                }
+                else {
+                    assertNull(values[i]);
+                }
+            }
+            assertFalse(reader.hasRemaining());
+        }
+    }
+
+    @Test
+    void testSparseSize() throws IOException {
+        var column = new NullableColumn<IntColumn.Reader, IntColumn.Writer>(new IntColumn("ints"));
+        Integer[] values = randomValues(new Random(2), 10_000, 20);
+
+        write(column, values);
+
+        long present = Arrays.stream(values).filter(Objects::nonNull).count();
+        long dataSize = Files.size(tempDir.resolve(new IntColumn("ints").fileName(0)));
+        long bitmapSize = Files.size(tempDir.resolve("ints.0.nul.bits.bin"));
+
+        // absent rows cost a bit in the bitmap, and nothing in the data
+        assertEquals(present * Integer.BYTES, dataSize);
+        assertTrue(bitmapSize <= 10_000 / 8 + 8, "bitmap size " + bitmapSize);
+    }
+
+    @Test
+    void testBulkAndSkipNulls() throws IOException {
+        var column = new NullableColumn<IntColumn.Reader, IntColumn.Writer>(new IntColumn("ints"));
+        Integer[] values = randomValues(new Random(3), 1000, 10);
+
+        write(column, values);
+
+        try (var table = new SlopTable(tempDir)) {
+            var reader = column.open(table);
+
+            long[] validity = new long[2];
+            int[] buffer = new int[100];
+
+            int present = reader.next(validity, 100);
+            reader.values().get(buffer, 0, present);
+
+            for (int i = 0, j = 0; i < 100; i++) {
+                boolean set = (validity[i / 64] & 1L << (i % 64)) != 0;
+                assertEquals(values[i] != null, set);
+                if (set) {
+                    assertEquals(values[i], buffer[j++]);
+                }
+            }
+
+            int row = 100;
+            while (reader.hasRemaining()) {
+                long skipped = reader.skipNulls();
+                for (int i = 0; i < skipped; i++) {
+                    assertNull(values[row++]);
+                }
+                if (!reader.hasRemaining()) {
+                    break;
+                }
+
+                assertTrue(reader.next());
+                assertEquals(values[row++], reader.values().get());
+            }
+
+            assertEquals(values.length, row);
+        }
+    }
+
+    @Test
+    void testSkipAndSeek() throws IOException {
+        var column = new NullableColumn<IntColumn.Reader, IntColumn.Writer>(new IntColumn("ints"));
+        Integer[] values = randomValues(new Random(4), 1000, 3);
+
+        write(column, values);
+
+        try (var table = new SlopTable(tempDir)) {
+            var reader = column.open(table);
+
+            for (long row : new long[] { 5, 300, 301, 64, 0, 999, 128 }) {
+                if (row > reader.position() && row % 2 == 0) {
+                    reader.skip(row - reader.position());
+                }
+                else {
+                    reader.seek(row);
+                }
+
+                assertEquals(row, reader.position());
+                if (reader.next()) {
+                    assertEquals(values[(int) row], reader.values().get());
+                }
+                else {
+                    assertNull(values[(int) row]);
+                }
+            }
+        }
+
+        try (var table = new SlopTable(tempDir.toUri(), 0, StorageOptions.DEFAULT, 500, 600)) {
+            var reader = column.open(table);
+            assertEquals(500, reader.position());
+            assertEquals(values[500] == null, !reader.next());
+            if (values[500] != null) {
+                assertEquals(values[500], reader.values().get());
+            }
+        }
+    }
+
+    @Test
+    void testObjectColumn() throws IOException {
+        var column = new StringColumn("strings").asNullable();
+        String[] values = { "a", null, "", null, null, "b", "c", null };
+
+        try (var table = new SlopTable(tempDir)) {
+            var writer = column.create(table);
+            for (String value : values) {
+                writer.put(value);
+            }
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var reader = column.open(table);
+            for (String value : values) {
+                assertEquals(value, reader.get());
+            }
+            assertFalse(reader.hasRemaining());
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var reader = column.open(table);
+            assertTrue(reader.search("b"));
+            assertEquals(6, reader.position());
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var reader = column.open(table);
+            reader.seek(1);
+            assertTrue(reader.isNull());
+            assertEquals(1, reader.skipNulls());
+            assertEquals("", reader.get());
+            assertEquals(2, reader.skipNulls());
+            assertEquals("b", reader.get());
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package nu.marginalia.slop.column;
+
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.array.ByteArrayColumn;
+import nu.marginalia.slop.column.array.IntArrayColumn;
+import nu.marginalia.slop.column.array.LongArrayColumn;
+import nu.marginalia.slop.column.dynamic.OffsetIndexColumn;
+import nu.marginalia.slop.column.string.StringColumn;
+import nu.marginalia.slop.desc.ColumnFunction;
+import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.StorageOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffsetIndexColumnTest {
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterEach
+    void cleanup() {
+        try {
+            Files.walk(tempDir)
+                    .sorted(this::deleteOrder)
+                    .forEach(p -> {
+                        try {
+                            if (Files.isRegularFile(p)) {
+                                System.out.println("Deleting " + p + " " + Files.size(p));
+                            }
+                            Files.delete(p);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    int deleteOrder(Path a, Path b) {
+        if (Files.isDirectory(a) && !Files.isDirectory(b)) {
+            return 1;
+        } else if (!Files.isDirectory(a) && Files.isDirectory(b)) {
+            return -1;
+        } else {
+            return a.getNameCount() - b.getNameCount();
+        }
+    }
+
+
+    private static final int COUNT = 1000;
+    private static final int INTERVAL = 16;
+
+    private static final StorageOptions INDEXED = StorageOptions.DEFAULT
+            .withOffsetIndexInterval(INTERVAL)
+            .withMaterializeCompressed(true)
+            .withBlockSize(4096);
+
+    byte[][] randomValues(Random r) {
+        byte[][] values = new byte[COUNT][];
+        for (int i = 0; i < COUNT; i++) {
+            values[i] = new byte[r.nextInt(100)];
+            r.nextBytes(values[i]);
+        }
+        return values;
+    }
+
+    @Test
+    void testSeekByteArray() throws IOException {
+        for (var storageType : StorageType.values()) {
+            var column = new ByteArrayColumn("bytes-" + storageType, storageType);
+            byte[][] values = randomValues(new Random(0));
+
+            try (var table = new SlopTable(tempDir, 0, INDEXED)) {
+                var writer = column.create(table);
+                for (var value : values) {
+                    writer.put(value);
+                }
+            }
+
+            var offsetsColumn = new OffsetIndexColumn(column.name, ColumnFunction.DATA_OFFSETS);
+            assertTrue(Files.exists(tempDir.resolve(offsetsColumn.fileName(0))), storageType.toString());
+
+            try (var table = new SlopTable(tempDir, 0, INDEXED)) {
+                var reader = column.open(table);
+                Random r = new Random(1);
+
+                for (int i = 0; i < 200; i++) {
+                    int row = r.nextInt(COUNT);
+                    reader.seek(row);
+                    assertEquals(row, reader.position());
+                    assertArrayEquals(values[row], reader.get(), storageType + ":" + row);
+                }
+
+                reader.seek(0);
+                assertArrayEquals(values[0], reader.get());
+
+                reader.skip(100);
+                assertEquals(101, reader.position());
+                assertArrayEquals(values[101], reader.get());
+
+                reader.seek(COUNT - 1);
+                assertArrayEquals(values[COUNT - 1], reader.get());
+                assertFalse(reader.hasRemaining());
+            }
+        }
+    }
+
+    @Test
+    void testSeekString() throws IOException {
+        var column = new StringColumn("strings", StandardCharsets.UTF_8, StorageType.ZSTD);
+
+        try (var table = new SlopTable(tempDir, 0, INDEXED)) {
+            var writer = column.create(table);
+            for (int i = 0; i < COUNT; i++) {
+                writer.put("value-" + i);
+            }
+        }
+
+        try (var table = new SlopTable(tempDir, 0, INDEXED)) {
+            var reader = column.open(table);
+            reader.seek(500);
+            assertEquals("value-500", reader.get());
+            reader.seek(17);
+            assertEquals("value-17", reader.get());
+        }
+    }
+
+    @Test
+    void testSeekIntAndLongArrays() throws IOException {
+        var intColumn = new IntArrayColumn("ints", StorageType.ZSTD_BLOCK);
+        var longColumn = new LongArrayColumn("longs", StorageType.PLAIN);
+
+        try (var table = new SlopTable(tempDir, 0, INDEXED)) {
+            var intWriter = intColumn.create(table);
+            var longWriter = longColumn.create(table);
+            for (int i = 0; i < COUNT; i++) {
+                intWriter.put(new int[] { i, -i, i % 7 });
+                longWriter.put(new long[i % 5]);
+            }
+        }
+
+        try (var table = new SlopTable(tempDir, 0, INDEXED)) {
+            var intReader = intColumn.open(table);
+            var longReader = longColumn.open(table);
+
+            for (int row : new int[] { 999, 3, 512, 511, 0, 48 }) {
+                intReader.seek(row);
+                longReader.seek(row);
+                assertArrayEquals(new int[] { row, -row, row % 7 }, intReader.get());
+                assertEquals(row % 5, longReader.get().length);
+            }
+        }
+    }
+
+    @Test
+    void testNoIndex() throws IOException {
+        var column = new ByteArrayColumn("bytes");
+        byte[][] values = randomValues(new Random(0));
+
+        // write an index first, which rewriting the page without one removes
+        for (var options : new StorageOptions[] { INDEXED, StorageOptions.DEFAULT }) {
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var writer = column.create(table);
+                for (var value : values) {
+                    writer.put(value);
+                }
+            }
+        }
+
+        var offsetsColumn = new OffsetIndexColumn("bytes", ColumnFunction.DATA_OFFSETS);
+        assertFalse(Files.exists(tempDir.resolve(offsetsColumn.fileName(0))));
+
+        try (var table = new SlopTable(tempDir, 0, INDEXED)) {
+            var reader = column.open(table);
+
+            reader.seek(300);
+            assertArrayEquals(values[300], reader.get());
+            reader.skip(100);
+            assertArrayEquals(values[401], reader.get());
+
+            assertThrows(UnsupportedOperationException.class, () -> reader.seek(10));
+        }
+    }
+
+    @Test
+    void testIndexNotUsedUnlessEnabled() throws IOException {
+        var column = new ByteArrayColumn("bytes");
+        byte[][] values = randomValues(new Random(0));
+
+        try (var table = new SlopTable(tempDir, 0, INDEXED)) {
+            var writer = column.create(table);
+            for (var value : values) {
+                writer.put(value);
+            }
+        }
+
+        try (var table = new SlopTable(tempDir, 0)) {
+            var reader = column.open(table);
+
+            reader.seek(300);
+            assertArrayEquals(values[300], reader.get());
+            assertThrows(UnsupportedOperationException.class, () -> reader.seek(10));
+        }
+    }
+
+    @Test
+    void testStaleIndex() throws IOException {
+        var column = new ByteArrayColumn("bytes");
+        var offsetsColumn = new OffsetIndexColumn("bytes", ColumnFunction.DATA_OFFSETS);
+        Path indexFile = tempDir.resolve(offsetsColumn.fileName(0));
+
+        try (var table = new SlopTable(tempDir, 0, INDEXED)) {
+            var writer = column.create(table);
+            for (var value : randomValues(new Random(0))) {
+                writer.put(value);
+            }
+        }
+        byte[] staleIndex = Files.readAllBytes(indexFile);
+
+        byte[][] values = randomValues(new Random(1));
+        try (var table = new SlopTable(tempDir, 0, INDEXED)) {
+            var writer = column.create(table);
+            for (var value : values) {
+                writer.put(value);
+            }
+        }
+
+        // copy the old index back over the new one, as if the page was assembled from
+        // different versions; it is newer than the data, but doesn't match it
+        Files.write(indexFile, staleIndex);
+
+        try (var table = new SlopTable(tempDir, 0, INDEXED)) {
+            var reader = column.open(table);
+
+            reader.seek(300);
+            assertArrayEquals(values[300], reader.get());
+            assertThrows(UnsupportedOperationException.class, () -> reader.seek(10));
+        }
+    }
+
+    @Test
+    void testStreamCompressedNotMaterialized() throws IOException {
+        var column = new ByteArrayColumn("bytes", StorageType.GZIP);
+        byte[][] values = randomValues(new Random(0));
+
+        try (var table = new SlopTable(tempDir, 0, INDEXED)) {
+            var writer = column.create(table);
+            for (var value : values) {
+                writer.put(value);
+            }
+        }
+
+        // the index can't be used, as the data can't be seeked, so seeks fall back to skipping forward
+        try (var table = new SlopTable(tempDir, 0, INDEXED.withMaterializeCompressed(false))) {
+            var reader = column.open(table);
+
+            reader.seek(700);
+            assertArrayEquals(values[700], reader.get());
+            assertThrows(UnsupportedOperationException.class, () -> reader.seek(10));
+        }
+    }
+
+    @Test
+    void testEmpty() throws IOException {
+        var column = new ByteArrayColumn("empty");
+
+        try (var table = new SlopTable(tempDir, 0, INDEXED)) {
+            column.create(table);
+        }
+
+        try (var table = new SlopTable(tempDir, 0, INDEXED)) {
+            var reader = column.open(table);
+            reader.seek(0);
+            assertEquals(0, reader.position());
+            assertFalse(reader.hasRemaining());
+        }
+    }
+}
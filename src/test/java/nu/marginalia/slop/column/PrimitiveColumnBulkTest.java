@@ -0,0 +1,276 @@
+package nu.marginalia.slop.column;
+
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.primitive.*;
+import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.StorageOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrimitiveColumnBulkTest {
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterEach
+    void cleanup() {
+        try {
+            Files.walk(tempDir)
+                    .sorted(this::deleteOrder)
+                    .forEach(p -> {
+                        try {
+                            if (Files.isRegularFile(p)) {
+                                System.out.println("Deleting " + p + " " + Files.size(p));
+                            }
+                            Files.delete(p);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    int deleteOrder(Path a, Path b) {
+        if (Files.isDirectory(a) && !Files.isDirectory(b)) {
+            return 1;
+        } else if (!Files.isDirectory(a) && Files.isDirectory(b)) {
+            return -1;
+        } else {
+            return a.getNameCount() - b.getNameCount();
+        }
+    }
+
+    /** Small odd sized buffers, so that values straddle the buffer boundaries */
+    private static final StorageOptions SMALL_BUFFERS = StorageOptions.DEFAULT.withBufferSize(61);
+
+    private static final int COUNT = 1000;
+    private static final int CHUNK = 77;
+
+    interface BulkTest {
+        void run(StorageType storageType, ByteOrder order, StorageOptions options) throws IOException;
+    }
+
+    void forAllConfigurations(BulkTest test) throws IOException {
+        for (var storageType : StorageType.values()) {
+            for (var order : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN }) {
+                test.run(storageType, order, StorageOptions.DEFAULT);
+                test.run(storageType, order, SMALL_BUFFERS);
+            }
+        }
+        test.run(StorageType.PLAIN, ByteOrder.LITTLE_ENDIAN, StorageOptions.DEFAULT.withMmapOutput(true));
+        test.run(StorageType.PLAIN, ByteOrder.BIG_ENDIAN, StorageOptions.DEFAULT.withMmapOutput(true));
+    }
+
+    String name(String type, StorageType storageType, ByteOrder order, StorageOptions options) {
+        return type + "-" + storageType + "-" + order + "-" + options.hashCode();
+    }
+
+    @Test
+    void testInts() throws IOException {
+        forAllConfigurations((storageType, order, options) -> {
+            var column = new IntColumn(name("int", storageType, order, options), order, storageType);
+
+            int[] values = new Random(0).ints(COUNT).toArray();
+
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var writer = column.create(table);
+                writer.put(values, 0, 10);
+                writer.put(values[10]);
+                writer.put(values, 11, COUNT - 11);
+                assertEquals(COUNT, writer.position());
+            }
+
+            int[] read = new int[COUNT];
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var reader = column.open(table);
+                for (int i = 0; i < COUNT; i += CHUNK) {
+                    reader.get(read, i, Math.min(CHUNK, COUNT - i));
+                }
+                assertFalse(reader.hasRemaining());
+            }
+            assertArrayEquals(values, read, column.name);
+        });
+    }
+
+    @Test
+    void testLongs() throws IOException {
+        forAllConfigurations((storageType, order, options) -> {
+            var column = new LongColumn(name("long", storageType, order, options), order, storageType);
+
+            long[] values = new Random(0).longs(COUNT).toArray();
+
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var writer = column.create(table);
+                writer.put(values);
+            }
+
+            long[] read = new long[COUNT];
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var reader = column.open(table);
+                for (int i = 0; i < COUNT; i += CHUNK) {
+                    reader.get(read, i, Math.min(CHUNK, COUNT - i));
+                }
+                assertFalse(reader.hasRemaining());
+            }
+            assertArrayEquals(values, read, column.name);
+        });
+    }
+
+    @Test
+    void testDoubles() throws IOException {
+        forAllConfigurations((storageType, order, options) -> {
+            var column = new DoubleColumn(name("double", storageType, order, options), order, storageType);
+
+            double[] values = new Random(0).doubles(COUNT).toArray();
+
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var writer = column.create(table);
+                writer.put(values);
+            }
+
+            double[] read = new double[COUNT];
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var reader = column.open(table);
+                for (int i = 0; i < COUNT; i += CHUNK) {
+                    reader.get(read, i, Math.min(CHUNK, COUNT - i));
+                }
+                assertFalse(reader.hasRemaining());
+            }
+            assertArrayEquals(values, read, column.name);
+        });
+    }
+
+    @Test
+    void testFloats() throws IOException {
+        forAllConfigurations((storageType, order, options) -> {
+            var column = new FloatColumn(name("float", storageType, order, options), order, storageType);
+
+            var rand = new Random(0);
+            float[] values = new float[COUNT];
+            for (int i = 0; i < COUNT; i++) values[i] = rand.nextFloat();
+
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var writer = column.create(table);
+                writer.put(values);
+            }
+
+            float[] read = new float[COUNT];
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var reader = column.open(table);
+                for (int i = 0; i < COUNT; i += CHUNK) {
+                    reader.get(read, i, Math.min(CHUNK, COUNT - i));
+                }
+                assertFalse(reader.hasRemaining());
+            }
+            assertArrayEquals(values, read, column.name);
+        });
+    }
+
+    @Test
+    void testShorts() throws IOException {
+        forAllConfigurations((storageType, order, options) -> {
+            var column = new ShortColumn(name("short", storageType, order, options), order, storageType);
+
+            var rand = new Random(0);
+            short[] values = new short[COUNT];
+            for (int i = 0; i < COUNT; i++) values[i] = (short) rand.nextInt();
+
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var writer = column.create(table);
+                writer.put(values);
+            }
+
+            short[] read = new short[COUNT];
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var reader = column.open(table);
+                for (int i = 0; i < COUNT; i += CHUNK) {
+                    reader.get(read, i, Math.min(CHUNK, COUNT - i));
+                }
+                assertFalse(reader.hasRemaining());
+            }
+            assertArrayEquals(values, read, column.name);
+        });
+    }
+
+    @Test
+    void testChars() throws IOException {
+        forAllConfigurations((storageType, order, options) -> {
+            var column = new CharColumn(name("char", storageType, order, options), order, storageType);
+
+            var rand = new Random(0);
+            char[] values = new char[COUNT];
+            for (int i = 0; i < COUNT; i++) values[i] = (char) rand.nextInt();
+
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var writer = column.create(table);
+                writer.put(values);
+            }
+
+            char[] read = new char[COUNT];
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var reader = column.open(table);
+                for (int i = 0; i < COUNT; i += CHUNK) {
+                    reader.get(read, i, Math.min(CHUNK, COUNT - i));
+                }
+                assertFalse(reader.hasRemaining());
+            }
+            assertArrayEquals(values, read, column.name);
+        });
+    }
+
+    @Test
+    void testBytes() throws IOException {
+        forAllConfigurations((storageType, order, options) -> {
+            var column = new ByteColumn(name("byte", storageType, order, options), storageType);
+
+            byte[] values = new byte[COUNT];
+            new Random(0).nextBytes(values);
+
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var writer = column.create(table);
+                writer.put(values);
+            }
+
+            byte[] read = new byte[COUNT];
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var reader = column.open(table);
+                for (int i = 0; i < COUNT; i += CHUNK) {
+                    reader.get(read, i, Math.min(CHUNK, COUNT - i));
+                }
+                assertFalse(reader.hasRemaining());
+            }
+            assertArrayEquals(values, read, column.name);
+        });
+    }
+
+    @Test
+    void testBounds() throws IOException {
+        var column = new IntColumn("bounds");
+
+        try (var table = new SlopTable(tempDir)) {
+            var writer = column.create(table);
+            assertThrows(IndexOutOfBoundsException.class, () -> writer.put(new int[4], 2, 3));
+            writer.put(new int[4], 2, 2);
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var reader = column.open(table);
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.get(new int[4], -1, 2));
+            reader.get(new int[2]);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package nu.marginalia.slop.column;
+
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.primitive.*;
+import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.BlockCompressingStorageWriter;
+import nu.marginalia.slop.storage.SharedMappings;
+import nu.marginalia.slop.storage.StorageOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RandomAccessColumnTest {
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterEach
+    void cleanup() {
+        try {
+            Files.walk(tempDir)
+                    .sorted(this::deleteOrder)
+                    .forEach(p -> {
+                        try {
+                            if (Files.isRegularFile(p)) {
+                                System.out.println("Deleting " + p + " " + Files.size(p));
+                            }
+                            Files.delete(p);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    int deleteOrder(Path a, Path b) {
+        if (Files.isDirectory(a) && !Files.isDirectory(b)) {
+            return 1;
+        } else if (!Files.isDirectory(a) && Files.isDirectory(b)) {
+            return -1;
+        } else {
+            return a.getNameCount() - b.getNameCount();
+        }
+    }
+
+    private static final int COUNT = 10_000;
+
+    interface RandomAccessTest {
+        void run(StorageType storageType, ByteOrder order, StorageOptions options) throws Exception;
+    }
+
+    void forAllConfigurations(RandomAccessTest test) throws Exception {
+        for (var storageType : StorageType.values()) {
+            for (var order : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN }) {
+                // small blocks, so that the block compressed columns span several blocks
+                test.run(storageType, order, StorageOptions.DEFAULT.withBlockSize(4096));
+            }
+        }
+    }
+
+    String name(String type, StorageType storageType, ByteOrder order) {
+        return type + "-" + storageType + "-" + order;
+    }
+
+    long[] randomRows(Random r, int n) {
+        long[] rows = new long[n];
+        for (int i = 0; i < n; i++) {
+            rows[i] = r.nextInt(COUNT);
+        }
+        return rows;
+    }
+
+    @Test
+    void testInts() throws Exception {
+        forAllConfigurations((storageType, order, options) -> {
+            var column = new IntColumn(name("int", storageType, order), order, storageType);
+            int[] values = new Random(0).ints(COUNT).toArray();
+
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                column.create(table).put(values);
+            }
+
+            try (var table = new SlopTable(tempDir, 0, options);
+                 var reader = column.openRandomAccess(table))
+            {
+                assertEquals(COUNT, reader.size());
+                assertEquals(values[0], reader.getInt(0));
+                assertEquals(values[COUNT - 1], reader.getInt(COUNT - 1));
+
+                long[] rows = randomRows(new Random(1), 500);
+                int[] dst = new int[rows.length];
+                reader.getAll(rows, dst);
+
+                for (int i = 0; i < rows.length; i++) {
+                    assertEquals(values[(int) rows[i]], dst[i], column.name);
+                    assertEquals(values[(int) rows[i]], reader.getInt(rows[i]), column.name);
+                }
+            }
+        });
+    }
+
+    @Test
+    void testLongs() throws Exception {
+        forAllConfigurations((storageType, order, options) -> {
+            var column = new LongColumn(name("long", storageType, order), order, storageType);
+            long[] values = new Random(0).longs(COUNT).toArray();
+
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                column.create(table).put(values);
+            }
+
+            try (var table = new SlopTable(tempDir, 0, options);
+                 var reader = column.openRandomAccess(table))
+            {
+                assertEquals(COUNT, reader.size());
+
+                long[] rows = randomRows(new Random(1), 500);
+                long[] dst = new long[rows.length + 2];
+                reader.getAll(rows, 10, dst, 2, rows.length - 10);
+
+                for (int i = 10; i < rows.length; i++) {
+                    assertEquals(values[(int) rows[i]], dst[i - 8], column.name);
+                }
+            }
+        });
+    }
+
+    @Test
+    void testDoubles() throws Exception {
+        forAllConfigurations((storageType, order, options) -> {
+            var column = new DoubleColumn(name("double", storageType, order), order, storageType);
+            double[] values = new Random(0).doubles(COUNT).toArray();
+
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                column.create(table).put(values);
+            }
+
+            try (var table = new SlopTable(tempDir, 0, options);
+                 var reader = column.openRandomAccess(table))
+            {
+                assertEquals(COUNT, reader.size());
+
+                long[] rows = randomRows(new Random(1), 500);
+                double[] dst = new double[rows.length];
+                reader.getAll(rows, dst);
+
+                for (int i = 0; i < rows.length; i++) {
+                    assertEquals(values[(int) rows[i]], dst[i], column.name);
+                }
+            }
+        });
+    }
+
+    @Test
+    void testOutOfBounds() throws Exception {
+        var column = new IntColumn("oob");
+
+        try (var table = new SlopTable(tempDir, 0)) {
+            column.create(table).put(new int[] { 1, 2, 3 });
+        }
+
+        try (var table = new SlopTable(tempDir, 0);
+             var reader = column.openRandomAccess(table))
+        {
+            assertEquals(3, reader.getInt(2));
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.getInt(3));
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.getInt(-1));
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.getAll(new long[] { 0, 1 }, new int[1]));
+
+            // the values of an int column can't be read as another type
+            assertThrows(UnsupportedOperationException.class, () -> reader.getLong(0));
+            assertThrows(UnsupportedOperationException.class, () -> reader.getAll(new long[] { 0 }, new long[1]));
+        }
+    }
+
+    @Test
+    void testValuesStraddlingBlocks() throws Exception {
+        var column = new LongColumn("straddle", ByteOrder.LITTLE_ENDIAN, StorageType.ZSTD_BLOCK);
+        long[] values = new Random(0).longs(1000).toArray();
+
+        // the column writers don't split values between blocks, but bytes written in bulk are
+        ByteBuffer data = ByteBuffer.allocate(values.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        data.asLongBuffer().put(values);
+
+        Path file = tempDir.resolve(column.fileName(0));
+        try (var writer = new BlockCompressingStorageWriter(file, file.resolveSibling(file.getFileName() + ".idx"),
+                ByteOrder.LITTLE_ENDIAN, 100))
+        {
+            writer.putBytes(data);
+        }
+
+        try (var table = new SlopTable(tempDir, 0);
+             var reader = column.openRandomAccess(table))
+        {
+            assertEquals(values.length, reader.size());
+            for (int i = 0; i < values.length; i++) {
+                assertEquals(values[i], reader.getLong(i));
+            }
+        }
+    }
+
+    @Test
+    void testConcurrentLookups() throws Exception {
+        var column = new LongColumn("concurrent");
+        long[] values = new Random(0).longs(COUNT).toArray();
+
+        try (var table = new SlopTable(tempDir, 0)) {
+            column.create(table).put(values);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (var mappings = new SharedMappings()) {
+            var options = StorageOptions.DEFAULT.withSharedMappings(mappings);
+
+            // a single reader shared by all threads
+            try (var table = new SlopTable(tempDir, 0, options);
+                 var reader = column.openRandomAccess(table))
+            {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    final int seed = t;
+                    futures.add(executor.submit(() -> {
+                        Random r = new Random(seed);
+                        for (int i = 0; i < 10_000; i++) {
+                            int row = r.nextInt(COUNT);
+                            assertEquals(values[row], reader.getLong(row));
+                        }
+
+                        long[] rows = randomRows(r, 1000);
+                        long[] dst = new long[rows.length];
+                        reader.getAll(rows, dst);
+                        for (int i = 0; i < rows.length; i++) {
+                            assertEquals(values[(int) rows[i]], dst[i]);
+                        }
+                    }));
+                }
+
+                for (var future : futures) {
+                    future.get();
+                }
+            }
+
+            assertEquals(1, mappings.size());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package nu.marginalia.slop.column;
+
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.dynamic.RunLengthIntColumn;
+import nu.marginalia.slop.column.primitive.IntColumn;
+import nu.marginalia.slop.column.string.RunLengthEnumColumn;
+import nu.marginalia.slop.desc.StorageType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunLengthColumnTest {
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterEach
+    void cleanup() {
+        try {
+            Files.walk(tempDir)
+                    .sorted(this::deleteOrder)
+                    .forEach(p -> {
+                        try {
+                            if (Files.isRegularFile(p)) {
+                                System.out.println("Deleting " + p + " " + Files.size(p));
+                            }
+                            Files.delete(p);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    int deleteOrder(Path a, Path b) {
+        if (Files.isDirectory(a) && !Files.isDirectory(b)) {
+            return 1;
+        } else if (!Files.isDirectory(a) && Files.isDirectory(b)) {
+            return -1;
+        } else {
+            return a.getNameCount() - b.getNameCount();
+        }
+    }
+
+    /** Runs of random lengths, mostly short, with negative values and the extremes mixed in */
+    int[] runValues(Random r, int count) {
+        int[] values = new int[count];
+        int i = 0;
+        while (i < count) {
+            int value = switch (r.nextInt(5)) {
+                case 0 -> Integer.MIN_VALUE;
+                case 1 -> Integer.MAX_VALUE;
+                case 2 -> -r.nextInt(100);
+                default -> r.nextInt(100);
+            };
+            int length = Math.min(count - i, r.nextInt(10) == 0 ? r.nextInt(1000) + 1 : r.nextInt(5) + 1);
+            Arrays.fill(values, i, i + length, value);
+            i += length;
+        }
+        return values;
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        int[] values = runValues(new Random(0), 20_000);
+
+        for (var storageType : StorageType.values()) {
+            var column = new RunLengthIntColumn("rle-" + storageType, storageType);
+
+            try (var table = new SlopTable(tempDir)) {
+                var writer = column.create(table);
+                for (int i = 0; i < 1000; i++) {
+                    writer.put(values[i]);
+                }
+                writer.put(Arrays.copyOfRange(values, 1000, values.length));
+            }
+
+            try (var table = new SlopTable(tempDir)) {
+                var reader = column.open(table);
+
+                for (int i = 0; i < 333; i++) {
+                    assertEquals(values[i], reader.get(), storageType + ":" + i);
+                }
+
+                int[] batch = new int[1001];
+                int row = 333;
+                while (row < values.length) {
+                    int n = Math.min(batch.length, values.length - row);
+                    reader.get(batch, n);
+                    assertArrayEquals(Arrays.copyOfRange(values, row, row + n), Arrays.copyOf(batch, n), storageType + ":" + row);
+                    row += n;
+                }
+
+                assertEquals(values.length, reader.position());
+                assertFalse(reader.hasRemaining());
+            }
+        }
+    }
+
+    @Test
+    void testSkipAndSeek() throws IOException {
+        int[] values = runValues(new Random(1), 20_000);
+        var column = new RunLengthIntColumn("rle");
+
+        try (var table = new SlopTable(tempDir)) {
+            column.create(table).put(values);
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var reader = column.open(table);
+
+            reader.skip(5);
+            assertEquals(values[5], reader.get());
+
+            reader.skip(3000);
+            assertEquals(3006, reader.position());
+            assertEquals(values[3006], reader.get());
+
+            Random r = new Random(2);
+            for (int i = 0; i < 200; i++) {
+                int row = r.nextInt(values.length);
+                reader.seek(row);
+                assertEquals(row, reader.position());
+                assertEquals(values[row], reader.get(), "row " + row);
+            }
+
+            reader.seek(values.length - 1);
+            assertEquals(values[values.length - 1], reader.get());
+            assertFalse(reader.hasRemaining());
+        }
+    }
+
+    @Test
+    void testRuns() throws IOException {
+        var column = new RunLengthIntColumn("status");
+
+        try (var table = new SlopTable(tempDir)) {
+            var writer = column.create(table);
+            writer.put(200, 1000);
+            writer.put(200);
+            writer.put(404, 3);
+            writer.put(200, 0);
+            writer.put(301, 5);
+            writer.put(200, 2);
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var reader = column.open(table);
+
+            assertEquals(200, reader.runValue());
+            assertEquals(1001, reader.runRemaining());
+
+            reader.skip(1000);
+            assertEquals(200, reader.runValue());
+            assertEquals(1, reader.runRemaining());
+            assertEquals(200, reader.get());
+
+            // a count of each value, one run at a time
+            Map<Integer, Long> counts = new HashMap<>();
+            counts.put(200, 1001L);
+            while (reader.hasRemaining()) {
+                long rows = reader.runRemaining();
+                counts.merge(reader.runValue(), rows, Long::sum);
+                reader.skip(rows);
+            }
+
+            assertEquals(Map.of(200, 1003L, 404, 3L, 301, 5L), counts);
+            assertEquals(1011, reader.position());
+        }
+    }
+
+    @Test
+    void testSmallerThanIntColumn() throws IOException {
+        int[] values = runValues(new Random(3), 20_000);
+        var rleColumn = new RunLengthIntColumn("rle");
+        var intColumn = new IntColumn("int");
+
+        try (var table = new SlopTable(tempDir)) {
+            rleColumn.create(table).put(values);
+            intColumn.create(table).put(values);
+        }
+
+        long rleSize = Files.size(tempDir.resolve(rleColumn.fileName(0)));
+        long intSize = Files.size(tempDir.resolve(intColumn.fileName(0)));
+
+        assertTrue(rleSize * 4 < intSize, rleSize + " vs " + intSize);
+    }
+
+    @Test
+    void testEnum() throws IOException {
+        var column = new RunLengthEnumColumn("contentType");
+
+        try (var table = new SlopTable(tempDir)) {
+            var writer = column.create(table);
+            writer.put("text/html", 10);
+            writer.put("application/pdf");
+            writer.put("text/html", 5);
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var reader = column.open(table);
+
+            assertEquals(List.of("text/html", "application/pdf"), reader.getDictionary());
+            assertEquals("text/html", reader.runValue());
+            assertEquals(0, reader.runOrdinal());
+            assertEquals(10, reader.runRemaining());
+
+            reader.skip(10);
+            assertEquals("application/pdf", reader.get());
+            assertEquals(0, reader.getOrdinal());
+            assertEquals(4, reader.runRemaining());
+
+            reader.seek(3);
+            assertEquals("text/html", reader.get());
+        }
+    }
+}
@@ -1,22 +1,30 @@
 package nu.marginalia.slop.column;
 
 import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.array.ByteSlice;
 import nu.marginalia.slop.column.string.CStringColumn;
 import nu.marginalia.slop.column.string.StringColumn;
 import nu.marginalia.slop.column.string.TxtStringColumn;
 import nu.marginalia.slop.desc.*;
+import nu.marginalia.slop.storage.StorageOptions;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.*;
 
+@SuppressWarnings("preview") // for MemorySegment in jdk-21
 class StringColumnTest {
     Path tempDir;
 
@@ -107,4 +115,165 @@ class StringColumnTest {
             assertFalse(column.hasRemaining());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testDelimitedStringsAnyFunction() throws IOException {
+        // only DATA and DICT columns have an offset index, but the others must still work
+        var options = StorageOptions.DEFAULT.withOffsetIndexInterval(4);
+        var cstrColumn = new CStringColumn("cstr", StandardCharsets.UTF_8, ColumnFunction.GROUP_LENGTH, StorageType.PLAIN);
+        var txtColumn = new TxtStringColumn("txt", StandardCharsets.UTF_8, ColumnFunction.DATA_LEN, StorageType.PLAIN);
+
+        try (var table = new SlopTable(tempDir, 0, options)) {
+            var cstrWriter = cstrColumn.create(table);
+            var txtWriter = txtColumn.create(table);
+            for (int i = 0; i < 10; i++) {
+                cstrWriter.put("c" + i);
+                txtWriter.put("t" + i);
+            }
+        }
+
+        try (var table = new SlopTable(tempDir, 0, options)) {
+            var cstrReader = cstrColumn.open(table);
+            var txtReader = txtColumn.open(table);
+
+            cstrReader.seek(7);
+            txtReader.seek(7);
+            assertEquals("c7", cstrReader.get());
+            assertEquals("t7", txtReader.get());
+        }
+    }
+
+    private static String testString(int i) {
+        return switch (i % 5) {
+            case 0 -> "";
+            case 1 -> "https://www.example.com/" + i;
+            case 2 -> "Räksmörgås " + i;
+            case 3 -> "日本語のテキスト " + i;
+            default -> "x".repeat(i % 3000) + "\u0001\u0080\u00ff";
+        };
+    }
+
+    @Test
+    void testDelimitedStringsAllStorageTypes() throws IOException {
+        for (StorageType storageType : StorageType.values()) {
+            var cstrDesc = new CStringColumn("cstr", StandardCharsets.UTF_8, storageType);
+            var txtDesc = new TxtStringColumn("txt", StandardCharsets.UTF_8, storageType);
+
+            int rows = 2000;
+
+            // a small buffer, so that strings straddle buffer boundaries
+            var options = StorageOptions.DEFAULT.withBufferSize(1024);
+
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var cstrWriter = cstrDesc.create(table);
+                var txtWriter = txtDesc.create(table);
+                for (int i = 0; i < rows; i++) {
+                    cstrWriter.put(testString(i));
+                    txtWriter.put(testString(i));
+                }
+            }
+
+            try (var table = new SlopTable(tempDir, 0, options)) {
+                var cstrReader = cstrDesc.open(table);
+                var txtReader = txtDesc.open(table);
+
+                for (int i = 0; i < rows; i++) {
+                    if (i % 7 == 3) {
+                        cstrReader.skip(3);
+                        txtReader.skip(3);
+                        i += 2;
+                        continue;
+                    }
+                    assertEquals(testString(i), cstrReader.get(), storageType + " row " + i);
+                    assertEquals(testString(i), txtReader.get(), storageType + " row " + i);
+                }
+
+                assertFalse(cstrReader.hasRemaining());
+                assertFalse(txtReader.hasRemaining());
+            }
+        }
+    }
+
+    @Test
+    void testDeclaredCharset() throws IOException {
+        var columnDesc = new TxtStringColumn("test", StandardCharsets.ISO_8859_1, StorageType.PLAIN);
+
+        try (var table = new SlopTable(tempDir, 0)) {
+            var column = columnDesc.create(table);
+            column.put("Räksmörgås");
+        }
+
+        // one byte per character in latin-1, plus the newline
+        assertEquals(11, Files.size(tempDir.resolve(columnDesc.fileName(0))));
+
+        try (var table = new SlopTable(tempDir, 0)) {
+            var column = columnDesc.open(table);
+            assertEquals("Räksmörgås", column.get());
+        }
+    }
+
+    @Test
+    void testSlices() throws IOException {
+        byte[] prefix = "https://".getBytes(StandardCharsets.UTF_8);
+        byte[] suffix = "/ä".getBytes(StandardCharsets.UTF_8);
+
+        for (StorageType storageType : StorageType.values()) {
+            var columnDesc = new StringColumn("test", StandardCharsets.UTF_8, storageType);
+
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                values.add(switch (i % 4) {
+                    case 0 -> "https://www.example.com/" + i + "/ä";
+                    case 1 -> "http://www.example.com/" + i;
+                    case 2 -> "";
+                    default -> "x".repeat(i); // larger than the slice's initial array
+                });
+            }
+
+            try (var table = new SlopTable(tempDir, 0)) {
+                var column = columnDesc.create(table);
+                for (var value : values) {
+                    column.put(value);
+                }
+            }
+
+            try (var table = new SlopTable(tempDir, 0)) {
+                var column = columnDesc.open(table);
+                var slice = new ByteSlice();
+
+                for (var value : values) {
+                    column.get(slice);
+
+                    byte[] expected = value.getBytes(StandardCharsets.UTF_8);
+                    assertEquals(expected.length, slice.length());
+                    assertTrue(slice.contentEquals(expected));
+                    assertEquals(value.startsWith("https://"), slice.startsWith(prefix));
+                    assertEquals(value.endsWith("/ä"), slice.endsWith(suffix));
+                    assertEquals(Arrays.hashCode(expected), slice.hash());
+                    assertArrayEquals(expected, slice.toByteArray());
+                    assertEquals(value, slice.toString(StandardCharsets.UTF_8));
+                    assertEquals(ByteBuffer.wrap(expected), slice.asByteBuffer());
+                    assertTrue(slice.asByteBuffer().isReadOnly());
+                }
+                assertFalse(column.hasRemaining());
+            }
+
+            // getSegment() is only supported for memory mapped columns
+            try (var table = new SlopTable(tempDir, 0)) {
+                var column = columnDesc.open(table);
+
+                if (storageType == StorageType.PLAIN) {
+                    MemorySegment first = column.getSegment();
+                    MemorySegment second = column.getSegment();
+                    assertArrayEquals(values.get(0).getBytes(StandardCharsets.UTF_8), first.toArray(ValueLayout.JAVA_BYTE));
+                    assertArrayEquals(values.get(1).getBytes(StandardCharsets.UTF_8), second.toArray(ValueLayout.JAVA_BYTE));
+                    assertEquals(values.get(2), column.get());
+                }
+                else {
+                    assertThrows(UnsupportedOperationException.class, column::getSegment);
+                    assertEquals(values.get(0), column.get()); // the failed call did not consume a value
+                }
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import nu.marginalia.slop.column.dynamic.VarintColumn;
 import nu.marginalia.slop.column.primitive.LongColumn;
 import nu.marginalia.slop.desc.ColumnFunction;
 import nu.marginalia.slop.desc.StorageType;
+import nu.marginalia.slop.storage.StorageOptions;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,10 +14,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class VarintColumnTest {
     Path tempDir;
@@ -137,4 +139,160 @@ class VarintColumnTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    void testBulkFuzz() throws IOException {
+        for (var storageType : StorageType.values()) {
+            testBulkFuzz(storageType);
+        }
+    }
+
+    void testBulkFuzz(StorageType storageType) throws IOException {
+        var columnDesc = new VarintColumn("test-" + storageType, storageType);
+
+        var rand = new Random(42);
+        long[] values = new long[40_000];
+        for (int i = 0; i < values.length; i++) {
+            // pick a random bit length, so that all encoded lengths are covered
+            int bits = rand.nextInt(0, 64);
+            values[i] = rand.nextLong() >>> (64 - bits) & Long.MAX_VALUE;
+            if (bits == 0) values[i] = 0;
+        }
+
+        // the boundaries of the word-at-a-time decoder, at the end of the data
+        long[] tail = new long[] { (1L << 56) - 1, 1L << 56, Long.MAX_VALUE, 127, 128, 0 };
+
+        try (var table = new SlopTable(tempDir)) {
+            var column = columnDesc.create(table);
+            column.put(values);
+            column.put(tail);
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var column = columnDesc.open(table);
+
+            long[] longs = new long[1000];
+            int[] ints = new int[1000];
+
+            for (int i = 0; i < values.length; i += 2000) {
+                column.get(longs, 1000);
+                for (int j = 0; j < 1000; j++) {
+                    assertEquals(values[i + j], longs[j], "idx: " + (i + j));
+                }
+
+                column.get(ints, 1000);
+                for (int j = 0; j < 1000; j++) {
+                    assertEquals((int) values[i + 1000 + j], ints[j], "idx: " + (i + 1000 + j));
+                }
+            }
+
+            assertEquals(values.length, column.position());
+
+            column.get(longs, tail.length);
+            assertArrayEquals(tail, Arrays.copyOf(longs, tail.length));
+            assertFalse(column.hasRemaining());
+        }
+    }
+
+    @Test
+    void testBulkMixedWithSingle() throws IOException {
+        var columnDesc = new VarintColumn("test", StorageType.PLAIN);
+
+        try (var table = new SlopTable(tempDir)) {
+            var column = columnDesc.create(table);
+            for (int i = 0; i < 100; i++) {
+                column.put(i * 1000L);
+            }
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var column = columnDesc.open(table);
+
+            assertEquals(0, column.get());
+
+            int[] ints = new int[10];
+            column.get(ints, 5);
+            assertArrayEquals(new int[] { 1000, 2000, 3000, 4000, 5000, 0, 0, 0, 0, 0 }, ints);
+
+            assertEquals(6000L, column.getLong());
+            assertEquals(7, column.position());
+
+            assertThrows(IndexOutOfBoundsException.class, () -> column.get(ints, 11));
+        }
+    }
+
+    @Test
+    void testEncoding() throws IOException {
+        var columnDesc = new VarintColumn("test", StorageType.PLAIN);
+
+        try (var table = new SlopTable(tempDir)) {
+            var column = columnDesc.create(table);
+            column.put(0);
+            column.put(127);
+            column.put(300);
+            column.put(new long[] { 1L << 56 });
+        }
+
+        byte[] expected = new byte[] {
+                0,
+                127,
+                (byte) 0x82, 0x2C,
+                (byte) 0x81, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0
+        };
+
+        assertArrayEquals(expected, Files.readAllBytes(tempDir.resolve(columnDesc.fileName(0))));
+    }
+
+    @Test
+    void testBulkPut() throws IOException {
+        for (var storageType : StorageType.values()) {
+            testBulkPut(storageType, StorageOptions.DEFAULT);
+        }
+        testBulkPut(StorageType.PLAIN, StorageOptions.DEFAULT.withMmapOutput(true));
+    }
+
+    void testBulkPut(StorageType storageType, StorageOptions options) throws IOException {
+        var columnDesc = new VarintColumn("test-put-" + storageType + "-" + options.mmapOutput(), storageType);
+
+        var rand = new Random(42);
+        long[] longs = new long[20_000];
+        int[] ints = new int[20_000];
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = rand.nextLong() >>> rand.nextInt(1, 64);
+            ints[i] = rand.nextInt() >>> rand.nextInt(1, 32);
+        }
+
+        try (var table = new SlopTable(tempDir, 0, options)) {
+            var column = columnDesc.create(table);
+            column.put(longs);
+            column.put(ints, 1000);
+            column.put(5);
+
+            assertEquals(longs.length + 1001, column.position());
+        }
+
+        try (var table = new SlopTable(tempDir)) {
+            var column = columnDesc.open(table);
+
+            for (long value : longs) {
+                assertEquals(value, column.getLong());
+            }
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(ints[i], column.get());
+            }
+            assertEquals(5, column.get());
+            assertFalse(column.hasRemaining());
+        }
+    }
+
+    @Test
+    void testNegative() throws IOException {
+        var columnDesc = new VarintColumn("test", StorageType.PLAIN);
+
+        try (var table = new SlopTable(tempDir)) {
+            var column = columnDesc.create(table);
+
+            assertThrows(IllegalArgumentException.class, () -> column.put(-1));
+            assertThrows(IllegalArgumentException.class, () -> column.put(new int[] { 1, -1 }));
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package nu.marginalia.slop.desc;
+
+import nu.marginalia.slop.SlopPageScanner;
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.primitive.IntColumn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlopPageScannerTest {
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterEach
+    void cleanup() {
+        try {
+            Files.walk(tempDir)
+                    .sorted(this::deleteOrder)
+                    .forEach(p -> {
+                        try {
+                            if (Files.isRegularFile(p)) {
+                                System.out.println("Deleting " + p + " " + Files.size(p));
+                            }
+                            Files.delete(p);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    int deleteOrder(Path a, Path b) {
+        if (Files.isDirectory(a) && !Files.isDirectory(b)) {
+            return 1;
+        } else if (!Files.isDirectory(a) && Files.isDirectory(b)) {
+            return -1;
+        } else {
+            return a.getNameCount() - b.getNameCount();
+        }
+    }
+
+    private final IntColumn column = new IntColumn("values");
+
+    /** Write numPages pages, where page N holds the values 1000 * N + [0, N] */
+    private List<SlopTable.Ref<Void>> writePages(int numPages) throws IOException {
+        for (int page = 0; page < numPages; page++) {
+            try (var table = new SlopTable(tempDir, page)) {
+                var writer = column.create(table);
+                for (int i = 0; i <= page; i++) {
+                    writer.put(1000 * page + i);
+                }
+            }
+        }
+
+        return SlopTable.listPages(tempDir, column);
+    }
+
+    private long sumPage(SlopTable.Ref<Void> ref) throws IOException {
+        long sum = 0;
+        try (var table = new SlopTable(ref)) {
+            var reader = column.open(table);
+            while (reader.hasRemaining()) {
+                sum += reader.get();
+            }
+        }
+        return sum;
+    }
+
+    private static long expectedSum(int page) {
+        long sum = 0;
+        for (int i = 0; i <= page; i++) {
+            sum += 1000L * page + i;
+        }
+        return sum;
+    }
+
+    @Test
+    void testOrdered() throws IOException {
+        var pages = writePages(20);
+        assertEquals(20, pages.size());
+
+        List<Long> results = new ArrayList<>();
+        try (var scanner = new SlopPageScanner(4)) {
+            scanner.scan(pages, this::sumPage, results::add);
+        }
+
+        assertEquals(20, results.size());
+        for (int page = 0; page < 20; page++) {
+            assertEquals(expectedSum(page), results.get(page));
+        }
+    }
+
+    @Test
+    void testOrderedVirtualThreads() throws IOException {
+        var pages = writePages(20);
+
+        List<Long> results;
+        try (var scanner = SlopPageScanner.ofVirtualThreads(3)) {
+            results = scanner.collect(pages, this::sumPage);
+        }
+
+        assertEquals(20, results.size());
+        for (int page = 0; page < 20; page++) {
+            assertEquals(expectedSum(page), results.get(page));
+        }
+    }
+
+    @Test
+    void testUnordered() throws IOException {
+        var pages = writePages(20);
+
+        Set<Long> results = new HashSet<>();
+        try (var scanner = new SlopPageScanner(4)) {
+            scanner.scan(pages, this::sumPage, false, results::add);
+        }
+
+        Set<Long> expected = new HashSet<>();
+        for (int page = 0; page < 20; page++) {
+            expected.add(expectedSum(page));
+        }
+        assertEquals(expected, results);
+    }
+
+    @Test
+    void testEmpty() throws IOException {
+        try (var scanner = new SlopPageScanner(4)) {
+            assertEquals(List.of(), scanner.collect(writePages(0), this::sumPage));
+        }
+    }
+
+    @Test
+    void testBoundedParallelism() throws IOException {
+        var pages = writePages(16);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        try (var scanner = SlopPageScanner.ofVirtualThreads(2)) {
+            scanner.scan(pages, ref -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                    return sumPage(ref);
+                }
+                finally {
+                    running.decrementAndGet();
+                }
+            }, result -> {});
+        }
+
+        assertTrue(maxRunning.get() <= 2, "Too many pages in flight: " + maxRunning.get());
+    }
+
+    @Test
+    void testReaderException() throws IOException {
+        var pages = writePages(8);
+
+        try (var scanner = new SlopPageScanner(2)) {
+            var ex = assertThrows(IOException.class, () -> scanner.scan(pages, ref -> {
+                if (ref.page() == 5) {
+                    throw new IOException("Page 5 is bad");
+                }
+                return sumPage(ref);
+            }, result -> {}));
+
+            assertEquals("Page 5 is bad", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package nu.marginalia.slop.desc;
+
+import nu.marginalia.slop.SlopShardedWriter;
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.primitive.IntColumn;
+import nu.marginalia.slop.column.primitive.LongColumn;
+import nu.marginalia.slop.column.string.StringColumn;
+import nu.marginalia.slop.storage.StorageOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlopShardedWriterTest {
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterEach
+    void cleanup() {
+        try {
+            Files.walk(tempDir)
+                    .sorted(this::deleteOrder)
+                    .forEach(p -> {
+                        try {
+                            if (Files.isRegularFile(p)) {
+                                System.out.println("Deleting " + p + " " + Files.size(p));
+                            }
+                            Files.delete(p);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    int deleteOrder(Path a, Path b) {
+        if (Files.isDirectory(a) && !Files.isDirectory(b)) {
+            return 1;
+        } else if (!Files.isDirectory(a) && Files.isDirectory(b)) {
+            return -1;
+        } else {
+            return a.getNameCount() - b.getNameCount();
+        }
+    }
+
+    record Rec(long id, String name) {}
+
+    private final LongColumn idColumn = new LongColumn("id", StorageType.ZSTD);
+    private final StringColumn nameColumn = new StringColumn("name", StandardCharsets.UTF_8, StorageType.ZSTD);
+
+    private SlopShardedWriter.PageWriter<Rec> createWriters(SlopTable table) throws IOException {
+        var idWriter = idColumn.create(table);
+        var nameWriter = nameColumn.create(table);
+
+        return rec -> {
+            idWriter.put(rec.id());
+            nameWriter.put(rec.name());
+        };
+    }
+
+    private List<Rec> readAll(List<SlopTable.Ref<Rec>> pages) throws IOException {
+        List<Rec> ret = new ArrayList<>();
+
+        for (var ref : pages) {
+            try (var table = new SlopTable(ref)) {
+                var idReader = idColumn.open(table);
+                var nameReader = nameColumn.open(table);
+
+                while (idReader.hasRemaining()) {
+                    ret.add(new Rec(idReader.get(), nameReader.get()));
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    @Test
+    void testManyProducers() throws Exception {
+        final int numProducers = 8;
+        final int recordsPerProducer = 10_000;
+
+        List<SlopTable.Ref<Rec>> pages;
+
+        try (var writer = new SlopShardedWriter<>(tempDir, 3, this::createWriters)) {
+            List<Thread> producers = new ArrayList<>();
+
+            for (int p = 0; p < numProducers; p++) {
+                final int producer = p;
+                producers.add(Thread.ofPlatform().start(() -> {
+                    try {
+                        for (int i = 0; i < recordsPerProducer; i++) {
+                            long id = (long) producer * recordsPerProducer + i;
+                            writer.write(new Rec(id, "name" + id));
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+            }
+
+            for (var thread : producers) {
+                thread.join();
+            }
+
+            pages = writer.pages();
+        }
+
+        assertEquals(3, pages.size());
+        assertEquals(3, SlopTable.getNumPages(tempDir, idColumn));
+
+        List<Rec> records = readAll(pages);
+        assertEquals(numProducers * recordsPerProducer, records.size());
+
+        records.sort((a, b) -> Long.compare(a.id(), b.id()));
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(new Rec(i, "name" + i), records.get(i));
+        }
+    }
+
+    @Test
+    void testCloseWhileWriting() throws Exception {
+        final int numProducers = 4;
+        AtomicLong accepted = new AtomicLong();
+
+        var writer = new SlopShardedWriter<>(tempDir, 0, 2, StorageOptions.DEFAULT, 16, this::createWriters);
+        List<Thread> producers = new ArrayList<>();
+
+        for (int p = 0; p < numProducers; p++) {
+            producers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    for (;;) {
+                        writer.write(new Rec(0, "name"));
+                        accepted.incrementAndGet();
+                    }
+                }
+                catch (IllegalStateException e) {
+                    // closed
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+
+        while (accepted.get() < 1000) {
+            Thread.sleep(1);
+        }
+        writer.close();
+
+        for (var thread : producers) {
+            thread.join();
+        }
+
+        // every write that returned normally made it into a page
+        assertEquals(accepted.get(), readAll(writer.pages()).size());
+        assertThrows(IllegalStateException.class, () -> writer.write(new Rec(0, "name")));
+    }
+
+    @Test
+    void testFirstPage() throws IOException {
+        try (var writer = new SlopShardedWriter<>(tempDir, 5, 2, StorageOptions.DEFAULT, 16, this::createWriters)) {
+            for (int i = 0; i < 10; i++) {
+                writer.write(new Rec(i, "name" + i));
+            }
+
+            assertEquals(List.of(5, 6), writer.pages().stream().map(SlopTable.Ref::page).toList());
+        }
+
+        assertEquals(10, readAll(List.of(new SlopTable.Ref<>(tempDir, 5), new SlopTable.Ref<>(tempDir, 6))).size());
+    }
+
+    @Test
+    void testMmapOutput() throws IOException {
+        // the mapped output is confined to the thread that creates it
+        var options = StorageOptions.DEFAULT.withMmapOutput(true);
+
+        try (var writer = new SlopShardedWriter<>(tempDir, 0, 2, options, 16, this::createWriters)) {
+            for (int i = 0; i < 1000; i++) {
+                writer.write(new Rec(i, "name" + i));
+            }
+        }
+
+        assertEquals(1000, readAll(SlopTable.listPages(tempDir, idColumn)).size());
+        try (var files = Files.list(tempDir)) {
+            assertTrue(files.noneMatch(p -> p.toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    void testFactoryFailure() throws IOException {
+        var writer = new SlopShardedWriter<Rec>(tempDir, 2, table -> {
+            if (table.page == 1) {
+                throw new IOException("Bad page");
+            }
+            return createWriters(table);
+        });
+
+        for (int i = 0; i < 100; i++) {
+            try {
+                writer.write(new Rec(i, "name" + i));
+            }
+            catch (IOException e) {
+                assertEquals("Bad page", e.getCause().getMessage());
+            }
+        }
+
+        var ex = assertThrows(IOException.class, writer::close);
+        assertEquals("Bad page", ex.getMessage());
+    }
+
+    @Test
+    void testNoRecords() throws IOException {
+        try (var writer = new SlopShardedWriter<>(tempDir, 4, this::createWriters)) {
+            assertEquals(4, writer.pages().size());
+        }
+
+        assertEquals(List.of(), readAll(SlopTable.listPages(tempDir, idColumn)));
+    }
+
+    @Test
+    void testWriterFailure() throws IOException {
+        var writer = new SlopShardedWriter<Rec>(tempDir, 2, table -> {
+            var pageWriter = createWriters(table);
+            return rec -> {
+                if (rec.id() == 7) {
+                    throw new IOException("Bad record");
+                }
+                pageWriter.write(rec);
+            };
+        });
+
+        for (int i = 0; i < 100; i++) {
+            try {
+                writer.write(new Rec(i, "name" + i));
+            }
+            catch (IOException e) {
+                // expected once the failure has been observed
+                assertEquals("Bad record", e.getCause().getMessage());
+            }
+        }
+
+        var ex = assertThrows(IOException.class, writer::close);
+        assertEquals("Bad record", ex.getMessage());
+    }
+}
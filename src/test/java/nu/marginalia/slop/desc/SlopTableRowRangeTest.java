@@ -0,0 +1,170 @@
+package nu.marginalia.slop.desc;
+
+import nu.marginalia.slop.SlopPageScanner;
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.dynamic.VarintColumn;
+import nu.marginalia.slop.column.primitive.IntColumn;
+import nu.marginalia.slop.column.string.CStringColumn;
+import nu.marginalia.slop.column.string.EnumColumn;
+import nu.marginalia.slop.column.string.StringColumn;
+import nu.marginalia.slop.column.string.TxtStringColumn;
+import nu.marginalia.slop.storage.StorageOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlopTableRowRangeTest {
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterEach
+    void cleanup() {
+        try {
+            Files.walk(tempDir)
+                    .sorted(this::deleteOrder)
+                    .forEach(p -> {
+                        try {
+                            if (Files.isRegularFile(p)) {
+                                System.out.println("Deleting " + p + " " + Files.size(p));
+                            }
+                            Files.delete(p);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    int deleteOrder(Path a, Path b) {
+        if (Files.isDirectory(a) && !Files.isDirectory(b)) {
+            return 1;
+        } else if (!Files.isDirectory(a) && Files.isDirectory(b)) {
+            return -1;
+        } else {
+            return a.getNameCount() - b.getNameCount();
+        }
+    }
+
+    private static final int COUNT = 10_000;
+
+    private final IntColumn idColumn = new IntColumn("id", StorageType.ZSTD_BLOCK);
+    private final StringColumn nameColumn = new StringColumn("name", StandardCharsets.UTF_8, StorageType.PLAIN);
+    private final EnumColumn enumColumn = new EnumColumn("enum", StandardCharsets.UTF_8, StorageType.PLAIN);
+    private final VarintColumn varintColumn = new VarintColumn("varint", StorageType.ZSTD_BLOCK);
+    private final CStringColumn cstringColumn = new CStringColumn("cstring");
+    private final TxtStringColumn txtColumn = new TxtStringColumn("txt");
+
+    record Row(int id, String name, String enumValue, long varint, String cstring, String txt) {
+        static Row of(int i) {
+            return new Row(i, "name-" + i, "enum-" + (i % 7), i * 31L, "c" + i, "t" + i);
+        }
+    }
+
+    void writeRows(StorageOptions options) throws IOException {
+        try (var table = new SlopTable(tempDir, 0, options)) {
+            var ids = idColumn.create(table);
+            var names = nameColumn.create(table);
+            var enums = enumColumn.create(table);
+            var varints = varintColumn.create(table);
+            var cstrings = cstringColumn.create(table);
+            var txts = txtColumn.create(table);
+
+            for (int i = 0; i < COUNT; i++) {
+                Row row = Row.of(i);
+                ids.put(row.id());
+                names.put(row.name());
+                enums.put(row.enumValue());
+                varints.put(row.varint());
+                cstrings.put(row.cstring());
+                txts.put(row.txt());
+            }
+        }
+    }
+
+    List<Row> readRows(SlopTable.Ref<?> ref, StorageOptions options) throws IOException {
+        List<Row> rows = new ArrayList<>();
+
+        try (var table = new SlopTable(ref, options)) {
+            var ids = idColumn.open(table);
+            var names = nameColumn.open(table);
+            var enums = enumColumn.open(table);
+            var varints = varintColumn.open(table);
+            var cstrings = cstringColumn.open(table);
+            var txts = txtColumn.open(table);
+
+            assertEquals(ref.startRow(), table.position());
+
+            while (table.hasRemainingRows()) {
+                rows.add(new Row(ids.get(), names.get(), enums.get(), varints.getLong(), cstrings.get(), txts.get()));
+            }
+        }
+
+        return rows;
+    }
+
+    @Test
+    void testParallelRowRanges() throws IOException {
+        var options = StorageOptions.DEFAULT.withOffsetIndexInterval(64).withBlockSize(4096);
+        writeRows(options);
+
+        var pages = new SlopTable.Ref<Row>(tempDir, 0).split(COUNT, 7);
+        assertEquals(7, pages.size());
+
+        List<Row> rows = new ArrayList<>();
+        try (var scanner = new SlopPageScanner(4)) {
+            scanner.scan(pages, ref -> readRows(ref, options), rows::addAll);
+        }
+
+        assertEquals(COUNT, rows.size());
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(Row.of(i), rows.get(i));
+        }
+    }
+
+    @Test
+    void testRowRangeWithoutIndex() throws IOException {
+        // without an offset index, the variable-length columns skip their way to the start row
+        writeRows(StorageOptions.DEFAULT);
+
+        var ref = new SlopTable.Ref<Row>(tempDir, 0).withRows(5000, 5010);
+        List<Row> rows = readRows(ref, StorageOptions.DEFAULT);
+
+        assertEquals(10, rows.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Row.of(5000 + i), rows.get(i));
+        }
+    }
+
+    @Test
+    void testRangePastEnd() throws IOException {
+        writeRows(StorageOptions.DEFAULT.withOffsetIndexInterval(100));
+
+        var ref = new SlopTable.Ref<Row>(tempDir, 0).withRows(COUNT - 5, COUNT + 100);
+        assertEquals(5, readRows(ref, StorageOptions.DEFAULT).size());
+    }
+
+    @Test
+    void testSplit() {
+        var ref = new SlopTable.Ref<Row>(tempDir, 0);
+
+        assertEquals(List.of(ref.withRows(0, 1), ref.withRows(1, 2)), ref.split(2, 4));
+        assertEquals(List.of(ref.withRows(0, 3), ref.withRows(3, 6), ref.withRows(6, 10)), ref.split(10, 3));
+        assertEquals(List.of(), ref.split(0, 3));
+        assertThrows(IllegalArgumentException.class, () -> ref.split(10, 0));
+    }
+}
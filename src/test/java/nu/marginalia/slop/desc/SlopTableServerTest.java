@@ -0,0 +1,204 @@
+package nu.marginalia.slop.desc;
+
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.SlopTableServer;
+import nu.marginalia.slop.column.array.LongArrayColumn;
+import nu.marginalia.slop.column.primitive.IntColumn;
+import nu.marginalia.slop.column.string.StringColumn;
+import nu.marginalia.slop.storage.RemoteFileCache;
+import nu.marginalia.slop.storage.StorageOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlopTableServerTest {
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterEach
+    void cleanup() {
+        try (var files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.delete(p);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private SlopTableServer startServer(Path directory) throws IOException {
+        var server = new SlopTableServer(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), "/table/", directory);
+        server.start();
+        return server;
+    }
+
+    @Test
+    void testReadPagesRemotely() throws Exception {
+        var intCol = new IntColumn("ints", StorageType.PLAIN);
+        var strCol = new StringColumn("strs", StandardCharsets.UTF_8, StorageType.ZSTD);
+        var arrCol = new LongArrayColumn("arrs", StorageType.GZIP);
+
+        int pages = 3;
+        int rows = 20_000;
+
+        for (int page = 0; page < pages; page++) {
+            try (var table = new SlopTable(tempDir, page)) {
+                var intWriter = intCol.create(table);
+                var strWriter = strCol.create(table);
+                var arrWriter = arrCol.create(table);
+
+                for (int i = 0; i < rows; i++) {
+                    intWriter.put(page * rows + i);
+                    strWriter.put("row " + i);
+                    arrWriter.put(new long[] { page, i });
+                }
+            }
+        }
+
+        try (var server = startServer(tempDir);
+             ExecutorService executor = Executors.newFixedThreadPool(pages))
+        {
+            List<SlopTable.Ref<Void>> refs = SlopTable.listPages(server.uri(), intCol);
+            assertEquals(pages, refs.size());
+
+            var options = StorageOptions.DEFAULT.withNetworkParallelism(4);
+            List<Future<?>> tasks = new ArrayList<>();
+
+            for (var ref : refs) {
+                tasks.add(executor.submit(() -> {
+                    try (var table = new SlopTable(ref, options)) {
+                        var intReader = intCol.open(table);
+                        var strReader = strCol.open(table);
+                        var arrReader = arrCol.open(table);
+
+                        for (int i = 0; i < rows; i++) {
+                            assertEquals(ref.page() * rows + i, intReader.get());
+                            assertEquals("row " + i, strReader.get());
+                            assertArrayEquals(new long[] { ref.page(), i }, arrReader.get());
+                        }
+                        assertFalse(intReader.hasRemaining());
+                    }
+                    return null;
+                }));
+            }
+
+            for (var task : tasks) {
+                task.get();
+            }
+        }
+    }
+
+    @Test
+    void testRangeRequests() throws Exception {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        Files.write(tempDir.resolve("data.bin"), data);
+        Files.write(tempDir.resolve("empty.bin"), new byte[0]);
+
+        try (var server = startServer(tempDir);
+             var client = HttpClient.newHttpClient())
+        {
+            URI uri = server.uri().resolve("data.bin");
+
+            var full = client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofByteArray());
+            assertEquals(200, full.statusCode());
+            assertArrayEquals(data, full.body());
+            assertEquals("bytes", full.headers().firstValue("Accept-Ranges").orElseThrow());
+
+            var range = client.send(HttpRequest.newBuilder(uri).header("Range", "bytes=10-19").build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            assertEquals(206, range.statusCode());
+            assertEquals("bytes 10-19/1000", range.headers().firstValue("Content-Range").orElseThrow());
+            assertArrayEquals(Arrays.copyOfRange(data, 10, 20), range.body());
+
+            var openEnded = client.send(HttpRequest.newBuilder(uri).header("Range", "bytes=990-").build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            assertArrayEquals(Arrays.copyOfRange(data, 990, 1000), openEnded.body());
+
+            var suffix = client.send(HttpRequest.newBuilder(uri).header("Range", "bytes=-5").build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            assertArrayEquals(Arrays.copyOfRange(data, 995, 1000), suffix.body());
+
+            var pastEnd = client.send(HttpRequest.newBuilder(uri).header("Range", "bytes=1000-1999").build(),
+                    HttpResponse.BodyHandlers.discarding());
+            assertEquals(416, pastEnd.statusCode());
+
+            var empty = client.send(HttpRequest.newBuilder(server.uri().resolve("empty.bin")).build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            assertEquals(200, empty.statusCode());
+            assertEquals(0, empty.body().length);
+
+            String etag = full.headers().firstValue("ETag").orElseThrow();
+            var notModified = client.send(HttpRequest.newBuilder(uri).header("If-None-Match", etag).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            assertEquals(304, notModified.statusCode());
+
+            for (String bad : new String[] { "missing.bin", "..%2F..%2Fetc%2Fpasswd", "sub/data.bin" }) {
+                var response = client.send(HttpRequest.newBuilder(server.uri().resolve(bad)).build(),
+                        HttpResponse.BodyHandlers.discarding());
+                assertEquals(404, response.statusCode(), bad);
+            }
+        }
+    }
+
+    @Test
+    void testRemoteCache() throws Exception {
+        var intCol = new IntColumn("ints", StorageType.PLAIN);
+
+        Path tableDir = Files.createDirectory(tempDir.resolve("table"));
+
+        try (var table = new SlopTable(tableDir)) {
+            var intWriter = intCol.create(table);
+            for (int i = 0; i < 1000; i++) {
+                intWriter.put(i);
+            }
+        }
+
+        try (var server = startServer(tableDir)) {
+            var cache = new RemoteFileCache(tempDir.resolve("cache"), 1 << 20);
+            var options = StorageOptions.DEFAULT.withRemoteCache(cache);
+
+            for (int pass = 0; pass < 2; pass++) {
+                try (var table = new SlopTable(server.uri(), 0, options)) {
+                    var intReader = intCol.open(table);
+                    for (int i = 0; i < 1000; i++) {
+                        assertEquals(i, intReader.get());
+                    }
+                }
+            }
+
+            assertEquals(1, cache.misses());
+            assertEquals(1, cache.hits());
+        }
+    }
+}
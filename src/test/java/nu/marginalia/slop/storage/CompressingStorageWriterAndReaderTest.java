@@ -76,6 +76,19 @@ class CompressingStorageWriterAndReaderTest {
     }
 
 
+    @Test
+    void invalidCompressionLevel() throws IOException {
+        Path path = tempDir.resolve("invalid.gz");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new CompressingStorageWriter(path, StorageType.GZIP, ByteOrder.LITTLE_ENDIAN, 63, 42));
+
+        // the temporary file is closed and removed
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
     @Test
     void putByte() throws IOException {
         Path p = tempFile();
@@ -305,4 +318,61 @@ class CompressingStorageWriterAndReaderTest {
             }
         }
     }
+
+    @Test
+    void readAhead() throws IOException {
+        Path p = tempFile();
+
+        // enough data to cycle through the read-ahead buffers several times
+        try (var writer = new CompressingStorageWriter(p, StorageType.ZSTD, ByteOrder.LITTLE_ENDIAN, 4096)) {
+            for (int i = 0; i < 1_000_000; i++) {
+                writer.putInt(i);
+            }
+        }
+
+        try (var reader = new CompressingStorageReader(p, StorageType.ZSTD, ByteOrder.LITTLE_ENDIAN, 4096, true)) {
+            for (int i = 0; i < 500_000; i++) {
+                assertTrue(reader.hasRemaining());
+                assertEquals(i, reader.getInt());
+            }
+
+            reader.skip(400_000, Integer.BYTES);
+            assertEquals(900_000 * Integer.BYTES, reader.position());
+
+            for (int i = 900_000; i < 1_000_000; i++) {
+                assertEquals(i, reader.getInt());
+            }
+            assertFalse(reader.hasRemaining());
+        }
+    }
+
+    @Test
+    void readAheadEmpty() throws IOException {
+        Path p = tempFile();
+
+        try (var writer = new CompressingStorageWriter(p, StorageType.GZIP, ByteOrder.LITTLE_ENDIAN, 63)) {
+            // write nothing
+            assertEquals(0, writer.position());
+        }
+
+        try (var reader = new CompressingStorageReader(p, StorageType.GZIP, ByteOrder.LITTLE_ENDIAN, 63, true)) {
+            assertFalse(reader.hasRemaining());
+        }
+    }
+
+    @Test
+    void readAheadClosedEarly() throws IOException {
+        Path p = tempFile();
+
+        try (var writer = new CompressingStorageWriter(p, StorageType.ZSTD, ByteOrder.LITTLE_ENDIAN, 4096)) {
+            for (int i = 0; i < 1_000_000; i++) {
+                writer.putInt(i);
+            }
+        }
+
+        // closing the reader while the background thread is still busy must not hang
+        try (var reader = new CompressingStorageReader(p, StorageType.ZSTD, ByteOrder.LITTLE_ENDIAN, 4096, true)) {
+            assertEquals(0, reader.getInt());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package nu.marginalia.slop.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SuppressWarnings("preview") // for MemorySegment in jdk-21
+class DelimitersTest {
+
+    @Test
+    void testEveryPosition() {
+        for (byte delimiter : new byte[] { 0, '\n', (byte) 0x80, (byte) 0xFF }) {
+            for (int length = 0; length < 40; length++) {
+                for (int at = -1; at < length; at++) {
+                    byte[] data = new byte[length];
+                    // bytes that trip up a naive zero byte test: 0x01 and 0x80 right after the delimiter
+                    for (int i = 0; i < length; i++) {
+                        data[i] = (byte) (delimiter + ((i & 1) == 0 ? 1 : 0x80));
+                    }
+                    if (at >= 0) {
+                        data[at] = delimiter;
+                    }
+
+                    for (int start = 0; start <= length; start++) {
+                        int expected = at >= start ? at : -1;
+
+                        var buffer = ByteBuffer.wrap(data).position(start);
+                        assertEquals(expected, Delimiters.indexOf(buffer, delimiter));
+                        assertEquals(start, buffer.position());
+
+                        var direct = ByteBuffer.allocateDirect(length).put(data).flip().position(start);
+                        assertEquals(expected, Delimiters.indexOf(direct, delimiter));
+
+                        try (var arena = Arena.ofConfined()) {
+                            MemorySegment segment = arena.allocate(Math.max(1, length));
+                            MemorySegment.copy(data, 0, segment, ValueLayout.JAVA_BYTE, 0, length);
+                            assertEquals(expected, Delimiters.indexOf(segment.asSlice(0, length), start, delimiter));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testFirstOfSeveral() {
+        byte[] data = "abc\ndef\n\nghi".getBytes();
+
+        var buffer = ByteBuffer.wrap(data);
+        assertEquals(3, Delimiters.indexOf(buffer, (byte) '\n'));
+        buffer.position(4);
+        assertEquals(7, Delimiters.indexOf(buffer, (byte) '\n'));
+        buffer.position(8);
+        assertEquals(8, Delimiters.indexOf(buffer, (byte) '\n'));
+        buffer.limit(8);
+        assertEquals(-1, Delimiters.indexOf(buffer, (byte) '\n'));
+    }
+}
@@ -3,15 +3,25 @@ package nu.marginalia.slop.storage;
 import com.sun.net.httpserver.HttpServer;
 import nu.marginalia.slop.SlopTable;
 import nu.marginalia.slop.column.primitive.ByteColumn;
+import nu.marginalia.slop.column.primitive.IntColumn;
 import nu.marginalia.slop.desc.StorageType;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.*;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -97,4 +107,253 @@ class NetworkStorageReaderTest {
         }
     }
 
-}
\ No newline at end of file
+    /** Start a server under /foo/ that serves the files in tempDir, and supports Range requests,
+     * with an ETag of the contents of the file */
+    HttpServer startRangeServer(AtomicInteger requestCount) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 16);
+        Pattern rangePattern = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+        server.createContext("/foo/", context -> {
+            requestCount.incrementAndGet();
+
+            var path = context.getRequestURI().getPath();
+            Path file = tempDir.resolve(path.substring(path.lastIndexOf('/') + 1));
+            long size = Files.size(file);
+            String etag = "\"" + Arrays.hashCode(Files.readAllBytes(file)) + "\"";
+            context.getResponseHeaders().set("ETag", etag);
+
+            String ifMatch = context.getRequestHeaders().getFirst("If-Match");
+            if (ifMatch != null && !ifMatch.equals(etag)) {
+                context.sendResponseHeaders(412, -1);
+                context.close();
+                return;
+            }
+
+            String range = context.getRequestHeaders().getFirst("Range");
+            String ifRange = context.getRequestHeaders().getFirst("If-Range");
+            Matcher m = range != null && (ifRange == null || ifRange.equals(etag)) ? rangePattern.matcher(range) : null;
+
+            if (m == null || !m.matches()) {
+                context.sendResponseHeaders(200, size);
+                try (var is = Files.newInputStream(file)) {
+                    is.transferTo(context.getResponseBody());
+                }
+                context.close();
+                return;
+            }
+
+            long start = Long.parseLong(m.group(1));
+            long end = Math.min(size - 1, Long.parseLong(m.group(2)));
+            if (start >= size) {
+                context.sendResponseHeaders(416, -1);
+                context.close();
+                return;
+            }
+
+            long length = end - start + 1;
+            context.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + size);
+            context.sendResponseHeaders(206, length);
+
+            try (InputStream is = Files.newInputStream(file)) {
+                is.skipNBytes(start);
+                context.getResponseBody().write(is.readNBytes((int) length));
+            }
+            context.close();
+        });
+
+        server.start();
+        return server;
+    }
+
+    /** Start a server that answers every Range request for the given data with a response
+     * that is cut off after truncateAfter bytes, by closing the connection.
+     */
+    ServerSocket startTruncatingServer(byte[] data, int truncateAfter, AtomicInteger requestCount) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(0, 16, InetAddress.getByName("127.0.0.1"));
+        Pattern rangePattern = Pattern.compile("Range: bytes=(\\d+)-(\\d+)", Pattern.CASE_INSENSITIVE);
+
+        Thread.ofVirtual().start(() -> {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    requestCount.incrementAndGet();
+
+                    var in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+                    long start = 0, end = data.length - 1;
+                    for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+                        Matcher m = rangePattern.matcher(line);
+                        if (m.matches()) {
+                            start = Long.parseLong(m.group(1));
+                            end = Math.min(data.length - 1, Long.parseLong(m.group(2)));
+                        }
+                    }
+
+                    long length = end - start + 1;
+                    var out = socket.getOutputStream();
+                    out.write(("HTTP/1.1 206 Partial Content\r\n" +
+                            "Content-Range: bytes " + start + "-" + end + "/" + data.length + "\r\n" +
+                            "Content-Length: " + length + "\r\n" +
+                            "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                    out.write(data, (int) start, (int) Math.min(truncateAfter, length));
+                    out.flush();
+                }
+                catch (IOException e) {
+                    // the socket was closed
+                }
+            }
+        });
+
+        return serverSocket;
+    }
+
+    private byte[] writeTestFile(String name, int size) throws IOException {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31 + i / 251);
+        }
+        Files.write(tempDir.resolve(name), data);
+        return data;
+    }
+
+    @Test
+    void testRangedParallelRead() throws Exception {
+        byte[] data = writeTestFile("data.bin", 100_000);
+
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = startRangeServer(requests);
+        URI uri = new URI("http://127.0.0.1:" + server.getAddress().getPort() + "/foo/data.bin");
+
+        try (var is = new HttpRangeInputStream(HttpClient.newHttpClient(), uri, 4096, 4, 0)) {
+            assertTrue(is.isSeekable());
+            assertEquals(data.length, is.size());
+            assertArrayEquals(data, is.readAllBytes());
+            assertEquals(-1, is.read());
+        }
+        finally {
+            server.stop(0);
+        }
+
+        // one request per chunk
+        assertEquals((data.length + 4095) / 4096, requests.get());
+    }
+
+    @Test
+    void testRangedSeek() throws Exception {
+        byte[] data = writeTestFile("data.bin", 100_000);
+
+        HttpServer server = startRangeServer(new AtomicInteger());
+        URI uri = new URI("http://127.0.0.1:" + server.getAddress().getPort() + "/foo/data.bin");
+
+        try (var is = new HttpRangeInputStream(HttpClient.newHttpClient(), uri, 4096, 3, 0)) {
+            for (long pos : new long[] { 50_000, 10, 4096, 8191, 99_999, 12_000, 12_001, 30_000, 0 }) {
+                is.seek(pos);
+                assertEquals(pos, is.position());
+                assertEquals(data[(int) pos] & 0xFF, is.read(), "At " + pos);
+            }
+
+            is.seek(data.length);
+            assertEquals(-1, is.read());
+
+            is.seek(90_000);
+            assertEquals(5_000, is.skip(5_000));
+            assertEquals(data[95_000] & 0xFF, is.read());
+            assertEquals(4_999, is.skip(10_000));
+            assertEquals(-1, is.read());
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testRangedFileChanged() throws Exception {
+        byte[] data = writeTestFile("data.bin", 100_000);
+
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = startRangeServer(requests);
+        URI uri = new URI("http://127.0.0.1:" + server.getAddress().getPort() + "/foo/data.bin");
+
+        try (var is = new HttpRangeInputStream(HttpClient.newHttpClient(), uri, 4096, 1, 3)) {
+            assertEquals(data[0] & 0xFF, is.read());
+
+            // replace the file with one of the same size, but different contents
+            byte[] changed = data.clone();
+            Arrays.fill(changed, (byte) 0);
+            Files.write(tempDir.resolve("data.bin"), changed);
+
+            var ex = assertThrows(IOException.class, is::readAllBytes);
+            assertTrue(ex.getMessage().contains("changed"), ex.getMessage());
+        }
+        finally {
+            server.stop(0);
+        }
+
+        // the change is not retried
+        assertTrue(requests.get() <= 4, "Requests: " + requests.get());
+    }
+
+    @Test
+    void testRangedResume() throws Exception {
+        byte[] data = writeTestFile("data.bin", 50_000);
+
+        AtomicInteger requests = new AtomicInteger();
+        ServerSocket server = startTruncatingServer(data, 1000, requests);
+        URI uri = new URI("http://127.0.0.1:" + server.getLocalPort() + "/foo/data.bin");
+
+        try (var is = new HttpRangeInputStream(HttpClient.newHttpClient(), uri, 4096, 2, 10)) {
+            assertArrayEquals(data, is.readAllBytes());
+        }
+        finally {
+            server.close();
+        }
+
+        // every chunk had to be resumed several times
+        assertTrue(requests.get() >= data.length / 1000);
+    }
+
+    @Test
+    void testRangedResumeGivesUp() throws Exception {
+        byte[] data = writeTestFile("data.bin", 50_000);
+
+        ServerSocket server = startTruncatingServer(data, 1000, new AtomicInteger());
+        URI uri = new URI("http://127.0.0.1:" + server.getLocalPort() + "/foo/data.bin");
+
+        // with a single retry, the first chunk can't be fetched in full
+        try {
+            assertThrows(IOException.class, () -> new HttpRangeInputStream(HttpClient.newHttpClient(), uri, 4096, 2, 1));
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    void testColumnSeekOverHttp() throws Exception {
+        var col = new IntColumn("test", StorageType.PLAIN);
+
+        try (var slop = new SlopTable(tempDir)) {
+            var writer = col.create(slop);
+            for (int i = 0; i < 500_000; i++) {
+                writer.put(i);
+            }
+        }
+
+        HttpServer server = startRangeServer(new AtomicInteger());
+
+        try (var slop = new SlopTable(new URI("http://127.0.0.1:" + server.getAddress().getPort() + "/foo/"))) {
+            var reader = col.open(slop);
+
+            for (long row : new long[] { 400_000, 3, 250_000, 250_001, 499_999, 0 }) {
+                reader.seek(row);
+                assertEquals(row, reader.position());
+                assertEquals((int) row, reader.get());
+            }
+
+            reader.seek(499_999);
+            reader.get();
+            assertFalse(reader.hasRemaining());
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package nu.marginalia.slop.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadAheadInputStreamTest {
+
+    /** A stream of the given number of bytes, which then throws the given exception */
+    static InputStream failingAfter(int count, Throwable failure) {
+        return new InputStream() {
+            int pos = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (pos == count) {
+                    if (failure instanceof IOException e) throw e;
+                    if (failure instanceof RuntimeException e) throw e;
+                    throw (Error) failure;
+                }
+                return pos++ & 0xFF;
+            }
+        };
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        byte[] data = new byte[100_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+
+        try (var is = new ReadAheadInputStream(new ByteArrayInputStream(data), 4096, 4)) {
+            assertArrayEquals(data, is.readAllBytes());
+            assertEquals(-1, is.read());
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void testDelegateFailure() throws IOException {
+        for (Throwable failure : new Throwable[] {
+                new IOException("io"),
+                new IllegalStateException("runtime"),
+                new AssertionError("error") })
+        {
+            try (var is = new ReadAheadInputStream(failingAfter(10_000, failure), 4096, 4)) {
+                byte[] buffer = new byte[10_000];
+                // the full buffers before the failure are still delivered
+                assertEquals(8192, is.readNBytes(buffer, 0, 8192));
+
+                var ex = assertThrows(IOException.class, is::readAllBytes);
+                assertSame(failure, ex.getCause());
+
+                assertEquals(-1, is.read());
+            }
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void testCloseWhileReadingAhead() throws IOException {
+        byte[] data = new byte[1 << 20];
+        Arrays.fill(data, (byte) 1);
+
+        var is = new ReadAheadInputStream(new ByteArrayInputStream(data), 1024, 2);
+        assertEquals(1, is.read());
+        is.close();
+    }
+}
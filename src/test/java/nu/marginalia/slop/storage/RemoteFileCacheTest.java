@@ -0,0 +1,276 @@
+package nu.marginalia.slop.storage;
+
+import com.sun.net.httpserver.HttpServer;
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.primitive.IntColumn;
+import nu.marginalia.slop.column.string.StringColumn;
+import nu.marginalia.slop.desc.StorageType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RemoteFileCacheTest {
+    Path tempDir;
+    Path serverDir;
+    Path cacheDir;
+    HttpServer server;
+    AtomicLong bytesSent = new AtomicLong();
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+        serverDir = Files.createDirectory(tempDir.resolve("server"));
+        cacheDir = tempDir.resolve("cache");
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 16);
+        server.createContext("/table/", context -> {
+            var path = context.getRequestURI().getPath();
+            Path file = serverDir.resolve(path.substring(path.lastIndexOf('/') + 1));
+            if (!Files.exists(file)) {
+                context.sendResponseHeaders(404, -1);
+                context.close();
+                return;
+            }
+
+            byte[] data = Files.readAllBytes(file);
+            String etag = "\"" + Arrays.hashCode(data) + "\"";
+            context.getResponseHeaders().set("ETag", etag);
+
+            if (etag.equals(context.getRequestHeaders().getFirst("If-None-Match"))) {
+                context.sendResponseHeaders(304, -1);
+            }
+            else {
+                context.sendResponseHeaders(200, data.length);
+                context.getResponseBody().write(data);
+                bytesSent.addAndGet(data.length);
+            }
+            context.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void cleanup() {
+        server.stop(0);
+
+        try (var files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.delete(p);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private URI tableUri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/table/");
+    }
+
+    private void writeFile(String name, int size, int seed) throws IOException {
+        byte[] data = new byte[size];
+        Arrays.fill(data, (byte) seed);
+        Files.write(serverDir.resolve(name), data);
+    }
+
+    @Test
+    void testReadThrough() throws IOException {
+        var intCol = new IntColumn("ints", StorageType.PLAIN);
+        var strCol = new StringColumn("strs", StandardCharsets.UTF_8, StorageType.ZSTD_BLOCK);
+
+        try (var table = new SlopTable(serverDir)) {
+            var intWriter = intCol.create(table);
+            var strWriter = strCol.create(table);
+            for (int i = 0; i < 10_000; i++) {
+                intWriter.put(i);
+                strWriter.put("row " + i);
+            }
+        }
+
+        var cache = new RemoteFileCache(cacheDir, 1 << 20);
+        var options = StorageOptions.DEFAULT.withRemoteCache(cache);
+
+        for (int pass = 0; pass < 3; pass++) {
+            try (var table = new SlopTable(tableUri(), 0, options)) {
+                var intReader = intCol.open(table);
+                var strReader = strCol.open(table);
+
+                for (int i = 0; i < 10_000; i++) {
+                    assertEquals(i, intReader.get());
+                    assertEquals("row " + i, strReader.get());
+                }
+                assertFalse(intReader.hasRemaining());
+            }
+
+            if (pass == 0) {
+                assertEquals(0, cache.hits());
+            }
+        }
+
+        long filesInTable;
+        try (var files = Files.list(serverDir)) {
+            filesInTable = files.count();
+        }
+
+        // everything was sent once, and then revalidated
+        assertEquals(filesInTable, cache.misses());
+        assertEquals(2 * filesInTable, cache.hits());
+        assertEquals(cache.totalBytes(), bytesSent.get());
+        assertEquals(filesInTable, cache.size());
+    }
+
+    @Test
+    void testChangedFileIsFetchedAgain() throws IOException {
+        writeFile("a.dat", 100, 1);
+
+        var cache = new RemoteFileCache(cacheDir, 1 << 20);
+
+        Path first = cache.fetch(tableUri().resolve("a.dat"));
+        assertEquals(1, Files.readAllBytes(first)[0]);
+
+        writeFile("a.dat", 200, 2);
+
+        Path second = cache.fetch(tableUri().resolve("a.dat"));
+        assertEquals(200, Files.size(second));
+        assertEquals(2, Files.readAllBytes(second)[0]);
+
+        assertEquals(2, cache.misses());
+        assertEquals(1, cache.size());
+        assertEquals(200, cache.totalBytes());
+    }
+
+    @Test
+    void testLruEviction() throws IOException {
+        writeFile("a.dat", 400, 1);
+        writeFile("b.dat", 400, 2);
+        writeFile("c.dat", 400, 3);
+
+        var cache = new RemoteFileCache(cacheDir, 1000);
+
+        Path a = cache.fetch(tableUri().resolve("a.dat"));
+        Path b = cache.fetch(tableUri().resolve("b.dat"));
+        cache.fetch(tableUri().resolve("a.dat")); // a is now more recently used than b
+        Path c = cache.fetch(tableUri().resolve("c.dat"));
+
+        assertEquals(2, cache.size());
+        assertEquals(800, cache.totalBytes());
+        assertTrue(Files.exists(a));
+        assertFalse(Files.exists(b));
+        assertTrue(Files.exists(c));
+
+        // a file larger than the budget is kept until the next one comes along
+        writeFile("d.dat", 2000, 4);
+        Path d = cache.fetch(tableUri().resolve("d.dat"));
+        assertEquals(1, cache.size());
+        assertTrue(Files.exists(d));
+    }
+
+    @Test
+    void testTightBudget() throws IOException {
+        var strCol = new StringColumn("strs", StandardCharsets.UTF_8, StorageType.ZSTD_BLOCK);
+
+        try (var table = new SlopTable(serverDir)) {
+            var strWriter = strCol.create(table);
+            for (int i = 0; i < 100_000; i++) {
+                strWriter.put("row " + i * 7919L % 100_003);
+            }
+        }
+
+        // room for the data file but not its index, so fetching the index evicts something
+        long dataSize;
+        try (var files = Files.list(serverDir)) {
+            dataSize = files.filter(p -> p.toString().endsWith(".zstd-blk")).mapToLong(p -> p.toFile().length()).max().orElseThrow();
+        }
+        var cache = new RemoteFileCache(cacheDir, dataSize + 1);
+        var options = StorageOptions.DEFAULT.withRemoteCache(cache);
+
+        for (int pass = 0; pass < 2; pass++) {
+            try (var table = new SlopTable(tableUri(), 0, options)) {
+                var strReader = strCol.open(table);
+                for (int i = 0; i < 100_000; i++) {
+                    assertEquals("row " + i * 7919L % 100_003, strReader.get());
+                }
+                assertFalse(strReader.hasRemaining());
+            }
+        }
+    }
+
+    @Test
+    void testLeaseIsNotEvicted() throws IOException {
+        writeFile("a.dat", 400, 1);
+        writeFile("b.dat", 400, 2);
+        writeFile("c.dat", 400, 3);
+
+        var cache = new RemoteFileCache(cacheDir, 500);
+
+        Path a;
+        try (var lease = cache.acquire(tableUri().resolve("a.dat"))) {
+            a = lease.path();
+
+            cache.fetch(tableUri().resolve("b.dat"));
+            cache.fetch(tableUri().resolve("c.dat"));
+
+            // a is the least recently used, but is kept while it is leased
+            assertTrue(Files.exists(a));
+            assertEquals(1, Files.readAllBytes(a)[0]);
+        }
+
+        // and evicted by the next download once it is not
+        Path b = cache.fetch(tableUri().resolve("b.dat"));
+        assertFalse(Files.exists(a));
+        assertTrue(Files.exists(b));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testReopen() throws IOException {
+        writeFile("a.dat", 100, 1);
+        writeFile("b.dat", 100, 2);
+
+        var cache = new RemoteFileCache(cacheDir, 1 << 20);
+        cache.fetch(tableUri().resolve("a.dat"));
+        cache.fetch(tableUri().resolve("b.dat"));
+
+        // leftovers from an interrupted download
+        Files.writeString(cacheDir.resolve("0123.tmp"), "partial");
+        Files.writeString(cacheDir.resolve("0123.dat"), "no metadata");
+
+        var reopened = new RemoteFileCache(cacheDir, 1 << 20);
+        assertEquals(2, reopened.size());
+        assertEquals(200, reopened.totalBytes());
+        assertFalse(Files.exists(cacheDir.resolve("0123.tmp")));
+        assertFalse(Files.exists(cacheDir.resolve("0123.dat")));
+
+        long sentBefore = bytesSent.get();
+        reopened.fetch(tableUri().resolve("a.dat"));
+        assertEquals(1, reopened.hits());
+        assertEquals(sentBefore, bytesSent.get());
+    }
+
+    @Test
+    void testMissingFile() throws IOException {
+        var cache = new RemoteFileCache(cacheDir, 1 << 20);
+
+        assertThrows(IOException.class, () -> cache.fetch(tableUri().resolve("missing.dat")));
+        assertEquals(0, cache.size());
+        try (var files = Files.list(cacheDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+}
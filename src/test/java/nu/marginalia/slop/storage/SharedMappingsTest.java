@@ -0,0 +1,141 @@
+package nu.marginalia.slop.storage;
+
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.dynamic.VarintColumn;
+import nu.marginalia.slop.column.primitive.IntColumn;
+import nu.marginalia.slop.desc.StorageType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedMappingsTest {
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterEach
+    void cleanup() {
+        try {
+            Files.walk(tempDir)
+                    .sorted(this::deleteOrder)
+                    .forEach(p -> {
+                        try {
+                            if (Files.isRegularFile(p)) {
+                                System.out.println("Deleting " + p + " " + Files.size(p));
+                            }
+                            Files.delete(p);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    int deleteOrder(Path a, Path b) {
+        if (Files.isDirectory(a) && !Files.isDirectory(b)) {
+            return 1;
+        } else if (!Files.isDirectory(a) && Files.isDirectory(b)) {
+            return -1;
+        } else {
+            return a.getNameCount() - b.getNameCount();
+        }
+    }
+
+
+    @Test
+    void testConcurrentRanges() throws Exception {
+        var intCol = new IntColumn("ints", StorageType.PLAIN);
+        var varintCol = new VarintColumn("varints", StorageType.PLAIN);
+
+        int rows = 100_000;
+        int threads = 4;
+
+        try (var table = new SlopTable(tempDir)) {
+            var intWriter = intCol.create(table);
+            var varintWriter = varintCol.create(table);
+
+            for (int i = 0; i < rows; i++) {
+                intWriter.put(i);
+                varintWriter.put(2L * i);
+            }
+        }
+
+        try (var mappings = new SharedMappings();
+             ExecutorService executor = Executors.newFixedThreadPool(threads))
+        {
+            var options = StorageOptions.DEFAULT.withSharedMappings(mappings);
+            List<Future<?>> tasks = new ArrayList<>();
+
+            for (int t = 0; t < threads; t++) {
+                int start = t * rows / threads;
+                int end = (t + 1) * rows / threads;
+
+                tasks.add(executor.submit(() -> {
+                    try (var table = new SlopTable(tempDir, 0, options)) {
+                        var intReader = intCol.open(table);
+                        var varintReader = varintCol.open(table);
+
+                        intReader.skip(start);
+                        varintReader.skip(start);
+
+                        for (int i = start; i < end; i++) {
+                            assertEquals(i, intReader.get());
+                            assertEquals(2L * i, varintReader.getLong());
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            for (var task : tasks) {
+                task.get();
+            }
+
+            // each file should only have been mapped once
+            assertEquals(2, mappings.size());
+        }
+    }
+
+    @Test
+    void testViewsHaveIndependentPositions() throws IOException {
+        var intCol = new IntColumn("ints", StorageType.PLAIN);
+
+        try (var table = new SlopTable(tempDir)) {
+            var intWriter = intCol.create(table);
+            for (int i = 0; i < 10; i++) {
+                intWriter.put(i);
+            }
+        }
+
+        try (var mappings = new SharedMappings()) {
+            Path file = tempDir.resolve(intCol.fileName(0));
+
+            var reader1 = mappings.reader(file);
+            var reader2 = mappings.reader(file);
+
+            reader1.skip(5, Integer.BYTES);
+            assertEquals(5, reader1.getInt());
+            assertEquals(0, reader2.getInt());
+
+            // closing a view must not unmap the shared segment
+            reader1.close();
+            assertEquals(1, reader2.getInt());
+        }
+    }
+}
@@ -304,4 +304,102 @@ class SimpleStorageWriterAndMmapReaderTest {
             }
         }
     }
+
+    @Test
+    void putIntsBulk() throws IOException {
+        Path p = tempFile();
+
+        int[] values = new int[127];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+
+        try (var writer = writer(p)) {
+            writer.putInt(-1);
+            writer.putInts(values);
+        }
+
+        try (var reader = reader(p)) {
+            assertEquals(-1, reader.getInt());
+            int[] read = new int[values.length];
+            reader.getInts(read);
+            assertArrayEquals(values, read);
+            assertFalse(reader.hasRemaining());
+        }
+    }
+
+    @Test
+    void putLongsBulk() throws IOException {
+        Path p = tempFile();
+
+        long[] values = new long[127];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * 1_000_000_000L;
+        }
+
+        try (var writer = writer(p)) {
+            writer.putLongs(values);
+        }
+
+        try (var reader = reader(p)) {
+            long[] read = new long[values.length];
+            reader.getLongs(read);
+            assertArrayEquals(values, read);
+            assertFalse(reader.hasRemaining());
+        }
+    }
+
+    @Test
+    void putShortsCharsBulk() throws IOException {
+        Path p = tempFile();
+
+        short[] shorts = new short[127];
+        char[] chars = new char[127];
+        for (int i = 0; i < 127; i++) {
+            shorts[i] = (short) (i - 64);
+            chars[i] = (char) ('a' + i);
+        }
+
+        try (var writer = writer(p)) {
+            writer.putShorts(shorts);
+            writer.putChars(chars);
+        }
+
+        try (var reader = reader(p)) {
+            short[] readShorts = new short[shorts.length];
+            char[] readChars = new char[chars.length];
+            reader.getShorts(readShorts);
+            reader.getChars(readChars);
+            assertArrayEquals(shorts, readShorts);
+            assertArrayEquals(chars, readChars);
+            assertFalse(reader.hasRemaining());
+        }
+    }
+
+    @Test
+    void putFloatsDoublesBulk() throws IOException {
+        Path p = tempFile();
+
+        float[] floats = new float[127];
+        double[] doubles = new double[127];
+        for (int i = 0; i < 127; i++) {
+            floats[i] = i / 3.f;
+            doubles[i] = i / 7.;
+        }
+
+        try (var writer = writer(p)) {
+            writer.putFloats(floats);
+            writer.putDoubles(doubles);
+        }
+
+        try (var reader = reader(p)) {
+            float[] readFloats = new float[floats.length];
+            double[] readDoubles = new double[doubles.length];
+            reader.getFloats(readFloats);
+            reader.getDoubles(readDoubles);
+            assertArrayEquals(floats, readFloats);
+            assertArrayEquals(doubles, readDoubles);
+            assertFalse(reader.hasRemaining());
+        }
+    }
 }
\ No newline at end of file
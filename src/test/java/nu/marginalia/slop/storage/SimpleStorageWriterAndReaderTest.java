@@ -304,4 +304,35 @@ class SimpleStorageWriterAndReaderTest {
             }
         }
     }
+
+    @Test
+    void testPutBytesViaLargeDirectBuffer() throws IOException {
+        Path p = tempFile();
+
+        // larger than the writer's buffer, so it's written straight to the channel
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1000);
+        for (int i = 0; i < 1000; i++) {
+            buffer.put((byte) i);
+        }
+
+        try (var writer = writer(p)) {
+            writer.putByte((byte) 42);
+
+            buffer.flip();
+            writer.putBytes(buffer);
+            assertFalse(buffer.hasRemaining());
+            assertEquals(1001, writer.position());
+
+            writer.putByte((byte) 43);
+        }
+
+        try (var reader = reader(p)) {
+            assertEquals((byte) 42, reader.getByte());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals((byte) i, reader.getByte());
+            }
+            assertEquals((byte) 43, reader.getByte());
+            assertFalse(reader.hasRemaining());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,233 @@
+package nu.marginalia.slop.storage;
+
+import nu.marginalia.slop.SlopTable;
+import nu.marginalia.slop.column.primitive.IntColumn;
+import nu.marginalia.slop.column.primitive.LongColumn;
+import nu.marginalia.slop.column.string.StringColumn;
+import nu.marginalia.slop.desc.ColumnFunction;
+import nu.marginalia.slop.desc.StorageType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageTest {
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterEach
+    void cleanup() {
+        try {
+            Files.walk(tempDir)
+                    .sorted(this::deleteOrder)
+                    .forEach(p -> {
+                        try {
+                            if (Files.isRegularFile(p)) {
+                                System.out.println("Deleting " + p + " " + Files.size(p));
+                            }
+                            Files.delete(p);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    int deleteOrder(Path a, Path b) {
+        if (Files.isDirectory(a) && !Files.isDirectory(b)) {
+            return 1;
+        } else if (!Files.isDirectory(a) && Files.isDirectory(b)) {
+            return -1;
+        } else {
+            return a.getNameCount() - b.getNameCount();
+        }
+    }
+
+
+    @Test
+    void testAutomaticBufferSize() {
+        var dataColumn = new IntColumn("test");
+        var lenColumn = new IntColumn("test", ByteOrder.LITTLE_ENDIAN, ColumnFunction.DATA_LEN, StorageType.PLAIN);
+        var options = StorageOptions.DEFAULT;
+
+        // small or unknown sizes get the minimum buffer size
+        assertEquals(4096, Storage.bufferSize(dataColumn, options, 0));
+        assertEquals(4096, Storage.bufferSize(dataColumn, options, 1000));
+        assertEquals(1024, Storage.bufferSize(lenColumn, options, 1000));
+
+        // larger files get larger buffers, rounded to a power of two
+        assertEquals(16384, Storage.bufferSize(dataColumn, options, 10_000_000));
+        assertEquals(16384, Storage.bufferSize(lenColumn, options, 10_000_000));
+
+        // ... up to a limit
+        assertEquals(1024*1024, Storage.bufferSize(dataColumn, options, 100_000_000_000L));
+
+        // an explicit buffer size always wins
+        assertEquals(100, Storage.bufferSize(dataColumn, options.withBufferSize(100), 100_000_000_000L));
+    }
+
+    @Test
+    void testOptions() throws IOException {
+        var options = StorageOptions.DEFAULT
+                .withBufferSize(65536)
+                .withDirectBuffers(true)
+                .withCompressionLevel(9);
+
+        var gzipColumn = new StringColumn("gz", StandardCharsets.UTF_8, StorageType.GZIP);
+        var zstdColumn = new LongColumn("zstd", StorageType.ZSTD);
+        var plainColumn = new LongColumn("plain", ByteOrder.BIG_ENDIAN, StorageType.PLAIN);
+
+        try (var table = new SlopTable(tempDir, 0, options)) {
+            var gzipWriter = gzipColumn.create(table);
+            var zstdWriter = zstdColumn.create(table);
+            var plainWriter = plainColumn.create(table);
+
+            for (int i = 0; i < 100_000; i++) {
+                gzipWriter.put("value" + i);
+                zstdWriter.put(i);
+                plainWriter.put(i);
+            }
+        }
+
+        try (var table = new SlopTable(tempDir, 0, options)) {
+            var gzipReader = gzipColumn.open(table);
+            var zstdReader = zstdColumn.open(table);
+            var plainReader = plainColumn.open(table);
+
+            for (int i = 0; i < 100_000; i++) {
+                assertEquals("value" + i, gzipReader.get());
+                assertEquals(i, zstdReader.get());
+                assertEquals(i, plainReader.get());
+            }
+
+            assertFalse(gzipReader.hasRemaining());
+            assertFalse(zstdReader.hasRemaining());
+            assertFalse(plainReader.hasRemaining());
+        }
+    }
+
+    @Test
+    void testMmapOutput() throws IOException {
+        var options = StorageOptions.DEFAULT
+                .withMmapOutput(true)
+                .withExpectedSize(1024);
+
+        var intColumn = new IntColumn("ints");
+        var stringColumn = new StringColumn("strings");
+
+        try (var table = new SlopTable(tempDir, 0, options)) {
+            var intWriter = intColumn.create(table);
+            var stringWriter = stringColumn.create(table);
+
+            for (int i = 0; i < 100_000; i++) {
+                intWriter.put(i);
+                stringWriter.put("value" + i);
+            }
+        }
+
+        assertEquals(100_000 * Integer.BYTES, Files.size(tempDir.resolve(intColumn.fileName(0))));
+
+        try (var table = new SlopTable(tempDir)) {
+            var intReader = intColumn.open(table);
+            var stringReader = stringColumn.open(table);
+
+            for (int i = 0; i < 100_000; i++) {
+                assertEquals(i, intReader.get());
+                assertEquals("value" + i, stringReader.get());
+            }
+
+            assertFalse(intReader.hasRemaining());
+        }
+    }
+
+    @Test
+    void testBigEndianIsMapped() throws IOException {
+        var column = new IntColumn("be", ByteOrder.BIG_ENDIAN, StorageType.PLAIN);
+
+        try (var table = new SlopTable(tempDir)) {
+            var writer = column.create(table);
+            for (int i = 0; i < 1000; i++) {
+                writer.put(i * 31);
+            }
+        }
+
+        // the file should be big-endian regardless of how it's read
+        byte[] bytes = Files.readAllBytes(tempDir.resolve(column.fileName(0)));
+        assertEquals(31, bytes[7]);
+
+        try (var reader = Storage.reader(tempDir.toUri(), column, 0, true)) {
+            assertInstanceOf(MmapStorageReader.class, reader);
+
+            assertEquals(0, reader.getInt());
+            assertEquals(31, reader.getInt());
+
+            int[] values = new int[998];
+            reader.getInts(values);
+            for (int i = 0; i < values.length; i++) {
+                assertEquals((i + 2) * 31, values[i]);
+            }
+        }
+    }
+
+    @Test
+    void testMaterializeCompressed() throws IOException {
+        var options = StorageOptions.DEFAULT.withMaterializeCompressed(true);
+
+        for (var storageType : new StorageType[] { StorageType.GZIP, StorageType.ZSTD }) {
+            for (var order : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN }) {
+                var column = new LongColumn("test-" + storageType + "-" + order, order, storageType);
+
+                try (var table = new SlopTable(tempDir)) {
+                    var writer = column.create(table);
+                    for (long i = 0; i < 10_000; i++) {
+                        writer.put(i * i);
+                    }
+                }
+
+                try (var reader = Storage.reader(tempDir.toUri(), column, 0, true)) {
+                    assertInstanceOf(CompressingStorageReader.class, reader);
+                }
+
+                try (var reader = Storage.reader(tempDir.toUri(), column, 0, true, options)) {
+                    assertInstanceOf(MmapStorageReader.class, reader);
+
+                    // random access works the same as for a mapped file
+                    reader.seek(5000, Long.BYTES);
+                    assertEquals(5000L * 5000L, reader.getLong());
+                    reader.seek(17, Long.BYTES);
+                    assertEquals(17L * 17L, reader.getLong());
+                }
+
+                try (var table = new SlopTable(tempDir.toUri(), 0, options)) {
+                    var reader = column.open(table);
+                    for (long i = 0; i < 10_000; i++) {
+                        assertEquals(i * i, reader.get());
+                    }
+                    assertFalse(reader.hasRemaining());
+                }
+            }
+
+            // an empty column
+            var empty = new LongColumn("empty-" + storageType, storageType);
+            try (var table = new SlopTable(tempDir)) {
+                empty.create(table);
+            }
+            try (var reader = Storage.reader(tempDir.toUri(), empty, 0, true, options)) {
+                assertFalse(reader.hasRemaining());
+            }
+        }
+    }
+}